@@ -0,0 +1,283 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the stages of the WollMux startup. A stage starts as soon as all stages it depends on are
+ * finished, so independent stages run in parallel. Deferred stages run on the thread which awaits
+ * them first. Stages calling UNO have to be deferred, because the office thread waiting for a
+ * stage may hold the SolarMutex.
+ *
+ * A failing stage is logged and counts as finished, so that the stages depending on it still run.
+ */
+final class StartupPipeline
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(StartupPipeline.class);
+
+  /**
+   * A stage of the startup.
+   */
+  private static final class Stage
+  {
+    private final String name;
+
+    private final Runnable task;
+
+    private final List<Stage> dependencies;
+
+    private final boolean deferred;
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    /** Guarded by the pipeline. */
+    private boolean scheduled;
+
+    private volatile long started = -1;
+
+    private volatile long finished = -1;
+
+    private volatile String thread;
+
+    private volatile Exception error;
+
+    private Stage(String name, Runnable task, List<Stage> dependencies, boolean deferred)
+    {
+      this.name = name;
+      this.task = task;
+      this.dependencies = dependencies;
+      this.deferred = deferred;
+    }
+  }
+
+  private final Executor executor;
+
+  private final long created = System.nanoTime();
+
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+  /**
+   * A new pipeline.
+   *
+   * @param executor
+   *          The executor on which the stages run.
+   */
+  StartupPipeline(Executor executor)
+  {
+    this.executor = executor;
+  }
+
+  /**
+   * Adds a stage, which starts as soon as its dependencies are finished.
+   *
+   * @param name
+   *          The name of the stage.
+   * @param task
+   *          The work of the stage.
+   * @param dependencies
+   *          The names of previously added stages, which have to be finished first.
+   */
+  synchronized void stage(String name, Runnable task, String... dependencies)
+  {
+    schedule(add(name, task, dependencies, false));
+  }
+
+  /**
+   * Adds a stage, which runs on the thread awaiting it or a stage depending on it.
+   *
+   * @param name
+   *          The name of the stage.
+   * @param task
+   *          The work of the stage.
+   * @param dependencies
+   *          The names of previously added stages, which have to be finished first.
+   */
+  synchronized void deferredStage(String name, Runnable task, String... dependencies)
+  {
+    add(name, task, dependencies, true);
+  }
+
+  /**
+   * Waits until the stages are finished. Deferred stages, which haven't been started yet, run on
+   * the current thread.
+   *
+   * @param names
+   *          The names of the stages.
+   */
+  void await(String... names)
+  {
+    List<Stage> awaited = new ArrayList<>(names.length);
+    synchronized (this)
+    {
+      for (String name : names)
+      {
+        awaited.add(getStage(name));
+      }
+    }
+    awaited.forEach(this::runDeferred);
+    awaited.forEach(stage -> stage.done.join());
+  }
+
+  /**
+   * Has the stage finished?
+   *
+   * @param name
+   *          The name of the stage.
+   * @return True if the stage has finished (successfully or not), false otherwise.
+   */
+  synchronized boolean isDone(String name)
+  {
+    return getStage(name).done.isDone();
+  }
+
+  /**
+   * A description of all stages with their start time relative to the creation of the pipeline,
+   * their duration and the thread they ran on.
+   *
+   * @return One line per stage.
+   */
+  synchronized String getTimings()
+  {
+    StringBuilder buf = new StringBuilder();
+    for (Stage stage : stages.values())
+    {
+      buf.append(stage.name).append(": ");
+      long started = stage.started;
+      long finished = stage.finished;
+      if (started < 0)
+      {
+        buf.append(stage.deferred ? "deferred, not started" : "waiting");
+      } else
+      {
+        buf.append("start +").append(TimeUnit.NANOSECONDS.toMillis(started - created)).append(" ms, ");
+        if (finished < 0)
+        {
+          buf.append("running");
+        } else
+        {
+          buf.append("duration ").append(TimeUnit.NANOSECONDS.toMillis(finished - started))
+              .append(" ms");
+        }
+        buf.append(", thread ").append(stage.thread);
+        if (stage.deferred)
+        {
+          buf.append(", deferred");
+        }
+        if (stage.error != null)
+        {
+          buf.append(", failed: ").append(stage.error);
+        }
+      }
+      buf.append('\n');
+    }
+    return buf.toString();
+  }
+
+  private Stage add(String name, Runnable task, String[] dependencies, boolean deferred)
+  {
+    if (stages.containsKey(name))
+    {
+      throw new IllegalArgumentException("Duplicate startup stage " + name);
+    }
+    List<Stage> deps = new ArrayList<>(dependencies.length);
+    for (String dependency : dependencies)
+    {
+      deps.add(getStage(dependency));
+    }
+    Stage stage = new Stage(name, task, deps, deferred);
+    stages.put(name, stage);
+    return stage;
+  }
+
+  private Stage getStage(String name)
+  {
+    Stage stage = stages.get(name);
+    if (stage == null)
+    {
+      throw new IllegalArgumentException("Unknown startup stage " + name);
+    }
+    return stage;
+  }
+
+  /**
+   * Starts the stage on the executor when its dependencies are finished. Has to be called while
+   * holding the lock of the pipeline.
+   */
+  private void schedule(Stage stage)
+  {
+    stage.scheduled = true;
+    CompletableFuture<?>[] dependencies = stage.dependencies.stream().map(d -> d.done)
+        .toArray(CompletableFuture<?>[]::new);
+    CompletableFuture.allOf(dependencies).thenRunAsync(() -> run(stage), executor);
+  }
+
+  /**
+   * Runs the deferred stages among the stage and its dependencies on the current thread, unless
+   * another thread has already started them. Dependencies run first, so no stage waits for a
+   * deferred stage, which nobody runs.
+   */
+  private void runDeferred(Stage stage)
+  {
+    stage.dependencies.forEach(this::runDeferred);
+    synchronized (this)
+    {
+      if (!stage.deferred || stage.scheduled)
+      {
+        return;
+      }
+      stage.scheduled = true;
+    }
+    stage.dependencies.forEach(dependency -> dependency.done.join());
+    run(stage);
+  }
+
+  private void run(Stage stage)
+  {
+    stage.thread = Thread.currentThread().getName();
+    stage.started = System.nanoTime();
+    try
+    {
+      stage.task.run();
+    } catch (Exception e)
+    {
+      stage.error = e;
+      LOGGER.error("Startup stage {} failed", stage.name, e);
+    } finally
+    {
+      stage.finished = System.nanoTime();
+      LOGGER.debug("Startup stage {} finished after {} ms", stage.name,
+          TimeUnit.NANOSECONDS.toMillis(stage.finished - stage.started));
+      stage.done.complete(null);
+    }
+  }
+}
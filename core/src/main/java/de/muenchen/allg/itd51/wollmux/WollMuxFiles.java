@@ -78,8 +78,10 @@ import com.sun.star.util.XStringSubstitution;
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
 import de.muenchen.allg.afid.UnoProps;
+import de.muenchen.allg.itd51.wollmux.config.ConfigSnapshot;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+import de.muenchen.allg.itd51.wollmux.document.DocumentLoader;
 import de.muenchen.allg.itd51.wollmux.util.L;
 import de.muenchen.allg.itd51.wollmux.util.Utils;
 import de.muenchen.allg.util.UnoComponent;
@@ -182,7 +184,8 @@ public class WollMuxFiles
     {
       try
       {
-        wollmuxConf = new ConfigThingy("", wollMuxConfigFile.toURI().toURL());
+        wollmuxConf = ConfigSnapshot.parse("", wollMuxConfigFile.toURI().toURL(),
+            new File(getWollMuxDir(), "wollmux.conf.snapshot"));
 	String serverURI = wollmuxConf.getString("CONF_SERVER", null);
         if (serverURI != null)
         {
@@ -512,6 +515,11 @@ public class WollMuxFiles
         out.write("wollmuxConfFile: " + getWollMuxConfFile() + "\n");
       }
       out.write("losCacheFile: " + getLosCacheFile() + "\n");
+      out.write("fragmentCache: " + DocumentLoader.getInstance().getStats() + "\n");
+
+      out.write("===================== START startup ==================\n");
+      out.write(WollMuxSingleton.getInstance().getStartupTimings());
+      out.write("===================== END startup ==================\n");
 
       out.write("===================== START JVM-Settings ==================\n");
       dumpJVMSettings(outStream, out);
@@ -25,11 +25,17 @@ package de.muenchen.allg.itd51.wollmux;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sun.star.document.XEventBroadcaster;
+import com.sun.star.frame.XTerminateListener;
+import com.sun.star.lang.EventObject;
 import com.sun.star.uno.UnoRuntime;
 import com.sun.star.uno.XComponentContext;
 
@@ -39,6 +45,7 @@ import de.muenchen.allg.afid.UnoHelperException;
 import de.muenchen.allg.afid.UnoProps;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+import de.muenchen.allg.itd51.wollmux.db.Datasources;
 import de.muenchen.allg.itd51.wollmux.document.DocumentManager;
 import de.muenchen.allg.itd51.wollmux.event.LibreOfficeEventListener;
 import de.muenchen.allg.itd51.wollmux.event.WollMuxEventHandler;
@@ -60,7 +67,51 @@ public class WollMuxSingleton
 
   private static final Logger LOGGER = LoggerFactory.getLogger(WollMuxSingleton.class);
 
-  private static WollMuxSingleton singletonInstance = null;
+  private static volatile WollMuxSingleton singletonInstance = null;
+
+  private static final String STAGE_UNO = "UNO";
+
+  private static final String STAGE_CONFIG = "wollmux.conf";
+
+  private static final String STAGE_LOGGING = "Logging";
+
+  private static final String STAGE_LOCALIZATION = "L10n";
+
+  private static final String STAGE_DEFAULT_CONTEXT = "DEFAULT_CONTEXT";
+
+  private static final String STAGE_CLASS_LOADER = "CLASSPATH";
+
+  private static final String STAGE_EVENTS = "Events";
+
+  private static final String STAGE_SHORTCUTS = "Tastenkuerzel";
+
+  private static final String STAGE_OOO_SETTINGS = "OOoEinstellungen";
+
+  /**
+   * Startphase, die die Datenquellen aus den Abschnitten Datenquellen/Registriere in OOo
+   * registriert. Sie wird erst ausgeführt, wenn eine OOo-Datenquelle verwendet wird, siehe
+   * {@link Datasources#awaitRegistration()}.
+   */
+  private static final String STAGE_REGISTER_DATASOURCES = "Datenquellen/Registriere";
+
+  /**
+   * Startphase, die den {@link SenderService} erzeugt und die Absenderdaten aus der Datenquelle
+   * aktualisiert. Sie wird erst bei der ersten Verwendung des {@link SenderService} ausgeführt.
+   */
+  public static final String STAGE_SENDER_SERVICE = "SENDER_SOURCE";
+
+  /**
+   * Anzahl der Startphasen, die im Hintergrund laufen (wollmux.conf, Logging, L10n und
+   * CLASSPATH). Alle anderen Phasen laufen im aufrufenden Thread.
+   */
+  private static final int BACKGROUND_STAGES = 4;
+
+  /**
+   * Führt die Startphasen im Hintergrund aus. Die Phasen warten nicht aufeinander, sondern werden
+   * erst gestartet, wenn ihre Abhängigkeiten beendet sind. Daher blockiert keine Phase einen
+   * Thread des Pools.
+   */
+  private static final ExecutorService STARTUP_EXECUTOR = createStartupExecutor();
 
   /**
    * Enthält den default XComponentContext in dem der WollMux (bzw. das OOo) läuft.
@@ -75,60 +126,74 @@ public class WollMuxSingleton
   private boolean menusCreated = false;
 
   /**
-   * Die WollMux-Hauptklasse ist als singleton realisiert.
+   * Die Startphasen des WollMux. Sie sind schon vor dem Ende des Konstruktors verfügbar, weil
+   * Events bereits während des Konstruktors verarbeitet werden.
+   */
+  private static volatile StartupPipeline startup;
+
+  /**
+   * Die WollMux-Hauptklasse ist als singleton realisiert. Phasen, die UNO verwenden, werden als
+   * verzögerte Phasen im aufrufenden Thread ausgeführt, da dieser die SolarMutex halten kann. Die
+   * übrigen Phasen laufen parallel im Hintergrund. Der Konstruktor wartet nicht auf die Phasen,
+   * die erst bei der ersten Verwendung ausgeführt werden.
    */
   private WollMuxSingleton(XComponentContext ctx)
   {
     this.ctx = ctx;
+    StartupPipeline pipeline = new StartupPipeline(STARTUP_EXECUTOR);
 
     // init UNO helper class.
-    try
-    {
-      UNO.init(ctx.getServiceManager());
-    } catch (Exception e)
-    {
-      LOGGER.error("", e);
-    }
+    pipeline.deferredStage(STAGE_UNO, () -> {
+      try
+      {
+        UNO.init(ctx.getServiceManager());
+      } catch (Exception e)
+      {
+        LOGGER.error("", e);
+      }
+    });
 
-    noConfig = WollMuxFiles.getWollmuxConf() != null && WollMuxFiles.getWollmuxConf().count() == 0;
+    pipeline.stage(STAGE_CONFIG, () -> noConfig = WollMuxFiles.getWollmuxConf() != null
+        && WollMuxFiles.getWollmuxConf().count() == 0);
 
-    // set font's zoom mode
-    Common.zoomFonts(Common.getFontZoomFactor(WollMuxFiles.getWollmuxConf()));
+    pipeline.stage(STAGE_LOGGING, () -> {
+      // set font's zoom mode
+      Common.zoomFonts(Common.getFontZoomFactor(WollMuxFiles.getWollmuxConf()));
 
-    // init Logging.
-    String logLevel = WollMuxFiles.getWollMuxConfLoggingMode(WollMuxFiles.getWollmuxConf());
-    LogConfig.init(logLevel);
+      // init Logging.
+      String logLevel = WollMuxFiles.getWollMuxConfLoggingMode(WollMuxFiles.getWollmuxConf());
+      LogConfig.init(logLevel);
+    }, STAGE_CONFIG);
 
     // init Localization
-    if (!WollMuxFiles.initLocalization(WollMuxFiles.getWollmuxConf()))
-    {
-      LOGGER
-          .info("No localization found in wollmux.conf. WollMux starts with default localization.");
-    }
+    pipeline.stage(STAGE_LOCALIZATION, () -> {
+      if (!WollMuxFiles.initLocalization(WollMuxFiles.getWollmuxConf()))
+      {
+        LOGGER.info(
+            "No localization found in wollmux.conf. WollMux starts with default localization.");
+      }
+    }, STAGE_CONFIG);
 
     // init default context
-    WollMuxFiles.determineDefaultContext();
-
-    ConfClassLoader.initClassLoader(WollMuxFiles.getWollmuxConf().query("CLASSPATH", 1));
+    pipeline.deferredStage(STAGE_DEFAULT_CONTEXT, WollMuxFiles::determineDefaultContext, STAGE_CONFIG);
 
-    LOGGER.debug("StartupWollMux");
-    if (WollMuxFiles.getWollMuxConfFile() != null)
-    {
-      LOGGER.debug("wollmuxConfFile = {}", WollMuxFiles.getWollMuxConfFile());
-    }
-    LOGGER.debug("DEFAULT_CONTEXT \"{}\"", WollMuxFiles.getDefaultContext());
-    LOGGER.debug("CONF_VERSION: {}", getConfVersionInfo());
+    pipeline.stage(STAGE_CLASS_LOADER, () -> ConfClassLoader
+        .initClassLoader(WollMuxFiles.getWollmuxConf().query("CLASSPATH", 1)),
+        STAGE_DEFAULT_CONTEXT);
 
     /*
-     * Datenquellen/Registriere Abschnitte verarbeiten. ACHTUNG! Dies muss vor getDatasourceJoiner()
-     * geschehen, da die entsprechenden Datenquellen womöglich schon für WollMux-Datenquellen
-     * benötigt werden.
+     * Datenquellen/Registriere Abschnitte verarbeiten. ACHTUNG! Dies muss vor der Verwendung von
+     * OOo-Datenquellen geschehen, siehe Datasources.awaitRegistration().
      */
-    registerDatasources(WollMuxFiles.getWollmuxConf(), WollMuxFiles.getDefaultContext());
+    pipeline.deferredStage(STAGE_REGISTER_DATASOURCES,
+        () -> registerDatasources(WollMuxFiles.getWollmuxConf(), WollMuxFiles.getDefaultContext()),
+        STAGE_UNO, STAGE_LOCALIZATION, STAGE_DEFAULT_CONTEXT);
 
-    // Versuchen, den DJ zu initialisieren
-    if (SenderService.getInstance() != null)
-    {
+    // Absenderdaten werden erst bei der ersten Verwendung aus der Datenquelle aktualisiert.
+    pipeline.deferredStage(STAGE_SENDER_SERVICE, SenderService::createInstance, STAGE_UNO,
+        STAGE_LOGGING, STAGE_LOCALIZATION, STAGE_CLASS_LOADER);
+
+    pipeline.deferredStage(STAGE_EVENTS, () -> {
       // Initialisiere EventProcessor
       WollMuxEventHandler.getInstance().setAcceptEvents(true);
 
@@ -139,12 +204,36 @@ public class WollMuxSingleton
             .createInstanceWithContext("com.sun.star.frame.GlobalEventBroadcaster", ctx));
         eventBroadcaster
             .addEventListener(new LibreOfficeEventListener(DocumentManager.getDocumentManager()));
+
+        // Verbindungen der Datenquellen beim Beenden von LibreOffice schließen
+        UNO.desktop.addTerminateListener(new XTerminateListener()
+        {
+          @Override
+          public void disposing(EventObject event)
+          {
+            // nothing to do
+          }
+
+          @Override
+          public void queryTermination(EventObject event)
+          {
+            // nothing to do
+          }
+
+          @Override
+          public void notifyTermination(EventObject event)
+          {
+            Datasources.close();
+          }
+        });
       } catch (Exception e)
       {
         LOGGER.error("", e);
       }
+    }, STAGE_UNO, STAGE_LOGGING, STAGE_LOCALIZATION, STAGE_CLASS_LOADER);
 
-      // setzen von shortcuts
+    // setzen von shortcuts
+    pipeline.deferredStage(STAGE_SHORTCUTS, () -> {
       ConfigThingy tastenkuerzel = new ConfigThingy("");
       try
       {
@@ -161,11 +250,26 @@ public class WollMuxSingleton
       {
         LOGGER.error("", e);
       }
+    }, STAGE_UNO, STAGE_LOCALIZATION);
+
+    // Setzen der in den Abschnitten OOoEinstellungen eingestellten
+    // Konfigurationsoptionen
+    pipeline.deferredStage(STAGE_OOO_SETTINGS,
+        () -> this.setOOoConfiguration(WollMuxFiles.getWollmuxConf().query("OOoEinstellungen")),
+        STAGE_UNO, STAGE_LOGGING);
+
+    // Veröffentlichen, bevor Events verarbeitet werden, die auf Startphasen warten.
+    Datasources.setRegistration(() -> pipeline.await(STAGE_REGISTER_DATASOURCES));
+    startup = pipeline;
+    pipeline.await(STAGE_EVENTS, STAGE_SHORTCUTS, STAGE_OOO_SETTINGS);
 
-      // Setzen der in den Abschnitten OOoEinstellungen eingestellten
-      // Konfigurationsoptionen
-      this.setOOoConfiguration(WollMuxFiles.getWollmuxConf().query("OOoEinstellungen"));
+    LOGGER.debug("StartupWollMux");
+    if (WollMuxFiles.getWollMuxConfFile() != null)
+    {
+      LOGGER.debug("wollmuxConfFile = {}", WollMuxFiles.getWollMuxConfFile());
     }
+    LOGGER.debug("DEFAULT_CONTEXT \"{}\"", WollMuxFiles.getDefaultContext());
+    LOGGER.debug("CONF_VERSION: {}", getConfVersionInfo());
   }
 
   private void setOOoConfiguration(ConfigThingy oooEinstellungenConf)
@@ -197,6 +301,46 @@ public class WollMuxSingleton
     this.menusCreated = menusCreated;
   }
 
+  /**
+   * Wartet bis die Startphase {@code stage} beendet ist. Verzögerte Phasen werden dabei im
+   * aufrufenden Thread ausgeführt. Ist der WollMux nicht initialisiert, passiert nichts.
+   *
+   * @param stage
+   *          {@link #STAGE_SENDER_SERVICE}.
+   */
+  public static void awaitStartupStage(String stage)
+  {
+    StartupPipeline pipeline = startup;
+    if (pipeline != null)
+    {
+      pipeline.await(stage);
+    }
+  }
+
+  /**
+   * Liefert die Zeiten der einzelnen Startphasen.
+   *
+   * @return Eine Zeile pro Startphase oder einen leeren String, wenn der Start noch nicht
+   *         begonnen hat.
+   */
+  public String getStartupTimings()
+  {
+    StartupPipeline pipeline = startup;
+    return pipeline == null ? "" : pipeline.getTimings();
+  }
+
+  private static ExecutorService createStartupExecutor()
+  {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(BACKGROUND_STAGES, BACKGROUND_STAGES, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "WollMux startup");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /**
    * Diese Methode initialisiert das WollMuxSingleton (nur dann, wenn es noch nicht initialisiert
    * wurde)
@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of all nodes of a ConfigThingy tree by their name. For each name the nodes are stored in
+ * breadth-first order together with their parent and their search depth, so that the result of a
+ * query can be looked up without traversing the tree.
+ *
+ * Each node of the tree references the index, so that the index can be invalidated when the node
+ * is modified. A node can only be part of one valid index.
+ */
+final class ConfigNameIndex
+{
+  /**
+   * A node of the tree.
+   */
+  private static final class Entry
+  {
+    private final ConfigThingy node;
+
+    private final ConfigThingy parent;
+
+    private final int level;
+
+    private Entry(ConfigThingy node, ConfigThingy parent, int level)
+    {
+      this.node = node;
+      this.parent = parent;
+      this.level = level;
+    }
+  }
+
+  private final Map<String, List<Entry>> entries = new HashMap<>();
+
+  private volatile boolean valid = true;
+
+  private ConfigNameIndex()
+  {
+    // use build
+  }
+
+  /**
+   * Creates an index for the tree with root {@code root}.
+   *
+   * @return The index or null if a node of the tree is already part of another valid index.
+   */
+  static ConfigNameIndex build(ConfigThingy root)
+  {
+    synchronized (ConfigNameIndex.class)
+    {
+      ConfigNameIndex index = new ConfigNameIndex();
+      List<Entry> level = new ArrayList<>();
+      level.add(new Entry(root, root, 0));
+      while (!level.isEmpty())
+      {
+        List<Entry> next = new ArrayList<>();
+        for (Entry entry : level)
+        {
+          ConfigNameIndex other = entry.node.indexedBy;
+          if (other != null && other != index && other.isValid())
+          {
+            index.invalidate();
+            return null;
+          }
+          entry.node.indexedBy = index;
+          index.entries.computeIfAbsent(entry.node.getName(), k -> new ArrayList<>(1)).add(entry);
+          for (ConfigThingy child : entry.node)
+          {
+            next.add(new Entry(child, entry.node, entry.level + 1));
+          }
+        }
+        level = next;
+      }
+      return index;
+    }
+  }
+
+  boolean isValid()
+  {
+    return valid;
+  }
+
+  /**
+   * Marks the index as outdated. It mustn't be used anymore.
+   */
+  void invalidate()
+  {
+    valid = false;
+  }
+
+  /**
+   * Returns the nodes with name {@code name} (or their parents) of the lowest search depth between
+   * {@code minlevel} and {@code maxlevel}. Each parent is returned only once.
+   */
+  List<ConfigThingy> query(String name, boolean getParents, int maxlevel, int minlevel)
+  {
+    List<Entry> list = entries.getOrDefault(name, Collections.emptyList());
+    int start = firstAtLevel(list, minlevel);
+    if (start == list.size() || list.get(start).level > maxlevel)
+    {
+      return new ArrayList<>();
+    }
+
+    int level = list.get(start).level;
+    int end = start;
+    while (end < list.size() && list.get(end).level == level)
+    {
+      end++;
+    }
+    return collect(list.subList(start, end), getParents);
+  }
+
+  /**
+   * Returns the nodes with name {@code name} (or their parents) of all search depths between 1 and
+   * {@code maxlevel} ({@code maxlevel >= 1}). Each parent is returned only once.
+   */
+  List<ConfigThingy> queryAll(String name, int maxlevel, boolean getParents)
+  {
+    List<Entry> list = entries.getOrDefault(name, Collections.emptyList());
+    int start = firstAtLevel(list, 1);
+    int end = maxlevel == Integer.MAX_VALUE ? list.size() : firstAtLevel(list, maxlevel + 1);
+    return collect(list.subList(start, end), getParents);
+  }
+
+  /**
+   * Binary search for the first entry with search depth greater than or equal to {@code level}.
+   */
+  private static int firstAtLevel(List<Entry> list, int level)
+  {
+    int low = 0;
+    int high = list.size();
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (list.get(mid).level < level)
+      {
+        low = mid + 1;
+      } else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static List<ConfigThingy> collect(List<Entry> list, boolean getParents)
+  {
+    List<ConfigThingy> found = new ArrayList<>(list.size());
+    Set<ConfigThingy> parents = getParents ? Collections.newSetFromMap(new IdentityHashMap<>())
+        : null;
+    for (Entry entry : list)
+    {
+      if (!getParents)
+      {
+        found.add(entry.node);
+      } else if (parents.add(entry.parent))
+      {
+        found.add(entry.parent);
+      }
+    }
+    return found;
+  }
+}
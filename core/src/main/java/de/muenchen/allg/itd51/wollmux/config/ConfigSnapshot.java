@@ -0,0 +1,371 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary snapshot of a parsed configuration file and all files included by it, so that the text
+ * doesn't have to be read and parsed again at every start.
+ *
+ * The snapshot stores the URL, size and modification time of every source file and is only used
+ * if all of them are unchanged. The names of the nodes are stored once in a string table, the tree
+ * is stored in pre-order with the number of children of each node. The snapshot is read into a
+ * heap buffer at once. It isn't memory-mapped, because a mapped file can't be replaced on Windows.
+ */
+public final class ConfigSnapshot
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+  private static final int MAGIC = 0x574d4353; // "WMCS"
+
+  private static final int VERSION = 1;
+
+  /**
+   * A source modified less than this many milliseconds before parsing started might have changed
+   * while it was read. No snapshot is written in this case.
+   */
+  private static final long MODIFICATION_TOLERANCE = 2000;
+
+  private ConfigSnapshot()
+  {
+    // nothing to do
+  }
+
+  /**
+   * Get the configuration from the snapshot if it's up to date. Otherwise parse the text and write
+   * a new snapshot.
+   *
+   * @param name
+   *          the name of the root of the created ConfigThingy tree.
+   * @param url
+   *          the configuration file.
+   * @param snapshot
+   *          the snapshot file.
+   * @return the configuration.
+   * @throws IOException
+   *           if loading data from url (or an included URL) fails.
+   * @throws SyntaxErrorException
+   *           if a syntactic error is found when parsing the data from url.
+   */
+  public static ConfigThingy parse(String name, URL url, File snapshot)
+      throws IOException, SyntaxErrorException
+  {
+    ConfigThingy conf = load(url, snapshot);
+    if (conf != null)
+    {
+      LOGGER.debug("Configuration {} read from snapshot {}", url, snapshot);
+      conf.setName(name);
+      return conf;
+    }
+
+    long start = System.currentTimeMillis();
+    Set<URL> sources = new LinkedHashSet<>();
+    conf = ConfigThingy.parse(name, url, sources);
+    try
+    {
+      write(conf, new ArrayList<>(sources), snapshot, start - MODIFICATION_TOLERANCE);
+    } catch (IOException e)
+    {
+      LOGGER.debug("Couldn't write snapshot {}", snapshot, e);
+    }
+    return conf;
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @param url
+   *          the configuration file from which the snapshot has to be created.
+   * @param snapshot
+   *          the snapshot file.
+   * @return the configuration or null if there is no valid snapshot for url or a source has
+   *         changed.
+   */
+  static ConfigThingy load(URL url, File snapshot)
+  {
+    if (!snapshot.isFile())
+    {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ))
+    {
+      ByteBuffer buffer = read(channel);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+      {
+        return null;
+      }
+
+      int sourceCount = buffer.getInt();
+      for (int i = 0; i < sourceCount; i++)
+      {
+        String source = readString(buffer);
+        long size = buffer.getLong();
+        long modified = buffer.getLong();
+        if (i == 0 && !source.equals(url.toString()))
+        {
+          return null;
+        }
+        File file = toFile(new URL(source));
+        if (file == null || !file.isFile() || file.length() != size || file.lastModified() != modified)
+        {
+          LOGGER.debug("Snapshot {} is outdated: {} has changed", snapshot, source);
+          return null;
+        }
+      }
+
+      String[] names = new String[buffer.getInt()];
+      for (int i = 0; i < names.length; i++)
+      {
+        names[i] = readString(buffer);
+      }
+
+      return readTree(buffer, names);
+    } catch (IOException | RuntimeException e)
+    {
+      LOGGER.debug("Snapshot {} couldn't be read", snapshot, e);
+      return null;
+    }
+  }
+
+  /**
+   * Write a snapshot. The snapshot is replaced atomically. Nothing is written if a source isn't a
+   * file or has been modified after {@code notModifiedAfter}.
+   *
+   * @param conf
+   *          the configuration.
+   * @param sources
+   *          the configuration file followed by all included files.
+   * @param snapshot
+   *          the snapshot file.
+   * @param notModifiedAfter
+   *          the time after which the sources mustn't have been modified.
+   * @throws IOException
+   *           the snapshot couldn't be written.
+   */
+  static void write(ConfigThingy conf, List<URL> sources, File snapshot, long notModifiedAfter)
+      throws IOException
+  {
+    List<File> files = new ArrayList<>(sources.size());
+    for (URL source : sources)
+    {
+      File file = toFile(source);
+      if (file == null || !file.isFile() || file.lastModified() > notModifiedAfter)
+      {
+        LOGGER.debug("No snapshot for {}: {} can't be validated", sources.get(0), source);
+        return;
+      }
+      files.add(file);
+    }
+
+    Map<String, Integer> nameIndex = new HashMap<>();
+    List<String> names = new ArrayList<>();
+    collectNames(conf, nameIndex, names);
+
+    File dir = snapshot.getAbsoluteFile().getParentFile();
+    File temp = File.createTempFile(snapshot.getName(), ".tmp", dir);
+    try
+    {
+      try (OutputStream file = Files.newOutputStream(temp.toPath());
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file)))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(sources.size());
+        for (int i = 0; i < sources.size(); i++)
+        {
+          writeString(out, sources.get(i).toString());
+          out.writeLong(files.get(i).length());
+          out.writeLong(files.get(i).lastModified());
+        }
+
+        out.writeInt(names.size());
+        for (String name : names)
+        {
+          writeString(out, name);
+        }
+
+        writeTree(out, conf, nameIndex);
+      }
+      Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally
+    {
+      Files.deleteIfExists(temp.toPath());
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel) throws IOException
+  {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE)
+    {
+      throw new IOException("Snapshot is too large");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+    {
+      // read until the buffer is full or the file ends
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static File toFile(URL url)
+  {
+    if (!"file".equalsIgnoreCase(url.getProtocol()))
+    {
+      return null;
+    }
+    try
+    {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e)
+    {
+      LOGGER.trace("", e);
+      return null;
+    }
+  }
+
+  private static void collectNames(ConfigThingy conf, Map<String, Integer> nameIndex,
+      List<String> names)
+  {
+    Deque<ConfigThingy> stack = new ArrayDeque<>();
+    stack.push(conf);
+    while (!stack.isEmpty())
+    {
+      ConfigThingy node = stack.pop();
+      if (!nameIndex.containsKey(node.getName()))
+      {
+        nameIndex.put(node.getName(), names.size());
+        names.add(node.getName());
+      }
+      for (ConfigThingy child : node)
+      {
+        stack.push(child);
+      }
+    }
+  }
+
+  /**
+   * Writes the tree in pre-order. Each node is written as index of its name and number of
+   * children.
+   */
+  private static void writeTree(DataOutputStream out, ConfigThingy conf,
+      Map<String, Integer> nameIndex) throws IOException
+  {
+    Deque<ConfigThingy> stack = new ArrayDeque<>();
+    stack.push(conf);
+    while (!stack.isEmpty())
+    {
+      ConfigThingy node = stack.pop();
+      out.writeInt(nameIndex.get(node.getName()));
+      out.writeInt(node.count());
+
+      List<ConfigThingy> children = new ArrayList<>(node.count());
+      node.forEach(children::add);
+      for (int i = children.size() - 1; i >= 0; i--)
+      {
+        stack.push(children.get(i));
+      }
+    }
+  }
+
+  private static ConfigThingy readTree(ByteBuffer buffer, String[] names)
+  {
+    ConfigThingy root = new ConfigThingy(names[buffer.getInt()]);
+    root.enableNameIndex();
+    Deque<ConfigThingy> parents = new ArrayDeque<>();
+    Deque<Integer> remaining = new ArrayDeque<>();
+    parents.push(root);
+    remaining.push(buffer.getInt());
+
+    while (!parents.isEmpty())
+    {
+      int count = remaining.pop();
+      if (count == 0)
+      {
+        parents.pop();
+        continue;
+      }
+      remaining.push(count - 1);
+
+      ConfigThingy child = new ConfigThingy(names[buffer.getInt()]);
+      parents.peek().addChild(child);
+      parents.push(child);
+      remaining.push(buffer.getInt());
+    }
+
+    if (buffer.hasRemaining())
+    {
+      throw new IllegalStateException("Unexpected data at end of snapshot");
+    }
+    return root;
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException
+  {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer)
+  {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining())
+    {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
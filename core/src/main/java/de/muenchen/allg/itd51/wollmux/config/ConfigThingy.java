@@ -22,7 +22,6 @@
  */
 package de.muenchen.allg.itd51.wollmux.config;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -34,15 +33,21 @@ import java.net.URLEncoder;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.muenchen.allg.itd51.wollmux.config.ConfigTokenizer.Token;
+import de.muenchen.allg.itd51.wollmux.config.ConfigTokenizer.TokenType;
+
 /**
  * ConfigThingy represents a node in a tree created by parsing a WollMux configuration file.
  */
@@ -98,6 +103,18 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   /** The name of the node. For leaves, this is the (string) value of the node. */
   private String name;
 
+  /**
+   * If {@code true} queries on this node use a {@link ConfigNameIndex}. This is set for the roots
+   * of parsed configurations, which are queried over and over again.
+   */
+  private boolean indexable;
+
+  /** The index of this node's tree, created on the first query. */
+  private volatile ConfigNameIndex nameIndex;
+
+  /** The index which contains this node and has to be invalidated if this node is modified. */
+  ConfigNameIndex indexedBy;
+
   /**
    * Parses the data from the file specified by {@code url}.
    *
@@ -111,6 +128,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public ConfigThingy(String name, URL url) throws IOException, SyntaxErrorException
   {
     this(name);
+    enableNameIndex();
     childrenFromUrl(url, new InputStreamReader(url.openStream(), CHARSET));
   }
 
@@ -146,6 +164,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       SyntaxErrorException
   {
     this(name);
+    enableNameIndex();
     childrenFromUrl(url, read);
   }
 
@@ -205,13 +224,40 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    */
   protected void childrenFromUrl(URL url, Reader read) throws IOException,
       SyntaxErrorException
+  {
+    childrenFromUrl(url, read, null);
+  }
+
+  /**
+   * Like {@link #ConfigThingy(String, URL)}, but additionally collects the URL of the file and
+   * the URLs of all files included by it.
+   *
+   * @param sources
+   *          the collection to which the URLs are added.
+   */
+  static ConfigThingy parse(String name, URL url, Collection<URL> sources)
+      throws IOException, SyntaxErrorException
+  {
+    ConfigThingy conf = new ConfigThingy(name);
+    conf.enableNameIndex();
+    sources.add(url);
+    conf.childrenFromUrl(url, new InputStreamReader(url.openStream(), CHARSET), sources);
+    return conf;
+  }
+
+  /**
+   * Like {@link #childrenFromUrl(URL, Reader)}. The URLs of included files are added to
+   * {@code sources}, if it isn't null.
+   */
+  private void childrenFromUrl(URL url, Reader read, Collection<URL> sources)
+      throws IOException, SyntaxErrorException
   {
     try
     {
       Deque<ConfigThingy> stack = new ArrayDeque<>();
       stack.push(this);
-      List<StringContentToken> tokens = tokenize(url, read);
-      Iterator<StringContentToken> liter = tokens.iterator();
+      List<Token> tokens = ConfigTokenizer.tokenize(url, read);
+      Iterator<Token> liter = tokens.iterator();
       Token token1;
       Token token2;
       do
@@ -227,8 +273,12 @@ public class ConfigThingy implements Iterable<ConfigThingy>
               try
               {
                 URL includeURL = new URL(url, urlEncode(token2.contentString()));
+                if (sources != null)
+                {
+                  sources.add(includeURL);
+                }
                 stack.peek().childrenFromUrl(includeURL,
-                  new InputStreamReader(includeURL.openStream(), CHARSET));
+                  new InputStreamReader(includeURL.openStream(), CHARSET), sources);
               }
               catch (IOException iox)
               {
@@ -363,6 +413,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public void addChild(ConfigThingy child)
   {
     children.add(child);
+    modified();
   }
 
   /**
@@ -392,7 +443,74 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   @Override
   public Iterator<ConfigThingy> iterator()
   {
-    return children.iterator();
+    Iterator<ConfigThingy> iter = children.iterator();
+    return new Iterator<ConfigThingy>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        return iter.hasNext();
+      }
+
+      @Override
+      public ConfigThingy next()
+      {
+        return iter.next();
+      }
+
+      @Override
+      public void remove()
+      {
+        iter.remove();
+        modified();
+      }
+    };
+  }
+
+  /**
+   * Use a {@link ConfigNameIndex} for queries on this node.
+   */
+  void enableNameIndex()
+  {
+    indexable = true;
+  }
+
+  /**
+   * Invalidates the index containing this node.
+   */
+  private void modified()
+  {
+    ConfigNameIndex index = indexedBy;
+    if (index != null)
+    {
+      index.invalidate();
+    }
+  }
+
+  /**
+   * Returns the index of this node's tree, if this node is indexable. The index is created if
+   * there's no valid one.
+   *
+   * @return The index or null.
+   */
+  private ConfigNameIndex getNameIndex()
+  {
+    if (!indexable)
+    {
+      return null;
+    }
+    ConfigNameIndex index = nameIndex;
+    if (index == null || !index.isValid())
+    {
+      index = ConfigNameIndex.build(this);
+      if (index == null)
+      {
+        // a node is shared with another indexed tree, the index couldn't be invalidated reliably
+        indexable = false;
+      }
+      nameIndex = index;
+    }
+    return index;
   }
 
   /**
@@ -464,6 +582,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public void setName(String newName)
   {
     name = newName;
+    modified();
   }
 
   /**
@@ -501,66 +620,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     return children.get(children.size() - 1);
   }
 
-  /**
-   * Searches the subtree with root {@code this} for nodes with name {@code name}
-   * at searchlevel {@code searchlevel} and adds them
-   * (or their parents if {@code getParents==true}) to the list {@code found}.
-   *
-   * @param parent
-   *          Der Elternknoten von this.
-   * @param name
-   *          der Name nach dem zu suchen ist.
-   * @param found
-   *          the found nodes (or if {@code getParents==true} their parents)
-   *          are inserted into this list. Each node appears at most once in this list,
-   *          i.e. if getParents==true and a node has several children with name name,
-   *          this node is nevertheless inserted only once.
-   * @param parentLevel
-   *          the search depth for breadth-first search of {@code parent},
-   *          i.e. this has search depth {@code parentLevel + 1}
-   * @param searchLevel
-   *          The search depth at which the nodes are to be searched for.
-   *          Nodes at other search depths are not inserted in {@code found}.
-   * @param getParents
-   *          if {@code true}, the parent nodes are inserted instead of the found nodes.
-   *          However, each parent node is always inserted only once,
-   *          even if it has several matching children.
-   * @return {@code true} if at least one node with search depth searchlevel has been reached,
-   *         i.e. if a search with a higher searchlevel could possibly yield results.
-   */
-  private boolean rollcall(ConfigThingy parent, String name,
-      List<ConfigThingy> found, int parentLevel, int searchLevel, boolean getParents)
-  {
-    int level = parentLevel + 1;
-    if (searchLevel == level)
-    {
-      if (name.equals(this.name))
-      {
-        if (getParents)
-        {
-          if (!found.contains(parent)) {
-            found.add(parent);
-          }
-        }
-        else
-          found.add(this);
-      }
-    }
-    else
-    // if searchLevel < level
-    {
-      boolean haveMore = false;
-      for (ConfigThingy child : children)
-      {
-        boolean result =
-          child.rollcall(this, name, found, level, searchLevel, getParents);
-        haveMore = haveMore || result;
-      }
-      return haveMore;
-    }
-    return true;
-  }
-
   /**
    * Performs a breadth-first search for descendant nodes of {@code this}
    * that have {@code name} as their name.
@@ -783,16 +842,11 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    */
   public ConfigThingy queryAll(String name, int maxlevel, boolean getParents)
   {
-    ArrayList<ConfigThingy> found = new ArrayList<>();
-
-    boolean hasMore;
-
-    int searchlevel = 1;
-    do
-    {
-      hasMore = rollcall(this, name, found, -1, searchlevel++, getParents);
-    } while (hasMore && searchlevel < maxlevel + 1);
-
+    // depth 1 is always searched
+    int max = Math.max(1, maxlevel);
+    ConfigNameIndex index = getNameIndex();
+    List<ConfigThingy> found = index != null ? index.queryAll(name, max, getParents)
+        : breadthFirstSearch(name, getParents, max, 1, true);
     return new ConfigThingy("<query results>", found);
   }
 
@@ -803,17 +857,14 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   protected ConfigThingy query(String name, boolean getParents, int maxlevel,
       int minlevel)
   {
-    List<ConfigThingy> found = new ArrayList<>();
-    boolean haveMore;
-    int searchlevel = minlevel;
-    do
+    if (minlevel < 0 || minlevel > maxlevel)
     {
-      if (searchlevel > maxlevel) {
-        break;
-      }
-      haveMore = rollcall(this, name, found, -1, searchlevel, getParents);
-      ++searchlevel;
-    } while (found.isEmpty() && haveMore);
+      return new ConfigThingy("<query results>");
+    }
+
+    ConfigNameIndex index = getNameIndex();
+    List<ConfigThingy> found = index != null ? index.query(name, getParents, maxlevel, minlevel)
+        : breadthFirstSearch(name, getParents, maxlevel, minlevel, false);
 
     if (found.isEmpty()) {
       return new ConfigThingy("<query results>");
@@ -821,6 +872,75 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     return new ConfigThingy("<query results>", found);
   }
 
+  /**
+   * Performs a breadth-first search for nodes with name {@code name} in the subtree with root
+   * {@code this} (search depth 0).
+   *
+   * @param getParents
+   *          if {@code true}, the parent nodes are returned instead of the found nodes. Each
+   *          parent node is returned only once, even if it has several matching children.
+   * @param maxlevel
+   *          the maximum search depth.
+   * @param minlevel
+   *          the minimum search depth.
+   * @param all
+   *          if {@code true}, the nodes of all search depths are returned, otherwise only the
+   *          nodes of the lowest search depth with results.
+   * @return The found nodes in breadth-first order.
+   */
+  private List<ConfigThingy> breadthFirstSearch(String name, boolean getParents, int maxlevel,
+      int minlevel, boolean all)
+  {
+    List<ConfigThingy> found = new ArrayList<>();
+    Set<ConfigThingy> foundParents = getParents
+        ? Collections.newSetFromMap(new IdentityHashMap<>())
+        : null;
+    // the nodes of the current search depth and their parents
+    List<ConfigThingy> level = new ArrayList<>(1);
+    List<ConfigThingy> parents = new ArrayList<>(1);
+    level.add(this);
+    parents.add(this);
+
+    for (int depth = 0; !level.isEmpty(); depth++)
+    {
+      if (depth >= minlevel)
+      {
+        for (int i = 0; i < level.size(); i++)
+        {
+          if (name.equals(level.get(i).name))
+          {
+            if (!getParents)
+            {
+              found.add(level.get(i));
+            } else if (foundParents.add(parents.get(i)))
+            {
+              found.add(parents.get(i));
+            }
+          }
+        }
+      }
+
+      if (depth >= maxlevel || (!all && !found.isEmpty()))
+      {
+        break;
+      }
+
+      List<ConfigThingy> nextLevel = new ArrayList<>();
+      List<ConfigThingy> nextParents = new ArrayList<>();
+      for (ConfigThingy node : level)
+      {
+        for (ConfigThingy child : node.children)
+        {
+          nextLevel.add(child);
+          nextParents.add(node);
+        }
+      }
+      level = nextLevel;
+      parents = nextParents;
+    }
+    return found;
+  }
+
   /**
    * If {@code getParents == false} this function behaves like {@link #get(String, int)},
    * if {@code getParents == true} like {@link #getByChild(String, int)}.
@@ -1086,509 +1206,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       throw new InvalidIdentifierException(id);
   }
 
-  private enum TokenType
-  {
-    KEY,
-    STRING,
-    OPENPAREN,
-    CLOSEPAREN,
-    END,
-    INCLUDE,
-    LINECOMMENT;
-  }
-
-  /**
-   * The {@link ConfigThingy#tokenize(URL)} method returns a list of objects
-   * that all implement this interface.
-   */
-  private interface Token
-  {
-    /**
-     * Returns the URL of the document in which this token was found.
-     */
-    public URL url();
-
-    /**
-     * Returns the line in which this token was found.
-     */
-    public int line();
-
-    /**
-     * Returns the position of the first character of this token in its line, counted from 1.
-     */
-    public int position();
-
-    /**
-     * Returns the type of this token, e.g. {@link #KEY}.
-     */
-    public TokenType type();
-
-    /**
-     * Returns the text representation of this token.
-     * This is NOT necessarily identical with the string from which this token was parsed.
-     * For example, separators like the quotation marks for delimiting strings do not appear
-     * in the string returned here.
-     * Nor do escape sequences used in the input data stream to represent certain characters
-     * such as newline appear in this string.
-     */
-    public String contentString();
-  }
-
-  /**
-   * Abstract base class for tokens that store their {@link #contentString()} value in a string variable.
-   */
-  private abstract static class StringContentToken implements Token
-  {
-    protected String content;
-
-    protected int myLine;
-
-    protected int myPosition;
-
-    protected URL myURL;
-
-    public StringContentToken(URL url, int line, int position)
-    {
-      myURL = url;
-      myLine = line;
-      myPosition = position;
-    }
-
-    @Override
-    public URL url()
-    {
-      return myURL;
-    }
-
-    @Override
-    public int line()
-    {
-      return myLine;
-    }
-
-    @Override
-    public int position()
-    {
-      return myPosition;
-    }
-
-    @Override
-    public String contentString()
-    {
-      return content;
-    }
-  }
-
-  /**
-   * Token for a string according to the syntax for WollMux config files.
-   */
-  private static class StringToken extends StringContentToken
-  {
-    /**
-     * Creates a new StringToken
-     *
-     * @param tokenData
-     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
-     */
-    public StringToken(String tokenData, URL url, int line, int position)
-    {
-      super(url, line, position);
-
-      int len = atStartOf(tokenData);
-      if (len < 2) {
-        throw new IllegalArgumentException("String token expected!");
-      }
-
-      char quote = tokenData.charAt(0);
-
-      /*
-       * Evaluate % escapes, as well as replace quotequote with quote
-       */
-      StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
-      String quoteStr = Character.toString(quote);
-      int startidx = 0;
-      int idx;
-      while (true)
-      {
-        idx = buffy.indexOf("%", startidx);
-        int idx2 = buffy.indexOf(quoteStr, startidx);
-
-        if (idx < 0 && idx2 < 0) {
-          break;
-        }
-
-        String repstr;
-        int replen;
-
-        if (idx < 0 || (idx2 >= 0 && idx2 < idx)) // quotequote
-        {
-          idx = idx2;
-          replen = 2;
-          repstr = quoteStr;
-        }
-        else // % escape
-        {
-          if (idx + 1 >= buffy.length()) {
-            break;
-          }
-
-          // default: replace with the same character, i.e. %
-          repstr = Character.toString(buffy.charAt(idx));
-          replen = 1;
-
-          switch (buffy.charAt(idx + 1))
-          {
-            case 'n':
-              repstr = "\n";
-              replen = 2;
-              break;
-            case '%':
-              repstr = "%";
-              replen = 2;
-              break;
-            case 'u':
-              repstr = parseUnicode(buffy, idx + 2);
-              replen = 6;
-              break;
-            default:
-              break;
-          }
-        }
-        buffy.replace(idx, idx + replen, repstr);
-        startidx = idx + repstr.length();
-      }
-
-      content = buffy.toString();
-    }
-
-    private String parseUnicode(StringBuilder str, int idx)
-    {
-      if (idx + 4 > str.length())
-        throw new IllegalArgumentException("Incomplete %u escape!");
-      String code = str.substring(idx, idx + 4);
-      try
-      {
-        char ch = (char) Integer.parseInt(code, 16);
-        return Character.toString(ch);
-      }
-      catch (NumberFormatException x)
-      {
-        throw new IllegalArgumentException("Incorrect hex number in %u escape: \"%u"
-          + code + "\"");
-      }
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.STRING;
-    }
-
-    /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      if (str.length() < 2) {
-        return 0;
-      }
-      char quote = str.charAt(0);
-      if (quote != '"' && quote != '\'') {
-        return 0;
-      }
-
-      int idx = 1;
-      while (true)
-      {
-        idx = str.indexOf(quote, idx);
-        if (idx < 0) {
-          return 0;
-        }
-        ++idx;
-        if (idx >= str.length() || str.charAt(idx) != quote) {
-          return idx;
-        }
-        ++idx;
-      }
-    }
-  }
-
-  /**
-   * A token for a key according to the syntax for WollMux config files.
-   */
-  private static class KeyToken extends StringContentToken
-  {
-    /**
-     * Regex for the identification of valid keys.
-     */
-    private static Pattern p = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
-
-    /**
-     * Creates a new KeyToken
-     *
-     * @param tokenData
-     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
-     */
-    public KeyToken(String tokenData, URL url, int line, int position)
-    {
-      super(url, line, position);
-      Matcher m = p.matcher(tokenData);
-      if (!m.find()) {
-        throw new IllegalArgumentException("Key token expected!");
-      }
-      content = m.group(1);
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.KEY;
-    }
-
-    /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      Matcher m = p.matcher(str);
-      if (!m.find()) {
-        return 0;
-      }
-      return m.end();
-    }
-  }
-
-  /**
-   * Token for opening round bracket.
-   */
-  private static class OpenParenToken extends StringContentToken
-  {
-    public OpenParenToken(URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = "(";
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.OPENPAREN;
-    }
-
-    /**
-     * Returns 1 if {@code str} starts with '(', 0 otherwise.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith("(") ? 1 : 0;
-    }
-  }
-
-  /**
-   * Token for closing round bracket.
-   */
-  private static class CloseParenToken extends StringContentToken
-  {
-    public CloseParenToken(URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = ")";
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.CLOSEPAREN;
-    }
-
-    /**
-     * Returns 1 if {@code str} starts with ')', 0 otherwise.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith(")") ? 1 : 0;
-    }
-  }
-
-  /**
-   * Token for the string "%include".
-   */
-  private static class IncludeToken extends StringContentToken
-  {
-    private static final String INC = "%include";
-
-    public IncludeToken(URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = INC;
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.INCLUDE;
-    }
-
-    /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith(INC) ? INC.length() : 0;
-    }
-  }
-
-  /**
-   * Token for a comment according to WollMux config file syntax.
-   * ATTENTION: Tokens of this class are currently not returned by
-   * {@link ConfigThingy#tokenize(URL)}, but discarded.
-   */
-  private static class LineCommentToken extends StringContentToken
-  {
-
-    /**
-     * Creates a new LineCommentToken.
-     *
-     * @param tokenData
-     *          a string whose first character is '#'.
-     */
-    public LineCommentToken(String tokenData, URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = tokenData.substring(1);
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.LINECOMMENT;
-    }
-
-    /**
-     * Returns the length of the longest prefix of {@code str}
-     * which can be interpreted as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith("#") ? str.length() : 0;
-    }
-  }
-
-  /**
-   * Signals the end of the input data stream.
-   */
-  private static class EndToken extends StringContentToken
-  {
-    public EndToken(URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = "";
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.END;
-    }
-  }
-
-  /**
-   * Splits the data from {@code read} into {@link Tokens}s.
-   * As source URL {@code url} is entered in the tokens.
-   *
-   * @return the list of identified tokens, terminated by at least 7 {@link EndToken}s.
-   * @throws IOException
-   *           in case something goes wrong when accessing the data from {@code url}.
-   * @throws SyntaxErrorException
-   *           if a string cannot be identified as a token.
-   */
-  private static List<StringContentToken> tokenize(URL url, Reader read)
-      throws IOException, SyntaxErrorException
-  {
-    List<StringContentToken> tokens = new ArrayList<>();
-    BufferedReader in = new BufferedReader(read);
-    String line;
-
-    int lineNo = 0;
-    Pattern whitespace = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
-    while (null != (line = in.readLine()))
-    {
-      ++lineNo;
-      int pos = 0;
-
-      while (line.length() > 0)
-      {
-        Matcher wsm = whitespace.matcher(line);
-        if (wsm.find())
-        {
-          pos += wsm.end();
-          line = line.substring(wsm.end());
-          if (line.length() == 0) {
-            continue;
-          }
-        }
-
-        int tokenLength;
-        try
-        {
-          if (0 != (tokenLength = KeyToken.atStartOf(line)))
-          {
-            tokens.add(new KeyToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = StringToken.atStartOf(line)))
-          {
-            tokens.add(new StringToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = OpenParenToken.atStartOf(line)))
-          {
-            tokens.add(new OpenParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = CloseParenToken.atStartOf(line)))
-          {
-            tokens.add(new CloseParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = IncludeToken.atStartOf(line)))
-          {
-            tokens.add(new IncludeToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = LineCommentToken.atStartOf(line)))
-          {
-            // LineCommentTokens werden nicht in tokens eingefügt, weil
-            // der Parser im Fall von 2er Paaren wie KEY STRING nicht in
-            // der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
-            // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
-          }
-          else
-          {
-            throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
-              + " at char " + (pos + 1) + ", text in error location: \"" + line
-              + "\"");
-          }
-        }
-        catch (IllegalArgumentException x)
-        {
-          throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
-            + " at char " + (pos + 1) + ", text in error location: \"" + line
-            + "\"", x);
-        }
-
-        pos += tokenLength;
-        line = line.substring(tokenLength);
-      }
-    }
-
-    // add a couple EndTokens so that users don't have to worry about
-    // checking if there's enough input remaining
-    ++lineNo;
-    for (int i = 0; i < 7; ++i)
-      tokens.add(new EndToken(url, lineNo, 0));
-
-    return tokens;
-  }
-
   /**
    * Returns a textual tree representation of {@code conf}.
    * Each line is prefixed with {@code childPrefix}.
@@ -0,0 +1,420 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the text of a WollMux config file into tokens.
+ *
+ * The whole text is read into one buffer, which is scanned with a cursor in a single pass. Only the
+ * contents of keys and strings are copied out of the buffer.
+ */
+final class ConfigTokenizer
+{
+
+  /**
+   * Number of {@link TokenType#END} tokens at the end of each token list, so that the parser
+   * doesn't have to check if there's enough input remaining.
+   */
+  private static final int END_TOKENS = 7;
+
+  private static final String INCLUDE = "%include";
+
+  private final URL url;
+
+  private final char[] buffer;
+
+  private final int length;
+
+  private final List<Token> tokens = new ArrayList<>();
+
+  enum TokenType
+  {
+    KEY,
+    STRING,
+    OPENPAREN,
+    CLOSEPAREN,
+    END,
+    INCLUDE;
+  }
+
+  /**
+   * A token of a config file.
+   */
+  static final class Token
+  {
+    private final TokenType type;
+
+    private final URL url;
+
+    private final int line;
+
+    private final int position;
+
+    private final String content;
+
+    private Token(TokenType type, URL url, int line, int position, String content)
+    {
+      this.type = type;
+      this.url = url;
+      this.line = line;
+      this.position = position;
+      this.content = content;
+    }
+
+    /**
+     * Returns the type of this token, e.g. {@link TokenType#KEY}.
+     */
+    TokenType type()
+    {
+      return type;
+    }
+
+    /**
+     * Returns the URL of the document in which this token was found.
+     */
+    URL url()
+    {
+      return url;
+    }
+
+    /**
+     * Returns the line in which this token was found.
+     */
+    int line()
+    {
+      return line;
+    }
+
+    /**
+     * Returns the position of the first character of this token in its line, counted from 1.
+     */
+    int position()
+    {
+      return position;
+    }
+
+    /**
+     * Returns the text representation of this token. This is NOT necessarily identical with the
+     * string from which this token was parsed. For example, separators like the quotation marks
+     * for delimiting strings do not appear in the string returned here. Nor do escape sequences
+     * used in the input data stream to represent certain characters such as newline appear in this
+     * string.
+     */
+    String contentString()
+    {
+      return content;
+    }
+  }
+
+  private ConfigTokenizer(URL url, char[] buffer, int length)
+  {
+    this.url = url;
+    this.buffer = buffer;
+    this.length = length;
+  }
+
+  /**
+   * Splits the data from {@code read} into {@link Token}s. As source URL {@code url} is entered in
+   * the tokens. Comments are discarded.
+   *
+   * @return the list of identified tokens, terminated by at least 7 {@link TokenType#END} tokens.
+   * @throws IOException
+   *           in case something goes wrong when reading the data.
+   * @throws SyntaxErrorException
+   *           if a string cannot be identified as a token.
+   */
+  static List<Token> tokenize(URL url, Reader read) throws IOException, SyntaxErrorException
+  {
+    char[] buffer = new char[8192];
+    int length = 0;
+    int count;
+    while ((count = read.read(buffer, length, buffer.length - length)) >= 0)
+    {
+      length += count;
+      if (length == buffer.length)
+      {
+        char[] larger = new char[buffer.length * 2];
+        System.arraycopy(buffer, 0, larger, 0, length);
+        buffer = larger;
+      }
+    }
+    return new ConfigTokenizer(url, buffer, length).scan();
+  }
+
+  /**
+   * Scans the buffer line by line. Lines end with '\n', '\r' or "\r\n" like in
+   * {@link java.io.BufferedReader#readLine()}.
+   */
+  private List<Token> scan() throws SyntaxErrorException
+  {
+    int lineNo = 0;
+    int lineStart = 0;
+    while (lineStart < length)
+    {
+      int lineEnd = lineStart;
+      while (lineEnd < length && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r')
+      {
+        ++lineEnd;
+      }
+
+      ++lineNo;
+      scanLine(lineNo, lineStart, lineEnd);
+
+      lineStart = lineEnd + 1;
+      if (lineEnd + 1 < length && buffer[lineEnd] == '\r' && buffer[lineEnd + 1] == '\n')
+      {
+        ++lineStart;
+      }
+    }
+
+    ++lineNo;
+    for (int i = 0; i < END_TOKENS; ++i)
+    {
+      tokens.add(new Token(TokenType.END, url, lineNo, 0, ""));
+    }
+    return tokens;
+  }
+
+  private void scanLine(int lineNo, int lineStart, int lineEnd) throws SyntaxErrorException
+  {
+    int cursor = lineStart;
+    while (cursor < lineEnd)
+    {
+      if (isSeparator(buffer[cursor]))
+      {
+        ++cursor;
+        continue;
+      }
+
+      int position = cursor - lineStart + 1;
+      char ch = buffer[cursor];
+      int end;
+      try
+      {
+        if (isKeyStart(ch))
+        {
+          end = cursor + 1;
+          while (end < lineEnd && isKeyPart(buffer[end]))
+          {
+            ++end;
+          }
+          tokens.add(new Token(TokenType.KEY, url, lineNo, position,
+              new String(buffer, cursor, end - cursor)));
+        } else if ((ch == '"' || ch == '\'') && (end = stringEnd(cursor, lineEnd)) > 0)
+        {
+          tokens.add(new Token(TokenType.STRING, url, lineNo, position,
+              unescape(cursor + 1, end - 1, ch)));
+        } else if (ch == '(')
+        {
+          end = cursor + 1;
+          tokens.add(new Token(TokenType.OPENPAREN, url, lineNo, position, "("));
+        } else if (ch == ')')
+        {
+          end = cursor + 1;
+          tokens.add(new Token(TokenType.CLOSEPAREN, url, lineNo, position, ")"));
+        } else if (startsWith(INCLUDE, cursor, lineEnd))
+        {
+          end = cursor + INCLUDE.length();
+          tokens.add(new Token(TokenType.INCLUDE, url, lineNo, position, INCLUDE));
+        } else if (ch == '#')
+        {
+          // Kommentare werden nicht in tokens eingefügt, weil der Parser im Fall von 2er Paaren
+          // wie KEY STRING nicht in der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
+          // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
+          end = lineEnd;
+        } else
+        {
+          throw new SyntaxErrorException(errorMessage(lineNo, cursor, lineStart, lineEnd));
+        }
+      } catch (IllegalArgumentException x)
+      {
+        throw new SyntaxErrorException(errorMessage(lineNo, cursor, lineStart, lineEnd), x);
+      }
+      cursor = end;
+    }
+  }
+
+  private String errorMessage(int lineNo, int cursor, int lineStart, int lineEnd)
+  {
+    return url + ": syntax error in line " + lineNo + " at char " + (cursor - lineStart + 1)
+        + ", text in error location: \"" + new String(buffer, cursor, lineEnd - cursor) + "\"";
+  }
+
+  /**
+   * Returns the index after the closing quote of the string starting at {@code start}, or 0 if the
+   * string isn't closed in this line. A doubled quote doesn't close the string.
+   */
+  private int stringEnd(int start, int lineEnd)
+  {
+    char quote = buffer[start];
+    int idx = start + 1;
+    while (idx < lineEnd)
+    {
+      if (buffer[idx] == quote)
+      {
+        if (idx + 1 < lineEnd && buffer[idx + 1] == quote)
+        {
+          idx += 2;
+          continue;
+        }
+        return idx + 1;
+      }
+      ++idx;
+    }
+    return 0;
+  }
+
+  /**
+   * Evaluates the % escapes and replaces doubled quotes in the content of a string.
+   *
+   * @param start
+   *          index of the first character of the content.
+   * @param end
+   *          index of the closing quote.
+   * @throws IllegalArgumentException
+   *           if a %u escape is incomplete or not a hex number.
+   */
+  private String unescape(int start, int end, char quote)
+  {
+    StringBuilder buffy = null;
+    int idx = start;
+    while (idx < end)
+    {
+      char ch = buffer[idx];
+      if (ch != quote && ch != '%')
+      {
+        if (buffy != null)
+        {
+          buffy.append(ch);
+        }
+        ++idx;
+        continue;
+      }
+
+      if (buffy == null)
+      {
+        buffy = new StringBuilder(end - start);
+        buffy.append(buffer, start, idx - start);
+      }
+
+      if (ch == quote || idx + 1 >= end)
+      {
+        // quotequote or % at the end
+        buffy.append(ch);
+        idx += ch == quote ? 2 : 1;
+        continue;
+      }
+
+      switch (buffer[idx + 1])
+      {
+      case 'n':
+        buffy.append('\n');
+        idx += 2;
+        break;
+      case '%':
+        buffy.append('%');
+        idx += 2;
+        break;
+      case 'u':
+        buffy.append(parseUnicode(idx + 2, end));
+        idx += 6;
+        break;
+      default:
+        buffy.append('%');
+        ++idx;
+        break;
+      }
+    }
+    return buffy == null ? new String(buffer, start, end - start) : buffy.toString();
+  }
+
+  private char parseUnicode(int idx, int end)
+  {
+    if (idx + 4 > end)
+      throw new IllegalArgumentException("Incomplete %u escape!");
+    String code = new String(buffer, idx, 4);
+    try
+    {
+      return (char) Integer.parseInt(code, 16);
+    } catch (NumberFormatException x)
+    {
+      throw new IllegalArgumentException("Incorrect hex number in %u escape: \"%u" + code + "\"");
+    }
+  }
+
+  private boolean startsWith(String prefix, int cursor, int lineEnd)
+  {
+    if (cursor + prefix.length() > lineEnd)
+    {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); ++i)
+    {
+      if (buffer[cursor + i] != prefix.charAt(i))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whitespace according to {@code \p{Space}}, non-breaking space, byte order mark, ',' and ';'
+   * separate tokens.
+   */
+  private static boolean isSeparator(char ch)
+  {
+    switch (ch)
+    {
+    case ' ':
+    case '\t':
+    case '\n':
+    case '\u000B':
+    case '\f':
+    case '\r':
+    case '\u00A0':
+    case ',':
+    case ';':
+    case '\uFEFF':
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isKeyStart(char ch)
+  {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+  }
+
+  private static boolean isKeyPart(char ch)
+  {
+    return isKeyStart(ch) || (ch >= '0' && ch <= '9');
+  }
+}
@@ -0,0 +1,354 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index over the values of one column of a {@link RAMDatasource}. The index maps a
+ * {@link QueryPattern} to the ascending positions of all datasets which may match. The datasets still
+ * have to be tested with the predicate from {@link DatasetPredicate}, an index only reduces the
+ * number of candidates.
+ *
+ * All values are case folded in the same way as {@link String#regionMatches(boolean, int, String,
+ * int, int)} compares characters, so that the index finds every dataset the predicate accepts.
+ */
+abstract class ColumnIndex
+{
+  /**
+   * The supported kinds of indexes.
+   */
+  enum Type
+  {
+    /**
+     * Index of the complete values. Supports searches like "^value$".
+     */
+    EXACT,
+    /**
+     * Sorted index of the values. Supports searches like "^prefix" and "^value$".
+     */
+    PREFIX,
+    /**
+     * Index of all substrings with {@link ColumnIndex#NGRAM_LENGTH} characters. Supports all literal
+     * searches with at least as many characters.
+     */
+    NGRAM;
+  }
+
+  /**
+   * Length of the substrings in an index of type {@link Type#NGRAM}.
+   */
+  static final int NGRAM_LENGTH = 3;
+
+  private final String column;
+
+  private ColumnIndex(String column)
+  {
+    this.column = column;
+  }
+
+  /**
+   * Creates a new index.
+   *
+   * @param type
+   *          The kind of index.
+   * @param column
+   *          The indexed column.
+   * @param data
+   *          The datasets. The positions of the datasets in this list are stored in the index.
+   * @return The index.
+   */
+  static ColumnIndex create(Type type, String column, List<Dataset> data)
+  {
+    switch (type)
+    {
+    case EXACT:
+      return new ExactIndex(column, data);
+    case PREFIX:
+      return new PrefixIndex(column, data);
+    case NGRAM:
+      return new NGramIndex(column, data);
+    default:
+      throw new IllegalArgumentException(type.toString());
+    }
+  }
+
+  /**
+   * Get the positions of all datasets which may match the pattern.
+   *
+   * @param pattern
+   *          The pattern of a {@link QueryPart} of the indexed column.
+   * @return Ascending positions of the candidates or null if this index can't be used for the
+   *         pattern.
+   */
+  abstract int[] find(QueryPattern pattern);
+
+  /**
+   * Get the case folded value of the indexed column.
+   *
+   * @return The value or null if the dataset has no such column or the column has no value.
+   */
+  String foldedValue(Dataset ds)
+  {
+    try
+    {
+      String value = ds.get(column);
+      return value == null ? null : fold(value);
+    } catch (ColumnNotFoundException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Case fold a string. Two strings are equal after folding if and only if
+   * {@link String#equalsIgnoreCase(String)} is true.
+   */
+  static String fold(String value)
+  {
+    char[] chars = value.toCharArray();
+    for (int i = 0; i < chars.length; i++)
+    {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Intersection of two ascending arrays of positions.
+   */
+  static int[] intersect(int[] a, int[] b)
+  {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length)
+    {
+      if (a[i] < b[j])
+      {
+        i++;
+      } else if (a[i] > b[j])
+      {
+        j++;
+      } else
+      {
+        result[size++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * A growing list of positions.
+   */
+  static class Rows
+  {
+    private int[] rows = new int[2];
+
+    private int size = 0;
+
+    void add(int row)
+    {
+      if (size > 0 && rows[size - 1] == row)
+      {
+        return;
+      }
+      if (size == rows.length)
+      {
+        rows = Arrays.copyOf(rows, size * 2);
+      }
+      rows[size++] = row;
+    }
+
+    void addAll(int[] other)
+    {
+      for (int row : other)
+      {
+        add(row);
+      }
+    }
+
+    int[] toArray()
+    {
+      return Arrays.copyOf(rows, size);
+    }
+  }
+
+  /**
+   * Convert a map of growing lists to a map of arrays.
+   */
+  static Map<String, int[]> toArrays(Map<String, Rows> map)
+  {
+    Map<String, int[]> result = new HashMap<>(map.size() * 4 / 3 + 1);
+    map.forEach((key, rows) -> result.put(key, rows.toArray()));
+    return result;
+  }
+
+  private static class ExactIndex extends ColumnIndex
+  {
+    private final Map<String, int[]> index;
+
+    ExactIndex(String column, List<Dataset> data)
+    {
+      super(column);
+      Map<String, Rows> rows = new HashMap<>();
+      for (int i = 0; i < data.size(); i++)
+      {
+        String value = foldedValue(data.get(i));
+        if (value != null)
+        {
+          rows.computeIfAbsent(value, v -> new Rows()).add(i);
+        }
+      }
+      index = toArrays(rows);
+    }
+
+    @Override
+    int[] find(QueryPattern pattern)
+    {
+      if (!pattern.isLiteral() || !pattern.isAnchorStart() || !pattern.isAnchorEnd())
+      {
+        return null;
+      }
+      return index.getOrDefault(fold(pattern.getLiteral()), new int[0]);
+    }
+  }
+
+  private static class PrefixIndex extends ColumnIndex
+  {
+    private final String[] values;
+
+    private final int[][] rows;
+
+    PrefixIndex(String column, List<Dataset> data)
+    {
+      super(column);
+      TreeMap<String, Rows> sorted = new TreeMap<>();
+      for (int i = 0; i < data.size(); i++)
+      {
+        String value = foldedValue(data.get(i));
+        if (value != null)
+        {
+          sorted.computeIfAbsent(value, v -> new Rows()).add(i);
+        }
+      }
+      values = sorted.keySet().toArray(new String[sorted.size()]);
+      rows = new int[values.length][];
+      int i = 0;
+      for (Rows r : sorted.values())
+      {
+        rows[i++] = r.toArray();
+      }
+    }
+
+    @Override
+    int[] find(QueryPattern pattern)
+    {
+      if (!pattern.isLiteral() || !pattern.isAnchorStart())
+      {
+        return null;
+      }
+      String prefix = fold(pattern.getLiteral());
+      int pos = Arrays.binarySearch(values, prefix);
+      if (pattern.isAnchorEnd())
+      {
+        return pos >= 0 ? rows[pos] : new int[0];
+      }
+      int start = pos >= 0 ? pos : -pos - 1;
+      int end = start;
+      int count = 0;
+      while (end < values.length && values[end].startsWith(prefix))
+      {
+        count += rows[end].length;
+        end++;
+      }
+      int[] result = new int[count];
+      int offset = 0;
+      for (int i = start; i < end; i++)
+      {
+        System.arraycopy(rows[i], 0, result, offset, rows[i].length);
+        offset += rows[i].length;
+      }
+      Arrays.sort(result);
+      return result;
+    }
+  }
+
+  private static class NGramIndex extends ColumnIndex
+  {
+    private final Map<String, int[]> index;
+
+    NGramIndex(String column, List<Dataset> data)
+    {
+      super(column);
+      Map<String, Rows> rows = new HashMap<>();
+      for (int i = 0; i < data.size(); i++)
+      {
+        String value = foldedValue(data.get(i));
+        if (value != null)
+        {
+          for (int j = 0; j + NGRAM_LENGTH <= value.length(); j++)
+          {
+            rows.computeIfAbsent(value.substring(j, j + NGRAM_LENGTH), v -> new Rows()).add(i);
+          }
+        }
+      }
+      index = toArrays(rows);
+    }
+
+    @Override
+    int[] find(QueryPattern pattern)
+    {
+      if (!pattern.isLiteral() || pattern.getLiteral().length() < NGRAM_LENGTH)
+      {
+        return null;
+      }
+      String literal = fold(pattern.getLiteral());
+      Set<String> grams = new HashSet<>();
+      int[] result = null;
+      for (int j = 0; j + NGRAM_LENGTH <= literal.length(); j++)
+      {
+        String gram = literal.substring(j, j + NGRAM_LENGTH);
+        if (grams.add(gram))
+        {
+          int[] candidates = index.getOrDefault(gram, new int[0]);
+          result = result == null ? candidates : intersect(result, candidates);
+          if (result.length == 0)
+          {
+            break;
+          }
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -25,11 +25,15 @@ package de.muenchen.allg.itd51.wollmux.db;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * 
  * Delivers Predicates for Datasets.
  *
+ * The {@link QueryPart}s are compiled once when the predicate is created. Search strings without
+ * regular expression meta characters are matched with plain string operations. Only search strings
+ * which really need a regular expression are compiled to a {@link Pattern}.
  */
 public class DatasetPredicate
 {
@@ -49,21 +53,77 @@ public class DatasetPredicate
    */
   public static Predicate<Dataset> makePredicate(List<QueryPart> query)
   {
-    return query.stream().map(part -> {
-      @SuppressWarnings("squid:S1488")
-      Predicate<Dataset> pred = (Dataset ds) -> {
-        try
-        {
-          return Pattern.compile(part.getSearchString().replace("*", "").toLowerCase())
-              .matcher(ds.get(part.getColumnName()).toLowerCase())
-              .find();
-        } catch (ColumnNotFoundException ex)
-        {
-          return false;
-        }
-      };
+    return query.stream().map(DatasetPredicate::compile).reduce(matchAll, Predicate::and);
+  }
+
+  /**
+   * Compiles a single {@link QueryPart} to a predicate. The search string is matched case
+   * insensitive anywhere in the column value. The search string can also be a regular
+   * expression. If the regular expression is invalid the search string is matched literally.
+   *
+   * @param part
+   *          The {@link QueryPart}.
+   * @return Predicate for a dataset.
+   */
+  static Predicate<Dataset> compile(QueryPart part)
+  {
+    String column = part.getColumnName();
+    QueryPattern pattern = new QueryPattern(part);
+
+    if (pattern.isLiteral())
+    {
+      String literal = pattern.getLiteral();
+      if (pattern.isAnchorStart() && pattern.isAnchorEnd())
+      {
+        return makeColumnPredicate(column, value -> value.equalsIgnoreCase(literal));
+      } else if (pattern.isAnchorStart())
+      {
+        return makeColumnPredicate(column,
+            value -> value.regionMatches(true, 0, literal, 0, literal.length()));
+      } else if (pattern.isAnchorEnd())
+      {
+        return makeColumnPredicate(column, value -> value.regionMatches(true,
+            value.length() - literal.length(), literal, 0, literal.length()));
+      }
+      return makeColumnPredicate(column, value -> containsIgnoreCase(value, literal));
+    }
 
-      return pred;
-    }).reduce(matchAll, Predicate::and);
+    String search = pattern.getSearch();
+    try
+    {
+      Pattern regex = Pattern.compile(search);
+      return makeColumnPredicate(column, value -> regex.matcher(value.toLowerCase()).find());
+    } catch (PatternSyntaxException ex)
+    {
+      return makeColumnPredicate(column, value -> containsIgnoreCase(value, search));
+    }
+  }
+
+  private static Predicate<Dataset> makeColumnPredicate(String column,
+      Predicate<String> valuePredicate)
+  {
+    return (Dataset ds) -> {
+      try
+      {
+        String value = ds.get(column);
+        return value != null && valuePredicate.test(value);
+      } catch (ColumnNotFoundException ex)
+      {
+        return false;
+      }
+    };
+  }
+
+  private static boolean containsIgnoreCase(String value, String search)
+  {
+    int max = value.length() - search.length();
+    for (int i = 0; i <= max; i++)
+    {
+      if (value.regionMatches(true, i, search, 0, search.length()))
+      {
+        return true;
+      }
+    }
+    return false;
   }
 }
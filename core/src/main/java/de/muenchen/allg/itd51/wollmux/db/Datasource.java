@@ -103,6 +103,15 @@ public abstract class Datasource
    */
   public abstract String getName();
 
+  /**
+   * Schließt die unbenutzten Verbindungen der Datenquelle, z.B. beim Beenden von LibreOffice. Die
+   * Datenquelle bleibt benutzbar, hält aber keine Verbindungen mehr vor.
+   */
+  public void close()
+  {
+    // keine Verbindungen
+  }
+
   /**
    * Gets datasource value by given {@link ConfigThingy} and key.
    * 
@@ -0,0 +1,428 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.net.URL;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * The data sources of a configuration. A data source is created on first access and then reused.
+ *
+ * As before, a data source only sees the data sources which are defined before it. If a name is
+ * defined more than once, the last definition wins. When a data source is created, the creation
+ * of the data sources it references is started at the same time, so that independent data sources
+ * are initialized in parallel. Data sources which use UNO, directly or through their references,
+ * are created on the thread which needs them first, because UNO calls may depend on the
+ * SolarMutex held by that thread.
+ */
+class DatasourceRegistry
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DatasourceRegistry.class);
+
+  /**
+   * The keys under which the data source types reference other data sources.
+   */
+  private static final Map<String, List<String>> REFERENCES = Map.of("union",
+      List.of("SOURCE1", "SOURCE2"), "attach", List.of("SOURCE", "ATTACH"), "overlay",
+      List.of("SOURCE", "OVERLAY"), "prefer", List.of("SOURCE", "OVER"), "schema", List.of("SOURCE"),
+      "funky", List.of("SOURCE"));
+
+  /**
+   * The data source types which use UNO.
+   */
+  private static final Set<String> UNO_TYPES = Set.of("ooo");
+
+  /**
+   * Creates the data sources. The pool grows as needed, so that a data source waiting for its
+   * references never blocks their creation.
+   */
+  private static final ExecutorService INIT_EXECUTOR = createInitExecutor();
+
+  private final URL context;
+
+  /**
+   * All valid definitions in the order of the configuration.
+   */
+  private final List<Definition> definitions = new ArrayList<>();
+
+  /**
+   * The definitions of each name in the order of the configuration.
+   */
+  private final Map<String, List<Definition>> nameToDefinitions = new HashMap<>();
+
+  /**
+   * The data sources which have been created or are being created.
+   */
+  private final Map<Definition, CompletableFuture<Datasource>> datasources = new HashMap<>();
+
+  /**
+   * The data sources which use UNO and haven't been claimed by a thread for their creation yet.
+   */
+  private final Set<Definition> pending = new HashSet<>();
+
+  /**
+   * Read the data source definitions. No data source is created yet.
+   *
+   * @param conf
+   *          The configuration containing the "Datenquellen" sections.
+   * @param context
+   *          The context for resolving relative URLs.
+   */
+  DatasourceRegistry(ConfigThingy conf, URL context)
+  {
+    this.context = context;
+
+    ConfigThingy datenquellen = conf.query("Datenquellen").query("Datenquelle");
+    for (ConfigThingy sourceDesc : datenquellen)
+    {
+      String name = sourceDesc.getString("NAME");
+      String type = sourceDesc.getString("TYPE");
+      if (name == null || type == null)
+      {
+        LOGGER.error(L.m("Data source without NAME or TYPE found"));
+        continue;
+      }
+
+      Definition definition = new Definition(definitions.size(), name, type, sourceDesc);
+      definitions.add(definition);
+      nameToDefinitions.computeIfAbsent(name, n -> new ArrayList<>()).add(definition);
+    }
+  }
+
+  /**
+   * All data sources. The data sources are only created when they are accessed.
+   *
+   * @return Mapping from data source name to {@link Datasource}. The value is null if the data
+   *         source couldn't be initialized.
+   */
+  Map<String, Datasource> getDatasources()
+  {
+    return new DatasourceView(definitions.size());
+  }
+
+  /**
+   * The data source with the given name. It's created if it hasn't been accessed before.
+   *
+   * @param name
+   *          The name of the data source.
+   * @return The data source or null if it isn't defined or couldn't be initialized.
+   */
+  Datasource getDatasource(String name)
+  {
+    Definition definition = lookup(name, definitions.size());
+    return definition == null ? null : join(definition);
+  }
+
+  /**
+   * Close the connections of all data sources which have been created.
+   */
+  synchronized void close()
+  {
+    for (CompletableFuture<Datasource> future : datasources.values())
+    {
+      Datasource ds = future.isCompletedExceptionally() ? null : future.getNow(null);
+      if (ds != null)
+      {
+        ds.close();
+      }
+    }
+  }
+
+  /**
+   * The last definition of a name before the given position.
+   */
+  private Definition lookup(Object name, int before)
+  {
+    List<Definition> candidates = nameToDefinitions.getOrDefault(name, Collections.emptyList());
+    for (int i = candidates.size() - 1; i >= 0; i--)
+    {
+      if (candidates.get(i).index < before)
+      {
+        return candidates.get(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Start the creation of a data source and of the data sources it references, unless they have
+   * already been started.
+   */
+  private synchronized CompletableFuture<Datasource> start(Definition definition)
+  {
+    CompletableFuture<Datasource> future = datasources.get(definition);
+    if (future == null)
+    {
+      for (String key : REFERENCES.getOrDefault(definition.type, Collections.emptyList()))
+      {
+        Definition reference = lookup(definition.sourceDesc.getString(key), definition.index);
+        if (reference != null)
+        {
+          start(reference);
+        }
+      }
+      if (usesUno(definition))
+      {
+        // completed by the first thread which joins it
+        future = new CompletableFuture<>();
+        pending.add(definition);
+      } else
+      {
+        future = CompletableFuture.supplyAsync(() -> create(definition), INIT_EXECUTOR);
+      }
+      datasources.put(definition, future);
+    }
+    return future;
+  }
+
+  /**
+   * Does the data source or one of the data sources it references use UNO?
+   */
+  private boolean usesUno(Definition definition)
+  {
+    if (UNO_TYPES.contains(definition.type))
+    {
+      return true;
+    }
+    for (String key : REFERENCES.getOrDefault(definition.type, Collections.emptyList()))
+    {
+      Definition reference = lookup(definition.sourceDesc.getString(key), definition.index);
+      if (reference != null && usesUno(reference))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Claim the creation of a data source which uses UNO.
+   *
+   * @return True if the calling thread has to create the data source.
+   */
+  private synchronized boolean claim(Definition definition)
+  {
+    return pending.remove(definition);
+  }
+
+  /**
+   * Wait for a data source. A data source which uses UNO is created on the calling thread, unless
+   * another thread already creates it.
+   */
+  private Datasource join(Definition definition)
+  {
+    CompletableFuture<Datasource> future = start(definition);
+    if (claim(definition))
+    {
+      Datasource ds = null;
+      try
+      {
+        ds = create(definition);
+      } finally
+      {
+        future.complete(ds);
+      }
+    }
+    return join(future);
+  }
+
+  private Datasource join(CompletableFuture<Datasource> future)
+  {
+    try
+    {
+      return future.join();
+    } catch (CompletionException e)
+    {
+      LOGGER.error("", e.getCause());
+      return null;
+    }
+  }
+
+  private Datasource create(Definition definition)
+  {
+    String name = definition.name;
+    String type = definition.type;
+    ConfigThingy sourceDesc = definition.sourceDesc;
+    Map<String, Datasource> nameToDatasource = new DatasourceView(definition.index);
+
+    Datasource ds = null;
+    try
+    {
+      switch (type)
+      {
+      case "conf":
+        ds = new ThingyDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "union":
+        ds = new UnionDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "attach":
+        ds = new AttachDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "overlay":
+        ds = new OverlayDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "prefer":
+        ds = new PreferDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "schema":
+        ds = new SchemaDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "ldap":
+        ds = new LDAPDatasource(nameToDatasource, sourceDesc, context);
+        break;
+      case "ooo":
+        Datasources.awaitRegistration();
+        ds = new OOoDatasource(nameToDatasource, sourceDesc);
+        break;
+      case "funky":
+        ds = new FunkyDatasource(nameToDatasource, sourceDesc);
+        break;
+      default:
+        LOGGER.error(L.m("Unsupported data source type: %1", type));
+        break;
+      }
+    } catch (Exception x)
+    {
+      LOGGER.error(L.m("Error during initialization of data source \"%1\" (Type \"%2\"):", name, type), x);
+    }
+
+    if (ds == null)
+    {
+      LOGGER.error(L.m("Data source %1 of type %2 could not be initialized", name, type));
+    }
+    return ds;
+  }
+
+  private static ExecutorService createInitExecutor()
+  {
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "Datasource initialization");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * A data source definition of the configuration.
+   */
+  private static class Definition
+  {
+    /**
+     * Position of the definition in the configuration.
+     */
+    private final int index;
+
+    private final String name;
+
+    private final String type;
+
+    private final ConfigThingy sourceDesc;
+
+    private Definition(int index, String name, String type, ConfigThingy sourceDesc)
+    {
+      this.index = index;
+      this.name = name;
+      this.type = type;
+      this.sourceDesc = sourceDesc;
+    }
+  }
+
+  /**
+   * The data sources defined before a position of the configuration. The data sources are created
+   * on access.
+   */
+  private class DatasourceView extends AbstractMap<String, Datasource>
+  {
+    private final int before;
+
+    private DatasourceView(int before)
+    {
+      this.before = before;
+    }
+
+    @Override
+    public Datasource get(Object name)
+    {
+      Definition definition = lookup(name, before);
+      return definition == null ? null : join(definition);
+    }
+
+    @Override
+    public boolean containsKey(Object name)
+    {
+      return lookup(name, before) != null;
+    }
+
+    @Override
+    public Set<String> keySet()
+    {
+      Set<String> names = new LinkedHashSet<>();
+      for (Definition definition : definitions.subList(0, before))
+      {
+        names.add(definition.name);
+      }
+      return Collections.unmodifiableSet(names);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Datasource>> entrySet()
+    {
+      // start all, so that they are created in parallel
+      Map<String, Definition> started = new LinkedHashMap<>();
+      for (String name : keySet())
+      {
+        Definition definition = lookup(name, before);
+        start(definition);
+        started.put(name, definition);
+      }
+
+      Map<String, Datasource> result = new LinkedHashMap<>();
+      started.forEach((name, definition) -> result.put(name, join(definition)));
+      return Collections.unmodifiableMap(result).entrySet();
+    }
+  }
+}
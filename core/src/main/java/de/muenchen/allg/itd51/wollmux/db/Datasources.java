@@ -22,16 +22,9 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
-import java.net.URL;
-import java.util.HashMap;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
-import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
-import de.muenchen.allg.itd51.wollmux.util.L;
 
 /**
  * Collection of all {@link Datasource} registered in WollMux.
@@ -39,9 +32,13 @@ import de.muenchen.allg.itd51.wollmux.util.L;
 public class Datasources
 {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(Datasources.class);
+  private static DatasourceRegistry registry = null;
 
-  private static Map<String, Datasource> datasources = null;
+  /**
+   * Registers the data sources of the sections "Datenquellen/Registriere" in LibreOffice.
+   */
+  private static volatile Runnable registration = () -> {
+  };
 
   private Datasources()
   {
@@ -49,86 +46,70 @@ public class Datasources
   }
 
   /**
-   * Parse the configuration for {@link Datasource} definitions.
+   * All {@link Datasource} definitions of the configuration. A data source is created on first
+   * access and shared by all callers.
    *
-   * @return Mapping from data source name to {@link Datasource}.
+   * @return Mapping from data source name to {@link Datasource}. The value is null if the data
+   *         source couldn't be initialized.
    */
   public static Map<String, Datasource> getDatasources()
   {
-    if (datasources != null)
-    {
-      return datasources;
-    }
-
-    HashMap<String, Datasource> datasources = new HashMap<>();
-    ConfigThingy joinConf = WollMuxFiles.getWollmuxConf();
-    URL context = WollMuxFiles.getDefaultContext();
+    return getRegistry().getDatasources();
+  }
 
-    ConfigThingy datenquellen = joinConf.query("Datenquellen").query("Datenquelle");
-    for (ConfigThingy sourceDesc : datenquellen)
-    {
-      String name = sourceDesc.getString("NAME");
-      String type = sourceDesc.getString("TYPE");
-      if (name == null || type == null)
-      {
-        LOGGER.error(L.m("Data source without NAME or TYPE found"));
-        continue;
-      }
+  /**
+   * Get a data source by its name. Only the data source and the data sources it references are
+   * created.
+   *
+   * @param name
+   *          The name of the data source.
+   * @return The data source or null if it isn't defined or couldn't be initialized.
+   */
+  public static Datasource getDatasource(String name)
+  {
+    return getRegistry().getDatasource(name);
+  }
 
-      Datasource ds = null;
-      try
-      {
-        switch (type)
-        {
-        case "conf":
-          ds = new ThingyDatasource(datasources, sourceDesc, context);
-          break;
-        case "union":
-          ds = new UnionDatasource(datasources, sourceDesc, context);
-          break;
-        case "attach":
-          ds = new AttachDatasource(datasources, sourceDesc, context);
-          break;
-        case "overlay":
-          ds = new OverlayDatasource(datasources, sourceDesc, context);
-          break;
-        case "prefer":
-          ds = new PreferDatasource(datasources, sourceDesc, context);
-          break;
-        case "schema":
-          ds = new SchemaDatasource(datasources, sourceDesc, context);
-          break;
-        case "ldap":
-          ds = new LDAPDatasource(datasources, sourceDesc, context);
-          break;
-        case "ooo":
-          ds = new OOoDatasource(datasources, sourceDesc);
-          break;
-        case "funky":
-          ds = new FunkyDatasource(datasources, sourceDesc);
-          break;
-        default:
-          LOGGER.error(L.m("Unsupported data source type: {}", type));
-          break;
-        }
-      } catch (Exception x)
-      {
-        LOGGER.error(L.m("Error during initialization of data source \"%1\" (Type \"%2\"):", name, type), x);
-      }
+  /**
+   * Set the action which registers the data sources of the sections "Datenquellen/Registriere" in
+   * LibreOffice. It's run before each lookup of LibreOffice data sources, so it has to return
+   * immediately once the data sources are registered.
+   *
+   * @param registration
+   *          The registration.
+   */
+  public static void setRegistration(Runnable registration)
+  {
+    Datasources.registration = registration;
+  }
 
-      if (ds == null)
-      {
-        LOGGER.error(L.m("Data source {} of type {} could not be initialized", name, type));
-        /*
-         * Falls schon eine alte Datenquelle name registriert ist, entferne diese Registrierung.
-         * Ansonsten würde mit der vorher registrierten Datenquelle weitergearbeitet, was seltsame
-         * Effekte zur Folge hätte die schwierig nachzuvollziehen sind.
-         */
-      }
+  /**
+   * Wait until the data sources of the sections "Datenquellen/Registriere" are registered in
+   * LibreOffice. Has to be called before a LibreOffice data source is looked up.
+   */
+  public static void awaitRegistration()
+  {
+    registration.run();
+  }
 
-      datasources.put(name, ds);
+  /**
+   * Close the connections of all data sources which have been created so far.
+   */
+  public static synchronized void close()
+  {
+    if (registry != null)
+    {
+      registry.close();
     }
+  }
 
-    return datasources;
+  private static synchronized DatasourceRegistry getRegistry()
+  {
+    if (registry == null)
+    {
+      registry = new DatasourceRegistry(WollMuxFiles.getWollmuxConf(),
+          WollMuxFiles.getDefaultContext());
+    }
+    return registry;
   }
 }
@@ -0,0 +1,248 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.naming.Name;
+import javax.naming.directory.Attributes;
+
+/**
+ * Cache for the attributes which {@link LDAPDatasource} reads from other nodes of the directory
+ * (relative paths). The cache is shared by all LDAP data sources, so that searches don't fetch the
+ * attributes of the same organisational units again and again.
+ *
+ * The cache holds at most {@link #DEFAULT_MAX_SIZE} entries and drops the least recently used
+ * ones. Each entry expires after the time to live given when it was added.
+ */
+public class LDAPAttributeCache
+{
+  /**
+   * Maximum number of entries of the shared cache.
+   */
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private static final LDAPAttributeCache INSTANCE = new LDAPAttributeCache(DEFAULT_MAX_SIZE);
+
+  private final int maxSize;
+
+  /**
+   * The entries, the least recently used one first.
+   */
+  private final Map<Key, Entry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Time source for the expiration of entries.
+   */
+  LongSupplier clock = System::currentTimeMillis;
+
+  /**
+   * Create a new cache.
+   *
+   * @param maxSize
+   *          The maximum number of entries.
+   */
+  LDAPAttributeCache(int maxSize)
+  {
+    this.maxSize = maxSize;
+    entries = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+      {
+        return size() > LDAPAttributeCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * The cache shared by all LDAP data sources.
+   */
+  public static LDAPAttributeCache getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * Get cached attributes.
+   *
+   * @param key
+   *          The key of the attributes.
+   * @return The attributes or null if they aren't cached or have expired.
+   */
+  public synchronized Attributes get(Key key)
+  {
+    Entry entry = entries.get(key);
+    if (entry != null && entry.expires > clock.getAsLong())
+    {
+      hits.incrementAndGet();
+      return entry.attributes;
+    }
+    if (entry != null)
+    {
+      entries.remove(key);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Add attributes to the cache.
+   *
+   * @param key
+   *          The key of the attributes.
+   * @param attributes
+   *          The attributes.
+   * @param timeToLive
+   *          Time in milliseconds after which the entry expires. If it isn't positive, nothing is
+   *          cached.
+   */
+  public synchronized void put(Key key, Attributes attributes, long timeToLive)
+  {
+    if (timeToLive > 0)
+    {
+      entries.put(key, new Entry(attributes, clock.getAsLong() + timeToLive));
+    }
+  }
+
+  /**
+   * Remove all entries of a server, e.g. after its data source has been closed.
+   *
+   * @param server
+   *          The server as given to {@link Key#Key(String, Name, String[])}.
+   */
+  public synchronized void invalidate(String server)
+  {
+    Iterator<Key> iter = entries.keySet().iterator();
+    while (iter.hasNext())
+    {
+      if (iter.next().server.equals(server))
+      {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * The number of entries, including expired entries which haven't been removed yet.
+   */
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * How often {@link #get(Key)} found valid attributes.
+   */
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * How often {@link #get(Key)} didn't find valid attributes.
+   */
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Identifies the attributes of a node.
+   */
+  public static class Key
+  {
+    private static final String CACHE_KEY_SEPARATOR = "/{%§";
+
+    private final String server;
+
+    private final String hash;
+
+    /**
+     * Create a new key.
+     *
+     * @param server
+     *          Identifies the server and the login.
+     * @param attributePath
+     *          The path of the node.
+     * @param searchAttributes
+     *          The names of the read attributes.
+     */
+    public Key(String server, Name attributePath, String[] searchAttributes)
+    {
+      this.server = server;
+      StringBuilder buf = new StringBuilder();
+      buf.append(server);
+      buf.append(CACHE_KEY_SEPARATOR);
+      buf.append(searchAttributes.length);
+      buf.append(CACHE_KEY_SEPARATOR);
+      buf.append(attributePath.toString());
+      for (int n = 0; n < searchAttributes.length; ++n)
+      {
+        buf.append(CACHE_KEY_SEPARATOR);
+        buf.append(searchAttributes[n]);
+      }
+      hash = buf.toString();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+      if (other == null || other.getClass() != getClass())
+      {
+        return false;
+      }
+      Key otherKey = (Key) other;
+      return hash.equals(otherKey.hash);
+    }
+  }
+
+  private static class Entry
+  {
+    private final Attributes attributes;
+
+    private final long expires;
+
+    private Entry(Attributes attributes, long expires)
+    {
+      this.attributes = attributes;
+      this.expires = expires;
+    }
+  }
+}
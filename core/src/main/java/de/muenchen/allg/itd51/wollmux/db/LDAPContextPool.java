@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of contexts to an LDAP server, so that not every search has to connect and bind again.
+ *
+ * The pool only keeps a bounded number of unused contexts. Contexts are closed after they have been
+ * idle for longer than the idle timeout or if they have been released as broken. The request
+ * controls of a context are reset before it is handed out again.
+ */
+class LDAPContextPool extends ResourcePool<LdapContext, NamingException>
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LDAPContextPool.class);
+
+  /**
+   * Creates new contexts.
+   */
+  @FunctionalInterface
+  interface ContextFactory
+  {
+    LdapContext create() throws NamingException;
+  }
+
+  private final ContextFactory factory;
+
+  /**
+   * Create a new pool.
+   *
+   * @param factory
+   *          Creates the contexts.
+   * @param maxIdle
+   *          The maximum number of unused contexts, 0 to disable pooling.
+   * @param idleTimeout
+   *          Time in milliseconds after which an unused context is closed.
+   */
+  LDAPContextPool(ContextFactory factory, int maxIdle, long idleTimeout)
+  {
+    super(maxIdle, 0, idleTimeout, 0);
+    this.factory = factory;
+  }
+
+  /**
+   * Is the exception caused by a broken connection, so that the context shouldn't be reused?
+   */
+  static boolean isConnectionError(NamingException e)
+  {
+    return e instanceof CommunicationException || e instanceof ServiceUnavailableException;
+  }
+
+  @Override
+  LdapContext create() throws NamingException
+  {
+    return factory.create();
+  }
+
+  @Override
+  boolean activate(LdapContext context)
+  {
+    try
+    {
+      context.setRequestControls(null);
+      return true;
+    } catch (NamingException e)
+    {
+      LOGGER.debug("Discarding unusable context.", e);
+      return false;
+    }
+  }
+
+  @Override
+  void destroy(LdapContext context)
+  {
+    try
+    {
+      context.close();
+    } catch (NamingException e)
+    {
+      LOGGER.trace("", e);
+    }
+  }
+
+  @Override
+  NamingException exhausted()
+  {
+    // the number of contexts in use isn't bounded
+    return new ServiceUnavailableException();
+  }
+}
@@ -22,32 +22,46 @@
  */
 package de.muenchen.allg.itd51.wollmux.db;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.naming.Context;
+import javax.naming.InvalidNameException;
 import javax.naming.Name;
-import javax.naming.NameParser;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
 import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +89,11 @@ public class LDAPDatasource extends Datasource
 
   private String baseDN;
 
+  /**
+   * {@link #baseDN} als (Ldap)Name.
+   */
+  private Name rootName;
+
   private String objectClass;
 
   /** properties für die Verbindung zum LDAP-Server */
@@ -132,9 +151,66 @@ public class LDAPDatasource extends Datasource
       + KEY_SEPARATOR_0_NON_0_RE + "([a-zA-Z_][a-zA-Z0-9_]*=.*" + SEPARATOR + ")?$");
 
   /**
-   * temporärer cache für relative Attribute (wird bei jeder neuen Suche neu angelegt)
+   * Maximum number of LDAP searches of all LDAP data sources which run at the same time.
+   */
+  private static final int MAX_PARALLEL_SEARCHES = 8;
+
+  /**
+   * Runs the independent searches of a query in parallel.
+   */
+  private static final ExecutorService SEARCH_EXECUTOR = createSearchExecutor();
+
+  /**
+   * Default for the time in seconds for which attributes of relative paths are cached
+   * (CACHE_TTL).
+   */
+  private static final int DEFAULT_CACHE_TTL = 300;
+
+  /**
+   * Cache for attributes of relative paths, shared by all LDAP data sources.
+   */
+  private LDAPAttributeCache attributeCache = LDAPAttributeCache.getInstance();
+
+  /**
+   * Identifies server and login of this data source in {@link #attributeCache}.
+   */
+  private String cacheServer;
+
+  /**
+   * Time in milliseconds for which attributes of relative paths are cached, 0 if they aren't
+   * cached.
+   */
+  private long cacheTimeToLive;
+
+  /**
+   * Default for the number of results which the server returns per page (PAGE_SIZE).
    */
-  private Map<CacheKey, Attributes> attributeCache = new HashMap<>();
+  private static final int DEFAULT_PAGE_SIZE = 500;
+
+  /**
+   * Default for the maximum number of unused pooled contexts (POOL_SIZE).
+   */
+  private static final int DEFAULT_POOL_SIZE = 4;
+
+  /**
+   * Default for the time in seconds after which an unused context is closed (POOL_IDLE_TIMEOUT).
+   */
+  private static final int DEFAULT_POOL_IDLE_TIMEOUT = 60;
+
+  /**
+   * Number of search results which are completed to datasets at once, if the results are streamed.
+   */
+  private static final int DATASET_BATCH_SIZE = 100;
+
+  /**
+   * Number of results per page of a paged search (RFC 2696), 0 if paging is disabled.
+   */
+  private int pageSize;
+
+  /**
+   * Pool of contexts to the LDAP server.
+   */
+  private LDAPContextPool contextPool;
 
   /**
    * Erzeugt eine neue LDAPDatasource.
@@ -172,6 +248,13 @@ public class LDAPDatasource extends Datasource
     {
       throw new ConfigurationErrorException(L.m("BASE_DN-value is invalid: " + baseDN));
     }
+    try
+    {
+      rootName = new LdapName(baseDN);
+    } catch (InvalidNameException e)
+    {
+      throw new ConfigurationErrorException(L.m("BASE_DN-value is invalid: " + baseDN), e);
+    }
 
     objectClass = parseConfig(sourceDesc, "OBJECT_CLASS",
         () -> errorMessage() + L.m("No OBJECT_CLASS defined."));
@@ -202,6 +285,18 @@ public class LDAPDatasource extends Datasource
       properties.put(Context.SECURITY_CREDENTIALS, password);
     }
 
+    cacheServer = url + " " + user;
+    cacheTimeToLive = TimeUnit.SECONDS
+        .toMillis(parseNonNegative(sourceDesc, "CACHE_TTL", DEFAULT_CACHE_TTL));
+
+    pageSize = parseNonNegative(sourceDesc, "PAGE_SIZE", DEFAULT_PAGE_SIZE);
+    int poolSize = parseNonNegative(sourceDesc, "POOL_SIZE", DEFAULT_POOL_SIZE);
+    int idleTimeout = parseNonNegative(sourceDesc, "POOL_IDLE_TIMEOUT", DEFAULT_POOL_IDLE_TIMEOUT);
+    // Die Verbindungen selbst werden zusätzlich vom JNDI-Provider gepoolt.
+    properties.setProperty("com.sun.jndi.ldap.connect.pool", Boolean.toString(poolSize > 0));
+    contextPool = new LDAPContextPool(() -> new InitialLdapContext(properties, null), poolSize,
+        TimeUnit.SECONDS.toMillis(idleTimeout));
+
     ConfigThingy spalten = sourceDesc.query("Spalten");
 
     if (spalten.count() == 0)
@@ -330,6 +425,34 @@ public class LDAPDatasource extends Datasource
     }
   }
 
+  /**
+   * Reads an optional non-negative integer from the data source description.
+   *
+   * @throws ConfigurationErrorException
+   *           The value isn't a non-negative integer.
+   */
+  private int parseNonNegative(ConfigThingy sourceDesc, String key, int defaultValue)
+  {
+    String value = sourceDesc.getString(key, null);
+    if (value == null)
+    {
+      return defaultValue;
+    }
+    try
+    {
+      int number = Integer.parseInt(value.trim());
+      if (number >= 0)
+      {
+        return number;
+      }
+    } catch (NumberFormatException e)
+    {
+      LOGGER.trace("", e);
+    }
+    throw new ConfigurationErrorException(
+        errorMessage() + L.m("%1 has to be a non-negative integer", key));
+  }
+
   /** Setzt die timeout-Properties. */
   private void setTimeout(long timeout)
   {
@@ -429,30 +552,22 @@ public class LDAPDatasource extends Datasource
 
     List<Dataset> results = new ArrayList<>(keys.size());
 
-    try
-    {
-      attributeCache.clear();
-
-      if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
-      { // absolute Attribute vorhanden
-        results.addAll(handleAbsoluteKeys(keys));
-      } else
-      { // nur relative Attribute
-        for (String currentKey : keys)
-        {
-          List<QueryPart> query = keyToFindQuery(currentKey);
+    if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
+    { // absolute Attribute vorhanden
+      results.addAll(handleAbsoluteKeys(keys));
+    } else
+    { // nur relative Attribute
+      for (String currentKey : keys)
+      {
+        List<QueryPart> query = keyToFindQuery(currentKey);
 
-          QueryResults res = find(query);
-          for (Dataset ds : res)
-            results.add(ds);
-        }
+        QueryResults res = find(query);
+        for (Dataset ds : res)
+          results.add(ds);
       }
-
-      return new QueryResultsList(results);
-    } finally
-    {
-      attributeCache.clear();
     }
+
+    return new QueryResultsList(results);
   }
 
   private List<Dataset> handleAbsoluteKeys(Collection<String> keys)
@@ -478,22 +593,15 @@ public class LDAPDatasource extends Datasource
     searchFilter.append(")");
 
     // search LDAP
-    NamingEnumeration<SearchResult> currentResults = searchLDAP("", searchFilter.toString(),
+    List<SearchResult> currentResults = searchLDAP("", searchFilter.toString(),
         SearchControls.SUBTREE_SCOPE, true);
 
-    while (currentResults != null && currentResults.hasMoreElements())
+    for (SearchResult currentResult : currentResults)
     {
-      try
+      Dataset dataset = getDataset(currentResult);
+      if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
       {
-        SearchResult currentResult = currentResults.next();
-        Dataset dataset = getDataset(currentResult);
-        if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
-        {
-          results.add(dataset);
-        }
-      } catch (NamingException e)
-      {
-        LOGGER.error(L.m("Error in LDAP-Directory."), e);
+        results.add(dataset);
       }
     }
     return results;
@@ -551,29 +659,17 @@ public class LDAPDatasource extends Datasource
   {
 
     List<Name> paths = null;
-    DirContext ctx = null;
 
-    try
+    try (PagedSearch search = new PagedSearch("", filter, SearchControls.SUBTREE_SCOPE))
     {
-      ctx = new InitialLdapContext(properties, null);
-      NameParser np = ctx.getNameParser("");
-      int rootSize = np.parse(baseDN).size();
-      SearchControls sc = new SearchControls();
-      sc.setSearchScope(SearchControls.SUBTREE_SCOPE);
+      int rootSize = rootName.size();
+      paths = new ArrayList<>();
 
-      sc.setTimeLimit((int) Datasource.getDatasourceTimeout());
-
-      LOGGER.trace("ctx.search({}, {}, sc) mit Zeitlimit {}", baseDN, filter, sc.getTimeLimit());
-      NamingEnumeration<SearchResult> enumer = ctx.search(baseDN, filter, sc);
-      LOGGER.trace("ctx.search() abgeschlossen");
-
-      paths = new Vector<>();
-
-      while (enumer != null && enumer.hasMoreElements())
+      SearchResult result;
+      while ((result = search.next()) != null)
       {
-        SearchResult result = enumer.nextElement();
         String path = preparePath(result.getNameInNamespace());
-        Name pathName = np.parse(path);
+        Name pathName = new LdapName(path);
         /*
          * ACHTUNG: hier kann NICHT (pathLength < 0 && (pathName.size()+rootLength >
          * abs(pathLength))) getestet werden, denn Minus-Bedingungen betreffen die Nachfahren, hier
@@ -582,24 +678,9 @@ public class LDAPDatasource extends Datasource
         if (pathName.size() + rootSize == pathLength || pathLength < 0)
           paths.add(pathName);
       }
-
-      ctx.close();
-
     } catch (NamingException e)
     {
       LOGGER.error("Internal error in LDAP.", e);
-    } finally
-    {
-      if (ctx != null)
-      {
-        try
-        {
-          ctx.close();
-        } catch (NamingException e)
-        {
-          LOGGER.error("", e);
-        }
-      }
     }
 
     return new RelativePaths(pathLength, paths);
@@ -614,6 +695,7 @@ public class LDAPDatasource extends Datasource
   @Override
   public QueryResults find(List<QueryPart> query)
   {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Datasource.getDatasourceTimeout());
     StringBuilder searchFilter = new StringBuilder();
     List<RelativePaths> positiveSubtreePathLists = new ArrayList<>();
 
@@ -680,17 +762,25 @@ public class LDAPDatasource extends Datasource
 
     }
 
-    // TOD0 evtl. Optimierung: attributeKeys nicht in zufälliger Reihenfolge
-    // durchgehen
-    for (Map.Entry<Integer, String> ent : mapNon0PathLevelToSearchFilter.entrySet())
+    // Die Pfade der einzelnen Level sind unabhängig voneinander und werden parallel gesucht.
+    List<Map.Entry<Integer, String>> levels = new ArrayList<>(mapNon0PathLevelToSearchFilter.entrySet());
+    List<Callable<RelativePaths>> pathSearches = new ArrayList<>(levels.size());
+    for (Map.Entry<Integer, String> ent : levels)
     {
-      Integer currentKey = ent.getKey();
-
-      int relativePath = currentKey.intValue();
+      pathSearches.add(() -> getPaths(ent.getValue(), ent.getKey().intValue()));
+    }
+    List<RelativePaths> levelPaths = runParallel(pathSearches, deadline);
 
-      String pathFilter = ent.getValue();
+    for (int i = 0; i < levels.size(); i++)
+    {
+      int relativePath = levels.get(i).getKey().intValue();
 
-      RelativePaths paths = getPaths(pathFilter, relativePath);
+      RelativePaths paths = levelPaths.get(i);
+      if (paths == null || paths.paths == null)
+      {
+        // Suche fehlgeschlagen, die Bedingung trifft auf keinen Knoten zu
+        paths = new RelativePaths(relativePath, new ArrayList<>());
+      }
 
       if (relativePath > 0)
       {
@@ -929,6 +1019,13 @@ public class LDAPDatasource extends Datasource
       return new QueryResultsList(new Vector<Dataset>(0));
     }
 
+    if (negativeSubtreePathLists.isEmpty() && positiveSubtreePathLists.isEmpty())
+    {
+      // nur absolute Attribute: die Ergebnisse werden seitenweise gelesen, während sie verarbeitet
+      // werden
+      return streamLDAP(searchFilter.toString());
+    }
+
     List<SearchResult> currentResultList = new ArrayList<>();
 
     /*
@@ -958,63 +1055,146 @@ public class LDAPDatasource extends Datasource
 
       }
 
-      // allgemeine Suche
+      // allgemeine Suche, die Teilbäume werden parallel durchsucht
 
+      List<Callable<List<SearchResult>>> subTreeSearches = new ArrayList<>();
       for (String subTree : positiveSubtreeStrings)
       {
-        String comma = ",";
-        if (subTree.isEmpty())
-        {
-          comma = "";
-        }
-        NamingEnumeration<SearchResult> currentResults = searchLDAP(subTree + comma,
-            searchFilter.toString(), SearchControls.SUBTREE_SCOPE, true);
-
-        while (currentResults != null && currentResults.hasMoreElements())
-        {
-          SearchResult sr = currentResults.nextElement();
-          String name = preparePath(sr.getNameInNamespace());
-          sr.setName(name + (name.length() > 0 ? comma : "") + subTree);
-          currentResultList.add(sr);
-        }
+        String comma = subTree.isEmpty() ? "" : ",";
+        String filter = searchFilter.toString();
+        subTreeSearches.add(() -> {
+          List<SearchResult> found = searchLDAP(subTree + comma, filter,
+              SearchControls.SUBTREE_SCOPE, true);
 
+          for (SearchResult sr : found)
+          {
+            String name = preparePath(sr.getNameInNamespace());
+            sr.setName(name + (name.length() > 0 ? comma : "") + subTree);
+          }
+          return found;
+        });
       }
+      addAll(currentResultList, runParallel(subTreeSearches, deadline));
     } else
     { // Breitensuche ausgehend von den Knoten der mergedNegativeSubtreePaths
+      List<String> seeds = new ArrayList<>();
+      List<Integer> depths = new ArrayList<>();
       for (RelativePath currentRelativePath : mergedNegativeSubtreePaths)
       {
-        int depth = -currentRelativePath.relative;
         // ACHTUNG: depth kann 0 sein. Siehe Kommentar bei Bildung des Schnitts aus
         // negativen und positiven Pfaden.
+        seeds.add(currentRelativePath.name.toString());
+        depths.add(-currentRelativePath.relative);
+      }
+      currentResultList.addAll(searchLDAPLevel(seeds, depths, searchFilter.toString(), deadline));
+    }
 
-        Name currentName = currentRelativePath.name;
-        String currentPath = currentName.toString();
-        List<SearchResult> currentSearch = searchLDAPLevel(currentPath, searchFilter.toString(),
-            depth);
+    // generate Datasets from SearchResults, relative Attribute werden parallel gelesen
+    List<Callable<Dataset>> datasetReads = new ArrayList<>(currentResultList.size());
+    for (SearchResult currentResult : currentResultList)
+    {
+      datasetReads.add(() -> getDataset(currentResult));
+    }
 
-        currentResultList.addAll(currentSearch);
+    List<Dataset> results = new ArrayList<>(currentResultList.size());
+    for (Dataset ds : runParallel(datasetReads, deadline))
+    {
+      if (ds != null)
+      {
+        results.add(ds);
       }
-
     }
 
-    List<Dataset> results = new ArrayList<>();
+    return new QueryResultsList(results);
+  }
 
-    // generate Datasets from SearchResults
+  private static ExecutorService createSearchExecutor()
+  {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_SEARCHES, MAX_PARALLEL_SEARCHES,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "LDAPDatasource search");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
 
-    attributeCache.clear();
+  /**
+   * Runs independent tasks in parallel and waits until all have finished or the deadline has been
+   * reached. Tasks which haven't finished at the deadline are cancelled.
+   *
+   * @param tasks
+   *          The tasks. They must not wait for other tasks of the executor.
+   * @param deadline
+   *          The deadline as given by {@link System#nanoTime()}.
+   * @return The results in the order of the tasks. The result of a failed, cancelled or timed out
+   *         task is null.
+   */
+  private <T> List<T> runParallel(List<Callable<T>> tasks, long deadline)
+  {
+    List<T> results = new ArrayList<>(tasks.size());
+    if (tasks.isEmpty())
+    {
+      return results;
+    }
 
-    try
+    List<Future<T>> futures = Collections.emptyList();
+    long remaining = deadline - System.nanoTime();
+    if (remaining > 0)
+    {
+      try
+      {
+        futures = SEARCH_EXECUTOR.invokeAll(tasks, remaining, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e)
+      {
+        LOGGER.debug("", e);
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    boolean timeout = futures.size() < tasks.size();
+    for (Future<T> future : futures)
     {
-      for (SearchResult currentResult : currentResultList)
+      T result = null;
+      try
+      {
+        result = future.get();
+      } catch (CancellationException e)
+      {
+        timeout = true;
+      } catch (ExecutionException e)
       {
-        results.add(getDataset(currentResult));
+        LOGGER.error(L.m("Error in LDAP-Directory."), e.getCause());
+      } catch (InterruptedException e)
+      {
+        LOGGER.debug("", e);
+        Thread.currentThread().interrupt();
       }
-    } finally
+      results.add(result);
+    }
+    while (results.size() < tasks.size())
     {
-      attributeCache.clear();
+      results.add(null);
     }
 
-    return new QueryResultsList(results);
+    if (timeout)
+    {
+      LOGGER.error("{}: Timeout bei der Suche im LDAP-Verzeichnis, Ergebnisse sind unvollständig.",
+          datasourceName);
+    }
+    return results;
+  }
+
+  private static <T> void addAll(List<T> target, List<List<T>> lists)
+  {
+    for (List<T> list : lists)
+    {
+      if (list != null)
+      {
+        target.addAll(list);
+      }
+    }
   }
 
   /**
@@ -1038,6 +1218,13 @@ public class LDAPDatasource extends Datasource
     return datasourceName;
   }
 
+  @Override
+  public void close()
+  {
+    contextPool.close();
+    attributeCache.invalidate(cacheServer);
+  }
+
   /**
    * generiert einen Schluessel aus einem geordneten(!) Vector der Schluesselwerte
    * 
@@ -1117,43 +1304,6 @@ public class LDAPDatasource extends Datasource
     return key.toString();
   }
 
-  private static class CacheKey
-  {
-    private static final String CACHE_KEY_SEPARATOR = "/{%§";
-
-    private String hash;
-
-    public CacheKey(Name attributePath, String[] searchAttributes)
-    {
-      StringBuilder buf = new StringBuilder();
-      buf.append(searchAttributes.length);
-      buf.append(CACHE_KEY_SEPARATOR);
-      buf.append(attributePath.toString());
-      for (int n = 0; n < searchAttributes.length; ++n)
-      {
-        buf.append(searchAttributes[n]);
-      }
-      hash = buf.toString();
-    }
-
-    @Override
-    public int hashCode()
-    {
-      return hash.hashCode();
-    }
-
-    @Override
-    public boolean equals(Object other)
-    {
-      if (other == null || other.getClass() != getClass())
-      {
-        return false;
-      }
-      CacheKey otherKey = (CacheKey) other;
-      return hash.equals(otherKey.hash);
-    }
-  }
-
   /**
    * vervollständigt SearchResults um Daten aus dem Verzeichnis und gibt ein Dataset zurück
    * 
@@ -1170,23 +1320,14 @@ public class LDAPDatasource extends Datasource
     Map<String, String> relation = new HashMap<>();
 
     Name pathName = null;
-    Name rootName = null;
-    DirContext ctx = null;
+    LdapContext ctx = null;
+    boolean reusable = true;
 
     try
     {
       String tempPath = searchResult.getNameInNamespace();
       tempPath = preparePath(tempPath);
-
-      ctx = new InitialLdapContext(properties, null);
-      NameParser nameParser = ctx.getNameParser("");
-      pathName = nameParser.parse(tempPath);
-      rootName = nameParser.parse(baseDN); // TOD0: Das ist eine Konstante, nur
-      // einmal berechnen (ausser, dass dies
-      // nur mit funktionierender
-      // Netzanbindung moeglich ist). Testen
-      // mit rausgezogenem Netzkabel
-
+      pathName = new LdapName(tempPath);
     } catch (NamingException e)
     {
       LOGGER.error("Fehler beim Zugriff auf das LDAP-Verzeichnis.", e);
@@ -1237,13 +1378,18 @@ public class LDAPDatasource extends Datasource
 
           Attributes foundAttributes;
 
-          CacheKey key = new CacheKey(attributePath, searchAttributes);
+          LDAPAttributeCache.Key key =
+              new LDAPAttributeCache.Key(cacheServer, attributePath, searchAttributes);
           foundAttributes = attributeCache.get(key);
 
           if (foundAttributes == null)
           {
+            if (ctx == null)
+            {
+              ctx = contextPool.borrow();
+            }
             foundAttributes = ctx.getAttributes(attributePath, searchAttributes);
-            attributeCache.put(key, foundAttributes);
+            attributeCache.put(key, foundAttributes, cacheTimeToLive);
           }
 
           Attribute foundAttribute = foundAttributes.get(attributeName);
@@ -1253,7 +1399,12 @@ public class LDAPDatasource extends Datasource
             value = (String) foundAttribute.get();
           }
 
-        } catch (NamingException | NullPointerException | IndexOutOfBoundsException e)
+        } catch (NamingException e)
+        {
+          // do nothing (Attributwert nicht vorhanden und bleibt somit 'null')
+          LOGGER.trace("", e);
+          reusable &= !LDAPContextPool.isConnectionError(e);
+        } catch (NullPointerException | IndexOutOfBoundsException e)
         {
           // do nothing (Attributwert nicht vorhanden und bleibt somit 'null')
           LOGGER.trace("", e);
@@ -1271,9 +1422,14 @@ public class LDAPDatasource extends Datasource
       }
     }
 
-      String key = generateKey(relation);
+    if (ctx != null)
+    {
+      contextPool.release(ctx, reusable);
+    }
+
+    String key = generateKey(relation);
 
-      return new LDAPDataset(key, relation);
+    return new LDAPDataset(key, relation);
   }
 
   /**
@@ -1294,137 +1450,400 @@ public class LDAPDatasource extends Datasource
    * @throws NamingException
    * 
    */
-  private NamingEnumeration<SearchResult> searchLDAP(String path, String filter, int searchScope,
+  private List<SearchResult> searchLDAP(String path, String filter, int searchScope,
       boolean onlyObjectClass)
   {
     LOGGER.debug("searchLDAP({}, {}, {}, {})", path, filter, searchScope, onlyObjectClass);
 
-    SearchControls searchControls = new SearchControls();
+    List<SearchResult> results = new ArrayList<>();
+
+    try (PagedSearch search = new PagedSearch(path, objectClassFilter(filter, onlyObjectClass),
+        searchScope))
+    {
+      SearchResult result;
+      while ((result = search.next()) != null)
+      {
+        results.add(result);
+      }
+    } catch (NamingException e)
+    {
+      LOGGER.error("", e);
+    }
+
+    LOGGER.debug(results.isEmpty() ? "keine Ergebnisse gefunden" : "Ergebnisse gefunden");
+
+    return results;
+  }
 
-    searchControls.setSearchScope(searchScope);
+  /**
+   * Sucht wie {@link #searchLDAP(String, String, int, boolean)} ab BASE_DN im ganzen Teilbaum nach
+   * Knoten mit objectClass = {@link #objectClass}, liefert die Ergebnisse aber, während sie Seite
+   * für Seite gelesen werden. Der Kontext der Suche bleibt belegt, bis alle Ergebnisse gelesen sind
+   * oder die Ergebnisse geschlossen werden.
+   *
+   * @param filter
+   *          der Suchfilter.
+   * @return die Ergebnisse, von denen bereits die ersten {@link #DATASET_BATCH_SIZE} gelesen
+   *         sind.
+   */
+  private QueryResults streamLDAP(String filter)
+  {
+    LOGGER.debug("streamLDAP({})", filter);
 
-    searchControls.setTimeLimit((int) Datasource.getDatasourceTimeout());
+    PagedSearch search;
+    try
+    {
+      search = new PagedSearch("", objectClassFilter(filter, true), SearchControls.SUBTREE_SCOPE);
+    } catch (NamingException e)
+    {
+      LOGGER.error("", e);
+      return new QueryResultsList(new ArrayList<Dataset>(0));
+    }
+
+    StreamingQueryResults results = new StreamingQueryResults(new SearchCursor(search));
+    results.prefetch(DATASET_BATCH_SIZE);
+    return results;
+  }
 
+  private String objectClassFilter(String filter, boolean onlyObjectClass)
+  {
     if (onlyObjectClass)
     {
-      filter = "(&(objectClass=" + objectClass + ")" + filter + ")";
+      return "(&(objectClass=" + objectClass + ")" + filter + ")";
     } else
     {
-      filter = "(&(objectClass=" + "*" + ")" + filter + ")"; // TOD0 das
+      return "(&(objectClass=" + "*" + ")" + filter + ")"; // TOD0 das
       // objectClass=* ist
       // doch überflüssig
     }
+  }
+
+  /**
+   * Eine Suche, deren Ergebnisse gemäß RFC 2696 seitenweise vom Server geholt werden, so dass
+   * auch große Ergebnismengen nicht an der Size-Limit des Servers scheitern. Server, die keine
+   * seitenweise Suche unterstützen, liefern alle Ergebnisse auf einmal. Der Kontext stammt aus
+   * {@link LDAPDatasource#contextPool} und wird von {@link #close()} zurückgegeben.
+   */
+  private class PagedSearch implements AutoCloseable
+  {
+    private final LdapContext ctx;
+
+    private final Name name;
+
+    private final String filter;
+
+    private final SearchControls searchControls = new SearchControls();
+
+    /**
+     * Die Ergebnisse der aktuellen Seite, null wenn es keine weiteren Seiten gibt.
+     */
+    private NamingEnumeration<SearchResult> page;
+
+    private boolean reusable = true;
+
+    private boolean closed = false;
+
+    /**
+     * Startet die Suche und fordert die erste Seite an.
+     *
+     * @param path
+     *          der Pfad des Startknotens. Wird mit BASE_DN konkateniert.
+     * @param filter
+     *          der vollständige Suchfilter.
+     * @param searchScope
+     *          SearchControls.SUBTREE_SCOPE, SearchControls.OBJECT_SCOPE oder
+     *          SearchControls.ONELEVEL_SCOPE.
+     * @throws NamingException
+     *           Die Suche konnte nicht gestartet werden.
+     */
+    PagedSearch(String path, String filter, int searchScope) throws NamingException
+    {
+      this.filter = filter;
+      name = new LdapName(path + baseDN);
+      searchControls.setSearchScope(searchScope);
+      searchControls.setTimeLimit((int) Datasource.getDatasourceTimeout());
+
+      ctx = contextPool.borrow();
+      try
+      {
+        requestPage(null);
+      } catch (NamingException e)
+      {
+        close();
+        throw e;
+      }
+    }
 
-    Optional<NamingEnumeration<SearchResult>> result = Optional.empty();
-    DirContext ctx = null;
+    /**
+     * Das nächste Ergebnis. Die nächste Seite wird erst angefordert, wenn die aktuelle gelesen
+     * ist.
+     *
+     * @return Das Ergebnis oder null, wenn es keine weiteren gibt.
+     * @throws NamingException
+     *           Die Ergebnisse konnten nicht gelesen werden.
+     */
+    SearchResult next() throws NamingException
+    {
+      try
+      {
+        while (page != null)
+        {
+          if (page.hasMore())
+          {
+            return page.next();
+          }
+          page.close();
+          page = null;
 
-    try
+          byte[] cookie = getCookie();
+          if (cookie != null && cookie.length > 0)
+          {
+            requestPage(cookie);
+          }
+        }
+        return null;
+      } catch (NamingException e)
+      {
+        reusable = !LDAPContextPool.isConnectionError(e);
+        throw e;
+      }
+    }
+
+    private void requestPage(byte[] cookie) throws NamingException
     {
-      ctx = new InitialLdapContext(properties, null);
-      NameParser nameParser = ctx.getNameParser("");
-      Name name = nameParser.parse(path + baseDN);
+      if (pageSize > 0)
+      {
+        try
+        {
+          ctx.setRequestControls(
+              new Control[] { new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL) });
+        } catch (IOException e)
+        {
+          NamingException ex = new NamingException(e.getMessage());
+          ex.setRootCause(e);
+          throw ex;
+        }
+      }
 
       LOGGER.trace("ctx.search({}, {}, searchControls) mit Zeitlimit {}", name, filter,
           searchControls.getTimeLimit());
-      result = Optional.of(ctx.search(name, filter, searchControls));
+      try
+      {
+        page = ctx.search(name, filter, searchControls);
+      } catch (NamingException e)
+      {
+        reusable = !LDAPContextPool.isConnectionError(e);
+        throw e;
+      }
       LOGGER.trace("ctx.search() abgeschlossen");
-    } catch (NamingException e)
+    }
+
+    /**
+     * Der Cookie für die nächste Seite aus der Antwort auf die letzte Seite.
+     *
+     * @return Der Cookie oder null, falls der Server keinen geliefert hat.
+     */
+    private byte[] getCookie() throws NamingException
     {
-      LOGGER.error("", e);
-    } finally
+      Control[] controls = ctx.getResponseControls();
+      if (controls != null)
+      {
+        for (Control control : controls)
+        {
+          if (control instanceof PagedResultsResponseControl)
+          {
+            return ((PagedResultsResponseControl) control).getCookie();
+          }
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void close()
     {
-      if (ctx != null)
+      if (closed)
+      {
+        return;
+      }
+      closed = true;
+      if (page != null)
       {
+        // bricht die Suche auf dem Server ab
         try
         {
-          ctx.close();
+          page.close();
         } catch (NamingException e)
         {
-          LOGGER.error("", e);
+          LOGGER.trace("", e);
         }
       }
+      contextPool.release(ctx, reusable);
     }
-
-    result.ifPresent(r -> LOGGER
-        .debug(r.hasMoreElements() ? "Ergebnisse gefunden" : "keine Ergebnisse gefunden"));
-
-    return result.orElse(null);
   }
 
   /**
-   * Durchsucht die Nachfahren des durch path + BASE_DN bezeichneten Knotens mit Abstand level zu
-   * diesem Knoten nach Knoten, die auf die Suchanfrage filter passen. Es werden nur Objekte mit
-   * objectClass = {@link #objectClass} geliefert.
-   * 
-   * @return eine List von {@link SearchResult}s.
-   * @author Max Meier (D-III-ITD 5.1)
-   * 
+   * Liefert die Datasets zu den Ergebnissen einer {@link PagedSearch}. Die relativen Attribute
+   * werden jeweils für {@link LDAPDatasource#DATASET_BATCH_SIZE} Ergebnisse parallel gelesen.
    */
-  private List<SearchResult> searchLDAPLevel(String path, String filter, int level)
+  private class SearchCursor implements StreamingQueryResults.Cursor
   {
-    List<String> seeds = new ArrayList<>();
-    seeds.add(path);
+    private final PagedSearch search;
 
-    String comma;
+    private final Deque<Dataset> datasets = new ArrayDeque<>();
 
-    for (int n = 0; n < (level - 1); n++)
+    SearchCursor(PagedSearch search)
     {
-      List<String> nextSeeds = new ArrayList<>();
+      this.search = search;
+    }
 
-      for (String searchPath : seeds)
+    @Override
+    public Dataset next() throws NamingException
+    {
+      // a batch can be empty, if none of its datasets could be read
+      boolean more = true;
+      while (datasets.isEmpty() && more)
       {
-        comma = ",";
-        if (searchPath.isEmpty())
+        List<Callable<Dataset>> datasetReads = new ArrayList<>(DATASET_BATCH_SIZE);
+        SearchResult result = null;
+        while (datasetReads.size() < DATASET_BATCH_SIZE && (result = search.next()) != null)
         {
-          comma = "";
+          SearchResult currentResult = result;
+          datasetReads.add(() -> getDataset(currentResult));
         }
+        more = result != null;
 
-        NamingEnumeration<SearchResult> enumer = searchLDAP(searchPath + comma, "",
-            SearchControls.ONELEVEL_SCOPE, false);
-
-        while (enumer != null && enumer.hasMoreElements())
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(Datasource.getDatasourceTimeout());
+        for (Dataset ds : runParallel(datasetReads, deadline))
         {
-          SearchResult currentResult = enumer.nextElement();
-          String subPath = preparePath(currentResult.getNameInNamespace());
-          comma = ",";
-          if (subPath.isEmpty())
+          if (ds != null)
           {
-            comma = "";
+            datasets.add(ds);
           }
-          String currentPath = subPath + comma + searchPath;
-          nextSeeds.add(currentPath);
         }
       }
+      return datasets.poll();
+    }
 
-      seeds = nextSeeds;
+    @Override
+    public void close()
+    {
+      search.close();
+    }
+  }
 
+  /**
+   * Durchsucht die Nachfahren der durch path + BASE_DN bezeichneten Knoten mit Abstand level zu
+   * diesen Knoten nach Knoten, die auf die Suchanfrage filter passen. Es werden nur Objekte mit
+   * objectClass = {@link #objectClass} geliefert.
+   *
+   * Die Breitensuche läuft für alle Startknoten gleichzeitig, die Suchen einer Ebene werden parallel
+   * ausgeführt.
+   *
+   * @param paths
+   *          Die Pfade der Startknoten.
+   * @param levels
+   *          Der Abstand der gesuchten Nachfahren zum Startknoten mit dem selben Index.
+   * @param filter
+   *          Der Suchfilter.
+   * @param deadline
+   *          Die Deadline gemäß {@link System#nanoTime()}.
+   * @return eine List von {@link SearchResult}s.
+   * @author Max Meier (D-III-ITD 5.1)
+   * 
+   */
+  private List<SearchResult> searchLDAPLevel(List<String> paths, List<Integer> levels, String filter,
+      long deadline)
+  {
+    List<LevelSeed> seeds = new ArrayList<>();
+    for (int i = 0; i < paths.size(); i++)
+    {
+      seeds.add(new LevelSeed(paths.get(i), levels.get(i)));
     }
 
     List<SearchResult> result = new ArrayList<>();
 
-    for (String currentPath : seeds)
+    while (!seeds.isEmpty())
     {
-      comma = ",";
-      if (currentPath.isEmpty())
+      List<Callable<LevelResult>> searches = new ArrayList<>(seeds.size());
+      for (LevelSeed seed : seeds)
       {
-        comma = "";
+        searches.add(() -> searchLevel(seed, filter));
       }
 
-      NamingEnumeration<SearchResult> enumer = searchLDAP(currentPath + comma, filter,
-          level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true);
+      List<LevelSeed> nextSeeds = new ArrayList<>();
+      for (LevelResult found : runParallel(searches, deadline))
+      {
+        if (found != null)
+        {
+          nextSeeds.addAll(found.seeds);
+          result.addAll(found.results);
+        }
+      }
+      seeds = nextSeeds;
+    }
+
+    return result;
+  }
+
+  /**
+   * Ein Schritt der Breitensuche: Ist der Abstand größer als 1, werden die Kinder des Knotens als
+   * neue Startknoten mit um eins verringertem Abstand geliefert. Ansonsten wird unter den Kindern
+   * (oder bei Abstand 0 im Knoten selbst) nach Knoten gesucht, die auf filter passen.
+   */
+  private LevelResult searchLevel(LevelSeed seed, String filter)
+  {
+    LevelResult found = new LevelResult();
+    String comma = seed.path.isEmpty() ? "" : ",";
 
-      while (enumer != null && enumer.hasMoreElements())
+    if (seed.level > 1)
+    {
+      for (SearchResult currentResult : searchLDAP(seed.path + comma, "",
+          SearchControls.ONELEVEL_SCOPE, false))
+      {
+        String subPath = preparePath(currentResult.getNameInNamespace());
+        String subComma = subPath.isEmpty() ? "" : ",";
+        found.seeds.add(new LevelSeed(subPath + subComma + seed.path, seed.level - 1));
+      }
+    } else
+    {
+      for (SearchResult sr : searchLDAP(seed.path + comma, filter,
+          seed.level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true))
       {
-        SearchResult sr = enumer.nextElement();
         String name = preparePath(sr.getNameInNamespace());
-        String actualPath = name + (name.length() > 0 ? comma : "") + currentPath;
+        String actualPath = name + (name.length() > 0 ? comma : "") + seed.path;
         sr.setName(actualPath);
-        result.add(sr);
+        found.results.add(sr);
       }
+    }
+    return found;
+  }
 
+  /**
+   * Ein Knoten der Breitensuche und der Abstand der gesuchten Nachfahren.
+   */
+  private static class LevelSeed
+  {
+    private final String path;
+
+    private final int level;
+
+    LevelSeed(String path, int level)
+    {
+      this.path = path;
+      this.level = level;
     }
+  }
 
-    return result;
+  /**
+   * Ergebnis eines Schritts der Breitensuche.
+   */
+  private static class LevelResult
+  {
+    private final List<LevelSeed> seeds = new ArrayList<>();
+
+    private final List<SearchResult> results = new ArrayList<>();
   }
 
   /**
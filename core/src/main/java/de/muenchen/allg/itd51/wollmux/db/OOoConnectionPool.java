@@ -0,0 +1,248 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.star.lang.XComponent;
+import com.sun.star.sdbc.SQLException;
+import com.sun.star.sdbc.XConnection;
+import com.sun.star.sdbc.XDataSource;
+import com.sun.star.sdbc.XRowSet;
+import com.sun.star.uno.UnoRuntime;
+
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * Pool of connections to an OOo data source, so that not every query has to log in again.
+ *
+ * A connection is validated before it is handed out and closed after it has been idle for longer
+ * than the idle timeout. Each connection keeps a cache of the row sets which have been executed
+ * on it, so that their prepared statements and the plans of the database are reused. If a pool size of 0 is configured, connections are
+ * closed as soon as they are released.
+ */
+class OOoConnectionPool
+    extends ResourcePool<OOoConnectionPool.PooledConnection, com.sun.star.uno.Exception>
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OOoConnectionPool.class);
+
+  /**
+   * Looks up the data source from which new connections are created.
+   */
+  @FunctionalInterface
+  interface DataSourceLookup
+  {
+    XDataSource lookup() throws com.sun.star.uno.Exception;
+  }
+
+  private final DataSourceLookup dataSource;
+
+  private final String userName;
+
+  private final String password;
+
+  /**
+   * Login timeout in seconds.
+   */
+  private final int loginTimeout;
+
+  /**
+   * Create a new pool.
+   *
+   * @param dataSource
+   *          Looks up the data source.
+   * @param userName
+   *          The user for the login.
+   * @param password
+   *          The password for the login.
+   * @param maxSize
+   *          The maximum number of connections, 0 to disable pooling.
+   * @param idleTimeout
+   *          Time in milliseconds after which an unused connection is closed.
+   * @param timeout
+   *          Time in milliseconds to wait for a free connection. Also used as login timeout.
+   */
+  OOoConnectionPool(DataSourceLookup dataSource, String userName, String password, int maxSize,
+      long idleTimeout, long timeout)
+  {
+    super(maxSize, maxSize, idleTimeout, timeout);
+    this.dataSource = dataSource;
+    this.userName = userName;
+    this.password = password;
+    this.loginTimeout = toLoginTimeout(timeout);
+  }
+
+  /**
+   * {@link XDataSource#setLoginTimeout(int)} expects seconds. Round up, so that short timeouts
+   * don't become 0, which means no timeout.
+   */
+  static int toLoginTimeout(long timeout)
+  {
+    return (int) Math.min(Integer.MAX_VALUE,
+        Math.max(1, (timeout + TimeUnit.SECONDS.toMillis(1) - 1) / TimeUnit.SECONDS.toMillis(1)));
+  }
+
+  @Override
+  PooledConnection create() throws com.sun.star.uno.Exception
+  {
+    XDataSource ds = dataSource.lookup();
+    if (ds == null)
+    {
+      throw new SQLException(L.m("Data source not found"));
+    }
+    ds.setLoginTimeout(loginTimeout);
+    XConnection conn = ds.getConnection(userName, password);
+    if (conn == null)
+    {
+      throw new SQLException(L.m("Could not create connection"));
+    }
+    return new PooledConnection(conn);
+  }
+
+  @Override
+  boolean activate(PooledConnection pooled)
+  {
+    if (pooled.isValid())
+    {
+      return true;
+    }
+    LOGGER.debug("Discarding closed connection.");
+    return false;
+  }
+
+  @Override
+  void destroy(PooledConnection pooled)
+  {
+    pooled.close();
+  }
+
+  @Override
+  SQLException exhausted()
+  {
+    return new SQLException(L.m("No free connection available"));
+  }
+
+  /**
+   * A connection and the row sets which have been created on it.
+   */
+  static class PooledConnection
+  {
+    /**
+     * Maximum number of row sets per connection.
+     */
+    static final int MAX_ROW_SETS = 32;
+
+    private final XConnection connection;
+
+    /**
+     * The row sets by their SQL, the least recently used one first.
+     */
+    private final Map<String, XRowSet> rowSets = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, XRowSet> eldest)
+      {
+        if (size() > MAX_ROW_SETS)
+        {
+          dispose(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+
+    private PooledConnection(XConnection connection)
+    {
+      this.connection = connection;
+    }
+
+    XConnection getConnection()
+    {
+      return connection;
+    }
+
+    /**
+     * The row set which executes this SQL or null if there is none.
+     */
+    XRowSet getRowSet(String sql)
+    {
+      return rowSets.get(sql);
+    }
+
+    /**
+     * Remember a row set, which uses this connection, for reuse.
+     */
+    void putRowSet(String sql, XRowSet rowSet)
+    {
+      rowSets.put(sql, rowSet);
+    }
+
+    private boolean isValid()
+    {
+      try
+      {
+        return !connection.isClosed();
+      } catch (Exception e)
+      {
+        LOGGER.trace("", e);
+        return false;
+      }
+    }
+
+    private void close()
+    {
+      rowSets.values().forEach(PooledConnection::dispose);
+      rowSets.clear();
+      try
+      {
+        connection.close();
+      } catch (Exception e)
+      {
+        LOGGER.trace("", e);
+      }
+    }
+
+    private static void dispose(XRowSet rowSet)
+    {
+      try
+      {
+        XComponent component = UnoRuntime.queryInterface(XComponent.class, rowSet);
+        if (component != null)
+        {
+          component.dispose();
+        }
+      } catch (Exception e)
+      {
+        LOGGER.trace("", e);
+      }
+    }
+  }
+}
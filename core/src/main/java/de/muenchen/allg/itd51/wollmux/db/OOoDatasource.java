@@ -24,12 +24,15 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,17 +42,20 @@ import com.sun.star.sdb.XColumn;
 import com.sun.star.sdbc.SQLException;
 import com.sun.star.sdbc.XColumnLocate;
 import com.sun.star.sdbc.XConnection;
-import com.sun.star.sdbc.XDataSource;
+import com.sun.star.sdbc.XParameters;
 import com.sun.star.sdbc.XResultSet;
 import com.sun.star.sdbc.XRow;
 import com.sun.star.sdbc.XRowSet;
 import com.sun.star.sdbcx.XColumnsSupplier;
 import com.sun.star.sdbcx.XKeysSupplier;
+import com.sun.star.uno.UnoRuntime;
 
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
+import de.muenchen.allg.afid.UnoHelperException;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.db.OOoConnectionPool.PooledConnection;
 import de.muenchen.allg.itd51.wollmux.util.L;
 import de.muenchen.allg.util.UnoComponent;
 import de.muenchen.allg.util.UnoProperty;
@@ -63,10 +69,15 @@ public class OOoDatasource extends Datasource
   private static final Logger LOGGER = LoggerFactory.getLogger(OOoDatasource.class);
 
   /**
-   * Maximale Zeit in Sekunden, die die Datenquelle für die Verbindungsaufnahme mit
-   * der Datenbank brauchen darf.
+   * Default for the maximum number of pooled connections (POOL_SIZE).
    */
-  private static final int LOGIN_TIMEOUT = 5;
+  private static final int DEFAULT_POOL_SIZE = 2;
+
+  /**
+   * Default for the time in seconds after which an unused connection is closed
+   * (POOL_IDLE_TIMEOUT).
+   */
+  private static final int DEFAULT_POOL_IDLE_TIMEOUT = 60;
 
   /**
    * Konstante für {@link #sqlSyntax}, die angibt, dass SQL Queries in Oracle-Syntax
@@ -158,6 +169,11 @@ public class OOoDatasource extends Datasource
    */
   private List<String> schema;
 
+  /**
+   * The position of each column of {@link #schema}. Shared by all datasets of this data source.
+   */
+  private Map<String, Integer> columnIndex = new HashMap<>();
+
   /**
    * Die Namen der Spalten, die den Primärschlüssel bilden.
    */
@@ -170,6 +186,22 @@ public class OOoDatasource extends Datasource
 
   private static final String SQL_SELECT_COMMAND = "SELECT * FROM ";
 
+  /**
+   * The connections to the database.
+   */
+  private OOoConnectionPool pool;
+
+  /**
+   * Maximum number of rows returned by {@link #find(List)} and {@link #getContents()}, 0 if
+   * unlimited (MAX_ROWS).
+   */
+  private int maxRows;
+
+  /**
+   * The SQL of searches by the searched columns.
+   */
+  private Map<List<String>, String> findStatements = new ConcurrentHashMap<>();
+
   /**
    * Passwort für den Login bei der Datenbank.
    */
@@ -221,6 +253,13 @@ public class OOoDatasource extends Datasource
     userName = sourceDesc.getString("USER", "");
     password = sourceDesc.getString("PASSWORD", "");
 
+    int poolSize = parseNonNegative(sourceDesc, "POOL_SIZE", DEFAULT_POOL_SIZE);
+    int idleTimeout = parseNonNegative(sourceDesc, "POOL_IDLE_TIMEOUT", DEFAULT_POOL_IDLE_TIMEOUT);
+    maxRows = parseNonNegative(sourceDesc, "MAX_ROWS", 0);
+    pool = new OOoConnectionPool(
+        () -> UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName)), userName,
+        password, poolSize, TimeUnit.SECONDS.toMillis(idleTimeout), Datasource.getDatasourceTimeout());
+
     String sqlSyntaxStr = sourceDesc.getString("SQL_SYNTAX", "");
 
     sqlSyntaxStr = sqlSyntaxStr == null || sqlSyntaxStr.isEmpty() ? "mysql" : sqlSyntaxStr;
@@ -273,12 +312,12 @@ public class OOoDatasource extends Datasource
     {
       LOGGER.debug("Schema der Datenquelle {} nicht angegeben. Versuche, es von der Datenquelle zu erfragen.",
           datasourceName);
+      PooledConnection pooled = null;
+      boolean reusable = false;
       try
       {
-        XDataSource ds =
-          UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
-        ds.setLoginTimeout(LOGIN_TIMEOUT);
-        XConnection conn = ds.getConnection(userName, password);
+        pooled = pool.borrow();
+        XConnection conn = pooled.getConnection();
 
         /*
          * Laut IDL-Doku zu "View" müssen hier auch die Views enthalten sein.
@@ -351,6 +390,7 @@ public class OOoDatasource extends Datasource
             // Test ob kein Schluessel vorhanden siehe weiter unten
           }
         }
+        reusable = true;
       }
       catch (ConfigurationErrorException x)
       {
@@ -362,11 +402,23 @@ public class OOoDatasource extends Datasource
           "Schema of OOo-datasource \"%1\" could not be read.",
           oooDatasourceName), x);
       }
+      finally
+      {
+        if (pooled != null)
+        {
+          pool.release(pooled, reusable);
+        }
+      }
 
       if (keyColumns.length == 0)
         throw new ConfigurationErrorException(L.m(
           "Data source \"%1\": No Key column defined", datasourceName));
     }
+
+    for (int i = 0; i < schema.size(); i++)
+    {
+      columnIndex.putIfAbsent(schema.get(i), i);
+    }
   }
 
   /**
@@ -399,6 +451,34 @@ public class OOoDatasource extends Datasource
     keyColumns = columns.toArray(keyColumns);
   }
 
+  /**
+   * Reads an optional non-negative integer from the data source description.
+   *
+   * @throws ConfigurationErrorException
+   *           The value isn't a non-negative integer.
+   */
+  private int parseNonNegative(ConfigThingy sourceDesc, String key, int defaultValue)
+  {
+    String value = sourceDesc.getString(key, null);
+    if (value == null)
+    {
+      return defaultValue;
+    }
+    try
+    {
+      int number = Integer.parseInt(value.trim());
+      if (number >= 0)
+      {
+        return number;
+      }
+    } catch (NumberFormatException e)
+    {
+      LOGGER.trace("", e);
+    }
+    throw new ConfigurationErrorException(
+        L.m("Data source \"%1\": %2 has to be a non-negative integer", datasourceName, key));
+  }
+
   @Override
   public List<String> getSchema()
   {
@@ -412,35 +492,100 @@ public class OOoDatasource extends Datasource
       return new QueryResultsList(new ArrayList<Dataset>(0));
     }
 
+    List<String[]> decodedKeys = new ArrayList<>(keys.size());
+    for (String key : keys)
+    {
+      String[] parts = key.split("#", -1);
+      for (int i = 0; i < parts.length; i++)
+      {
+        parts[i] = decode(parts[i]);
+      }
+      decodedKeys.add(parts);
+    }
+
     StringBuilder buffy =
         new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> parameters = new ArrayList<>();
 
-    Iterator<String> iter = keys.iterator();
-    boolean first = true;
-    while (iter.hasNext())
+    String singleColumn = getSingleKeyColumn(decodedKeys);
+    if (singleColumn != null)
     {
-      if (!first) {
-        buffy.append(" OR ");
-      }
-      first = false;
-      String key = iter.next();
-      String[] parts = key.split("#", -1);
-      buffy.append('(');
-      for (int i = 1; i < parts.length; i += 2)
+      buffy.append(sqlIdentifier(singleColumn));
+      buffy.append(" IN (");
+      // pad the list with the last key, so that only a few different statements are prepared
+      int size = getInListSize(decodedKeys.size());
+      for (int i = 0; i < size; i++)
       {
-        if (i > 1) {
-          buffy.append(" AND ");
+        if (i > 0) {
+          buffy.append(", ");
         }
-        buffy.append(sqlIdentifier(decode(parts[i - 1])));
-        buffy.append('=');
-        buffy.append(sqlLiteral(decode(parts[i])));
+        buffy.append('?');
+        parameters.add(decodedKeys.get(Math.min(i, decodedKeys.size() - 1))[1]);
       }
       buffy.append(')');
     }
+    else
+    {
+      boolean first = true;
+      for (String[] parts : decodedKeys)
+      {
+        if (!first) {
+          buffy.append(" OR ");
+        }
+        first = false;
+        buffy.append('(');
+        for (int i = 1; i < parts.length; i += 2)
+        {
+          if (i > 1) {
+            buffy.append(" AND ");
+          }
+          buffy.append(sqlIdentifier(parts[i - 1]));
+          buffy.append("=?");
+          parameters.add(parts[i]);
+        }
+        buffy.append(')');
+      }
+    }
 
     buffy.append(';');
 
-    return sqlQuery(buffy.toString());
+    return sqlQuery(buffy.toString(), parameters);
+  }
+
+  /**
+   * The number of values of an IN list for the given number of keys. It's the next power of two,
+   * so that the IN lists of all key lookups result in a few different statements.
+   *
+   * @param keys
+   *          The number of keys, at least 1.
+   * @return The number of values in the IN list.
+   */
+  static int getInListSize(int keys)
+  {
+    return keys <= 1 ? 1 : Integer.highestOneBit(keys - 1) << 1;
+  }
+
+  /**
+   * If all keys consist of the same single column, the keys can be looked up with one IN
+   * predicate.
+   *
+   * @param decodedKeys
+   *          The keys split into alternating column names and values.
+   * @return The name of the column or null if the keys use different or more columns.
+   */
+  private static String getSingleKeyColumn(List<String[]> decodedKeys)
+  {
+    String column = null;
+    for (String[] parts : decodedKeys)
+    {
+      // a key "column#value#" is split into "column", "value" and ""
+      if (parts.length != 3 || (column != null && !column.equals(parts[0])))
+      {
+        return null;
+      }
+      column = parts[0];
+    }
+    return column;
   }
 
   @Override
@@ -450,22 +595,45 @@ public class OOoDatasource extends Datasource
       return new QueryResultsList(new Vector<Dataset>(0));
     }
 
-    StringBuilder buffy =
-        new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    List<String> columns = new ArrayList<>(query.size());
+    List<String> patterns = new ArrayList<>(query.size());
+    for (QueryPart part : query)
+    {
+      columns.add(part.getColumnName());
+      patterns.add(sqlSearchPattern(part.getSearchString()));
+    }
 
-    Iterator<QueryPart> iter = query.iterator();
-    boolean first = true;
-    while (iter.hasNext())
+    if (SQL_SYNTAX_PERVASIVESQL == sqlSyntax)
     {
-      QueryPart part = iter.next();
-      if (!first) {
+      // Rechts vom LIKE können nur einfache Konstanten stehen, daher werden die Suchmuster als
+      // Literale eingefügt.
+      return sqlQuery(createFindStatement(columns, patterns), Collections.emptyList());
+    }
+    return sqlQuery(findStatements.computeIfAbsent(columns, c -> createFindStatement(c, null)),
+        patterns);
+  }
+
+  /**
+   * Creates the SQL of a search over the given columns.
+   *
+   * @param patterns
+   *          The search patterns, which are inserted as literals for PervasiveSQL. For the other
+   *          SQL_SYNTAXes the patterns are parameters and this argument is ignored.
+   */
+  private String createFindStatement(List<String> columns, List<String> patterns)
+  {
+    StringBuilder buffy = new StringBuilder(selectFrom() + " WHERE ");
+
+    for (int i = 0; i < columns.size(); i++)
+    {
+      String column = columns.get(i);
+      if (i > 0) {
         buffy.append(" AND ");
       }
-      first = false;
       buffy.append('(');
       buffy.append(sqlLower());
       buffy.append('(');
-      buffy.append(sqlIdentifier(part.getColumnName()));
+      buffy.append(sqlIdentifier(column));
       buffy.append(')');
       buffy.append(" LIKE ");
 
@@ -476,60 +644,121 @@ public class OOoDatasource extends Datasource
           // Die Inhalte der zu durchsuchenden Spalte können wiederum mit lcase/lower
           // behandelt werden. Somit ist sichergestellt, dass der durchsuchende und der zu
           // suchende String nur Kleinbuchstaben enthält.
-          buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())).toLowerCase());
+          buffy.append(sqlLiteral(patterns.get(i)).toLowerCase());
       } else {
         buffy.append(sqlLower());
-        buffy.append('(');
-        buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())));
-        buffy.append(") ESCAPE '|'");
+        buffy.append("(?) ESCAPE '|'");
       }
 
       buffy.append(')');
     }
 
+    buffy.append(limit());
     buffy.append(';');
-    return sqlQuery(buffy.toString());
+    return buffy.toString();
   }
 
   @Override
   public QueryResults getContents()
   {
-    return sqlQuery(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + ";");
+    return sqlQuery(selectFrom() + limit() + ";", Collections.emptyList());
   }
 
   /**
-   * Setzt die SQL-Anfrage query an die Datenbank ab und liefert die Resultate.
+   * Setzt die SQL-Anfrage query mit den Parametern parameters an die Datenbank ab und liefert die
+   * Resultate. Die Anfrage wird als RowSet auf der Verbindung zwischengespeichert.
+   *
+   * All rows are read before the results are returned, so that the connection is back in the pool
+   * right away. Otherwise callers holding several unread results, e.g. {@link Search}, could use up
+   * all connections of the pool and block each other.
    */
-  private QueryResults sqlQuery(String query)
+  private QueryResults sqlQuery(String query, List<String> parameters)
   {
-    LOGGER.debug("sqlQuery(\"{}\")", query);
-
-    List<OOoDataset> datasets = new ArrayList<>();
+    LOGGER.debug("sqlQuery(\"{}\", {})", query, parameters);
 
-    XRowSet results = null;
-    XConnection conn = null;
+    PooledConnection pooled = null;
     try
     {
+      pooled = pool.borrow();
+    }
+    catch (com.sun.star.uno.Exception x)
+    {
+      LOGGER.error("Kann keine Verbindung zur Datenquelle herstellen", x);
+      return new QueryResultsList(new ArrayList<Dataset>(0));
+    }
 
-      try
-      {
-        XDataSource ds =
-          UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
-
-        ds.setLoginTimeout((int) Datasource.getDatasourceTimeout());
-        conn = ds.getConnection(userName, password);
-      }
-      catch (SQLException x)
+    RowCursor cursor = null;
+    try
+    {
+      XRowSet rowSet = prepareRowSet(pooled, query);
+      XParameters params = UnoRuntime.queryInterface(XParameters.class, rowSet);
+      params.clearParameters();
+      for (int i = 0; i < parameters.size(); i++)
       {
-        LOGGER.error("Kann keine Verbindung zur Datenquelle herstellen", x);
+        params.setString(i + 1, parameters.get(i));
       }
+      rowSet.execute();
 
-      results = UNO.XRowSet(UnoComponent.createComponentWithContext(UnoComponent.CSS_SDB_ROW_SET));
+      cursor = new RowCursor(pooled, rowSet);
+    }
+    catch (Exception x)
+    {
+      LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+      pool.release(pooled, false);
+      return new QueryResultsList(new ArrayList<Dataset>(0));
+    }
 
-      if (results == null)
-        throw new NullPointerException(L.m("Could not create RowSet"));
+    StreamingQueryResults results = new StreamingQueryResults(cursor);
+    // reads all rows and closes the cursor
+    results.size();
+    return results;
+  }
 
-      UnoProperty.setProperty(results, UnoProperty.ACTIVE_CONNECTION, conn);
+  /**
+   * The beginning of a query over {@link #oooTableName} up to the WHERE clause. Contains the row
+   * limit if the SQL_SYNTAX requires it there.
+   */
+  private String selectFrom()
+  {
+    if (maxRows > 0 && SQL_SYNTAX_PERVASIVESQL == sqlSyntax)
+    {
+      return "SELECT TOP " + maxRows + " * FROM " + sqlIdentifier(oooTableName);
+    }
+    return SQL_SELECT_COMMAND + sqlIdentifier(oooTableName);
+  }
+
+  /**
+   * The row limit to append to a query, if the SQL_SYNTAX requires it at the end.
+   */
+  private String limit()
+  {
+    if (maxRows <= 0 || SQL_SYNTAX_PERVASIVESQL == sqlSyntax)
+    {
+      return "";
+    }
+    if (SQL_SYNTAX_MYSQL == sqlSyntax)
+    {
+      return " LIMIT " + maxRows;
+    }
+    return " FETCH FIRST " + maxRows + " ROWS ONLY";
+  }
+
+  /**
+   * Returns the row set for query which has been created on the connection before or creates a
+   * new one. The row set prepares its statement on the first execution and reuses it afterwards.
+   */
+  private XRowSet prepareRowSet(PooledConnection pooled, String query)
+      throws SQLException, UnoHelperException
+  {
+    XRowSet rowSet = pooled.getRowSet(query);
+    if (rowSet == null)
+    {
+      rowSet = UNO.XRowSet(UnoComponent.createComponentWithContext(UnoComponent.CSS_SDB_ROW_SET));
+      if (rowSet == null)
+      {
+        throw new SQLException(L.m("Could not create RowSet"));
+      }
+      UnoProperty.setProperty(rowSet, UnoProperty.ACTIVE_CONNECTION, pooled.getConnection());
 
       /*
        * EscapeProcessing == false bedeutet, dass OOo die Query nicht selbst anfassen
@@ -538,87 +767,46 @@ public class OOoDatasource extends Datasource
        * Statements durchführen kann, die es nicht geparst hat. Siehe Kommentar zu
        * http://qa.openoffice.org/issues/show_bug.cgi?id=78522 Entspricht dem Button
        * SQL mit grünem Haken (SQL-Kommando direkt ausführen) im Base-Abfrageentwurf.
+       * Muss vor dem Kommando gesetzt werden, damit das Statement nie geparst wird.
        */
-      UnoProperty.setProperty(results, UnoProperty.ESCAPE_PROCESSING, Boolean.FALSE);
-
-      UnoProperty.setProperty(results, UnoProperty.COMMAND_TYPE, CommandType.COMMAND);
-      UnoProperty.setProperty(results, UnoProperty.COMMAND, query);
-
-      results.execute();
-
-      Map<String, Integer> mapColumnNameToIndex = getColumnMapping(results);
-      XRow row = UNO.XRow(results);
-
-      while (results.next())
-      {
-        Map<String, String> data = new HashMap<>();
-        Iterator<Map.Entry<String, Integer>> iter =
-          mapColumnNameToIndex.entrySet().iterator();
-        while (iter.hasNext())
-        {
-          Map.Entry<String, Integer> entry = iter.next();
-          String column = entry.getKey();
-          int idx = entry.getValue().intValue();
-          String value = null;
-          if (idx > 0) {
-            value = row.getString(idx);
-          }
-          data.put(column, value);
-        }
-        datasets.add(new OOoDataset(data));
-      }
-
-    }
-    catch (Exception x)
-    {
-      LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+      UnoProperty.setProperty(rowSet, UnoProperty.ESCAPE_PROCESSING, Boolean.FALSE);
+      UnoProperty.setProperty(rowSet, UnoProperty.COMMAND_TYPE, CommandType.COMMAND);
+      UnoProperty.setProperty(rowSet, UnoProperty.COMMAND, query);
+      pooled.putRowSet(query, rowSet);
     }
-    finally
-    {
-      if (results != null) {
-        UNO.XComponent(results).dispose();
-      }
-      if (conn != null) {
-        try
-        {
-          conn.close();
-        }
-        catch (Exception e)
-        {
-          LOGGER.trace("", e);
-        }
-      }
-    }
-
-    return new QueryResultsList(datasets);
+    return rowSet;
+  }
 
+  /**
+   * Liefert str als SQL-Stringliteral zurück.
+   */
+  private static String sqlLiteral(String str)
+  {
+    return "'" + str.replaceAll("'", "''") + "'";
   }
 
   /**
-   * Liefert eine Abbildung der Spaltennamen aus {@link #schema} auf Integer-Indizes,
-   * die die Spaltennummern für XRow(results)::getString() sind. Falls eine Spalte
-   * nicht existiert, ist ihr index <= 0.
+   * Liefert zu jeder Spalte aus {@link #schema} die Spaltennummer für
+   * XRow(results)::getString(). Falls eine Spalte nicht existiert, ist ihr Index <= 0.
    */
-  private Map<String, Integer> getColumnMapping(XResultSet results)
+  private int[] getColumnMapping(XResultSet results)
   {
-    Map<String, Integer> mapColumnNameToIndex = new HashMap<>();
+    int[] mapping = new int[schema.size()];
     XColumnLocate loc = UNO.XColumnLocate(results);
-    Iterator<String> iter = getSchema().iterator();
-    while (iter.hasNext())
+    for (int i = 0; i < mapping.length; i++)
     {
-      String column = iter.next();
       int idx = -1;
       try
       {
-        idx = loc.findColumn(column);
+        idx = loc.findColumn(schema.get(i));
       }
       catch (SQLException x)
       {
         LOGGER.trace("", x);
       }
-      mapColumnNameToIndex.put(column, Integer.valueOf(idx));
+      mapping[i] = idx;
     }
-    return mapColumnNameToIndex;
+    return mapping;
   }
 
   /**
@@ -634,18 +822,6 @@ public class OOoDatasource extends Datasource
     }
   }
 
-  /**
-   * Liefert str zurück, als String-Literal vorbereitet für das Einfügen in
-   * SQL-Statements.
-   *
-   * @param str
-   *          beginnt und endet immer mit einem Apostroph.
-   */
-  private static String sqlLiteral(String str)
-  {
-    return "'" + str.replaceAll("'", "''") + "'";
-  }
-
   /**
    * Liefert str zurück, als Identifier-Name vorbereitet für das Einfügen in
    * SQL-Statements.
@@ -679,16 +855,91 @@ public class OOoDatasource extends Datasource
     return datasourceName;
   }
 
+  @Override
+  public void close()
+  {
+    pool.close();
+  }
+
+  /**
+   * Reads the rows of a result set as {@link OOoDataset}s. Gives the connection back to the pool
+   * when it is closed, which happens as soon as all rows have been read.
+   */
+  private class RowCursor implements StreamingQueryResults.Cursor
+  {
+    private final PooledConnection pooled;
+
+    private final XResultSet results;
+
+    private final XRow row;
+
+    /**
+     * The column numbers in the result set of the columns of {@link #schema}.
+     */
+    private final int[] columns;
+
+    /**
+     * True if the connection shouldn't be reused, because an error occurred.
+     */
+    private boolean broken = false;
+
+    private RowCursor(PooledConnection pooled, XResultSet results)
+    {
+      this.pooled = pooled;
+      this.results = results;
+      this.row = UNO.XRow(results);
+      this.columns = getColumnMapping(results);
+    }
+
+    @Override
+    public Dataset next() throws SQLException
+    {
+      try
+      {
+        if (!results.next())
+        {
+          return null;
+        }
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++)
+        {
+          if (columns[i] > 0)
+          {
+            values[i] = row.getString(columns[i]);
+          }
+        }
+        return new OOoDataset(values);
+      }
+      catch (SQLException | RuntimeException x)
+      {
+        broken = true;
+        throw x;
+      }
+    }
+
+    /**
+     * The row set isn't closed, because that would discard its prepared statement. Its result is
+     * released by the next execution or when the connection is closed.
+     */
+    @Override
+    public void close()
+    {
+      pool.release(pooled, !broken);
+    }
+  }
+
   private class OOoDataset implements Dataset
   {
-    private Map<String, String> data;
+    /**
+     * The values in the order of {@link #schema}.
+     */
+    private String[] values;
 
     private String key;
 
-    public OOoDataset(Map<String, String> data)
+    public OOoDataset(String[] values)
     {
-      this.data = data;
-      initKey(keyColumns);
+      this.values = values;
     }
 
     /**
@@ -697,12 +948,13 @@ public class OOoDatasource extends Datasource
      * @param keyCols
      *          die Namen der Schlüsselspalten
      */
-    private void initKey(String[] keyCols)
+    private String buildKey(String[] keyCols)
     {
       StringBuilder buffy = new StringBuilder();
       for (int i = 0; i < keyCols.length; ++i)
       {
-        String str = data.get(keyCols[i]);
+        Integer idx = columnIndex.get(keyCols[i]);
+        String str = idx == null ? null : values[idx];
         if (str != null)
         {
           buffy.append(encode(keyCols[i]));
@@ -712,21 +964,26 @@ public class OOoDatasource extends Datasource
         }
       }
 
-      key = buffy.toString();
+      return buffy.toString();
     }
 
     @Override
     public String get(String columnName) throws ColumnNotFoundException
     {
-      if (!schema.contains(columnName))
+      Integer idx = columnIndex.get(columnName);
+      if (idx == null)
         throw new ColumnNotFoundException(L.m("Column %1 does not exist!",
           columnName));
-      return data.get(columnName);
+      return values[idx];
     }
 
     @Override
     public String getKey()
     {
+      if (key == null)
+      {
+        key = buildKey(keyColumns);
+      }
       return key;
     }
 
@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+/**
+ * The analyzed search string of a {@link QueryPart}. All '*' are removed and the search string is
+ * converted to lower case. If the remaining string contains no regular expression meta characters
+ * apart from a leading '^' and a trailing '$', it is a literal which can be matched with plain
+ * string operations.
+ */
+final class QueryPattern
+{
+  /**
+   * Characters with a special meaning in regular expressions.
+   */
+  private static final String REGEX_META_CHARACTERS = "\\[](){}.?+|*^$";
+
+  private final String search;
+
+  private final String literal;
+
+  private final boolean anchorStart;
+
+  private final boolean anchorEnd;
+
+  QueryPattern(QueryPart part)
+  {
+    search = part.getSearchString().replace("*", "").toLowerCase();
+    anchorStart = search.startsWith("^");
+    anchorEnd = search.length() > (anchorStart ? 1 : 0) && search.endsWith("$");
+    String withoutAnchors = search.substring(anchorStart ? 1 : 0,
+        anchorEnd ? search.length() - 1 : search.length());
+    literal = isLiteral(withoutAnchors) ? withoutAnchors : null;
+  }
+
+  /**
+   * The lower case search string without '*'. If it isn't a literal, it's a regular expression.
+   */
+  String getSearch()
+  {
+    return search;
+  }
+
+  /**
+   * True if the search string doesn't need a regular expression.
+   */
+  boolean isLiteral()
+  {
+    return literal != null;
+  }
+
+  /**
+   * The search string without anchors, or null if it isn't a literal.
+   */
+  String getLiteral()
+  {
+    return literal;
+  }
+
+  /**
+   * True if the value has to start with the literal.
+   */
+  boolean isAnchorStart()
+  {
+    return anchorStart;
+  }
+
+  /**
+   * True if the value has to end with the literal.
+   */
+  boolean isAnchorEnd()
+  {
+    return anchorEnd;
+  }
+
+  private static boolean isLiteral(String search)
+  {
+    for (int i = 0; i < search.length(); i++)
+    {
+      if (REGEX_META_CHARACTERS.indexOf(search.charAt(i)) >= 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -24,13 +24,20 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Stellt die Vereinigung mehrerer QueryResults dar.
  *
  * Dabei werden doppelte Ergebnisse herausgefiltert. Es handelt sich um eine mathematische Vereinigung.
+ *
+ * Without a comparator, datasets are equal if they have the same class and the same key. These
+ * datasets are detected with a hash set, so adding a dataset takes constant time. With a comparator
+ * every new dataset is compared with all datasets of the set.
  * @author daniel.sikeler
  */
 public class QueryResultsSet implements QueryResults
@@ -44,6 +51,20 @@ public class QueryResultsSet implements QueryResults
    */
   private final Comparator<Dataset> comparator;
 
+  /**
+   * Class and key of all datasets in {@link #results}, if there's no comparator.
+   */
+  private final Set<DatasetId> ids;
+
+  /**
+   * Creates an empty set. Datasets are equal if they have the same class and the same key.
+   */
+  public QueryResultsSet()
+  {
+    this.comparator = null;
+    this.ids = new HashSet<>();
+  }
+
   /**
    * Erstellt eine leere Menge.
    * @param comparator Der Comparator, der beim Hinzufügen für Vergleiche verwendet wird.
@@ -51,6 +72,7 @@ public class QueryResultsSet implements QueryResults
   public QueryResultsSet(Comparator<Dataset> comparator)
   {
     this.comparator = comparator;
+    this.ids = null;
   }
 
   /**
@@ -70,6 +92,15 @@ public class QueryResultsSet implements QueryResults
    */
   public void add(Dataset dataset)
   {
+    if (ids != null)
+    {
+      if (ids.add(new DatasetId(dataset)))
+      {
+        results.add(dataset);
+      }
+      return;
+    }
+
     boolean present = false;
     for (Dataset ds : results)
     {
@@ -115,4 +146,40 @@ public class QueryResultsSet implements QueryResults
     return results.isEmpty();
   }
 
+  /**
+   * Identifies a dataset by its class and its key.
+   */
+  private static class DatasetId
+  {
+    private final Class<?> datasetClass;
+
+    private final String key;
+
+    DatasetId(Dataset dataset)
+    {
+      this.datasetClass = dataset.getClass();
+      this.key = dataset.getKey();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hash(datasetClass, key);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+      {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass())
+      {
+        return false;
+      }
+      DatasetId other = (DatasetId) obj;
+      return datasetClass == other.datasetClass && Objects.equals(key, other.key);
+    }
+  }
 }
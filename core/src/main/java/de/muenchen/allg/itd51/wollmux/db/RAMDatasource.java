@@ -23,14 +23,31 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Vector;
 import java.util.function.Predicate;
 
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.util.L;
+
 /**
  * Oberklasse für Datasources, die ihre Daten vollständig im Speicher halten
+ *
+ * Datasets are indexed by their key. Additional indexes for columns can be declared in the
+ * "Datenquelle" section, e.g.
+ *
+ * <pre>
+ * INDEX(EXACT("Mail") PREFIX("Nachname") NGRAM("Nachname" "Vorname"))
+ * </pre>
+ *
+ * See {@link ColumnIndex.Type} for the supported kinds of indexes.
  */
 public class RAMDatasource extends Datasource
 {
@@ -49,6 +66,16 @@ public class RAMDatasource extends Datasource
    */
   private String name;
 
+  /**
+   * Maps the keys to the positions of the datasets in {@link #data}.
+   */
+  private Map<String, int[]> keyIndex;
+
+  /**
+   * The indexes of the columns.
+   */
+  private Map<String, List<ColumnIndex>> columnIndexes = new HashMap<>();
+
   /**
    * Erzeugt eine neue RAMDatasource mit Namen name. data und schema werden direkt als Referenz
    * eingebunden, nicht kopiert.
@@ -81,8 +108,67 @@ public class RAMDatasource extends Datasource
   protected void init(String name, List<String> schema, List<Dataset> data)
   {
     this.schema = schema;
-    this.data = data;
+    this.data = data instanceof RandomAccess ? data : new ArrayList<>(data);
     this.name = name;
+    this.columnIndexes = new HashMap<>();
+
+    Map<String, ColumnIndex.Rows> keys = new HashMap<>();
+    for (int i = 0; i < this.data.size(); i++)
+    {
+      keys.computeIfAbsent(this.data.get(i).getKey(), k -> new ColumnIndex.Rows()).add(i);
+    }
+    keyIndex = ColumnIndex.toArrays(keys);
+  }
+
+  /**
+   * Creates the column indexes declared in the section INDEX of a "Datenquelle". Has to be called
+   * after {@link #init(String, List, List)}.
+   *
+   * @param sourceDesc
+   *          The description of the data source.
+   * @throws ConfigurationErrorException
+   *           The kind of an index is unknown or a column isn't part of the schema.
+   */
+  protected void initIndexes(ConfigThingy sourceDesc)
+  {
+    for (ConfigThingy indexes : sourceDesc.query("INDEX", 1))
+    {
+      for (ConfigThingy indexDesc : indexes)
+      {
+        ColumnIndex.Type type;
+        try
+        {
+          type = ColumnIndex.Type.valueOf(indexDesc.getName());
+        } catch (IllegalArgumentException e)
+        {
+          throw new ConfigurationErrorException(
+              L.m("Data source %1: Unknown index type \"%2\"", name, indexDesc.getName()), e);
+        }
+        for (ConfigThingy column : indexDesc)
+        {
+          if (!schema.contains(column.toString()))
+          {
+            throw new ConfigurationErrorException(L.m(
+                "Data source %1: Index column \"%2\" is not defined in schema", name, column));
+          }
+          addIndex(type, column.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates an index of a column.
+   *
+   * @param type
+   *          The kind of index.
+   * @param column
+   *          The column.
+   */
+  void addIndex(ColumnIndex.Type type, String column)
+  {
+    columnIndexes.computeIfAbsent(column, c -> new ArrayList<>())
+        .add(ColumnIndex.create(type, column, data));
   }
 
   @Override
@@ -94,18 +180,18 @@ public class RAMDatasource extends Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
-    List<Dataset> res = new ArrayList<>();
-    Iterator<Dataset> iter = data.iterator();
-    while (iter.hasNext())
+    ColumnIndex.Rows rows = new ColumnIndex.Rows();
+    for (String key : new HashSet<>(keys))
     {
-      Dataset ds = iter.next();
-      if (keys.contains(ds.getKey()))
+      int[] positions = keyIndex.get(key);
+      if (positions != null)
       {
-        res.add(ds);
+        rows.addAll(positions);
       }
     }
-
-    return new QueryResultsList(res);
+    int[] positions = rows.toArray();
+    Arrays.sort(positions);
+    return new QueryResultsList(getDatasets(positions));
   }
 
   /*
@@ -125,16 +211,69 @@ public class RAMDatasource extends Datasource
 
     List<Dataset> results = new ArrayList<>();
 
-    data.forEach(ds -> {
-      if (pred.test(ds))
+    int[] candidates = findCandidates(query);
+    if (candidates == null)
+    {
+      data.forEach(ds -> {
+        if (pred.test(ds))
+        {
+          results.add(ds);
+        }
+      });
+    } else
+    {
+      for (Dataset ds : getDatasets(candidates))
       {
-        results.add(ds);
+        if (pred.test(ds))
+        {
+          results.add(ds);
+        }
       }
-    });
+    }
 
     return new QueryResultsList(results);
   }
 
+  /**
+   * Uses the column indexes to find the datasets which may match the query.
+   *
+   * @param query
+   *          The query.
+   * @return Ascending positions of the candidates or null if no index can be used.
+   */
+  private int[] findCandidates(List<QueryPart> query)
+  {
+    int[] candidates = null;
+    for (QueryPart part : query)
+    {
+      List<ColumnIndex> indexes = columnIndexes.getOrDefault(part.getColumnName(), List.of());
+      if (indexes.isEmpty())
+      {
+        continue;
+      }
+      QueryPattern pattern = new QueryPattern(part);
+      for (ColumnIndex index : indexes)
+      {
+        int[] rows = index.find(pattern);
+        if (rows != null)
+        {
+          candidates = candidates == null ? rows : ColumnIndex.intersect(candidates, rows);
+        }
+      }
+    }
+    return candidates;
+  }
+
+  private List<Dataset> getDatasets(int[] positions)
+  {
+    List<Dataset> datasets = new ArrayList<>(positions.length);
+    for (int pos : positions)
+    {
+      datasets.add(data.get(pos));
+    }
+    return datasets;
+  }
+
   @Override
   public QueryResults getContents()
   {
@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Pool of resources like connections, so that not every access has to open a new one.
+ *
+ * Unused resources are kept in a bounded list and closed after they have been idle for longer
+ * than the idle timeout. If the number of resources in use is bounded, callers wait until a
+ * resource becomes free. After the pool has been closed, resources are still handed out, but
+ * aren't pooled anymore.
+ *
+ * @param <T>
+ *          The type of the resources.
+ * @param <E>
+ *          The exception thrown if no resource can be provided.
+ */
+abstract class ResourcePool<T, E extends Exception> implements AutoCloseable
+{
+
+  /**
+   * Maximum number of unused resources, 0 if resources shouldn't be pooled.
+   */
+  private final int maxIdle;
+
+  /**
+   * Maximum number of resources in use, 0 if it's unbounded.
+   */
+  private final int maxTotal;
+
+  /**
+   * Time in milliseconds after which an unused resource is closed.
+   */
+  private final long idleTimeout;
+
+  /**
+   * Time in milliseconds to wait for a resource if {@link #maxTotal} resources are in use.
+   */
+  private final long timeout;
+
+  /**
+   * Unused resources, the most recently used one first.
+   */
+  private final Deque<IdleResource<T>> idle = new ArrayDeque<>();
+
+  /**
+   * Number of resources which are currently in use or are being created.
+   */
+  private int borrowed = 0;
+
+  private boolean closed = false;
+
+  /**
+   * Time source for the idle timeout.
+   */
+  LongSupplier clock = System::currentTimeMillis;
+
+  /**
+   * Create a new pool.
+   *
+   * @param maxIdle
+   *          The maximum number of unused resources, 0 to disable pooling.
+   * @param maxTotal
+   *          The maximum number of resources in use, 0 for no limit.
+   * @param idleTimeout
+   *          Time in milliseconds after which an unused resource is closed.
+   * @param timeout
+   *          Time in milliseconds to wait for a free resource.
+   */
+  ResourcePool(int maxIdle, int maxTotal, long idleTimeout, long timeout)
+  {
+    this.maxIdle = maxIdle;
+    this.maxTotal = maxTotal;
+    this.idleTimeout = idleTimeout;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Create a new resource.
+   *
+   * @return The resource.
+   * @throws E
+   *           The resource couldn't be created.
+   */
+  abstract T create() throws E;
+
+  /**
+   * Prepare an unused resource for the next caller.
+   *
+   * @param resource
+   *          The resource.
+   * @return False if the resource is broken and has to be closed.
+   */
+  abstract boolean activate(T resource);
+
+  /**
+   * Close a resource. Errors are only logged.
+   *
+   * @param resource
+   *          The resource.
+   */
+  abstract void destroy(T resource);
+
+  /**
+   * The exception thrown if no resource became free in time.
+   *
+   * @return The exception.
+   */
+  abstract E exhausted();
+
+  /**
+   * Get a resource. The resource has to be given back with {@link #release(Object, boolean)}.
+   *
+   * @return An activated resource.
+   * @throws E
+   *           No new resource could be created or no resource became free in time.
+   */
+  T borrow() throws E
+  {
+    T resource = reserve();
+    if (resource != null)
+    {
+      return resource;
+    }
+
+    try
+    {
+      return create();
+    } catch (Exception e)
+    {
+      synchronized (this)
+      {
+        borrowed--;
+        notifyAll();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Give back a resource.
+   *
+   * @param resource
+   *          The resource from {@link #borrow()}.
+   * @param reusable
+   *          If false, the resource is closed, e.g. because the connection failed.
+   */
+  void release(T resource, boolean reusable)
+  {
+    boolean close = !reusable;
+    synchronized (this)
+    {
+      borrowed--;
+      if (!close && !closed && idle.size() < maxIdle)
+      {
+        idle.addFirst(new IdleResource<>(resource, clock.getAsLong()));
+      } else
+      {
+        close = true;
+      }
+      notifyAll();
+    }
+    if (close)
+    {
+      destroy(resource);
+    }
+  }
+
+  /**
+   * Closes all unused resources. Resources which are in use are closed when they are given back.
+   */
+  @Override
+  public void close()
+  {
+    Deque<IdleResource<T>> unused;
+    synchronized (this)
+    {
+      closed = true;
+      unused = new ArrayDeque<>(idle);
+      idle.clear();
+    }
+    unused.forEach(r -> destroy(r.resource));
+  }
+
+  /**
+   * Number of unused resources.
+   */
+  synchronized int getIdleCount()
+  {
+    return idle.size();
+  }
+
+  /**
+   * Takes an activated idle resource or reserves space for a new one.
+   *
+   * @return An idle resource or null if a new one has to be created.
+   */
+  private T reserve() throws E
+  {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    while (true)
+    {
+      IdleResource<T> pooled;
+      synchronized (this)
+      {
+        evictIdle();
+        pooled = idle.pollFirst();
+        if (pooled == null)
+        {
+          if (maxTotal <= 0 || borrowed < maxTotal)
+          {
+            borrowed++;
+            return null;
+          }
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0)
+          {
+            throw exhausted();
+          }
+          try
+          {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          } catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            throw exhausted();
+          }
+          continue;
+        }
+        borrowed++;
+      }
+
+      if (activate(pooled.resource))
+      {
+        return pooled.resource;
+      }
+      destroy(pooled.resource);
+      synchronized (this)
+      {
+        borrowed--;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Closes all resources which have been idle for too long. The oldest resources are at the end
+   * of {@link #idle}.
+   */
+  private void evictIdle()
+  {
+    long now = clock.getAsLong();
+    while (!idle.isEmpty() && now - idle.peekLast().lastUsed >= idleTimeout)
+    {
+      destroy(idle.pollLast().resource);
+    }
+  }
+
+  /**
+   * An unused resource and the time it was given back.
+   */
+  private static class IdleResource<T>
+  {
+    private final T resource;
+
+    private final long lastUsed;
+
+    private IdleResource(T resource, long lastUsed)
+    {
+      this.resource = resource;
+      this.lastUsed = lastUsed;
+    }
+  }
+}
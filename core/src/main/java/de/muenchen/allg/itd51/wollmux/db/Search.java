@@ -86,31 +86,24 @@ public class Search
   }
 
   /**
-   * Führt die Ergenismengen zusammen. Dabei werden mehrfache Ergebnisse ausgefiltert.
+   * Führt die Ergenismengen zusammen. Dabei werden mehrfache Ergebnisse ausgefiltert. Datensätze
+   * sind gleich, wenn sie die gleiche Klasse und den gleichen Schlüssel haben. Jede Ergebnismenge
+   * wird nur einmal durchlaufen, die Reihenfolge der Ergebnisse bleibt erhalten.
    * 
    * @return bereinigte Ergebnisliste.
    */
   private static QueryResults mergeListOfQueryResultsList(List<QueryResults> listOfQueryResultsList)
   {
-    QueryResultsSet results = new QueryResultsSet((o1, o2) -> {
-      if (o1.getClass() == o2.getClass() && o1.getKey() == o2.getKey())
-      {
-        return 0;
-      }
-      return 1;
-    });
-
     if (listOfQueryResultsList.size() == 1)
     {
       return listOfQueryResultsList.get(0);
-    } else
-    {
-      for (QueryResults queryResults : listOfQueryResultsList)
-      {
-        results.addAll(queryResults);
-      }
     }
 
+    QueryResultsSet results = new QueryResultsSet();
+    for (QueryResults queryResults : listOfQueryResultsList)
+    {
+      results.addAll(queryResults);
+    }
     return results;
   }
 
@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Results which are read lazily from a cursor, e.g. an open database result set.
+ *
+ * Datasets are pulled from the cursor only when an iterator reaches them, so the first results are
+ * available before the whole result has been transferred. Pulled datasets are kept, so that the
+ * results can be iterated several times. {@link #size()} reads the remaining datasets. The cursor is
+ * closed as soon as it is exhausted, fails, {@link #close()} is called or the results aren't
+ * reachable any more.
+ */
+public class StreamingQueryResults implements QueryResults, AutoCloseable
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamingQueryResults.class);
+
+  /**
+   * Closes the cursors of results which have been abandoned before they have been read completely.
+   */
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  /**
+   * Source of the datasets.
+   */
+  public interface Cursor
+  {
+    /**
+     * The next dataset.
+     *
+     * @return The dataset or null if there are no more datasets.
+     * @throws Exception
+     *           The dataset couldn't be read.
+     */
+    Dataset next() throws Exception;
+
+    /**
+     * Release the resources of the cursor. Called exactly once.
+     */
+    void close();
+  }
+
+  /**
+   * The datasets read so far.
+   */
+  private final List<Dataset> datasets = new ArrayList<>();
+
+  /**
+   * The source of further datasets.
+   */
+  private final CursorState state;
+
+  private final Cleaner.Cleanable cleanable;
+
+  /**
+   * Create new results.
+   *
+   * @param cursor
+   *          The source of the datasets.
+   */
+  public StreamingQueryResults(Cursor cursor)
+  {
+    state = new CursorState(cursor);
+    cleanable = CLEANER.register(this, state);
+  }
+
+  @Override
+  public synchronized int size()
+  {
+    while (fetch())
+    {
+      // read all datasets
+    }
+    return datasets.size();
+  }
+
+  @Override
+  public boolean isEmpty()
+  {
+    return !hasDataset(0);
+  }
+
+  @Override
+  public Iterator<Dataset> iterator()
+  {
+    return new Iterator<>()
+    {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext()
+      {
+        return hasDataset(index);
+      }
+
+      @Override
+      public Dataset next()
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        return getDataset(index++);
+      }
+    };
+  }
+
+  /**
+   * Stop reading. The datasets read so far stay available.
+   */
+  @Override
+  public synchronized void close()
+  {
+    cleanable.clean();
+  }
+
+  /**
+   * Read datasets until count datasets are available or the cursor is exhausted.
+   */
+  synchronized void prefetch(int count)
+  {
+    hasDataset(count - 1);
+  }
+
+  private synchronized boolean hasDataset(int index)
+  {
+    while (index >= datasets.size())
+    {
+      if (!fetch())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized Dataset getDataset(int index)
+  {
+    return datasets.get(index);
+  }
+
+  /**
+   * Read the next dataset from the cursor.
+   *
+   * @return True if a dataset has been read, false if there are no more datasets.
+   */
+  private boolean fetch()
+  {
+    if (state.cursor == null)
+    {
+      return false;
+    }
+    try
+    {
+      Dataset ds = state.cursor.next();
+      if (ds != null)
+      {
+        datasets.add(ds);
+        return true;
+      }
+    } catch (Exception e)
+    {
+      LOGGER.error("Error while reading the results", e);
+    }
+    close();
+    return false;
+  }
+
+  /**
+   * Holds the cursor until it is closed. Doesn't reference the results, so that the results can
+   * become unreachable.
+   */
+  private static class CursorState implements Runnable
+  {
+    private Cursor cursor;
+
+    private CursorState(Cursor cursor)
+    {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public synchronized void run()
+    {
+      if (cursor != null)
+      {
+        Cursor c = cursor;
+        cursor = null;
+        c.close();
+      }
+    }
+  }
+}
@@ -100,6 +100,7 @@ public class ThingyDatasource extends RAMDatasource
           keyCols);
 
       init(name, schema, data);
+      initIndexes(sourceDesc);
     }
     catch (NodeNotFoundException x)
     {
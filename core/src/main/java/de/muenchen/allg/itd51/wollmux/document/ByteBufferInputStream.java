@@ -29,7 +29,9 @@ import com.sun.star.io.XInputStream;
 import com.sun.star.io.XSeekable;
 
 /**
- * Wrapper für ByteBuffer zur Benutzung mit UNO.
+ * Wrapper für ByteBuffer zur Benutzung mit UNO. Der Stream liest aus einer eigenen, schreibgeschützten
+ * Sicht auf den Puffer, so dass mehrere Streams auf demselben Puffer sich nicht gegenseitig die
+ * Position verändern.
  */
 public class ByteBufferInputStream implements XInputStream, XSeekable
 {
@@ -38,7 +40,7 @@ public class ByteBufferInputStream implements XInputStream, XSeekable
 
   public ByteBufferInputStream(ByteBuffer buffer)
   {
-    this.buffer = buffer;
+    this.buffer = buffer.asReadOnlyBuffer();
   }
 
   @Override
@@ -80,7 +82,7 @@ public class ByteBufferInputStream implements XInputStream, XSeekable
   @Override
   public long getLength() throws IOException
   {
-    return buffer.capacity();
+    return buffer.limit();
   }
 
   @Override
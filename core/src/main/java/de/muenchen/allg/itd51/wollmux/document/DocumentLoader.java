@@ -22,20 +22,13 @@
  */
 package de.muenchen.allg.itd51.wollmux.document;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.nio.ByteBuffer;
+import java.io.File;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.sun.star.beans.PropertyState;
 import com.sun.star.beans.PropertyValue;
 import com.sun.star.io.XInputStream;
@@ -45,26 +38,41 @@ import com.sun.star.uno.Exception;
 
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoHelperException;
-import de.muenchen.allg.itd51.wollmux.util.L;
+import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
 
 /**
  * Funktionen zum Laden und Einfügen von Dokumenten. Geladene Dokumente werden
- * gecacht.
+ * im Speicher und im WollMux-Verzeichnis gecacht (siehe {@link FragmentCache}).
  */
 public class DocumentLoader
 {
   private static final Logger LOGGER = LoggerFactory
     .getLogger(DocumentLoader.class);
 
+  /**
+   * Maximale Größe der Dokumente im Speicher in Bytes.
+   */
+  private static final long MAX_MEMORY_BYTES = 64L << 20;
+
+  /**
+   * Maximale Größe der Dokumente im WollMux-Verzeichnis in Bytes.
+   */
+  private static final long MAX_DISK_BYTES = 512L << 20;
+
+  /**
+   * Nach dieser Zeit wird ein Dokument im Speicher erneut mit seiner Quelle abgeglichen.
+   */
+  private static final long REVALIDATE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
   private static DocumentLoader instance;
-  private LoadingCache<String, ByteBuffer> cache;
+  private FragmentCache cache;
 
   /**
    * Zugriff auf den DocumentLoader als Singleton.
    *
    * @return Singleton-Instanz des DocumentLoaders
    */
-  public static DocumentLoader getInstance()
+  public static synchronized DocumentLoader getInstance()
   {
     if (instance == null)
     {
@@ -75,33 +83,9 @@ public class DocumentLoader
 
   private DocumentLoader()
   {
-    cache = CacheBuilder.newBuilder()
-      .maximumSize(50)
-      .expireAfterAccess(8, TimeUnit.HOURS)
-        .build(new CacheLoader<String, ByteBuffer>()
-      {
-        @Override
-          public ByteBuffer load(String url) throws Exception
-        {
-          return downloadDocument(url);
-        }
-      });
-  }
-
-  private ByteBuffer downloadDocument(String url)
-  {
-    byte[] buf = null;
-    try (InputStream in = new URL(url).openStream())
-    {
-      buf = IOUtils.toByteArray(in);
-    } catch (IOException e)
-    {
-      LOGGER.error(
-        L.m("The template with the URL '%1' could not be opened.", url),
-        e);
-    }
-
-    return ByteBuffer.wrap(buf);
+    File wollmuxDir = WollMuxFiles.getWollMuxDir();
+    File directory = wollmuxDir == null ? null : new File(wollmuxDir, "fragmentcache");
+    cache = new FragmentCache(directory, MAX_MEMORY_BYTES, MAX_DISK_BYTES, REVALIDATE_MILLIS);
   }
 
   /**
@@ -158,12 +142,31 @@ public class DocumentLoader
 
   public boolean hasDocument(String path)
   {
-    return cache.getIfPresent(path) != null;
+    return cache.contains(path);
   }
 
+  /**
+   * Liefert einen neuen Stream auf den Inhalt des Dokuments. Jeder Stream hat seine eigene
+   * Leseposition.
+   *
+   * @param path
+   *          URL des Dokuments
+   * @return Der Stream.
+   * @throws ExecutionException
+   *           Das Dokument konnte nicht geladen werden.
+   */
   public XInputStream getDocumentStream(String path) throws ExecutionException
   {
-    ByteBuffer buf = cache.get(path);
-    return new ByteBufferInputStream(buf);
+    return new ByteBufferInputStream(cache.get(path));
+  }
+
+  /**
+   * Liefert die Statistik des Caches.
+   *
+   * @return Die Trefferstatistik.
+   */
+  public FragmentCache.Stats getStats()
+  {
+    return cache.getStats();
   }
 }
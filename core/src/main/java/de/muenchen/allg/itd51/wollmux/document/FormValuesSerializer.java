@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+
+/**
+ * Serializes form values in the format of {@link ConfigThingy#stringRepresentation()} of
+ * "WM(Formularwerte((ID 'id' VALUE 'value') ...))" without building the ConfigThingy. The text of
+ * every entry is cached, so only changed values are escaped again.
+ */
+final class FormValuesSerializer
+{
+  /**
+   * Cached text of an entry by ID. The first element is the value, the second the text.
+   */
+  private final Map<String, String[]> entries = new HashMap<>();
+
+  /**
+   * Serialize the form values.
+   *
+   * @param values
+   *          Mapping from ID to value. Entries with null key or value are ignored.
+   * @return The text, which is equal to the string representation of the corresponding
+   *         ConfigThingy.
+   */
+  String serialize(Map<String, String> values)
+  {
+    entries.keySet().retainAll(values.keySet());
+
+    StringBuilder buf = new StringBuilder();
+    for (Map.Entry<String, String> value : values.entrySet())
+    {
+      if (value.getKey() == null || value.getValue() == null)
+      {
+        continue;
+      }
+      String[] entry = entries.get(value.getKey());
+      if (entry == null || !entry[0].equals(value.getValue()))
+      {
+        entry = new String[] { value.getValue(), entryText(value.getKey(), value.getValue()) };
+        entries.put(value.getKey(), entry);
+      }
+      buf.append("    ").append(entry[1]).append('\n');
+    }
+
+    if (buf.length() == 0)
+    {
+      return "WM \"Formularwerte\"";
+    }
+    return "\nWM(\n\n  Formularwerte(\n" + buf + "  )\n)\n";
+  }
+
+  private static String entryText(String id, String value)
+  {
+    StringBuilder buf = new StringBuilder("(ID \"");
+    escape(buf, id);
+    buf.append("\" VALUE \"");
+    escape(buf, value);
+    buf.append("\")");
+    return buf.toString();
+  }
+
+  /**
+   * Same escaping as {@link ConfigThingy#stringRepresentation()} with '"' as string delimiter.
+   */
+  private static void escape(StringBuilder buf, String str)
+  {
+    for (int i = 0; i < str.length(); i++)
+    {
+      char c = str.charAt(i);
+      switch (c)
+      {
+        case '"':
+          buf.append("\"\"");
+          break;
+        case '\n':
+          buf.append("%n");
+          break;
+        case '\r':
+          buf.append("%u000a");
+          break;
+        case '%':
+          buf.append("%%");
+          break;
+        default:
+          buf.append(c);
+          break;
+      }
+    }
+  }
+}
@@ -0,0 +1,707 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.BaseEncoding;
+
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * Cache for the content of templates and fragments with two tiers.
+ *
+ * The memory tier is limited by the number of bytes of the cached documents. The disk tier stores
+ * every document in a file of its own, which is read with memory-mapped I/O and written with file
+ * channels, so that the content survives a restart. Every entry remembers the modification time,
+ * size and ETag of its source. An entry is revalidated against its source if it hasn't been
+ * checked for a while and when it's loaded from disk. If the source can't be reached, the cached
+ * content is used.
+ */
+public final class FragmentCache
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(FragmentCache.class);
+
+  private static final int MAGIC = 0x574d4643; // "WMFC"
+
+  private static final int VERSION = 1;
+
+  private static final String SUFFIX = ".frag";
+
+  /**
+   * Maximum number of bytes transferred by one call to a file channel.
+   */
+  private static final long TRANSFER_CHUNK = 1L << 20;
+
+  /**
+   * The directory of the disk tier or null if there's no disk tier.
+   */
+  private final File directory;
+
+  private final long maxDiskBytes;
+
+  private final long revalidateMillis;
+
+  private final Cache<String, Entry> memory;
+
+  private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder diskHits = new LongAdder();
+
+  private final LongAdder revalidations = new LongAdder();
+
+  private final LongAdder downloads = new LongAdder();
+
+  private final LongAdder staleHits = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create a new cache.
+   *
+   * @param directory
+   *          The directory of the disk tier. If null, documents are only cached in memory.
+   * @param maxMemoryBytes
+   *          The maximum number of bytes in the memory tier.
+   * @param maxDiskBytes
+   *          The maximum number of bytes in the disk tier.
+   * @param revalidateMillis
+   *          Entries in the memory tier are revalidated against their source if they haven't been
+   *          checked for this many milliseconds.
+   */
+  FragmentCache(File directory, long maxMemoryBytes, long maxDiskBytes, long revalidateMillis)
+  {
+    this.directory = directory;
+    this.maxDiskBytes = maxDiskBytes;
+    this.revalidateMillis = revalidateMillis;
+    this.memory = CacheBuilder.newBuilder()
+        .maximumWeight(maxMemoryBytes)
+        .weigher((String url, Entry entry) -> entry.data.capacity())
+        .expireAfterAccess(8, TimeUnit.HOURS)
+        .removalListener(n -> {
+          if (n.wasEvicted())
+          {
+            evictions.increment();
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Get the content of a document. Every call returns a new read-only view on the content, so
+   * callers can't interfere with each other.
+   *
+   * @param url
+   *          The URL of the document.
+   * @return The content of the document.
+   * @throws ExecutionException
+   *           The document isn't cached and can't be loaded.
+   */
+  ByteBuffer get(String url) throws ExecutionException
+  {
+    Entry entry = memory.getIfPresent(url);
+    if (entry != null && entry.isFresh())
+    {
+      hits.increment();
+      return entry.view();
+    }
+
+    synchronized (locks.computeIfAbsent(url, k -> new Object()))
+    {
+      entry = memory.getIfPresent(url);
+      if (entry != null && entry.isFresh())
+      {
+        hits.increment();
+        return entry.view();
+      }
+
+      boolean fromDisk = false;
+      if (entry == null)
+      {
+        entry = readFromDisk(url);
+        fromDisk = entry != null;
+      }
+      Entry loaded = load(url, entry, fromDisk);
+      memory.put(url, loaded);
+      return loaded.view();
+    }
+  }
+
+  /**
+   * Is the document in one of the tiers? The entry isn't revalidated.
+   *
+   * @param url
+   *          The URL of the document.
+   * @return True if the document is cached.
+   */
+  boolean contains(String url)
+  {
+    return memory.getIfPresent(url) != null || (directory != null && getFile(url).isFile());
+  }
+
+  /**
+   * Get the statistics of this cache.
+   *
+   * @return The statistics.
+   */
+  Stats getStats()
+  {
+    return new Stats(hits.sum(), diskHits.sum(), revalidations.sum(), downloads.sum(), staleHits.sum(),
+        evictions.sum(), memory.size());
+  }
+
+  /**
+   * Revalidate an entry or load the document from its source.
+   *
+   * @param url
+   *          The URL of the document.
+   * @param cached
+   *          The cached entry or null.
+   * @param fromDisk
+   *          True if the cached entry has been read from disk.
+   * @return The valid entry.
+   * @throws ExecutionException
+   *           The document couldn't be loaded and there's no cached entry.
+   */
+  private Entry load(String url, Entry cached, boolean fromDisk) throws ExecutionException
+  {
+    try
+    {
+      Entry entry = fetch(url, cached);
+      if (entry == cached)
+      {
+        entry.checked = System.currentTimeMillis();
+        if (fromDisk)
+        {
+          diskHits.increment();
+          touch(url);
+        } else
+        {
+          revalidations.increment();
+        }
+      } else
+      {
+        downloads.increment();
+      }
+      return entry;
+    } catch (IOException e)
+    {
+      if (cached != null)
+      {
+        LOGGER.warn("The template with the URL '{}' couldn't be revalidated. The cached version is used.",
+            url, e);
+        staleHits.increment();
+        cached.checked = System.currentTimeMillis();
+        return cached;
+      }
+      LOGGER.error(L.m("The template with the URL '%1' could not be opened.", url), e);
+      throw new ExecutionException(e);
+    }
+  }
+
+  /**
+   * Check whether the cached entry is still valid. Otherwise load the document.
+   *
+   * @param url
+   *          The URL of the document.
+   * @param cached
+   *          The cached entry or null.
+   * @return The cached entry if it's valid, otherwise a new entry.
+   * @throws IOException
+   *           The source couldn't be accessed.
+   */
+  private Entry fetch(String url, Entry cached) throws IOException
+  {
+    URL source = new URL(url);
+    File file = toFile(source);
+    if (file != null)
+    {
+      if (!file.isFile())
+      {
+        throw new FileNotFoundException(file.getPath());
+      }
+      long lastModified = file.lastModified();
+      long size = file.length();
+      if (cached != null && cached.matches(lastModified, size, ""))
+      {
+        return cached;
+      }
+      try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+      {
+        return store(url, in, lastModified, "");
+      }
+    }
+
+    URLConnection connection = source.openConnection();
+    if (connection instanceof HttpURLConnection && cached != null)
+    {
+      if (!cached.etag.isEmpty())
+      {
+        connection.setRequestProperty("If-None-Match", cached.etag);
+      }
+      if (cached.lastModified > 0)
+      {
+        connection.setIfModifiedSince(cached.lastModified);
+      }
+      if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+      {
+        ((HttpURLConnection) connection).disconnect();
+        return cached;
+      }
+    }
+    try (InputStream in = connection.getInputStream())
+    {
+      String etag = connection.getHeaderField("ETag");
+      return store(url, Channels.newChannel(in), connection.getLastModified(), etag == null ? "" : etag);
+    }
+  }
+
+  /**
+   * Store the content of a document in the disk tier and map it. If there's no disk tier or the
+   * file can't be written, the content is kept on the heap.
+   *
+   * @param url
+   *          The URL of the document.
+   * @param in
+   *          The content of the document.
+   * @param lastModified
+   *          The modification time of the source.
+   * @param etag
+   *          The ETag of the source or the empty string.
+   * @return The new entry.
+   * @throws IOException
+   *           The document couldn't be read.
+   */
+  private Entry store(String url, ReadableByteChannel in, long lastModified, String etag)
+      throws IOException
+  {
+    File temp = createTempFile(url);
+    if (temp == null)
+    {
+      byte[] data = IOUtils.toByteArray(Channels.newInputStream(in));
+      return new Entry(ByteBuffer.wrap(data).asReadOnlyBuffer(), lastModified, data.length, etag);
+    }
+
+    try
+    {
+      byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+      byte[] etagBytes = etag.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES + urlBytes.length + etagBytes.length
+          + 2 * Long.BYTES);
+      header.putInt(MAGIC).putInt(VERSION);
+      header.putInt(urlBytes.length).put(urlBytes);
+      header.putInt(etagBytes.length).put(etagBytes);
+      header.putLong(lastModified);
+      int sizePosition = header.position();
+      header.putLong(0);
+      header.flip();
+
+      long size = 0;
+      try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE))
+      {
+        while (header.hasRemaining())
+        {
+          out.write(header);
+        }
+        long position = out.position();
+        long n;
+        while ((n = out.transferFrom(in, position + size, TRANSFER_CHUNK)) > 0)
+        {
+          size += n;
+        }
+        ByteBuffer sizeBuffer = ByteBuffer.allocate(Long.BYTES).putLong(0, size);
+        out.write(sizeBuffer, sizePosition);
+      }
+
+      File target = getFile(url);
+      try
+      {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e)
+      {
+        // e.g. the old file is still mapped on Windows
+        LOGGER.debug("Couldn't replace {}", target, e);
+        byte[] data = Files.readAllBytes(temp.toPath());
+        ByteBuffer content = ByteBuffer.wrap(data, header.limit(), data.length - header.limit()).slice();
+        return new Entry(content.asReadOnlyBuffer(), lastModified, size, etag);
+      }
+      trimDisk();
+      Entry entry = map(url, target);
+      if (entry == null)
+      {
+        throw new IOException(L.m("The template with the URL '%1' could not be opened.", url));
+      }
+      return entry;
+    } finally
+    {
+      Files.deleteIfExists(temp.toPath());
+    }
+  }
+
+  /**
+   * Read an entry of the disk tier.
+   *
+   * @param url
+   *          The URL of the document.
+   * @return The entry or null if there's no valid entry.
+   */
+  private Entry readFromDisk(String url)
+  {
+    if (directory == null)
+    {
+      return null;
+    }
+    File file = getFile(url);
+    if (!file.isFile())
+    {
+      return null;
+    }
+    Entry entry = map(url, file);
+    if (entry == null)
+    {
+      LOGGER.debug("Cache file {} for {} is corrupt", file, url);
+      try
+      {
+        Files.deleteIfExists(file.toPath());
+      } catch (IOException e)
+      {
+        LOGGER.trace("", e);
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Map a file of the disk tier.
+   *
+   * @param url
+   *          The URL of the document.
+   * @param file
+   *          The file.
+   * @return The entry or null if the file doesn't belong to url or is corrupt.
+   */
+  private Entry map(String url, File file)
+  {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !url.equals(readString(buffer)))
+      {
+        return null;
+      }
+      String etag = readString(buffer);
+      long lastModified = buffer.getLong();
+      long size = buffer.getLong();
+      if (buffer.remaining() != size)
+      {
+        return null;
+      }
+      return new Entry(buffer.slice().asReadOnlyBuffer(), lastModified, size, etag);
+    } catch (IOException | RuntimeException e)
+    {
+      LOGGER.debug("Cache file {} couldn't be read", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Delete the least recently used files of the disk tier until it's within its limit.
+   */
+  private void trimDisk()
+  {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files == null)
+    {
+      return;
+    }
+    long total = Arrays.stream(files).mapToLong(File::length).sum();
+    if (total <= maxDiskBytes)
+    {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File file : files)
+    {
+      if (total <= maxDiskBytes)
+      {
+        break;
+      }
+      long length = file.length();
+      if (file.delete())
+      {
+        total -= length;
+      }
+    }
+  }
+
+  /**
+   * Mark a file of the disk tier as recently used.
+   *
+   * @param url
+   *          The URL of the document.
+   */
+  private void touch(String url)
+  {
+    try
+    {
+      Files.setLastModifiedTime(getFile(url).toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e)
+    {
+      LOGGER.trace("", e);
+    }
+  }
+
+  private File createTempFile(String url)
+  {
+    if (directory == null)
+    {
+      return null;
+    }
+    try
+    {
+      Files.createDirectories(directory.toPath());
+      return File.createTempFile(getFile(url).getName(), ".tmp", directory);
+    } catch (IOException e)
+    {
+      LOGGER.debug("No disk cache in {}", directory, e);
+      return null;
+    }
+  }
+
+  private File getFile(String url)
+  {
+    try
+    {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+      return new File(directory, BaseEncoding.base16().lowerCase().encode(hash) + SUFFIX);
+    } catch (NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer)
+  {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static File toFile(URL url)
+  {
+    if (!"file".equalsIgnoreCase(url.getProtocol()))
+    {
+      return null;
+    }
+    try
+    {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e)
+    {
+      LOGGER.trace("", e);
+      return null;
+    }
+  }
+
+  /**
+   * A cached document.
+   */
+  private final class Entry
+  {
+    private final ByteBuffer data;
+
+    private final long lastModified;
+
+    private final long size;
+
+    private final String etag;
+
+    /**
+     * Time of the last validation against the source.
+     */
+    private volatile long checked;
+
+    private Entry(ByteBuffer data, long lastModified, long size, String etag)
+    {
+      this.data = data;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.etag = etag;
+      this.checked = System.currentTimeMillis();
+    }
+
+    private boolean isFresh()
+    {
+      return System.currentTimeMillis() - checked < revalidateMillis;
+    }
+
+    private boolean matches(long lastModified, long size, String etag)
+    {
+      return this.lastModified == lastModified && this.size == size && this.etag.equals(etag);
+    }
+
+    private ByteBuffer view()
+    {
+      return data.duplicate();
+    }
+  }
+
+  /**
+   * Statistics of a {@link FragmentCache}.
+   */
+  public static final class Stats
+  {
+    private final long hitCount;
+
+    private final long diskHitCount;
+
+    private final long revalidationCount;
+
+    private final long downloadCount;
+
+    private final long staleCount;
+
+    private final long evictionCount;
+
+    private final long memoryEntries;
+
+    Stats(long hitCount, long diskHitCount, long revalidationCount, long downloadCount, long staleCount,
+        long evictionCount, long memoryEntries)
+    {
+      this.hitCount = hitCount;
+      this.diskHitCount = diskHitCount;
+      this.revalidationCount = revalidationCount;
+      this.downloadCount = downloadCount;
+      this.staleCount = staleCount;
+      this.evictionCount = evictionCount;
+      this.memoryEntries = memoryEntries;
+    }
+
+    /**
+     * @return Number of requests served from memory without revalidation.
+     */
+    public long getHitCount()
+    {
+      return hitCount;
+    }
+
+    /**
+     * @return Number of requests served from the disk tier after revalidation.
+     */
+    public long getDiskHitCount()
+    {
+      return diskHitCount;
+    }
+
+    /**
+     * @return Number of requests served from memory after revalidation.
+     */
+    public long getRevalidationCount()
+    {
+      return revalidationCount;
+    }
+
+    /**
+     * @return Number of requests, which had to load the document from its source.
+     */
+    public long getDownloadCount()
+    {
+      return downloadCount;
+    }
+
+    /**
+     * @return Number of requests served from the cache, because the source wasn't reachable.
+     */
+    public long getStaleCount()
+    {
+      return staleCount;
+    }
+
+    /**
+     * @return Number of documents evicted from memory.
+     */
+    public long getEvictionCount()
+    {
+      return evictionCount;
+    }
+
+    /**
+     * @return Number of documents in memory.
+     */
+    public long getMemoryEntries()
+    {
+      return memoryEntries;
+    }
+
+    /**
+     * @return The ratio of requests not loaded from the source, or 1 if there were no requests.
+     */
+    public double getHitRate()
+    {
+      long requests = hitCount + diskHitCount + revalidationCount + downloadCount + staleCount;
+      return requests == 0 ? 1.0 : (double) (requests - downloadCount) / requests;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "hits=" + hitCount + ", diskHits=" + diskHitCount + ", revalidations=" + revalidationCount
+          + ", downloads=" + downloadCount + ", stale=" + staleCount + ", evictions=" + evictionCount
+          + ", memoryEntries=" + memoryEntries;
+    }
+  }
+}
@@ -24,10 +24,12 @@ package de.muenchen.allg.itd51.wollmux.document;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -63,6 +65,7 @@ import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
 import de.muenchen.allg.itd51.wollmux.document.FormFieldFactory.FormField;
 import de.muenchen.allg.itd51.wollmux.document.PersistentDataContainer.DataID;
 import de.muenchen.allg.itd51.wollmux.document.commands.DocumentCommand;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnFlushFormFieldValues;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnFormValueChanged;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnSetVisibleState;
 import de.muenchen.allg.itd51.wollmux.form.config.FormConfig;
@@ -127,6 +130,21 @@ public class TextDocumentController
 
   private FormModel formModel;
 
+  /**
+   * Serializer for the form values in the persistent data.
+   */
+  private final FormValuesSerializer formValuesSerializer = new FormValuesSerializer();
+
+  /**
+   * True if the form values have changed since they were last written to the persistent data.
+   */
+  private boolean formValuesDirty = false;
+
+  /**
+   * True if an {@link OnFlushFormFieldValues} event has been emitted and not yet processed.
+   */
+  private boolean formValuesFlushScheduled = false;
+
   /**
    * New controller.
    * 
@@ -442,6 +460,41 @@ public class TextDocumentController
     updateDocumentFormFields(id);
   }
 
+  /**
+   * Set several form values of the document at once, e.g. a record of a mail merge. The values are
+   * stored once and every depending field is updated only once.
+   *
+   * @param values
+   *          Mapping from the name of the form element to its value. A null value deletes the
+   *          element from the persistent data.
+   */
+  public synchronized void addFormFieldValues(Map<String, String> values)
+  {
+    if (values.isEmpty())
+    {
+      return;
+    }
+    if (simulationResult == null)
+    {
+      model.updateLastTouchedByVersionInfo();
+      for (Map.Entry<String, String> entry : values.entrySet())
+      {
+        if (entry.getValue() == null)
+        {
+          model.getFormFieldValues().remove(entry.getKey());
+        } else
+        {
+          model.getFormFieldValues().put(entry.getKey(), entry.getValue());
+        }
+      }
+      markFormValuesDirty();
+    } else
+    {
+      values.forEach(simulationResult::setFormFieldValue);
+    }
+    updateDocumentFormFields(values.keySet());
+  }
+
   /**
    * Execute all functions until one returns with an non-empty String. This String is the action to
    * be executed on the document. Supported actions are:
@@ -861,6 +914,7 @@ public class TextDocumentController
     }
 
     model.getPersistentData().removeData(DataID.FORMULARBESCHREIBUNG);
+    formValuesDirty = false;
     model.getPersistentData().removeData(DataID.FORMULARWERTE);
   }
 
@@ -926,10 +980,11 @@ public class TextDocumentController
   }
 
   /**
-   * Flush the persistent data.
+   * Flush the persistent data. Pending form values are written first.
    */
   public synchronized void flushPersistentData()
   {
+    flushFormFieldValues();
     model.getPersistentData().flush();
   }
 
@@ -1061,20 +1116,94 @@ public class TextDocumentController
    */
   public void updateDocumentFormFields(String fieldId)
   {
+    updateDocumentFormFields(List.of(fieldId));
+  }
+
+  /**
+   * Same as {@link #updateDocumentFormFields(String)} for several IDs at once. Only the fields
+   * depending on one of the IDs are updated and each of them only once, even if its TRAFO has
+   * several of the IDs as parameters. A TRAFO used by several fields is computed once.
+   *
+   * @param fieldIds
+   *          The ids of the fields to update.
+   */
+  public void updateDocumentFormFields(Collection<String> fieldIds)
+  {
+    if (fieldIds.isEmpty())
+    {
+      return;
+    }
+    if (simulationResult == null)
+    {
+      model.updateLastTouchedByVersionInfo();
+    }
+
     if (formFieldPreviewMode)
     {
-      String value = model.getFormFieldValuesMap().get(fieldId);
+      Map<String, String> values;
       if (simulationResult != null)
-        value = simulationResult.getFormFieldValues().get(fieldId);
-      if (value == null)
       {
-        value = "";
+        values = simulationResult.getFormFieldValues();
+      } else
+      {
+        values = model.getFormFieldValuesMap();
+      }
+
+      // fields with TRAFO are computed with all known values after the direct fields
+      Set<FormField> dependingFields = new LinkedHashSet<>();
+      for (String fieldId : fieldIds)
+      {
+        String value = values.get(fieldId);
+        if (value == null)
+        {
+          value = "";
+        }
+        for (FormField field : model.getIdToFormFields().getOrDefault(fieldId, Collections.emptyList()))
+        {
+          setFormFieldContent(field, getTransformedValue(field.getTrafoName(), value));
+        }
+        for (FormField field : model.getIdToTextFieldFormFields().getOrDefault(fieldId,
+            Collections.emptyList()))
+        {
+          if (field.getTrafoName() == null)
+          {
+            setFormFieldContent(field, value);
+          } else
+          {
+            dependingFields.add(field);
+          }
+        }
+      }
+      dependingFields.addAll(model.getStaticTextFieldFormFields());
+
+      Map<String, String> trafoResults = new HashMap<>();
+      for (FormField field : dependingFields)
+      {
+        setFormFieldContent(field,
+            trafoResults.computeIfAbsent(field.getTrafoName(), trafo -> getTransformedValue(trafo, values)));
       }
-      setFormFields(fieldId, value, true);
     } else
     {
-      setFormFields(fieldId, "<" + fieldId + ">", false);
+      String fieldName = null;
+      for (String fieldId : fieldIds)
+      {
+        fieldName = "<" + fieldId + ">";
+        for (FormField field : model.getIdToFormFields().getOrDefault(fieldId, Collections.emptyList()))
+        {
+          setFormFieldContent(field, fieldName);
+        }
+        for (FormField field : model.getIdToTextFieldFormFields().getOrDefault(fieldId,
+            Collections.emptyList()))
+        {
+          setFormFieldContent(field, fieldName);
+        }
+      }
+      for (FormField field : model.getStaticTextFieldFormFields())
+      {
+        setFormFieldContent(field, fieldName);
+      }
     }
+
     if (simulationResult == null)
     {
       model.setDocumentModified(true);
@@ -1091,6 +1220,23 @@ public class TextDocumentController
    */
   public void setVisibleState(String groupId, boolean visible)
   {
+    setVisibleStates(Map.of(groupId, visible));
+  }
+
+  /**
+   * Show or hide all visibility elements of several groups in one pass. Only the elements belonging
+   * to at least one of the groups are visited and each of them is updated at most once, even if it
+   * belongs to several of the changed groups.
+   *
+   * @param visibilities
+   *          Mapping from group id to its new visibility state.
+   */
+  public void setVisibleStates(Map<String, Boolean> visibilities)
+  {
+    if (visibilities.isEmpty())
+    {
+      return;
+    }
     try
     {
       Map<String, Boolean> groupState;
@@ -1102,18 +1248,15 @@ public class TextDocumentController
         groupState = model.getMapGroupIdToVisibilityState();
       }
 
-      groupState.put(groupId, visible);
+      groupState.putAll(visibilities);
 
       VisibilityElement firstChangedElement = null;
 
       // update visibilities
-      for (VisibilityElement visibleElement : model.getDocumentCommands().getSetGroups())
+      for (VisibilityElement visibleElement : model.getDocumentCommands()
+          .getVisibilityElements(visibilities.keySet()))
       {
         Set<String> groups = visibleElement.getGroups();
-        if (!groups.contains(groupId))
-        {
-          continue;
-        }
 
         // get new visibility state
         boolean setVisible = groups.stream().map(groupState::get).filter(Objects::nonNull).reduce(Boolean::logicalAnd)
@@ -1172,84 +1315,33 @@ public class TextDocumentController
    */
   private void updateAllFormFields()
   {
-    for (String fieldId : model.getAllFieldIDs())
-    {
-      updateDocumentFormFields(fieldId);
-    }
-  }
-
-  /**
-   * Set all form fields with an id to a new value.
-   *
-   * @param fieldId
-   *          The id of the fields.
-   * @param value
-   *          The new value of the fields.
-   * @param applyTrafo
-   *          If true TRAFOs are applied.
-   */
-  private void setFormFields(String fieldId, String value, boolean applyTrafo)
-  {
-    setFormFields(model.getIdToFormFields().get(fieldId), value, applyTrafo, false);
-    setFormFields(model.getIdToTextFieldFormFields().get(fieldId), value, applyTrafo, true);
-    setFormFields(model.getStaticTextFieldFormFields(), value, applyTrafo, true);
+    updateDocumentFormFields(model.getAllFieldIDs());
   }
 
   /**
-   * Set a new value for all the given form fields and apply TRAFOs. If a simulation has been
-   * started with {@link #startSimulation()} the values aren't really set.
+   * Set the content of a form field. If a simulation has been started with
+   * {@link #startSimulation()} the value isn't really set.
    *
-   * @param formFields
-   *          The fields to modify. If null nothing is done.
+   * @param field
+   *          The field to modify.
    * @param value
-   *          The new value.
-   * @param applyTrafo
-   *          If true, TRAFOs are applied.
-   * @param useKnownFormValues
-   *          If true the TRAFOs use the real value of the fields. If false all fields get the given
-   *          value.
+   *          The new content.
    */
-  private void setFormFields(List<FormField> formFields, String value, boolean applyTrafo, boolean useKnownFormValues)
+  private void setFormFieldContent(FormField field, String value)
   {
-    if (formFields == null)
-    {
-      return;
-    }
-
-    if (simulationResult == null)
-      model.updateLastTouchedByVersionInfo();
-
-    for (FormField field : formFields)
+    try
     {
-      try
+      if (simulationResult == null)
       {
-        String result = value;
-        String trafoName = field.getTrafoName();
-        if (trafoName != null && applyTrafo)
-        {
-          if (useKnownFormValues)
-          {
-            result = getTransformedValue(trafoName);
-          }
-          else
-          {
-            result = getTransformedValue(trafoName, value);
-          }
-        }
-
-        if (simulationResult == null)
-        {
-          field.setValue(result);
-        }
-        else
-        {
-          simulationResult.setFormFieldContent(field, result);
-        }
-      } catch (RuntimeException e)
+        field.setValue(value);
+      } else
       {
-        // manually deleted document content
-        LOGGER.trace("", e);
+        simulationResult.setFormFieldContent(field, value);
       }
+    } catch (RuntimeException e)
+    {
+      // manually deleted document content
+      LOGGER.trace("", e);
     }
   }
 
@@ -1420,7 +1512,8 @@ public class TextDocumentController
 
   /**
    * Set a new value for a form field and store the persistend data. The new value is visible after
-   * a call of {@link #updateDocumentFormFields(String)}.
+   * a call of {@link #updateDocumentFormFields(String)}. The persistent data is written with the
+   * next {@link #flushFormFieldValues()}, which is scheduled automatically.
    *
    * If simulation has beeen startet with {@link #startSimulation()}, the persistend data isn't
    * modified.
@@ -1443,7 +1536,7 @@ public class TextDocumentController
       {
         model.getFormFieldValues().put(fieldId, value);
       }
-      model.getPersistentData().setData(DataID.FORMULARWERTE, getFormFieldValuesString());
+      markFormValuesDirty();
     } else
     {
       simulationResult.setFormFieldValue(fieldId, value);
@@ -1455,29 +1548,37 @@ public class TextDocumentController
    *
    * @return A ConfigThingy-String of the values.
    */
-  public String getFormFieldValuesString()
-  {
-    ConfigThingy werte = new ConfigThingy("WM");
-    ConfigThingy formwerte = new ConfigThingy("Formularwerte");
-    werte.addChild(formwerte);
-    for (Map.Entry<String, String> ent : model.getFormFieldValues().entrySet())
-    {
-      String key = ent.getKey();
-      String value = ent.getValue();
-      if (key != null && value != null)
-      {
-        ConfigThingy entry = new ConfigThingy("");
-        ConfigThingy cfID = new ConfigThingy("ID");
-        cfID.add(key);
-        ConfigThingy cfVALUE = new ConfigThingy("VALUE");
-        cfVALUE.add(value);
-        entry.addChild(cfID);
-        entry.addChild(cfVALUE);
-        formwerte.addChild(entry);
-      }
+  public synchronized String getFormFieldValuesString()
+  {
+    return formValuesSerializer.serialize(model.getFormFieldValues());
+  }
+
+  /**
+   * Write the form values to the persistent data if they have changed since the last call. Several
+   * changes of the form values are coalesced this way. The method is called after the events which
+   * changed the values have been processed, before saving and before printing.
+   */
+  public synchronized void flushFormFieldValues()
+  {
+    formValuesFlushScheduled = false;
+    if (formValuesDirty)
+    {
+      formValuesDirty = false;
+      model.getPersistentData().setData(DataID.FORMULARWERTE, getFormFieldValuesString());
     }
+  }
 
-    return werte.stringRepresentation();
+  /**
+   * Mark the form values as changed and schedule writing them to the persistent data.
+   */
+  private void markFormValuesDirty()
+  {
+    formValuesDirty = true;
+    if (!formValuesFlushScheduled)
+    {
+      formValuesFlushScheduled = true;
+      new OnFlushFormFieldValues(this).emit();
+    }
   }
 
   /**
@@ -1826,7 +1927,9 @@ public class TextDocumentController
           getIDToPresetValue(), this);
       boolean modified = model.isDocumentModified();
       model.setDocumentModifiable(false);
-      formModel.notifyWithCurrentVisibilites(this::setVisibleState);
+      Map<String, Boolean> visibilities = new HashMap<>();
+      formModel.notifyWithCurrentVisibilites(visibilities::put);
+      setVisibleStates(visibilities);
       model.setDocumentModified(modified);
       model.setDocumentModifiable(true);
     }
@@ -1943,7 +2046,22 @@ public class TextDocumentController
    */
   public void setVisibilityChanged(String groupId, boolean visible)
   {
-    new OnSetVisibleState(this, groupId, visible, null).emit();
+    setVisibilityChanged(Map.of(groupId, visible));
+  }
+
+  /**
+   * Set the visibility of several groups. All changes are applied to the document in a single
+   * event.
+   *
+   * @param visibilities
+   *          Mapping from group id to its new visibility state.
+   */
+  public void setVisibilityChanged(Map<String, Boolean> visibilities)
+  {
+    if (!visibilities.isEmpty())
+    {
+      new OnSetVisibleState(this, visibilities, null).emit();
+    }
   }
   
 }
@@ -24,11 +24,18 @@ package de.muenchen.allg.itd51.wollmux.document.commands;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -114,6 +121,20 @@ public class DocumentCommands implements Iterable<DocumentCommand>
    */
   private LinkedList<VisibilityElement> visibilityElements;
 
+  /**
+   * Index von Sichtbarkeitsgruppe auf die nach Position sortierte Liste der
+   * Sichtbarkeitselemente dieser Gruppe. Der Index wird bei jeder Änderung von
+   * visibilityElements (und damit auch bei der Vererbung von Gruppen an
+   * verschachtelte Elemente) verworfen und beim nächsten Zugriff neu aufgebaut.
+   */
+  private Map<String, List<VisibilityElement>> groupIndex;
+
+  /**
+   * Position der Sichtbarkeitselemente in visibilityElements; wird zusammen mit
+   * groupIndex aufgebaut und verworfen.
+   */
+  private Map<VisibilityElement, Integer> visibilityPositions;
+
   /**
    * Enthält eine nach Position sortierte Liste aller setJumpMark-Kommandos und wird
    * über update() aktualisiert.
@@ -431,6 +452,7 @@ public class DocumentCommands implements Iterable<DocumentCommand>
     if (anchor == null) {
       return;
     }
+    invalidateGroupIndex();
 
     ListIterator<VisibilityElement> iter = visibilityElements.listIterator();
     while (iter.hasNext())
@@ -517,7 +539,45 @@ public class DocumentCommands implements Iterable<DocumentCommand>
   private void removeInvalidTextSections(HashSet<TextSection> invalid)
   {
     allTextSectionsWithGROUPS.removeAll(invalid);
-    visibilityElements.removeAll(invalid);
+    if (visibilityElements.removeAll(invalid))
+    {
+      invalidateGroupIndex();
+    }
+  }
+
+  /**
+   * Verwirft den Index der Sichtbarkeitsgruppen, so dass er beim nächsten Zugriff
+   * aus visibilityElements neu aufgebaut wird.
+   */
+  private void invalidateGroupIndex()
+  {
+    groupIndex = null;
+    visibilityPositions = null;
+  }
+
+  /**
+   * Baut den Index der Sichtbarkeitsgruppen auf, falls er seit der letzten
+   * Änderung von visibilityElements verworfen wurde.
+   */
+  private void buildGroupIndex()
+  {
+    if (groupIndex != null)
+    {
+      return;
+    }
+    Map<String, List<VisibilityElement>> index = new HashMap<>();
+    Map<VisibilityElement, Integer> positions = new IdentityHashMap<>();
+    int pos = 0;
+    for (VisibilityElement element : visibilityElements)
+    {
+      positions.put(element, pos++);
+      for (String groupId : element.getGroups())
+      {
+        index.computeIfAbsent(groupId, k -> new ArrayList<>()).add(element);
+      }
+    }
+    groupIndex = index;
+    visibilityPositions = positions;
   }
 
   /**
@@ -550,6 +610,36 @@ public class DocumentCommands implements Iterable<DocumentCommand>
     return visibilityElements;
   }
 
+  /**
+   * Liefert alle Sichtbarkeitselemente, die mindestens einer der Gruppen groupIds
+   * angehören, ohne Duplikate und nach Position im Dokument sortiert. Die
+   * Gruppenzugehörigkeit berücksichtigt die Vererbung wie bei
+   * {@link #getSetGroups()}, die Elemente werden aber über einen Index gefunden
+   * statt über alle Sichtbarkeitselemente zu iterieren.
+   *
+   * @param groupIds
+   *          Die IDs der Sichtbarkeitsgruppen.
+   * @return Eine unveränderliche Liste der betroffenen Sichtbarkeitselemente.
+   */
+  public List<VisibilityElement> getVisibilityElements(Collection<String> groupIds)
+  {
+    buildGroupIndex();
+    if (groupIds.size() == 1)
+    {
+      return Collections.unmodifiableList(
+          groupIndex.getOrDefault(groupIds.iterator().next(), Collections.emptyList()));
+    }
+
+    Set<VisibilityElement> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (String groupId : groupIds)
+    {
+      affected.addAll(groupIndex.getOrDefault(groupId, Collections.emptyList()));
+    }
+    List<VisibilityElement> result = new ArrayList<>(affected);
+    result.sort(Comparator.comparing(visibilityPositions::get));
+    return Collections.unmodifiableList(result);
+  }
+
   /**
    * Liefert die aktuell erste JumpMark dieses Dokuments oder null, wenn keine
    * Jumpmark verfügbar ist.
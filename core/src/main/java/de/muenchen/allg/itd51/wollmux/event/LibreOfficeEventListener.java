@@ -59,6 +59,8 @@ public class LibreOfficeEventListener implements XEventListener
 
   private static final String ON_SAVE = "OnSave";
 
+  private static final String ON_SAVE_TO = "OnSaveTo";
+
   private static final String ON_UNLOAD = "OnUnload";
 
   private static final String ON_VIEW_CREATED = "OnViewCreated";
@@ -101,6 +103,7 @@ public class LibreOfficeEventListener implements XEventListener
         break;
       case ON_SAVE:
       case ON_SAVE_AS:
+      case ON_SAVE_TO:
         onSaveOrSaveAs(docEvent.Source);
         break;
       default:
@@ -161,7 +164,7 @@ public class LibreOfficeEventListener implements XEventListener
   }
 
   /**
-   * OnSave and OnSaveAs events are emitted as soon as a document is saved.
+   * OnSave, OnSaveAs and OnSaveTo events are emitted as soon as a document is saved.
    *
    * WollMux has to save its persistent data.
    */
@@ -32,6 +32,7 @@ import de.muenchen.allg.itd51.wollmux.event.handlers.OnCloseTextDocument;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnCollectNonWollMuxFormFieldsViaPrintModel;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnDumpInfo;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnExecutePrintFunction;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnFlushFormFieldValues;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnFormValueChanged;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnFormularMax4000Show;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnFunctionDialog;
@@ -111,6 +112,18 @@ public class WollMuxEventListenerImpl implements WollMuxEventListener
     event.process();
   }
 
+  /**
+   * Execute the event
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onFlushFormFieldValues(OnFlushFormFieldValues event)
+  {
+    event.process();
+  }
+
   /**
    * Execute the event
    *
@@ -65,6 +65,7 @@ public class OnPrint extends WollMuxEvent
   @Override
   protected void doit() throws WollMuxFehlerException
   {
+    documentController.flushFormFieldValues();
     boolean hasPrintFunction = !documentController.getModel().getPrintFunctions().isEmpty();
 
     if (hasPrintFunction)
@@ -23,6 +23,9 @@
 package de.muenchen.allg.itd51.wollmux.event.handlers;
 
 import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.sun.star.text.XTextDocument;
 
@@ -39,9 +42,7 @@ public class OnSetFormValue extends WollMuxEvent
 {
   private XTextDocument doc;
 
-  private String id;
-
-  private String value;
+  private Map<String, String> values;
 
   private final ActionListener listener;
 
@@ -59,10 +60,25 @@ public class OnSetFormValue extends WollMuxEvent
    */
   public OnSetFormValue(XTextDocument doc, String id, String value,
       ActionListener listener)
+  {
+    this(doc, Collections.singletonMap(id, value), listener);
+  }
+
+  /**
+   * Create this event for several values, e.g. a record of a mail merge. Values of fields which
+   * don't belong to the form model are applied to the document in one batch.
+   *
+   * @param doc
+   *          The document.
+   * @param values
+   *          Mapping from the ID of a field to its new value.
+   * @param listener
+   *          A listener to notify after processing is finished.
+   */
+  public OnSetFormValue(XTextDocument doc, Map<String, String> values, ActionListener listener)
   {
     this.doc = doc;
-    this.id = id;
-    this.value = value;
+    this.values = values;
     this.listener = listener;
   }
 
@@ -72,24 +88,38 @@ public class OnSetFormValue extends WollMuxEvent
     TextDocumentController documentController = DocumentManager.getTextDocumentController(doc);
 
     FormController formModel = DocumentManager.getDocumentManager().getFormController(doc);
-    if (formModel != null && formModel.hasFieldId(id))
+    Map<String, String> documentValues = new LinkedHashMap<>();
+    boolean formModelUpdated = false;
+    for (Map.Entry<String, String> entry : values.entrySet())
     {
-      formModel.setValue(id, value, e -> new OnSetFormValueFinished(listener).emit());
-    } else
-    {
-      documentController.addFormFieldValue(id, value);
-      if (listener != null)
+      if (formModel != null && formModel.hasFieldId(entry.getKey()))
+      {
+        formModel.setValue(entry.getKey(), entry.getValue(), null);
+        formModelUpdated = true;
+      } else
       {
-        listener.actionPerformed(null);
+        documentValues.put(entry.getKey(), entry.getValue());
       }
     }
+    documentController.addFormFieldValues(documentValues);
+
+    // The listener may save the document immediately, e.g. during a mail merge.
+    ActionListener flushAndNotify = listener == null ? null : e -> {
+      documentController.flushFormFieldValues();
+      listener.actionPerformed(e);
+    };
+    if (formModelUpdated)
+    {
+      new OnSetFormValueFinished(flushAndNotify).emit();
+    } else if (flushAndNotify != null)
+    {
+      flushAndNotify.actionPerformed(null);
+    }
   }
 
   @Override
   public String toString()
   {
-    return this.getClass().getSimpleName() + "(#" + doc.hashCode() + ", id='"
-        + id
-        + "', value='" + value + "')";
+    return this.getClass().getSimpleName() + "(#" + doc.hashCode() + ", values=" + values + ")";
   }
 }
@@ -23,6 +23,7 @@
 package de.muenchen.allg.itd51.wollmux.event.handlers;
 
 import java.awt.event.ActionListener;
+import java.util.Map;
 
 import de.muenchen.allg.itd51.wollmux.document.TextDocumentController;
 
@@ -31,9 +32,7 @@ import de.muenchen.allg.itd51.wollmux.document.TextDocumentController;
  */
 public class OnSetVisibleState extends WollMuxEvent
 {
-  private String groupId;
-
-  private boolean visible;
+  private Map<String, Boolean> visibilities;
 
   private ActionListener listener;
 
@@ -54,10 +53,25 @@ public class OnSetVisibleState extends WollMuxEvent
   public OnSetVisibleState(TextDocumentController documentController,
       String groupId,
       boolean visible, ActionListener listener)
+  {
+    this(documentController, Map.of(groupId, visible), listener);
+  }
+
+  /**
+   * Create this event for several groups, which are updated together.
+   *
+   * @param documentController
+   *          The document.
+   * @param visibilities
+   *          Mapping from the ID of a visibility group to its new state.
+   * @param listener
+   *          The listener to notify after completion.
+   */
+  public OnSetVisibleState(TextDocumentController documentController,
+      Map<String, Boolean> visibilities, ActionListener listener)
   {
     this.documentController = documentController;
-    this.groupId = groupId;
-    this.visible = visible;
+    this.visibilities = visibilities;
     this.listener = listener;
   }
 
@@ -69,7 +83,7 @@ public class OnSetVisibleState extends WollMuxEvent
   @Override
   protected void doit()
   {
-    documentController.setVisibleState(groupId, visible);
+    documentController.setVisibleStates(visibilities);
     if (listener != null)
       listener.actionPerformed(null);
   }
@@ -77,7 +91,6 @@ public class OnSetVisibleState extends WollMuxEvent
   @Override
   public String toString()
   {
-    return this.getClass().getSimpleName() + "('" + groupId + "', " + visible
-        + ")";
+    return this.getClass().getSimpleName() + "(" + visibilities + ")";
   }
 }
@@ -233,6 +233,7 @@ public class FormController
 
   public void exportFormValues(File f) throws IOException
   {
+    documentController.flushFormFieldValues();
     try (FileOutputStream out = new FileOutputStream(f))
     {
       documentController.getModel().exportFormValues(out);
@@ -0,0 +1,279 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.form.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import de.muenchen.allg.itd51.wollmux.func.Values;
+
+/**
+ * The dependency graph of the controls of a form. The edges are given by the
+ * {@link Control#getDependingAutoFillFormFields()}. Controls are ranked in topological order so
+ * that an AUTOFILL is computed after all the controls it depends on. Controls on a cycle are ranked
+ * behind all others in form order. Ties are always broken by form order, so the update order is
+ * deterministic.
+ */
+class FormDependencies
+{
+  /**
+   * Mapping from control IDs to controls in form order.
+   */
+  private final Map<String, Control> controls;
+
+  /**
+   * The topological rank of each control.
+   */
+  private final Map<Control, Integer> ranks = new HashMap<>();
+
+  /**
+   * The controls sorted by rank.
+   */
+  private final List<Control> order = new ArrayList<>();
+
+  /**
+   * Compares controls by their rank.
+   */
+  private final Comparator<Control> byRank = Comparator
+      .comparingInt(c -> ranks.getOrDefault(c, Integer.MAX_VALUE));
+
+  /**
+   * Build the graph. All dependencies have to be registered at the controls.
+   *
+   * @param controls
+   *          Mapping from control IDs to controls in form order.
+   */
+  FormDependencies(Map<String, Control> controls)
+  {
+    this.controls = controls;
+
+    Map<Control, Integer> position = new HashMap<>();
+    Map<Control, Integer> indegree = new HashMap<>();
+    for (Control control : controls.values())
+    {
+      position.put(control, position.size());
+      indegree.putIfAbsent(control, 0);
+      for (Control dependent : control.getDependingAutoFillFormFields())
+      {
+        indegree.merge(dependent, 1, Integer::sum);
+      }
+    }
+
+    PriorityQueue<Control> ready = new PriorityQueue<>(
+        Comparator.comparingInt(c -> position.getOrDefault(c, Integer.MAX_VALUE)));
+    controls.values().stream().filter(c -> indegree.get(c) == 0).forEach(ready::add);
+    while (!ready.isEmpty())
+    {
+      Control control = ready.poll();
+      ranks.put(control, order.size());
+      order.add(control);
+      for (Control dependent : control.getDependingAutoFillFormFields())
+      {
+        if (indegree.merge(dependent, -1, Integer::sum) == 0 && position.containsKey(dependent))
+        {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    for (Control control : controls.values())
+    {
+      if (!ranks.containsKey(control))
+      {
+        ranks.put(control, order.size());
+        order.add(control);
+      }
+    }
+  }
+
+  /**
+   * Get the controls in topological order.
+   *
+   * @return Unmodifiable list of all controls.
+   */
+  List<Control> inTopologicalOrder()
+  {
+    return Collections.unmodifiableList(order);
+  }
+
+  /**
+   * A view of the current values of all controls. Changes of the controls are visible
+   * immediately.
+   *
+   * @return The values.
+   */
+  Values values()
+  {
+    return values(Collections.emptyMap());
+  }
+
+  /**
+   * A view of the current values of all controls overlaid by some new values.
+   *
+   * @param overlay
+   *          Mapping from control IDs to new values, which take precedence over the current
+   *          values. The map isn't copied.
+   * @return The values.
+   */
+  Values values(Map<String, String> overlay)
+  {
+    return new FormValues(overlay);
+  }
+
+  /**
+   * Compute the new values of all controls whose AUTOFILL depends directly or indirectly on the
+   * origin. Each control is computed at most once and only after all changed controls it depends
+   * on. Controls whose value doesn't change don't propagate the change. The values of the
+   * controls are not modified.
+   *
+   * @param origin
+   *          The control which changed.
+   * @param value
+   *          The new value of the origin.
+   * @return Mapping from control IDs to their new values in update order. The first entry is the
+   *         origin.
+   */
+  Map<String, String> propagate(Control origin, String value)
+  {
+    Map<String, String> modified = new LinkedHashMap<>();
+    modified.put(origin.getId(), value);
+    Values values = values(modified);
+
+    Set<Control> computed = new HashSet<>();
+    computed.add(origin);
+    PriorityQueue<Control> pending = new PriorityQueue<>(byRank);
+    pending.addAll(origin.getDependingAutoFillFormFields());
+    while (!pending.isEmpty())
+    {
+      Control control = pending.poll();
+      if (!computed.add(control))
+      {
+        continue;
+      }
+      String newValue = control.computeValue(values);
+      if (newValue != null && !newValue.equals(control.getValue()))
+      {
+        modified.put(control.getId(), newValue);
+        pending.addAll(control.getDependingAutoFillFormFields());
+      }
+    }
+    return modified;
+  }
+
+  /**
+   * Collect the controls whose PLAUSI depends on one of the given controls.
+   *
+   * @param ids
+   *          The IDs of some controls.
+   * @return The depending controls, including the given ones, in topological order.
+   */
+  Collection<Control> getDependingPlausis(Collection<String> ids)
+  {
+    Set<Control> depending = new HashSet<>();
+    for (String id : ids)
+    {
+      Control control = controls.get(id);
+      if (control != null)
+      {
+        depending.addAll(control.getDependingPlausiFormFields());
+      }
+    }
+    List<Control> sorted = new ArrayList<>(depending);
+    sorted.sort(byRank);
+    return sorted;
+  }
+
+  /**
+   * Collect the visibility groups which depend on one of the given controls.
+   *
+   * @param ids
+   *          The IDs of some controls.
+   * @return The depending groups without duplicates in the order of the given controls.
+   */
+  Collection<VisibilityGroup> getDependingGroups(Collection<String> ids)
+  {
+    Set<VisibilityGroup> depending = new LinkedHashSet<>();
+    for (String id : ids)
+    {
+      Control control = controls.get(id);
+      if (control != null)
+      {
+        depending.addAll(control.getDependingGroups());
+      }
+    }
+    return depending;
+  }
+
+  /**
+   * Values of the controls, optionally overlaid by new values. Behaves like a
+   * {@link Values.SimpleMap} filled with all control values, but doesn't copy them.
+   */
+  private class FormValues implements Values
+  {
+    private final Map<String, String> overlay;
+
+    private FormValues(Map<String, String> overlay)
+    {
+      this.overlay = overlay;
+    }
+
+    private String get(String id)
+    {
+      if (overlay.containsKey(id))
+      {
+        return overlay.get(id);
+      }
+      Control control = controls.get(id);
+      return control == null ? null : control.getValue();
+    }
+
+    @Override
+    public boolean hasValue(String id)
+    {
+      return get(id) != null;
+    }
+
+    @Override
+    public String getString(String id)
+    {
+      String value = get(id);
+      return value == null ? "" : value;
+    }
+
+    @Override
+    public boolean getBoolean(String id)
+    {
+      return "true".equalsIgnoreCase(getString(id));
+    }
+  }
+}
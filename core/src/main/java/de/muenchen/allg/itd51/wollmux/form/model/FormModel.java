@@ -24,9 +24,11 @@ package de.muenchen.allg.itd51.wollmux.form.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +45,6 @@ import de.muenchen.allg.itd51.wollmux.form.config.VisibilityGroupConfig;
 import de.muenchen.allg.itd51.wollmux.form.sidebar.FormSidebarController;
 import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
 import de.muenchen.allg.itd51.wollmux.func.Values;
-import de.muenchen.allg.itd51.wollmux.func.Values.SimpleMap;
 import de.muenchen.allg.itd51.wollmux.ui.UIElementConfig;
 
 /**
@@ -84,6 +85,11 @@ public class FormModel
    */
   private Map<String, List<Control>> mapDialogNameToListOfControlsWithDependingAutofill = new HashMap<>();
 
+  /**
+   * The dependencies between the controls.
+   */
+  private FormDependencies dependencies;
+
   /**
    * Instance of TextDocumentController.
    */
@@ -145,6 +151,7 @@ public class FormModel
     {
       storeDepsForFormField(control);
     }
+    dependencies = new FormDependencies(formControls);
 
     this.initControls(presetValues);
   }
@@ -157,8 +164,8 @@ public class FormModel
   private void initControls(Map<String, String> presetValues)
   {
     // Initialize controls with preset values or AUTOFILL function
-    SimpleMap values = idToValue();
-    for (Control control : formControls.values())
+    Values values = dependencies.values();
+    for (Control control : dependencies.inTopologicalOrder())
     {
       String value = "";
       if (presetValues.containsKey(control.getId()))
@@ -172,7 +179,6 @@ public class FormModel
       {
         txtDocController.setValueChanged(control.getId(), value); 
         control.setValue(value);
-        values.put(control.getId(), value);
       }
     }
 
@@ -241,23 +247,27 @@ public class FormModel
   }
   
   /**
-   * Update visibilites in form ui.
+   * Update visibilites in form ui. Each group is notified once, even if several controls belong to
+   * it.
    */
   public void updateFormControlsVisibility()
   {
-    for (Map.Entry<String, Control> entry : this.getFormControls().entrySet())
+    Set<String> groupIds = new LinkedHashSet<>();
+    for (Control control : formControls.values())
     {
-      for (VisibilityGroup vs: entry.getValue().getGroups())
+      for (VisibilityGroup vs : control.getGroups())
       {
-        //notifiy form gui ui
-        formSidebarController.visibilityChanged(vs.getGroupId());
+        groupIds.add(vs.getGroupId());
       }
     }
+    // notifiy form gui ui
+    groupIds.forEach(formSidebarController::visibilityChanged);
   }
 
   /**
-   * Set the value of a control and notify the listeners. All depending controls are updated. For
-   * all changed controls the state is computed.
+   * Set the value of a control and notify the listeners. All depending controls are updated in
+   * topological order, but only if one of their dependencies really changed. For all changed
+   * controls and the controls whose PLAUSI depends on them the state is computed.
    *
    * @param id
    *          The ID of the control.
@@ -269,36 +279,40 @@ public class FormModel
     if (formControls.containsKey(id) && !formControls.get(id).getValue().equals(value))
     {
       Control field = formControls.get(id);
-      SimpleMap modified = new SimpleMap();
 
       // compute dependent controls
-      field.computeNewValues(value, idToValue(), modified);
-      SimpleMap newValues = idToValue();
-      newValues.putAll(modified);
-      List<VisibilityGroup> modifiedGroups = new ArrayList<>();
+      Map<String, String> modified = dependencies.propagate(field, value);
+      for (Map.Entry<String, String> changedEntries : modified.entrySet())
+      {
+        formControls.get(changedEntries.getKey()).setValue(changedEntries.getValue());
+      }
+      Values newValues = dependencies.values();
 
-      // update values and notify listener
-      for (Map.Entry<String, String> changedEntries : modified)
+      // notify listener
+      for (String changedId : modified.keySet())
       {
-        Control control = formControls.get(changedEntries.getKey());
-        control.setValue(changedEntries.getValue());
-        control.setOkay(newValues);
+        Control control = formControls.get(changedId);
         formSidebarController.setFormUiValue(control.getId(), control.getValue());
-        formSidebarController.setControlBackground(control.getId(), control.isOkay());
         txtDocController.setValueChanged(control.getId(), control.getValue());
-        modifiedGroups.addAll(control.getDependingGroups());
       }
+      for (Control control : dependencies.getDependingPlausis(modified.keySet()))
+      {
+        control.setOkay(newValues);
+        formSidebarController.setControlBackground(control.getId(), control.isOkay());
+      }
+
+      Collection<VisibilityGroup> modifiedGroups = dependencies.getDependingGroups(modified.keySet());
       modifiedGroups.forEach(g -> g.computeVisibility(newValues));
 
-        for (VisibilityGroup g : modifiedGroups)
-        {
-          if (txtDocController != null && formSidebarController != null) {
-            //update vis. in doc
-            txtDocController.setVisibilityChanged(g.getGroupId(), g.isVisible());
-            //update vis in form-ui
-            formSidebarController.visibilityChanged(g.getGroupId());
-          }
-        }
+      if (txtDocController != null && formSidebarController != null && !modifiedGroups.isEmpty())
+      {
+        // update vis. in doc with one batch
+        Map<String, Boolean> visibilities = new LinkedHashMap<>();
+        modifiedGroups.forEach(g -> visibilities.put(g.getGroupId(), g.isVisible()));
+        txtDocController.setVisibilityChanged(visibilities);
+        // update vis in form-ui
+        visibilities.keySet().forEach(formSidebarController::visibilityChanged);
+      }
     }
   }
 
@@ -371,10 +385,11 @@ public class FormModel
    */
   public void setDialogAutofills(String dialogName)
   {
-    for (Control c : mapDialogNameToListOfControlsWithDependingAutofill.get(dialogName))
+    Values values = dependencies.values();
+    for (Control c : mapDialogNameToListOfControlsWithDependingAutofill.getOrDefault(dialogName,
+        Collections.emptyList()))
     {
-      c.getAutofill()
-          .ifPresent(autofill -> setValue(c.getId(), autofill.getResult(idToValue())));
+      c.getAutofill().ifPresent(autofill -> setValue(c.getId(), autofill.getResult(values)));
     }
   }
   
@@ -390,21 +405,6 @@ public class FormModel
     return formControls.containsKey(fieldId);
   }
 
-  /**
-   * Create a mapping from control ID to control value.
-   *
-   * @return A mapping which can be used as function parameter.
-   */
-  private SimpleMap idToValue()
-  {
-    SimpleMap values = new Values.SimpleMap();
-    for (Map.Entry<String, Control> entry : formControls.entrySet())
-    {
-      values.put(entry.getKey(), entry.getValue().getValue());
-    }
-    return values;
-  }
-
   /**
    * Add a dependencies for all function dialogs which are referenced by the AUTOFILL function.
    *
@@ -474,7 +474,7 @@ public class FormModel
       }
     }
 
-    group.computeVisibility(idToValue());
+    group.computeVisibility(dependencies.values());
   }
 
   /**
@@ -38,9 +38,9 @@ import de.muenchen.allg.itd51.wollmux.util.L;
 
 public class BindFunction implements Function
 {
-  private Map<String, Function> mapParamNameToSetFunction = new HashMap<>();
+  Map<String, Function> mapParamNameToSetFunction = new HashMap<>();
 
-  private Function func;
+  Function func;
 
   private String[] params;
 
@@ -0,0 +1,993 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Eine übersetzte Form eines Function-Baums, wie sie von
+ * {@link FunctionFactory#compile(Function)} geliefert wird.
+ *
+ * Der Baum wird einmalig in ein flaches Programm umgesetzt, dessen Knoten über
+ * Indizes auf ihre Kinder verweisen. Dabei werden
+ * <ul>
+ * <li>alle VALUE-Namen auf Slots abgebildet, so dass jeder Wert pro Auswertung
+ * nur einmal aus den {@link Values} gelesen wird,</li>
+ * <li>alle Teilbäume, die von keinem Wert abhängen, zu Konstanten
+ * ausgewertet,</li>
+ * <li>Zahlen nur einmal pro Konstante bzw. pro Slot und Auswertung in
+ * {@link BigDecimal}s umgewandelt und</li>
+ * <li>BIND-Funktionen ohne Zwischenobjekte direkt auf ihre SET-Funktionen
+ * verdrahtet.</li>
+ * </ul>
+ * Funktionen, die nicht zu den Grundfunktionen gehören (z.B. EXTERN und DIALOG)
+ * werden unverändert aufgerufen. Alle Ergebnisse entsprechen denen des
+ * ursprünglichen Baums. Im Gegensatz zu den {@link NumberFunction}s hält das
+ * Programm keinen Zustand zwischen Auswertungen und kann daher von mehreren
+ * Threads gleichzeitig ausgewertet werden.
+ */
+final class CompiledFunction implements Function
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompiledFunction.class);
+
+  private static final Values NO_VALUES = new Values.None();
+
+  /**
+   * Markiert einen Slot, für den {@link Values#hasValue(String)} false geliefert
+   * hat. Wird nur über Identität verglichen.
+   */
+  @SuppressWarnings("squid:S2129")
+  private static final String ABSENT = new String("");
+
+  /**
+   * Markiert einen String, der sich nicht in eine Zahl umwandeln lässt.
+   */
+  private static final Object NOT_A_NUMBER = new Object();
+
+  private static final int CONST = 0;
+  private static final int SLOT = 1;
+  private static final int AND = 2;
+  private static final int OR = 3;
+  private static final int NOT = 4;
+  private static final int CAT = 5;
+  private static final int LENGTH = 6;
+  private static final int SELECT = 7;
+  private static final int STRCMP = 8;
+  private static final int IF = 9;
+  private static final int ISERROR = 10;
+  private static final int MATCH = 11;
+  private static final int REPLACE = 12;
+  private static final int SPLIT = 13;
+  private static final int SUM = 14;
+  private static final int MINUS = 15;
+  private static final int ABS = 16;
+  private static final int SIGN = 17;
+  private static final int DIFF = 18;
+  private static final int PRODUCT = 19;
+  private static final int NUMCMP = 20;
+  private static final int DIVIDE = 21;
+  private static final int BIND = 22;
+  private static final int BOUND = 23;
+  private static final int OPAQUE = 24;
+
+  private static final Map<Class<?>, Integer> NUMBER_FUNCTIONS = Map.of(SumFunction.class, SUM,
+      MinusFunction.class, MINUS, AbsFunction.class, ABS, SignFunction.class, SIGN,
+      DiffFunction.class, DIFF, ProductFunction.class, PRODUCT);
+
+  private final Function function;
+
+  private final Program program;
+
+  private CompiledFunction(Function function, Program program)
+  {
+    this.function = function;
+    this.program = program;
+  }
+
+  /**
+   * Übersetzt function. Liefert function selbst, falls es nichts zu übersetzen gibt,
+   * weil function keine Grundfunktion ist oder bereits übersetzt wurde.
+   */
+  static Function compile(Function function)
+  {
+    if (function == null || function instanceof CompiledFunction)
+    {
+      return function;
+    }
+
+    Compiler compiler = new Compiler();
+    int root = compiler.compile(function, null);
+    if (compiler.program.op[root] == OPAQUE)
+    {
+      return function;
+    }
+    return new CompiledFunction(function, compiler.finish(root));
+  }
+
+  @Override
+  public String[] parameters()
+  {
+    return function.parameters();
+  }
+
+  @Override
+  public void getFunctionDialogReferences(Collection<String> set)
+  {
+    function.getFunctionDialogReferences(set);
+  }
+
+  @Override
+  public String getResult(Values parameters)
+  {
+    return program.eval(program.root, program.newFrame(parameters));
+  }
+
+  @Override
+  public boolean getBoolean(Values parameters)
+  {
+    return program.evalBool(program.root, program.newFrame(parameters));
+  }
+
+  /**
+   * Die Knoten des übersetzten Baums. Jeder Knoten n besteht aus einem Opcode
+   * op[n], einem Argument arg[n], optionalen Daten data[n] und den Kindern
+   * kids[first[n]] bis kids[first[n] + count[n] - 1].
+   */
+  private static final class Program
+  {
+    private int size;
+
+    private int[] op = new int[16];
+
+    private int[] arg = new int[16];
+
+    private Object[] data = new Object[16];
+
+    private int[] first = new int[16];
+
+    private int[] count = new int[16];
+
+    /**
+     * Die bereits geparste Zahl einer Konstanten und der dabei verwendete
+     * Dezimaltrenner.
+     */
+    private Object[] constNumber = new Object[16];
+
+    private char[] constDecimalPoint = new char[16];
+
+    private int[] kids = new int[16];
+
+    private int kidCount;
+
+    private String[] slotNames = ArrayUtils.EMPTY_STRING_ARRAY;
+
+    private int bindCount;
+
+    private int root;
+
+    int add(int opcode, int argument, Object payload, int... children)
+    {
+      if (size == op.length)
+      {
+        int capacity = size * 2;
+        op = Arrays.copyOf(op, capacity);
+        arg = Arrays.copyOf(arg, capacity);
+        data = Arrays.copyOf(data, capacity);
+        first = Arrays.copyOf(first, capacity);
+        count = Arrays.copyOf(count, capacity);
+        constNumber = Arrays.copyOf(constNumber, capacity);
+        constDecimalPoint = Arrays.copyOf(constDecimalPoint, capacity);
+      }
+      if (kidCount + children.length > kids.length)
+      {
+        kids = Arrays.copyOf(kids, Math.max(kids.length * 2, kidCount + children.length));
+      }
+      int n = size++;
+      op[n] = opcode;
+      arg[n] = argument;
+      data[n] = payload;
+      first[n] = kidCount;
+      count[n] = children.length;
+      System.arraycopy(children, 0, kids, kidCount, children.length);
+      kidCount += children.length;
+      return n;
+    }
+
+    int constant(String value, boolean bool)
+    {
+      return add(CONST, bool ? 1 : 0, value);
+    }
+
+    int kid(int n, int i)
+    {
+      return kids[first[n] + i];
+    }
+
+    Frame newFrame(Values values)
+    {
+      return new Frame(values, slotNames, bindCount);
+    }
+
+    /**
+     * Ersetzt n durch eine Konstante, falls n eine reine Grundfunktion ist, deren
+     * Kinder alle konstant sind.
+     */
+    int fold(int n)
+    {
+      if (op[n] == CONST || op[n] == SLOT || op[n] == BOUND || op[n] == OPAQUE)
+      {
+        return n;
+      }
+      for (int i = 0; i < count[n]; i++)
+      {
+        if (op[kid(n, i)] != CONST)
+        {
+          return n;
+        }
+      }
+
+      try
+      {
+        Frame frame = new Frame(NO_VALUES, ArrayUtils.EMPTY_STRING_ARRAY, bindCount);
+        String value = eval(n, frame);
+        boolean bool = evalBool(n, frame);
+        op[n] = CONST;
+        arg[n] = bool ? 1 : 0;
+        data[n] = value;
+        count[n] = 0;
+      }
+      catch (RuntimeException x)
+      {
+        // wird dann bei jeder Auswertung wie bisher geworfen
+        LOGGER.trace("", x);
+      }
+      return n;
+    }
+
+    /**
+     * Parst die konstanten Kinder von n mit dem Dezimaltrenner decimalPoint vorab.
+     */
+    void prepareNumbers(int n, char decimalPoint)
+    {
+      for (int i = 0; i < count[n]; i++)
+      {
+        int k = kid(n, i);
+        if (op[k] == CONST && constNumber[k] == null && data[k] != FunctionLibrary.ERROR)
+        {
+          constNumber[k] = parse((String) data[k], decimalPoint);
+          constDecimalPoint[k] = decimalPoint;
+        }
+      }
+    }
+
+    String eval(int n, Frame frame)
+    {
+      switch (op[n])
+      {
+      case CONST:
+        return (String) data[n];
+      case SLOT:
+      {
+        String value = frame.string(arg[n]);
+        return value == ABSENT ? FunctionLibrary.ERROR : value;
+      }
+      case AND:
+        for (int i = 0; i < count[n]; i++)
+        {
+          String str = eval(kid(n, i), frame);
+          if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+          if (!str.equalsIgnoreCase("true")) return "false";
+        }
+        return "true";
+      case OR:
+        for (int i = 0; i < count[n]; i++)
+        {
+          String str = eval(kid(n, i), frame);
+          if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+          if (str.equalsIgnoreCase("true")) return "true";
+        }
+        return "false";
+      case NOT:
+        for (int i = 0; i < count[n]; i++)
+        {
+          String str = eval(kid(n, i), frame);
+          if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+          if (!str.equalsIgnoreCase("true")) return "true";
+        }
+        return "false";
+      case CAT:
+        return cat(n, frame);
+      case LENGTH:
+      {
+        String str = cat(n, frame);
+        if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        return "" + str.length();
+      }
+      case SELECT:
+        return select(n, frame);
+      case STRCMP:
+        return compareStrings(n, frame);
+      case IF:
+      {
+        String condition = eval(kid(n, 0), frame);
+        if (condition == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        return eval(kid(n, condition.equalsIgnoreCase("true") ? 1 : 2), frame);
+      }
+      case ISERROR:
+        return isError(n, frame) ? "true" : "false";
+      case MATCH:
+      {
+        String str = eval(kid(n, 0), frame);
+        if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        return ((Pattern) data[n]).matcher(str).matches() ? "true" : "false";
+      }
+      case REPLACE:
+      {
+        String str = eval(kid(n, 0), frame);
+        String repStr = eval(kid(n, 1), frame);
+        if (str == FunctionLibrary.ERROR || repStr == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        return ((Pattern) data[n]).matcher(str).replaceAll(repStr);
+      }
+      case SPLIT:
+      {
+        String str = eval(kid(n, 0), frame);
+        if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        String[] a = ((Pattern) data[n]).split(str);
+        if (arg[n] < 0 || arg[n] >= a.length) return "";
+        return a[arg[n]];
+      }
+      case SUM:
+      case MINUS:
+      case ABS:
+      case SIGN:
+      case DIFF:
+      case PRODUCT:
+        return compute(n, frame);
+      case NUMCMP:
+        return compareNumbers(n, frame);
+      case DIVIDE:
+        return divide(n, frame);
+      case BIND:
+      {
+        frame.bindErrors[arg[n]] = false;
+        String res = eval(kid(n, 0), frame);
+        if (frame.bindErrors[arg[n]]) return FunctionLibrary.ERROR;
+        return res;
+      }
+      case BOUND:
+      {
+        String res = eval(kid(n, 0), frame);
+        if (res == FunctionLibrary.ERROR)
+        {
+          frame.bindErrors[arg[n]] = true;
+          return "";
+        }
+        return res;
+      }
+      default:
+      {
+        Opaque opaque = (Opaque) data[n];
+        return opaque.function.getResult(opaque.values(this, frame));
+      }
+      }
+    }
+
+    boolean evalBool(int n, Frame frame)
+    {
+      switch (op[n])
+      {
+      case CONST:
+        return arg[n] == 1;
+      case LENGTH:
+      case DIVIDE:
+        return false;
+      case IF:
+      {
+        String condition = eval(kid(n, 0), frame);
+        if (condition == FunctionLibrary.ERROR) return false;
+        return evalBool(kid(n, condition.equalsIgnoreCase("true") ? 1 : 2), frame);
+      }
+      case ISERROR:
+        return isError(n, frame);
+      case BIND:
+      {
+        frame.bindErrors[arg[n]] = false;
+        boolean res = evalBool(kid(n, 0), frame);
+        if (frame.bindErrors[arg[n]]) return false;
+        return res;
+      }
+      case OPAQUE:
+      {
+        Opaque opaque = (Opaque) data[n];
+        return opaque.function.getBoolean(opaque.values(this, frame));
+      }
+      default:
+        return eval(n, frame).equalsIgnoreCase("true");
+      }
+    }
+
+    private String cat(int n, Frame frame)
+    {
+      StringBuilder res = new StringBuilder();
+      for (int i = 0; i < count[n]; i++)
+      {
+        String str = eval(kid(n, i), frame);
+        if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        res.append(str);
+      }
+      return res.toString();
+    }
+
+    /**
+     * arg[n] == 1 heißt, das letzte Kind ist die ONERROR-Funktion.
+     */
+    private String select(int n, Frame frame)
+    {
+      String result = FunctionLibrary.ERROR;
+      for (int i = 0; i < count[n] - arg[n]; i++)
+      {
+        String str = eval(kid(n, i), frame);
+        if (str != FunctionLibrary.ERROR)
+        {
+          result = str;
+          if (str.length() > 0) break;
+        }
+        else if (arg[n] == 1)
+        {
+          return eval(kid(n, count[n] - 1), frame);
+        }
+      }
+      return result;
+    }
+
+    private String compareStrings(int n, Frame frame)
+    {
+      String compare = eval(kid(n, 0), frame);
+      if (compare == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+      int prevCompare = 0;
+      for (int i = 1; i < count[n]; i++)
+      {
+        String str = eval(kid(n, i), frame);
+        if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+        int res = Integer.signum(compare.compareTo(str));
+        if (res * prevCompare < 0) return "0";
+        prevCompare += res;
+      }
+      return compareResult(prevCompare);
+    }
+
+    private static String compareResult(int compare)
+    {
+      switch (Integer.signum(compare))
+      {
+      case -1:
+        return "-1";
+      case 1:
+        return "1";
+      default:
+        return "true";
+      }
+    }
+
+    private boolean isError(int n, Frame frame)
+    {
+      String str = eval(kid(n, 0), frame);
+      if (arg[n] == 1)
+      {
+        return FunctionLibrary.ERROR == str;
+      }
+      return FunctionLibrary.ERROR.equals(str);
+    }
+
+    /**
+     * Liefert das Kind k als Zahl. Das Ergebnis ist null, falls k
+     * {@link FunctionLibrary#ERROR} liefert, {@link #NOT_A_NUMBER}, falls das
+     * Ergebnis keine Zahl ist, und ansonsten ein {@link BigDecimal}.
+     */
+    private Object number(int k, Frame frame, char decimalPoint)
+    {
+      switch (op[k])
+      {
+      case CONST:
+        if (data[k] == FunctionLibrary.ERROR) return null;
+        if (constNumber[k] != null && constDecimalPoint[k] == decimalPoint) return constNumber[k];
+        return parse((String) data[k], decimalPoint);
+      case SLOT:
+        return frame.number(arg[k], decimalPoint);
+      default:
+        String str = eval(k, frame);
+        if (str == FunctionLibrary.ERROR) return null;
+        return parse(str, decimalPoint);
+      }
+    }
+
+    private static Object parse(String str, char decimalPoint)
+    {
+      try
+      {
+        return NumberFunction.makeBigDecimal(str, decimalPoint);
+      }
+      catch (Exception x)
+      {
+        return NOT_A_NUMBER;
+      }
+    }
+
+    private String compute(int n, Frame frame)
+    {
+      NumberFunction function = (NumberFunction) data[n];
+      BigDecimal result = op[n] == PRODUCT ? BigDecimal.ONE : BigDecimal.ZERO;
+      for (int i = 0; i < count[n]; i++)
+      {
+        Object num = number(kid(n, i), frame, function.decimalPoint);
+        if (!(num instanceof BigDecimal)) return FunctionLibrary.ERROR;
+        try
+        {
+          if (op[n] == PRODUCT)
+            result = result.multiply((BigDecimal) num);
+          else if (op[n] == DIFF && i > 0)
+            result = result.subtract((BigDecimal) num);
+          else
+            result = result.add((BigDecimal) num);
+        }
+        catch (ArithmeticException x)
+        {
+          return FunctionLibrary.ERROR;
+        }
+      }
+
+      switch (op[n])
+      {
+      case MINUS:
+        return function.formatBigDecimal(result.negate());
+      case ABS:
+        return function.formatBigDecimal(result.abs());
+      case SIGN:
+        return "" + result.signum();
+      default:
+        return function.formatBigDecimal(result);
+      }
+    }
+
+    /**
+     * arg[n] == 1 heißt, das erste Kind ist die MARGIN-Funktion.
+     */
+    private String compareNumbers(int n, Frame frame)
+    {
+      NumberCompareFunction function = (NumberCompareFunction) data[n];
+      BigDecimal margin = BigDecimal.ZERO;
+      if (arg[n] == 1)
+      {
+        Object num = number(kid(n, 0), frame, function.decimalPoint);
+        if (!(num instanceof BigDecimal)) return FunctionLibrary.ERROR;
+        margin = ((BigDecimal) num).abs();
+      }
+
+      BigDecimal compare = null;
+      BigDecimal lowBound = null;
+      BigDecimal highBound = null;
+      int prevCompare = 0;
+      for (int i = arg[n]; i < count[n]; i++)
+      {
+        Object num = number(kid(n, i), frame, function.decimalPoint);
+        if (!(num instanceof BigDecimal)) return FunctionLibrary.ERROR;
+        BigDecimal value = (BigDecimal) num;
+        if (compare == null)
+        {
+          compare = value;
+          lowBound = compare.subtract(margin);
+          highBound = compare.add(margin);
+          continue;
+        }
+
+        int res;
+        if (lowBound.compareTo(value) <= 0 && value.compareTo(highBound) <= 0)
+          res = 0;
+        else
+          res = compare.compareTo(value);
+
+        if (res == function.cmp1 || res == function.cmp2) return "false";
+        if (res * prevCompare < 0) return "0";
+        prevCompare += res;
+      }
+
+      if (function.result != null) return function.result;
+      return compareResult(prevCompare);
+    }
+
+    /**
+     * arg[n] ist der beim Übersetzen gültige Dezimaltrenner.
+     */
+    private String divide(int n, Frame frame)
+    {
+      DivideFunction function = (DivideFunction) data[n];
+      char decimalPoint = (char) arg[n];
+      Object dividend = number(kid(n, 0), frame, decimalPoint);
+      if (dividend == null) return FunctionLibrary.ERROR;
+      Object divisor = BigDecimal.ONE;
+      if (count[n] > 1) divisor = number(kid(n, 1), frame, decimalPoint);
+      if (!(dividend instanceof BigDecimal) || !(divisor instanceof BigDecimal))
+        return FunctionLibrary.ERROR;
+      try
+      {
+        return function.divide((BigDecimal) dividend, (BigDecimal) divisor, decimalPoint);
+      }
+      catch (ArithmeticException x)
+      {
+        return FunctionLibrary.ERROR;
+      }
+    }
+  }
+
+  /**
+   * Die Werte einer einzelnen Auswertung.
+   */
+  private static final class Frame
+  {
+    private final Values values;
+
+    private final String[] names;
+
+    private final String[] strings;
+
+    private Object[] numbers;
+
+    private char[] numberDecimalPoints;
+
+    /**
+     * Für jede BIND-Funktion, ob eine ihrer SET-Funktionen einen Fehler geliefert
+     * hat.
+     */
+    private final boolean[] bindErrors;
+
+    private Frame(Values values, String[] names, int bindCount)
+    {
+      this.values = values;
+      this.names = names;
+      this.strings = new String[names.length];
+      this.bindErrors = new boolean[bindCount];
+    }
+
+    /**
+     * Liefert den Wert des Slots oder {@link CompiledFunction#ABSENT}, falls es
+     * keinen Wert gibt.
+     */
+    String string(int slot)
+    {
+      String value = strings[slot];
+      if (value == null)
+      {
+        String name = names[slot];
+        value = values.hasValue(name) ? values.getString(name) : ABSENT;
+        strings[slot] = value;
+      }
+      return value;
+    }
+
+    Object number(int slot, char decimalPoint)
+    {
+      if (numbers == null)
+      {
+        numbers = new Object[names.length];
+        numberDecimalPoints = new char[names.length];
+      }
+      Object num = numbers[slot];
+      if (num == null || numberDecimalPoints[slot] != decimalPoint)
+      {
+        String value = string(slot);
+        if (value == ABSENT) return null;
+        num = Program.parse(value, decimalPoint);
+        numbers[slot] = num;
+        numberDecimalPoints[slot] = decimalPoint;
+      }
+      return num;
+    }
+  }
+
+  /**
+   * Aufruf einer Funktion, die nicht übersetzt werden kann. bound enthält die
+   * Knoten aller Namen, die von umgebenden BIND-Funktionen gebunden werden.
+   */
+  private static final class Opaque
+  {
+    private final Function function;
+
+    private final Map<String, Integer> bound;
+
+    private Opaque(Function function, Map<String, Integer> bound)
+    {
+      this.function = function;
+      this.bound = bound;
+    }
+
+    Values values(Program program, Frame frame)
+    {
+      if (bound.isEmpty())
+      {
+        return frame.values;
+      }
+      return new Values()
+      {
+        @Override
+        public boolean hasValue(String id)
+        {
+          return bound.containsKey(id) || frame.values.hasValue(id);
+        }
+
+        @Override
+        public String getString(String id)
+        {
+          Integer node = bound.get(id);
+          if (node != null)
+          {
+            return program.eval(node, frame);
+          }
+          return frame.values.getString(id);
+        }
+
+        @Override
+        public boolean getBoolean(String id)
+        {
+          Integer node = bound.get(id);
+          if (node != null)
+          {
+            return program.eval(node, frame).equalsIgnoreCase("true");
+          }
+          return frame.values.getBoolean(id);
+        }
+      };
+    }
+  }
+
+  /**
+   * Die von einer BIND-Funktion gebundenen Namen.
+   */
+  private static final class Scope
+  {
+    private final Scope parent;
+
+    private final int id;
+
+    private final Map<String, Function> bindings;
+
+    private final Map<String, Integer> nodes = new HashMap<>();
+
+    private Scope(Scope parent, int id, Map<String, Function> bindings)
+    {
+      this.parent = parent;
+      this.id = id;
+      this.bindings = bindings;
+    }
+  }
+
+  private static final class Compiler
+  {
+    private final Program program = new Program();
+
+    private final List<String> slotNames = new ArrayList<>();
+
+    private final Map<String, Integer> slotNodes = new HashMap<>();
+
+    Program finish(int root)
+    {
+      program.root = root;
+      program.slotNames = slotNames.toArray(new String[0]);
+      return program;
+    }
+
+    int compile(Function function, Scope scope)
+    {
+      Class<?> type = function.getClass();
+      int n;
+      if (type == StringLiteralFunction.class || type == AlwaysTrueFunction.class)
+      {
+        return program.constant(function.getResult(NO_VALUES), function.getBoolean(NO_VALUES));
+      }
+      else if (type == ValueFunction.class)
+      {
+        return resolve(((ValueFunction) function).params[0], scope);
+      }
+      else if (type == AndFunction.class)
+      {
+        n = program.add(AND, 0, null, compileAll(((MultiFunction) function).subFunction, scope));
+      }
+      else if (type == OrFunction.class)
+      {
+        n = program.add(OR, 0, null, compileAll(((MultiFunction) function).subFunction, scope));
+      }
+      else if (type == NotFunction.class)
+      {
+        n = program.add(NOT, 0, null, compileAll(((MultiFunction) function).subFunction, scope));
+      }
+      else if (type == CatFunction.class)
+      {
+        n = program.add(CAT, 0, null, compileAll(((MultiFunction) function).subFunction, scope));
+      }
+      else if (type == LengthFunction.class)
+      {
+        n = program.add(LENGTH, 0, null, compileAll(((MultiFunction) function).subFunction, scope));
+      }
+      else if (type == StrCmpFunction.class)
+      {
+        n = program.add(STRCMP, 0, null, compileAll(((MultiFunction) function).subFunction, scope));
+      }
+      else if (type == SelectFunction.class)
+      {
+        SelectFunction select = (SelectFunction) function;
+        int[] children = compileAll(select.subFunction, scope);
+        if (select.onErrorFunction == null)
+        {
+          n = program.add(SELECT, 0, null, children);
+        }
+        else
+        {
+          children = ArrayUtils.add(children, compile(select.onErrorFunction, scope));
+          n = program.add(SELECT, 1, null, children);
+        }
+      }
+      else if (type == IfFunction.class)
+      {
+        IfFunction ifFunction = (IfFunction) function;
+        n = program.add(IF, 0, null, compile(ifFunction.ifFunction, scope),
+            compile(ifFunction.thenFunction, scope), compile(ifFunction.elseFunction, scope));
+      }
+      else if (type == IsErrorFunction.class)
+      {
+        IsErrorFunction isError = (IsErrorFunction) function;
+        n = program.add(ISERROR, isError.objectCompare ? 1 : 0, null, compile(isError.func, scope));
+      }
+      else if (type == MatchFunction.class)
+      {
+        MatchFunction match = (MatchFunction) function;
+        n = program.add(MATCH, 0, match.pattern, compile(match.input, scope));
+      }
+      else if (type == ReplaceFunction.class)
+      {
+        ReplaceFunction replace = (ReplaceFunction) function;
+        n = program.add(REPLACE, 0, replace.pattern, compile(replace.input, scope),
+            compile(replace.replace, scope));
+      }
+      else if (type == SplitFunction.class)
+      {
+        SplitFunction split = (SplitFunction) function;
+        n = program.add(SPLIT, split.index, Pattern.compile(split.regex), compile(split.input, scope));
+      }
+      else if (type == NumberCompareFunction.class)
+      {
+        NumberCompareFunction compare = (NumberCompareFunction) function;
+        int[] children = compileAll(compare.subFunction, scope);
+        int margin = 0;
+        if (compare.marginFun != null)
+        {
+          children = ArrayUtils.insert(0, children, compile(compare.marginFun, scope));
+          margin = 1;
+        }
+        n = program.add(NUMCMP, margin, compare, children);
+        program.prepareNumbers(n, compare.decimalPoint);
+      }
+      else if (NUMBER_FUNCTIONS.containsKey(type))
+      {
+        NumberFunction number = (NumberFunction) function;
+        n = program.add(NUMBER_FUNCTIONS.get(type), 0, number, compileAll(number.subFunction, scope));
+        program.prepareNumbers(n, number.decimalPoint);
+      }
+      else if (type == DivideFunction.class)
+      {
+        DivideFunction divide = (DivideFunction) function;
+        char decimalPoint = DivideFunction.decimalPoint();
+        int[] children = { compile(divide.dividendFunction, scope) };
+        if (divide.divisorFunction != null)
+        {
+          children = ArrayUtils.add(children, compile(divide.divisorFunction, scope));
+        }
+        n = program.add(DIVIDE, decimalPoint, divide, children);
+        program.prepareNumbers(n, decimalPoint);
+      }
+      else if (type == BindFunction.class)
+      {
+        BindFunction bind = (BindFunction) function;
+        Scope inner = new Scope(scope, program.bindCount++, bind.mapParamNameToSetFunction);
+        n = program.add(BIND, inner.id, null, compile(bind.func, inner));
+      }
+      else
+      {
+        Map<String, Integer> bound = new HashMap<>();
+        for (Scope s = scope; s != null; s = s.parent)
+        {
+          for (String name : s.bindings.keySet())
+          {
+            if (!bound.containsKey(name))
+            {
+              bound.put(name, bound(s, name));
+            }
+          }
+        }
+        return program.add(OPAQUE, 0, new Opaque(function, bound));
+      }
+      return program.fold(n);
+    }
+
+    private int[] compileAll(Collection<Function> functions, Scope scope)
+    {
+      int[] children = new int[functions.size()];
+      int i = 0;
+      for (Function f : functions)
+      {
+        children[i++] = compile(f, scope);
+      }
+      return children;
+    }
+
+    /**
+     * Liefert den Knoten für VALUE name, d.h. die SET-Funktion der innersten
+     * BIND-Funktion, die name bindet, oder einen Slot.
+     */
+    private int resolve(String name, Scope scope)
+    {
+      for (Scope s = scope; s != null; s = s.parent)
+      {
+        if (s.bindings.containsKey(name))
+        {
+          return bound(s, name);
+        }
+      }
+
+      Integer n = slotNodes.get(name);
+      if (n == null)
+      {
+        n = program.add(SLOT, slotNames.size(), null);
+        slotNames.add(name);
+        slotNodes.put(name, n);
+      }
+      return n;
+    }
+
+    private int bound(Scope scope, String name)
+    {
+      Integer n = scope.nodes.get(name);
+      if (n == null)
+      {
+        // SET-Funktionen werden im Kontext der BIND-Funktion ausgewertet
+        n = compile(scope.bindings.get(name), scope.parent);
+        if (program.op[n] != CONST || program.data[n] == FunctionLibrary.ERROR)
+        {
+          n = program.add(BOUND, scope.id, null, n);
+        }
+        scope.nodes.put(name, n);
+      }
+      return n;
+    }
+  }
+}
@@ -33,13 +33,13 @@ import java.util.Set;
 
 public class DivideFunction implements Function
 {
-  private Function dividendFunction;
+  Function dividendFunction;
 
-  private Function divisorFunction = null;
+  Function divisorFunction = null;
 
-  private int minScale;
+  int minScale;
 
-  private int maxScale;
+  int maxScale;
 
   private String[] params;
 
@@ -76,16 +76,7 @@ public class DivideFunction implements Function
   @Override
   public String getResult(Values parameters)
   { // TESTED
-    char decimalPoint;
-    try
-    {
-      decimalPoint =
-        ((DecimalFormat) NumberFormat.getInstance()).getDecimalFormatSymbols().getDecimalSeparator();
-    }
-    catch (Exception x)
-    {
-      decimalPoint = '.';
-    }
+    char decimalPoint = decimalPoint();
 
     String dividend = dividendFunction.getResult(parameters);
     if (dividend == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
@@ -94,32 +85,44 @@ public class DivideFunction implements Function
     if (divisorFunction != null) divisor = divisorFunction.getResult(parameters);
     if (divisor == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
 
-    /*
-     * Falls der Dezimaltrenner nicht '.' ist, ersetzte alle '.' durch etwas, das
-     * kein Dezimaltrenner ist, um eine NumberFormatException beim Konvertieren zu
-     * provozieren. Dies ist eine Vorsichtsmaßnahme, da '.' zum Beispiel in
-     * Deutschland alls Gruppierungszeichen verwendet wird und wir wollen nicht
-     * fälschlicher weise "100.000" als 100 interpretieren, wenn die eingebende
-     * Person 100000 gemeint hat.
-     */
-    if (decimalPoint != '.')
+    try
+    {
+      BigDecimal bigDividend = NumberFunction.makeBigDecimal(dividend, decimalPoint);
+      BigDecimal bigDivisor = NumberFunction.makeBigDecimal(divisor, decimalPoint);
+      return divide(bigDividend, bigDivisor, decimalPoint);
+    }
+    catch (Exception x)
     {
-      dividend = dividend.replace('.', 'ß');
-      divisor = divisor.replace('.', 'ß');
+      return FunctionLibrary.ERROR;
     }
+  }
 
-    BigDecimal bigResult;
+  /**
+   * Liefert den Dezimaltrenner der aktuellen Locale.
+   */
+  static char decimalPoint()
+  {
     try
     {
-      BigDecimal bigDividend = new BigDecimal(dividend.replace(decimalPoint, '.'));
-      BigDecimal bigDivisor = new BigDecimal(divisor.replace(decimalPoint, '.'));
-
-      bigResult = bigDividend.divide(bigDivisor, maxScale, RoundingMode.HALF_UP);
+      return ((DecimalFormat) NumberFormat.getInstance()).getDecimalFormatSymbols()
+          .getDecimalSeparator();
     }
     catch (Exception x)
     {
-      return FunctionLibrary.ERROR;
+      return '.';
     }
+  }
+
+  /**
+   * Teilt dividend durch divisor und formatiert das Ergebnis gemäß MIN und MAX mit
+   * dem Dezimaltrenner decimalPoint.
+   *
+   * @throws ArithmeticException
+   *           falls divisor 0 ist.
+   */
+  String divide(BigDecimal dividend, BigDecimal divisor, char decimalPoint)
+  {
+    BigDecimal bigResult = dividend.divide(divisor, maxScale, RoundingMode.HALF_UP);
 
     /*
      * NumberFormat kann leider nicht zum formatieren verwendet werden, da es nur
@@ -154,8 +157,7 @@ public class DivideFunction implements Function
     for (int i = decimalDigits; i < minScale; ++i)
       buffy.append('0');
 
-    result = buffy.toString().replace('.', decimalPoint);
-    return result;
+    return buffy.toString().replace('.', decimalPoint);
   }
 
   @Override
@@ -69,6 +69,23 @@ public class FunctionFactory
     return myAlwaysTrueFunction;
   }
 
+  /**
+   * Übersetzt function in eine Form, die bei häufiger Auswertung (z.B. pro
+   * Datensatz im Seriendruck) schneller ist. Dabei werden Parameternamen nur
+   * einmal aufgelöst, konstante Teilausdrücke vorab ausgewertet und Zahlen nicht
+   * mehrfach geparst. Das Ergebnis liefert immer die selben Werte wie function und
+   * hält selbst keinen Zustand zwischen zwei Auswertungen. Enthält function keine
+   * übersetzbaren Grundfunktionen, so wird function selbst geliefert.
+   *
+   * @param function
+   *          die zu übersetzende Funktion oder null.
+   * @return die übersetzte Funktion oder null, falls function null ist.
+   */
+  public static Function compile(Function function)
+  {
+    return CompiledFunction.compile(function);
+  }
+
   /**
    * Erzeugt ein Function-Objekt aus den ENKELN von conf. Hat conf keine Enkel, so
    * wird null geliefert. Hat conf genau einen Enkel, so wird eine Funktion
@@ -781,7 +798,7 @@ public class FunctionFactory
           if (func == null)
             throw new ConfigurationErrorException(
                 L.m("Empty functions definition is not allowed. Instead use the empty string \"\""));
-          trafos.put(name, func);
+          trafos.put(name, compile(func));
         } catch (ConfigurationErrorException e)
         {
           LOGGER.error(L.m("Error during parsing of the column replacement function for the result column \"%1\"", name), e);
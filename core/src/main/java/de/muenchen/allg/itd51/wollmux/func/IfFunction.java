@@ -29,11 +29,11 @@ import java.util.Set;
 
 public class IfFunction implements Function
 {
-  private Function ifFunction;
+  Function ifFunction;
 
-  private Function thenFunction;
+  Function thenFunction;
 
-  private Function elseFunction;
+  Function elseFunction;
 
   private String[] params;
 
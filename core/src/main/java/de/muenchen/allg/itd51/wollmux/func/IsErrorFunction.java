@@ -32,9 +32,9 @@ import de.muenchen.allg.itd51.wollmux.util.L;
 
 public class IsErrorFunction implements Function
 {
-  private Function func;
+  Function func;
 
-  private boolean objectCompare;
+  boolean objectCompare;
 
   /**
    * Falls objectCompare == true, wird == Function,ERROR getestet, ansonsten
@@ -41,13 +41,13 @@ public class NumberCompareFunction extends NumberFunction
 
   private BigDecimal highBound;
 
-  private int cmp1;
+  int cmp1;
 
-  private int cmp2;
+  int cmp2;
 
   private int prevCompare;
 
-  private String result;
+  String result;
 
   private BigDecimal margin;
 
@@ -105,6 +105,18 @@ abstract class NumberFunction extends MultiFunction
   }
 
   protected BigDecimal makeBigDecimal(String str)
+  {
+    return makeBigDecimal(str, decimalPoint);
+  }
+
+  /**
+   * Wandelt str in ein BigDecimal um, wobei decimalPoint als Dezimaltrenner
+   * interpretiert wird.
+   *
+   * @throws NumberFormatException
+   *           falls str keine Zahl ist.
+   */
+  static BigDecimal makeBigDecimal(String str, char decimalPoint)
   {
     /*
      * Falls der Dezimaltrenner nicht '.' ist, ersetzte alle '.' durch etwas, das
@@ -30,11 +30,11 @@ import java.util.regex.Pattern;
 
 public class ReplaceFunction implements Function
 {
-  private Pattern pattern;
+  Pattern pattern;
 
-  private Function input;
+  Function input;
 
-  private Function replace;
+  Function replace;
 
   private String[] params;
 
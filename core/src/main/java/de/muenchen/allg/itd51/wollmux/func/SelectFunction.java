@@ -33,7 +33,7 @@ import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
 
 public class SelectFunction extends MultiFunction
 {
-  private Function onErrorFunction;
+  Function onErrorFunction;
 
   public SelectFunction(Collection<Function> subFunction)
   {
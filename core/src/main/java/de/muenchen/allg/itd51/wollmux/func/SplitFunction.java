@@ -27,11 +27,11 @@ import java.util.regex.Pattern;
 
 public class SplitFunction implements Function
 {
-  private String regex;
+  String regex;
 
-  private Function input;
+  Function input;
 
-  private int index;
+  int index;
 
   private String[] params;
 
@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.mailmerge;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -44,11 +45,14 @@ import de.muenchen.allg.itd51.wollmux.func.print.PrintFunction;
 import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
 import de.muenchen.allg.itd51.wollmux.mailmerge.ds.DatasourceModel;
 import de.muenchen.allg.itd51.wollmux.mailmerge.mail.EMailSender;
+import de.muenchen.allg.itd51.wollmux.mailmerge.mail.MailQueue;
+import de.muenchen.allg.itd51.wollmux.mailmerge.mail.MailReport;
 import de.muenchen.allg.itd51.wollmux.mailmerge.mail.MailServerSettings;
 import de.muenchen.allg.itd51.wollmux.mailmerge.print.MailMergePrintFunction;
 import de.muenchen.allg.itd51.wollmux.mailmerge.print.PrintToEmail;
 import de.muenchen.allg.itd51.wollmux.mailmerge.print.SetFormValue;
 import de.muenchen.allg.itd51.wollmux.mailmerge.printsettings.PrintSettings;
+import de.muenchen.allg.itd51.wollmux.print.PrintFunctionMetrics;
 import de.muenchen.allg.itd51.wollmux.print.PrintModels;
 import de.muenchen.allg.itd51.wollmux.util.L;
 
@@ -96,28 +100,64 @@ public class MailMergeRunner implements Runnable
     }
 
     long startTime = System.currentTimeMillis();
-    pmod.printWithProps();
-    long duration = (System.currentTimeMillis() - startTime) / 1000;
-    LOGGER.debug("MailMerge finished after {} seconds", duration);
+    try
+    {
+      pmod.printWithProps();
+      long duration = (System.currentTimeMillis() - startTime) / 1000;
+      LOGGER.debug("MailMerge finished after {} seconds", duration);
+      @SuppressWarnings("unchecked")
+      List<PrintFunctionMetrics> metrics = (List<PrintFunctionMetrics>) pmod
+          .getProp(PrintModels.PROP_PRINT_FUNCTION_METRICS, Collections.emptyList());
+      metrics.forEach(m -> LOGGER.debug("{}", m));
+    } finally
+    {
+      finishMailQueue();
+    }
+  }
 
-    sendMailSummary();
+  /**
+   * Wait until the e-mails queued by {@link PrintToEmail} have been sent and close the connection
+   * to the mail server. This is done even if the mail merge failed. The recipients of e-mails which
+   * couldn't be sent are shown to the user.
+   */
+  private void finishMailQueue()
+  {
+    MailQueue queue = (MailQueue) pmod.getProp(PrintToEmail.PROP_EMAIL_QUEUE, null);
+    if (queue == null)
+    {
+      return;
+    }
+
+    try
+    {
+      MailReport report = queue.finish();
+      List<String> failed = report.getFailedRecipients();
+      if (!failed.isEmpty())
+      {
+        InfoDialog.showInfoModal(PrintToEmail.MAIL_ERROR_MESSAGE_TITLE,
+            L.m("Sending the e-mail to the following recipients failed:\n\n%1",
+                String.join("\n", failed)));
+      }
+      sendMailSummary(report);
+    } catch (InterruptedException e)
+    {
+      LOGGER.error("", e);
+      Thread.currentThread().interrupt();
+    }
   }
 
   /**
    * If mail merge is send via mail, send list of recipients and number of sent mails to sender
    * address.
+   *
+   * @param report
+   *          The report of the {@link MailQueue}.
    */
-  private void sendMailSummary()
+  private void sendMailSummary(MailReport report)
   {
     String eMailFrom = pmod.getProp(PrintToEmail.PROP_EMAIL_FROM, "").toString();
-
-    @SuppressWarnings("unchecked")
-    List<String> recipintList = (List<String>) pmod
-        .getProp(PrintToEmail.PROP_EMAIL_REPORT_RECIPIENT_LIST, null);
-    int mailsSentCount = (int) pmod.getProp(PrintToEmail.PROP_EMAIL_REPORT_EMAILS_SENT_COUNT, 0);
-
-    if (recipintList == null)
-      return;
+    List<String> recipientList = report.getSentRecipients();
+    List<String> failedList = report.getFailedRecipients();
 
     EMailSender mail = new EMailSender();
     StringBuilder buildMessage = new StringBuilder();
@@ -125,7 +165,7 @@ public class MailMergeRunner implements Runnable
     buildMessage.append("Der WollMux-Serienbrief wurde an folgende E-Mail-Adressen versandt:");
     buildMessage.append("\r\n");
 
-    for (String recipient : recipintList)
+    for (String recipient : recipientList)
     {
       buildMessage.append(recipient);
       buildMessage.append("\r\n");
@@ -133,7 +173,19 @@ public class MailMergeRunner implements Runnable
 
     buildMessage.append("\r\n");
     buildMessage.append("Anzahl gesendeter E-Mails: ");
-    buildMessage.append(mailsSentCount);
+    buildMessage.append(recipientList.size());
+
+    if (!failedList.isEmpty())
+    {
+      buildMessage.append("\r\n\r\n");
+      buildMessage.append("Folgende E-Mails konnten nicht versandt werden:");
+      buildMessage.append("\r\n");
+      for (String recipient : failedList)
+      {
+        buildMessage.append(recipient);
+        buildMessage.append("\r\n");
+      }
+    }
 
     buildMessage.append("\r\n");
     buildMessage.append(
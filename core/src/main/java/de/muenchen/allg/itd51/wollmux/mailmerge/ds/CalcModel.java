@@ -25,23 +25,24 @@ package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.CharMatcher;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
-import com.google.common.math.DoubleMath;
+import com.sun.star.awt.AsyncCallback;
+import com.sun.star.awt.XCallback;
 import com.sun.star.awt.XTopWindow;
 import com.sun.star.container.NoSuchElementException;
 import com.sun.star.frame.XModel;
@@ -49,12 +50,19 @@ import com.sun.star.lang.EventObject;
 import com.sun.star.lang.IllegalArgumentException;
 import com.sun.star.lang.IndexOutOfBoundsException;
 import com.sun.star.lang.WrappedTargetException;
+import com.sun.star.sheet.CellFlags;
+import com.sun.star.sheet.XCellRangeAddressable;
 import com.sun.star.sheet.XCellRangesQuery;
 import com.sun.star.sheet.XSheetCellRanges;
 import com.sun.star.sheet.XSpreadsheetDocument;
 import com.sun.star.sheet.XSpreadsheets;
 import com.sun.star.table.CellRangeAddress;
 import com.sun.star.table.XCellRange;
+import com.sun.star.uno.UnoRuntime;
+import com.sun.star.util.ChangesEvent;
+import com.sun.star.util.ElementChange;
+import com.sun.star.util.XChangesListener;
+import com.sun.star.util.XChangesNotifier;
 import com.sun.star.util.XCloseListener;
 import com.sun.star.util.XModifyListener;
 
@@ -72,6 +80,27 @@ public class CalcModel implements DatasourceModel
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(CalcModel.class);
 
+  /**
+   * Delay in milliseconds after the last modification before the data is read again.
+   */
+  private static final long REFRESH_DELAY = 300;
+
+  /**
+   * If more cell ranges have been changed the whole sheet is read again.
+   */
+  private static final int MAX_CHANGED_RANGES = 1000;
+
+  /**
+   * Waits until a sequence of modifications has finished. The data is read and the listeners are
+   * informed on the main thread of the office, because the listeners update the user interface.
+   */
+  private static final ScheduledExecutorService REFRESH_EXECUTOR = Executors
+      .newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Calc datasource refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+
   /**
    * The name of this database. It's the window title without Office.
    */
@@ -85,35 +114,67 @@ public class CalcModel implements DatasourceModel
   /**
    * The data of one sheet.
    */
-  HashBasedTable<Integer, String, String> data = HashBasedTable.create();
+  private volatile CalcTable table = CalcTable.EMPTY;
 
   /**
    * The name of the sheet.
    */
-  private String sheetName;
+  private volatile String sheetName;
 
   /**
-   * Set of columns, which contain data.
+   * Listener on this model.
    */
-  private SortedSet<Integer> columnIndexes = new TreeSet<>();
+  private Set<DatasourceModelListener> listener = new CopyOnWriteArraySet<>();
 
   /**
-   * Set or rows, which contain data.
+   * Synchronizes the access to the pending modifications. The modification listeners only use this
+   * lock, so that they never wait for reading the sheet.
    */
-  private SortedSet<Integer> rowIndexes = new TreeSet<>();
+  private final Object refreshLock = new Object();
 
   /**
-   * Mapping from column name to column indexes.
+   * True if the calc file has been modified since the data was read.
    */
-  private Map<String, String> mapColumnNameToCalcColumnName = new HashMap<>();
+  private boolean refreshPending = false;
 
   /**
-   * Listener on this model.
+   * True if the modifications aren't limited to the cell ranges in {@link #changedRanges}.
+   */
+  private boolean fullRefresh = false;
+
+  /**
+   * The cell ranges, whose content has changed since the data was read.
    */
-  private Set<DatasourceModelListener> listener = new HashSet<>();
+  private List<CellRangeAddress> changedRanges = new ArrayList<>();
 
   /**
-   * Listener for changes in the calc file.
+   * The number of started reads of the sheet.
+   */
+  private long startedReads = 0;
+
+  /**
+   * The number of the read, whose data is in {@link #table}. Reads may run in parallel, data of
+   * older reads never replaces newer data.
+   */
+  private long publishedRead = 0;
+
+  /**
+   * The delayed notification of the listeners.
+   */
+  private ScheduledFuture<?> scheduledRefresh;
+
+  /**
+   * Reads the pending modifications and informs the listeners. It's called on the main thread of
+   * the office.
+   */
+  private final XCallback notifyCallback = data -> {
+    refresh();
+    listener.forEach(DatasourceModelListener::datasourceChanged);
+  };
+
+  /**
+   * Listener for changes in the calc file. A sequence of modifications results in only one
+   * notification of the listeners.
    */
   private XModifyListener modifyListener = new XModifyListener()
   {
@@ -127,13 +188,44 @@ public class CalcModel implements DatasourceModel
     @Override
     public void modified(EventObject event)
     {
-      try
+      synchronized (refreshLock)
       {
-        readTable();
-        listener.forEach(DatasourceModelListener::datasourceChanged);
-      } catch (NoTableSelectedException ex)
+        scheduleRefresh();
+      }
+    }
+  };
+
+  /**
+   * Listener for the cells changed by a modification. Modifications other than changing the content
+   * of cells (e.g. inserting rows) require reading the whole sheet.
+   */
+  private XChangesListener changesListener = new XChangesListener()
+  {
+
+    @Override
+    public void disposing(EventObject arg0)
+    {
+      // nothing to do
+    }
+
+    @Override
+    public void changesOccurred(ChangesEvent event)
+    {
+      synchronized (refreshLock)
       {
-        LOGGER.debug("", ex);
+        for (ElementChange change : event.Changes)
+        {
+          XSheetCellRanges ranges = UnoRuntime.queryInterface(XSheetCellRanges.class,
+              change.ReplacedElement);
+          if ("cell-change".equals(change.Accessor) && ranges != null)
+          {
+            changedRanges.addAll(Arrays.asList(ranges.getRangeAddresses()));
+          } else
+          {
+            fullRefresh = true;
+          }
+        }
+        scheduleRefresh();
       }
     }
   };
@@ -151,6 +243,12 @@ public class CalcModel implements DatasourceModel
     this.datasourceName = UNO.stripOpenOfficeFromWindowName(title);
     this.spreadSheetDocument = spreadSheetDocument;
     UNO.XModifiable(spreadSheetDocument).addModifyListener(modifyListener);
+    XChangesNotifier notifier = UnoRuntime.queryInterface(XChangesNotifier.class,
+        spreadSheetDocument);
+    if (notifier != null)
+    {
+      notifier.addChangesListener(changesListener);
+    }
   }
 
   @Override
@@ -169,6 +267,19 @@ public class CalcModel implements DatasourceModel
   public void dispose()
   {
     UNO.XModifiable(spreadSheetDocument).removeModifyListener(modifyListener);
+    XChangesNotifier notifier = UnoRuntime.queryInterface(XChangesNotifier.class,
+        spreadSheetDocument);
+    if (notifier != null)
+    {
+      notifier.removeChangesListener(changesListener);
+    }
+    synchronized (refreshLock)
+    {
+      if (scheduledRefresh != null)
+      {
+        scheduledRefresh.cancel(false);
+      }
+    }
   }
 
   @Override
@@ -181,7 +292,12 @@ public class CalcModel implements DatasourceModel
   public void activateTable(String tableName) throws NoTableSelectedException
   {
     this.sheetName = tableName;
-    readTable();
+    synchronized (refreshLock)
+    {
+      refreshPending = true;
+      fullRefresh = true;
+    }
+    refresh();
     LOGGER.debug("Tabelle {} wurde ausgewählt", sheetName);
   }
 
@@ -209,11 +325,7 @@ public class CalcModel implements DatasourceModel
     {
       return Collections.emptySet();
     }
-    if (sheetName == null)
-    {
-      throw new NoTableSelectedException();
-    }
-    return mapColumnNameToCalcColumnName.keySet();
+    return getTable().getRecords().getColumnNames();
   }
 
   @Override
@@ -243,33 +355,21 @@ public class CalcModel implements DatasourceModel
   }
 
   @Override
-  public Table<Integer, String, String> getData() throws NoTableSelectedException
+  public RecordTable getData() throws NoTableSelectedException
   {
-    if (sheetName == null)
-    {
-      throw new NoTableSelectedException();
-    }
-    return data;
+    return getTable().getRecords();
   }
 
   @Override
   public int getNumberOfRecords() throws NoTableSelectedException
   {
-    if (sheetName == null)
-    {
-      throw new NoTableSelectedException();
-    }
-    return data.rowKeySet().size();
+    return getTable().getRecords().getNumberOfRecords();
   }
 
   @Override
   public Map<String, String> getRecord(int rowIndex) throws NoTableSelectedException
   {
-    if (sheetName == null)
-    {
-      throw new NoTableSelectedException();
-    }
-    return data.row(rowIndex);
+    return getTable().getRecords().getRecord(rowIndex);
   }
 
   @Override
@@ -300,10 +400,7 @@ public class CalcModel implements DatasourceModel
   public void addColumns(Map<String, FieldSubstitution> mapIdToSubstitution)
       throws NoTableSelectedException
   {
-    if (sheetName == null)
-    {
-      throw new NoTableSelectedException();
-    }
+    CalcTable current = getTable();
     XCellRangesQuery sheet;
     try
     {
@@ -314,11 +411,7 @@ public class CalcModel implements DatasourceModel
     }
 
     // add column after last column
-    int newColumnX = 0;
-    if (!columnIndexes.isEmpty())
-    {
-      newColumnX = columnIndexes.last() + 1;
-    }
+    int newColumnX = current.getLastColumn() + 1;
 
     // Placeholder for the row number in the formula. It's hopefully never used
     // by users.
@@ -327,7 +420,7 @@ public class CalcModel implements DatasourceModel
     {
       String fieldId = ent.getKey();
       FieldSubstitution subst = ent.getValue();
-      String formulaStr = buildFormula(rowNumPlaceholder, subst);
+      String formulaStr = buildFormula(current, rowNumPlaceholder, subst);
       if (formulaStr == null)
       {
         continue;
@@ -336,17 +429,13 @@ public class CalcModel implements DatasourceModel
       try
       {
         XCellRange sheetCellRange = UNO.XCellRange(sheet);
-        int ymin = 0;
-        if (!rowIndexes.isEmpty())
-        {
-          ymin = rowIndexes.first();
+        int ymin = Math.max(current.getFirstRow(), 0);
 
-          // only write rows which already have data.
-          for (int y : rowIndexes)
-          {
-            UNO.XCell(sheetCellRange.getCellByPosition(newColumnX, y))
-                .setFormula(formulaStr.replace(rowNumPlaceholder, "" + (y + 1)));
-          }
+        // only write rows which already have data.
+        for (int y : current.getSheetRows().toArray())
+        {
+          UNO.XCell(sheetCellRange.getCellByPosition(newColumnX, y))
+              .setFormula(formulaStr.replace(rowNumPlaceholder, "" + (y + 1)));
         }
         UNO.XTextRange(sheetCellRange.getCellByPosition(newColumnX, ymin)).setString(fieldId);
 
@@ -390,53 +479,117 @@ public class CalcModel implements DatasourceModel
   }
 
   /**
-   * Read the data from the currently selected sheet.
+   * Get the data of the selected sheet. Pending modifications are read before.
    *
+   * @return The data.
    * @throws NoTableSelectedException
    *           No sheet is selected.
    */
-  private void readTable() throws NoTableSelectedException
+  private CalcTable getTable() throws NoTableSelectedException
   {
     if (sheetName == null)
     {
       throw new NoTableSelectedException();
     }
+    refresh();
+    return table;
+  }
+
+  /**
+   * Schedule the notification of the listeners on the main thread of the office. Further
+   * modifications within {@link #REFRESH_DELAY} postpone it. Must be called while holding
+   * {@link #refreshLock}.
+   */
+  private void scheduleRefresh()
+  {
+    refreshPending = true;
+    if (scheduledRefresh != null)
+    {
+      scheduledRefresh.cancel(false);
+    }
+    scheduledRefresh = REFRESH_EXECUTOR.schedule(
+        () -> AsyncCallback.create(UNO.defaultContext).addCallback(notifyCallback, null),
+        REFRESH_DELAY, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Read the pending modifications of the selected sheet.
+   */
+  private void refresh()
+  {
+    List<CellRangeAddress> changes;
+    long read;
+    synchronized (refreshLock)
+    {
+      if (!refreshPending || sheetName == null)
+      {
+        return;
+      }
+      read = ++startedReads;
+      // changes can only be applied to the data of the previous read
+      boolean partial = !fullRefresh && !changedRanges.isEmpty()
+          && changedRanges.size() <= MAX_CHANGED_RANGES && publishedRead == read - 1;
+      changes = partial ? changedRanges : null;
+      refreshPending = false;
+      fullRefresh = false;
+      changedRanges = new ArrayList<>();
+    }
+    CalcTable newTable = readTable(changes);
+    synchronized (refreshLock)
+    {
+      if (read > publishedRead)
+      {
+        table = newTable;
+        publishedRead = read;
+      }
+    }
+  }
 
-    data.clear();
-    mapColumnNameToCalcColumnName.clear();
+  /**
+   * Read the data from the currently selected sheet. If the visible columns and rows with content
+   * haven't changed only the changed cells and the formula cells are read again.
+   *
+   * @param changes
+   *          The changed cell ranges or null if the whole sheet has to be read.
+   * @return The data of the sheet.
+   */
+  private CalcTable readTable(List<CellRangeAddress> changes)
+  {
+    CalcTable newTable = CalcTable.EMPTY;
     if (spreadSheetDocument != null)
     {
       try
       {
-        XCellRangesQuery sheet = UNO
-            .XCellRangesQuery(spreadSheetDocument.getSheets().getByName(sheetName));
+        Object sheetObject = spreadSheetDocument.getSheets().getByName(sheetName);
+        XCellRangesQuery sheet = UNO.XCellRangesQuery(sheetObject);
         if (sheet != null)
         {
           XSheetCellRanges visibleCellRanges = sheet.queryVisibleCells();
-          XSheetCellRanges nonEmptyCellRanges = sheet.queryContentCells(
-              (short) (com.sun.star.sheet.CellFlags.VALUE | com.sun.star.sheet.CellFlags.DATETIME
-                  | com.sun.star.sheet.CellFlags.STRING | com.sun.star.sheet.CellFlags.FORMULA));
+          XSheetCellRanges nonEmptyCellRanges = sheet.queryContentCells((short) (CellFlags.VALUE
+              | CellFlags.DATETIME | CellFlags.STRING | CellFlags.FORMULA));
           CellRangeAddress[] nonEmptyCellRangeAddresses = nonEmptyCellRanges.getRangeAddresses();
-          columnIndexes = new TreeSet<>(Arrays.stream(nonEmptyCellRangeAddresses)
+          SortedSet<Integer> columnIndexes = new TreeSet<>(Arrays.stream(nonEmptyCellRangeAddresses)
               .flatMap(nonEmptyCells -> Arrays.stream(UNO.XCellRangesQuery(visibleCellRanges)
                   .queryIntersection(nonEmptyCells).getRangeAddresses()))
               .flatMap(addr -> IntStream.rangeClosed(addr.StartColumn, addr.EndColumn).boxed())
               .distinct().sorted().collect(Collectors.toSet()));
-          rowIndexes = new TreeSet<>(Arrays.stream(nonEmptyCellRangeAddresses)
+          SortedSet<Integer> rowIndexes = new TreeSet<>(Arrays.stream(nonEmptyCellRangeAddresses)
               .flatMap(nonEmptyCells -> Arrays.stream(UNO.XCellRangesQuery(visibleCellRanges)
                   .queryIntersection(nonEmptyCells).getRangeAddresses()))
               .flatMap(addr -> IntStream.rangeClosed(addr.StartRow, addr.EndRow).boxed()).distinct()
               .sorted().collect(Collectors.toSet()));
-          if (!rowIndexes.isEmpty() && !columnIndexes.isEmpty())
+          CalcTable current = table;
+          if (changes != null && !current.isEmpty()
+              && current.hasStructure(columnIndexes, rowIndexes))
           {
-            int startRow = rowIndexes.first();
-            int endRow = rowIndexes.last();
-            int startColumn = columnIndexes.first();
-            int endColumn = columnIndexes.last();
-            XCellRange range = UNO.XCellRange(sheet).getCellRangeByPosition(startColumn, startRow,
-                endColumn, endRow);            
+            newTable = readChanges(sheetObject, current, changes);
+          } else if (!rowIndexes.isEmpty() && !columnIndexes.isEmpty())
+          {
+            XCellRange range = UNO.XCellRange(sheet).getCellRangeByPosition(columnIndexes.first(),
+                rowIndexes.first(), columnIndexes.last(), rowIndexes.last());
             Object[][] cellData = UNO.XCellRangeData(range).getDataArray();
-            readRowData(cellData, range);
+            newTable = CalcTable.read(cellData, columnIndexes, rowIndexes,
+                getCellText(range, columnIndexes.first(), rowIndexes.first()));
           }
         }
       } catch (Exception e)
@@ -444,52 +597,81 @@ public class CalcModel implements DatasourceModel
         LOGGER.debug("", e);
       }
     }
+    return newTable;
   }
 
   /**
-   * Read the data of row and put it into the data table. If row doesn't contain data nothing is
-   * done.
+   * Read the changed cells and all formula cells, because their results may depend on the changed
+   * cells.
    *
-   * @param cellData
-   *          The data of the whole sheet..
-   * @throws IndexOutOfBoundsException 
+   * @param sheetObject
+   *          The selected sheet.
+   * @param current
+   *          The current data of the sheet.
+   * @param changes
+   *          The changed cell ranges of all sheets.
+   * @return The new data of the sheet.
+   * @throws IndexOutOfBoundsException
+   *           A cell couldn't be accessed.
    */
-  private void readRowData(Object[][] cellData, XCellRange range) throws IndexOutOfBoundsException
+  private CalcTable readChanges(Object sheetObject, CalcTable current,
+      List<CellRangeAddress> changes) throws IndexOutOfBoundsException
   {
-    List<Integer> rows = new ArrayList<>(rowIndexes);
-    for (int record = 0; record < rowIndexes.size(); record++)
+    short sheetIndex = UnoRuntime.queryInterface(XCellRangeAddressable.class, sheetObject)
+        .getRangeAddress().Sheet;
+    List<CellRangeAddress> ranges = changes.stream().filter(range -> range.Sheet == sheetIndex)
+        .collect(Collectors.toList());
+    ranges.addAll(Arrays.asList(UNO.XCellRangesQuery(sheetObject)
+        .queryContentCells((short) CellFlags.FORMULA).getRangeAddresses()));
+
+    XCellRange cells = UNO.XCellRange(sheetObject);
+    CalcTable.Changes tableChanges = current.change();
+    for (CellRangeAddress range : ranges)
     {
-      int row = rows.get(record);
-      for (int j = 0; j < cellData[0].length; j++)
+      int startColumn = Math.max(range.StartColumn, current.getFirstColumn());
+      int startRow = Math.max(range.StartRow, current.getFirstRow());
+      int endColumn = Math.min(range.EndColumn, current.getLastColumn());
+      int endRow = Math.min(range.EndRow, current.getLastRow());
+      if (startColumn <= endColumn && startRow <= endRow)
       {
-        if (columnIndexes.contains(j + columnIndexes.first()))
-        {
-          String column = UNO.XTextRange(range.getCellByPosition(j, rows.get(0))).getString();
-          column = CharMatcher.breakingWhitespace().replaceFrom(column, " ");
-          // first row contains the header
-          if (record == 0)
-          {
-            mapColumnNameToCalcColumnName.put(column, getCalcColumnNameForColumnIndex(j + 1));
-          } else
-          {
-            String value = UNO.XTextRange(range.getCellByPosition(j, row)).getString();
-            data.put(record, column, value);
-          }
-        }
+        XCellRange changed = cells.getCellRangeByPosition(startColumn, startRow, endColumn, endRow);
+        tableChanges.set(UNO.XCellRangeData(changed).getDataArray(), startColumn, startRow,
+            getCellText(changed, startColumn, startRow));
       }
     }
+    return tableChanges.apply();
+  }
+
+  /**
+   * Get the displayed text of cells in a range.
+   *
+   * @param range
+   *          The cell range.
+   * @param startColumn
+   *          The first sheet column of the range.
+   * @param startRow
+   *          The first sheet row of the range.
+   * @return Provider of the text of a cell.
+   */
+  private CalcTable.CellText getCellText(XCellRange range, int startColumn, int startRow)
+  {
+    return (column, row) -> UNO
+        .XTextRange(range.getCellByPosition(column - startColumn, row - startRow)).getString();
   }
 
   /**
    * Compute a formula of the field substitutions.
    *
+   * @param current
+   *          The data of the sheet.
    * @param rowNumPlaceholder
    *          The placeholder for row numbers.
    * @param subst
    *          List of substitutions.
    * @return A formula as string.
    */
-  private String buildFormula(String rowNumPlaceholder, FieldSubstitution subst)
+  private String buildFormula(CalcTable current, String rowNumPlaceholder,
+      FieldSubstitution subst)
   {
     StringBuilder formula = new StringBuilder();
     for (FieldSubstitution.SubstElement substEle : subst)
@@ -505,10 +687,10 @@ public class CalcModel implements DatasourceModel
         formula.append('"');
       } else if (substEle.isField())
       {
-        String calcColumnName = mapColumnNameToCalcColumnName.get(substEle.getValue());
-        if (calcColumnName != null)
+        int column = current.getSheetColumn(substEle.getValue());
+        if (column >= 0)
         {
-          formula.append(calcColumnName);
+          formula.append(getCalcColumnNameForColumnIndex(column + 1));
           formula.append(rowNumPlaceholder);
         } else
         {
@@ -0,0 +1,345 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.stream.IntStream;
+
+import com.google.common.base.CharMatcher;
+import com.sun.star.lang.IndexOutOfBoundsException;
+
+/**
+ * The content of a sheet in columnar form. The first row is the header, every further row is a
+ * record. Only the visible columns and rows with content are part of the table.
+ *
+ * The table is built in bulk from the data array of a cell range. Only cells which don't contain a
+ * string (e.g. numbers or dates) are formatted by a {@link CellText}.
+ *
+ * A table is immutable. {@link #change()} creates a new table, which shares all unchanged columns.
+ */
+final class CalcTable
+{
+  /**
+   * A table without any columns and records.
+   */
+  static final CalcTable EMPTY = new CalcTable(new int[0], new int[0], new String[0],
+      new String[0][]);
+
+  /**
+   * Provides the displayed text of a cell.
+   */
+  @FunctionalInterface
+  interface CellText
+  {
+    /**
+     * Get the text of a cell.
+     *
+     * @param column
+     *          The column of the cell in the sheet.
+     * @param row
+     *          The row of the cell in the sheet.
+     * @return The text as displayed by calc.
+     * @throws IndexOutOfBoundsException
+     *           The cell doesn't exist.
+     */
+    String get(int column, int row) throws IndexOutOfBoundsException;
+  }
+
+  /**
+   * The sheet column of each table column in ascending order.
+   */
+  private final int[] sheetColumns;
+
+  /**
+   * The sheet row of the header followed by the sheet rows of the records in ascending order.
+   */
+  private final int[] sheetRows;
+
+  /**
+   * The column names.
+   */
+  private final String[] header;
+
+  /**
+   * The values of each column. The value of record r is stored at index r - 1.
+   */
+  private final String[][] values;
+
+  /**
+   * Mapping from column name to table column. If several columns have the same name the last one
+   * wins.
+   */
+  private final Map<String, Integer> columnByName;
+
+  /**
+   * The records, which share the column arrays with this table.
+   */
+  private final RecordTable records;
+
+  private CalcTable(int[] sheetColumns, int[] sheetRows, String[] header, String[][] values)
+  {
+    this.sheetColumns = sheetColumns;
+    this.sheetRows = sheetRows;
+    this.header = header;
+    this.values = values;
+    columnByName = new LinkedHashMap<>();
+    for (int c = 0; c < header.length; c++)
+    {
+      columnByName.put(header[c], c);
+    }
+    records = new RecordTable(header, values, isEmpty() ? 0 : sheetRows.length - 1);
+  }
+
+  /**
+   * Create a table from the data array of a cell range.
+   *
+   * @param cellData
+   *          The data array of the cell range, which starts at the first column and the first row.
+   * @param columns
+   *          The visible sheet columns with content.
+   * @param rows
+   *          The visible sheet rows with content. The first one is the header.
+   * @param text
+   *          Provides the text of cells which don't contain a string.
+   * @return The table.
+   * @throws IndexOutOfBoundsException
+   *           A cell couldn't be accessed.
+   */
+  static CalcTable read(Object[][] cellData, SortedSet<Integer> columns, SortedSet<Integer> rows,
+      CellText text) throws IndexOutOfBoundsException
+  {
+    if (columns.isEmpty() || rows.isEmpty())
+    {
+      return EMPTY;
+    }
+    int[] sheetColumns = columns.stream().mapToInt(Integer::intValue).toArray();
+    int[] sheetRows = rows.stream().mapToInt(Integer::intValue).toArray();
+    int startColumn = sheetColumns[0];
+    int startRow = sheetRows[0];
+
+    String[] header = new String[sheetColumns.length];
+    String[][] values = new String[sheetColumns.length][sheetRows.length - 1];
+    RecordTable.Dictionary[] dictionaries = new RecordTable.Dictionary[sheetColumns.length];
+    Object[] rowData = cellData[0];
+    for (int c = 0; c < sheetColumns.length; c++)
+    {
+      header[c] = toColumnName(
+          toText(rowData[sheetColumns[c] - startColumn], sheetColumns[c], startRow, text));
+      dictionaries[c] = new RecordTable.Dictionary();
+    }
+    for (int r = 1; r < sheetRows.length; r++)
+    {
+      rowData = cellData[sheetRows[r] - startRow];
+      for (int c = 0; c < sheetColumns.length; c++)
+      {
+        values[c][r - 1] = dictionaries[c].get(toText(rowData[sheetColumns[c] - startColumn],
+            sheetColumns[c], sheetRows[r], text));
+      }
+    }
+    return new CalcTable(sheetColumns, sheetRows, header, values);
+  }
+
+  /**
+   * Start changing some cells of this table.
+   *
+   * @return The changes, which create a new table.
+   */
+  Changes change()
+  {
+    return new Changes();
+  }
+
+  /**
+   * Does the table consist of the given columns and rows?
+   *
+   * @param columns
+   *          The visible sheet columns with content.
+   * @param rows
+   *          The visible sheet rows with content.
+   * @return True if the table has the same columns and rows, false otherwise.
+   */
+  boolean hasStructure(SortedSet<Integer> columns, SortedSet<Integer> rows)
+  {
+    return Arrays.equals(sheetColumns, columns.stream().mapToInt(Integer::intValue).toArray())
+        && Arrays.equals(sheetRows, rows.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  boolean isEmpty()
+  {
+    return sheetColumns.length == 0;
+  }
+
+  int getFirstColumn()
+  {
+    return isEmpty() ? -1 : sheetColumns[0];
+  }
+
+  int getLastColumn()
+  {
+    return isEmpty() ? -1 : sheetColumns[sheetColumns.length - 1];
+  }
+
+  int getFirstRow()
+  {
+    return isEmpty() ? -1 : sheetRows[0];
+  }
+
+  int getLastRow()
+  {
+    return isEmpty() ? -1 : sheetRows[sheetRows.length - 1];
+  }
+
+  /**
+   * The sheet rows of the table.
+   *
+   * @return The header row followed by the rows of the records.
+   */
+  IntStream getSheetRows()
+  {
+    return isEmpty() ? IntStream.empty() : Arrays.stream(sheetRows);
+  }
+
+  /**
+   * The sheet column of a column.
+   *
+   * @param columnName
+   *          The name of the column.
+   * @return The sheet column or -1 if there's no such column.
+   */
+  int getSheetColumn(String columnName)
+  {
+    Integer column = columnByName.get(columnName);
+    return column == null ? -1 : sheetColumns[column];
+  }
+
+  /**
+   * The records of the table. If several columns have the same name only the last one is part of
+   * the records.
+   *
+   * @return The records.
+   */
+  RecordTable getRecords()
+  {
+    return records;
+  }
+
+  private static String toText(Object value, int column, int row, CellText text)
+      throws IndexOutOfBoundsException
+  {
+    if (value instanceof String)
+    {
+      return (String) value;
+    }
+    return text.get(column, row);
+  }
+
+  private static String toColumnName(String text)
+  {
+    return CharMatcher.breakingWhitespace().replaceFrom(text, " ");
+  }
+
+  /**
+   * Changes of some cells. Only the modified columns are copied.
+   */
+  final class Changes
+  {
+    private String[] newHeader = header;
+
+    private final String[][] newValues = values.clone();
+
+    private final boolean[] copied = new boolean[values.length];
+
+    private Changes()
+    {
+    }
+
+    /**
+     * Take over the data array of a cell range. Cells which aren't part of the table are ignored.
+     *
+     * @param cellData
+     *          The data array of the cell range.
+     * @param startColumn
+     *          The first sheet column of the cell range.
+     * @param startRow
+     *          The first sheet row of the cell range.
+     * @param text
+     *          Provides the text of cells which don't contain a string.
+     * @return This object.
+     * @throws IndexOutOfBoundsException
+     *           A cell couldn't be accessed.
+     */
+    Changes set(Object[][] cellData, int startColumn, int startRow, CellText text)
+        throws IndexOutOfBoundsException
+    {
+      for (int y = 0; y < cellData.length; y++)
+      {
+        int row = startRow + y;
+        int r = Arrays.binarySearch(sheetRows, row);
+        if (r < 0)
+        {
+          continue;
+        }
+        for (int x = 0; x < cellData[y].length; x++)
+        {
+          int column = startColumn + x;
+          int c = Arrays.binarySearch(sheetColumns, column);
+          if (c < 0)
+          {
+            continue;
+          }
+          String value = toText(cellData[y][x], column, row, text);
+          if (r == 0)
+          {
+            if (newHeader == header)
+            {
+              newHeader = header.clone();
+            }
+            newHeader[c] = toColumnName(value);
+          } else
+          {
+            if (!copied[c])
+            {
+              newValues[c] = values[c].clone();
+              copied[c] = true;
+            }
+            newValues[c][r - 1] = value;
+          }
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Create the changed table.
+     *
+     * @return The new table.
+     */
+    CalcTable apply()
+    {
+      return new CalcTable(sheetColumns, sheetRows, newHeader, newValues);
+    }
+  }
+}
@@ -43,6 +43,7 @@ import com.sun.star.uno.UnoRuntime;
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
 import de.muenchen.allg.dialog.adapter.AbstractActionListener;
+import de.muenchen.allg.itd51.wollmux.db.Datasources;
 import de.muenchen.allg.itd51.wollmux.ui.GuiFactory;
 import de.muenchen.allg.itd51.wollmux.ui.layout.Layout;
 import de.muenchen.allg.itd51.wollmux.ui.layout.VerticalLayout;
@@ -109,6 +110,7 @@ public class DBDatasourceDialog
    */
   private Set<String> getRegisteredDatabaseNames()
   {
+    Datasources.awaitRegistration();
     try
     {
       return UnoDictionary.create(UNO.dbContext, Object.class).keySet();
@@ -23,7 +23,6 @@
 package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,8 +30,6 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import com.sun.star.awt.XTopWindow;
 import com.sun.star.frame.XModel;
 import com.sun.star.lang.EventObject;
@@ -93,7 +90,7 @@ public class DBModel implements DatasourceModel
   /**
    * The data of the currently selected table.
    */
-  HashBasedTable<Integer, String, String> data = HashBasedTable.create();
+  RecordTable data = RecordTable.EMPTY;
 
   /**
    * Login timeout in seconds.
@@ -234,11 +231,11 @@ public class DBModel implements DatasourceModel
       throw new NoTableSelectedException();
     }
 
-    return data.columnKeySet();
+    return data.getColumnNames();
   }
 
   @Override
-  public Table<Integer, String, String> getData() throws NoTableSelectedException
+  public RecordTable getData() throws NoTableSelectedException
   {
     if (tableName == null)
     {
@@ -256,7 +253,7 @@ public class DBModel implements DatasourceModel
       throw new NoTableSelectedException();
     }
 
-    return data.rowMap().size();
+    return data.getNumberOfRecords();
   }
 
   @Override
@@ -316,11 +313,7 @@ public class DBModel implements DatasourceModel
       throw new NoTableSelectedException();
     }
 
-    if (!data.containsRow(index))
-    {
-      Collections.emptyMap();
-    }
-    return data.row(index);
+    return data.getRecord(index);
   }
 
   @Override
@@ -348,7 +341,7 @@ public class DBModel implements DatasourceModel
       throw new NoTableSelectedException();
     }
 
-    data.clear();
+    data = RecordTable.EMPTY;
     try
     {
       UnoDictionary<XColumnsSupplier> tables = UnoDictionary.create(UNO.XTablesSupplier(conn)
@@ -364,16 +357,23 @@ public class DBModel implements DatasourceModel
       results.execute();
       XRow row = UNO.XRow(results);
       XColumnLocate locate = UNO.XColumnLocate(results);
-      int id = 1;
+      List<String> columnList = new ArrayList<>(columnNames);
+      int[] indexes = new int[columnList.size()];
+      for (int i = 0; i < indexes.length; i++)
+      {
+        indexes[i] = locate.findColumn(columnList.get(i));
+      }
+      RecordTable.Builder builder = RecordTable.builder(columnList);
+      String[] values = new String[indexes.length];
       while (results.next())
       {
-        for (String column : columnNames)
+        for (int i = 0; i < indexes.length; i++)
         {
-          String value = row.getString(locate.findColumn(column));
-          data.put(id, column, value);
+          values[i] = row.getString(indexes[i]);
         }
-        id++;
+        builder.addRecord(values);
       }
+      data = builder.build();
     } catch (SQLException | IllegalArgumentException | UnoHelperException e)
     {
       LOGGER.error("", e);
@@ -26,7 +26,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import com.google.common.collect.Table;
 import com.sun.star.util.XCloseBroadcaster;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -120,11 +119,11 @@ public interface DatasourceModel extends XCloseBroadcaster
   /**
    * The content of a table.
    *
-   * @return The content.
+   * @return The content. It isn't changed by later modifications of the data source.
    * @throws NoTableSelectedException
    *           A table has to be selected before this method can used.
    */
-  Table<Integer, String, String> getData() throws NoTableSelectedException;
+  RecordTable getData() throws NoTableSelectedException;
 
   /**
    * Get the number of records in a table.
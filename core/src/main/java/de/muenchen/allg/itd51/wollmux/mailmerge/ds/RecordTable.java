@@ -0,0 +1,387 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The records of a {@link DatasourceModel}. The values are stored column by column, the column
+ * names are stored only once and equal values of a column share one string. Records are numbered
+ * starting with 1.
+ *
+ * A table is immutable. {@link #getRecord(int)} provides a view of a record without copying its
+ * values.
+ */
+public final class RecordTable
+{
+  /**
+   * A table without columns and records.
+   */
+  public static final RecordTable EMPTY = new RecordTable(new String[0], new String[0][], 0);
+
+  /**
+   * The names of the columns.
+   */
+  private final String[] columnNames;
+
+  /**
+   * Mapping from column name to the index of the column.
+   */
+  private final Map<String, Integer> columnIndexes;
+
+  /**
+   * The values of each column. The value of record r is stored at index r - 1.
+   */
+  private final String[][] columns;
+
+  /**
+   * The number of records.
+   */
+  private final int size;
+
+  /**
+   * Create a new table. If a column name occurs more than once, only the values of the last column
+   * with this name are kept at the position of the first one.
+   *
+   * @param columnNames
+   *          The names of the columns.
+   * @param columns
+   *          The values of each column. Each array must contain at least size values.
+   * @param size
+   *          The number of records.
+   */
+  RecordTable(String[] columnNames, String[][] columns, int size)
+  {
+    this.size = size;
+    Map<String, Integer> indexes = new LinkedHashMap<>();
+    for (int i = 0; i < columnNames.length; i++)
+    {
+      indexes.put(columnNames[i], i);
+    }
+    if (indexes.size() == columnNames.length)
+    {
+      this.columnNames = columnNames;
+      this.columns = columns;
+      columnIndexes = indexes;
+    } else
+    {
+      this.columnNames = new String[indexes.size()];
+      this.columns = new String[indexes.size()][];
+      columnIndexes = new LinkedHashMap<>();
+      int column = 0;
+      for (Map.Entry<String, Integer> entry : indexes.entrySet())
+      {
+        this.columnNames[column] = entry.getKey();
+        this.columns[column] = columns[entry.getValue()];
+        columnIndexes.put(entry.getKey(), column);
+        column++;
+      }
+    }
+  }
+
+  /**
+   * Create a builder for a table.
+   *
+   * @param columnNames
+   *          The names of the columns. Of duplicate names only the last column is kept.
+   * @return A new builder.
+   */
+  public static Builder builder(Collection<String> columnNames)
+  {
+    return new Builder(columnNames.toArray(new String[0]));
+  }
+
+  /**
+   * The names of the columns in their order.
+   *
+   * @return Unmodifiable set of column names.
+   */
+  public Set<String> getColumnNames()
+  {
+    return Collections.unmodifiableSet(columnIndexes.keySet());
+  }
+
+  public int getNumberOfColumns()
+  {
+    return columnNames.length;
+  }
+
+  public int getNumberOfRecords()
+  {
+    return size;
+  }
+
+  /**
+   * Get the index of a column.
+   *
+   * @param columnName
+   *          The name of the column.
+   * @return The index of the column or -1 if there's no such column.
+   */
+  public int getColumn(String columnName)
+  {
+    Integer index = columnIndexes.get(columnName);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param record
+   *          The number of the record starting with 1.
+   * @param column
+   *          The index of the column.
+   * @return The value.
+   * @throws IndexOutOfBoundsException
+   *           There's no such record or column.
+   */
+  public String get(int record, int column)
+  {
+    if (record < 1 || record > size)
+    {
+      throw new IndexOutOfBoundsException("Record " + record + " doesn't exist");
+    }
+    return columns[column][record - 1];
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param record
+   *          The number of the record starting with 1.
+   * @param columnName
+   *          The name of the column.
+   * @return The value or null if there's no such record or column.
+   */
+  public String get(int record, String columnName)
+  {
+    int column = getColumn(columnName);
+    if (record < 1 || record > size || column < 0)
+    {
+      return null;
+    }
+    return columns[column][record - 1];
+  }
+
+  /**
+   * Get a view of a record.
+   *
+   * @param record
+   *          The number of the record starting with 1.
+   * @return Unmodifiable mapping from column name to value. The mapping is empty if there's no such
+   *         record.
+   */
+  public Map<String, String> getRecord(int record)
+  {
+    if (record < 1 || record > size)
+    {
+      return Collections.emptyMap();
+    }
+    return new Record(record - 1);
+  }
+
+  /**
+   * Replaces equal values by the same string.
+   */
+  static final class Dictionary
+  {
+    private final Map<String, String> values = new HashMap<>();
+
+    /**
+     * Get the shared string of a value.
+     *
+     * @param value
+     *          The value.
+     * @return The first string which was equal to the value.
+     */
+    String get(String value)
+    {
+      if (value == null)
+      {
+        return null;
+      }
+      String shared = values.putIfAbsent(value, value);
+      return shared == null ? value : shared;
+    }
+  }
+
+  /**
+   * Creates a {@link RecordTable} record by record.
+   */
+  public static final class Builder
+  {
+    private final String[] columnNames;
+
+    private final Dictionary[] dictionaries;
+
+    private String[][] columns;
+
+    private int size = 0;
+
+    private Builder(String[] columnNames)
+    {
+      this.columnNames = columnNames;
+      dictionaries = new Dictionary[columnNames.length];
+      columns = new String[columnNames.length][];
+      for (int i = 0; i < columnNames.length; i++)
+      {
+        dictionaries[i] = new Dictionary();
+        columns[i] = new String[16];
+      }
+    }
+
+    /**
+     * Add a record.
+     *
+     * @param values
+     *          The values in the order of the columns. The array is copied, so it can be reused.
+     * @return This builder.
+     */
+    public Builder addRecord(String... values)
+    {
+      if (values.length != columnNames.length)
+      {
+        throw new IllegalArgumentException(
+            "Expected " + columnNames.length + " values but got " + values.length);
+      }
+      for (int i = 0; i < columns.length; i++)
+      {
+        if (size == columns[i].length)
+        {
+          columns[i] = Arrays.copyOf(columns[i], size * 2);
+        }
+        columns[i][size] = dictionaries[i].get(values[i]);
+      }
+      size++;
+      return this;
+    }
+
+    /**
+     * Create the table.
+     *
+     * @return The table containing all added records.
+     */
+    public RecordTable build()
+    {
+      String[][] result = new String[columns.length][];
+      for (int i = 0; i < columns.length; i++)
+      {
+        result[i] = Arrays.copyOf(columns[i], size);
+      }
+      return new RecordTable(columnNames.clone(), result, size);
+    }
+  }
+
+  /**
+   * View of one record.
+   */
+  private final class Record extends AbstractMap<String, String>
+  {
+    private final int index;
+
+    private Record(int index)
+    {
+      this.index = index;
+    }
+
+    @Override
+    public int size()
+    {
+      return columnNames.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+      return columnIndexes.containsKey(key);
+    }
+
+    @Override
+    public String get(Object key)
+    {
+      Integer column = columnIndexes.get(key);
+      return column == null ? null : columns[column][index];
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action)
+    {
+      for (int i = 0; i < columnNames.length; i++)
+      {
+        action.accept(columnNames[i], columns[i][index]);
+      }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet()
+    {
+      return new AbstractSet<Entry<String, String>>()
+      {
+        @Override
+        public int size()
+        {
+          return columnNames.length;
+        }
+
+        @Override
+        public Iterator<Entry<String, String>> iterator()
+        {
+          return new Iterator<Entry<String, String>>()
+          {
+            private int column = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+              return column < columnNames.length;
+            }
+
+            @Override
+            public Entry<String, String> next()
+            {
+              if (!hasNext())
+              {
+                throw new NoSuchElementException();
+              }
+              Entry<String, String> entry = new SimpleImmutableEntry<>(columnNames[column],
+                  columns[column][index]);
+              column++;
+              return entry;
+            }
+          };
+        }
+      };
+    }
+  }
+}
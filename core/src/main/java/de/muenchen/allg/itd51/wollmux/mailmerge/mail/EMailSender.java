@@ -32,7 +32,6 @@ import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
@@ -116,6 +115,16 @@ public class EMailSender
     ((Multipart) email.getContent()).addBodyPart(messageBodyPart);
   }
 
+  /**
+   * The mail created by {@link #createNewMultipartMail(String, String, String, String)}.
+   *
+   * @return The mail.
+   */
+  Message getMessage()
+  {
+    return email;
+  }
+
   /**
    * Send a message.
    *
@@ -128,13 +137,9 @@ public class EMailSender
   {
     // Necessary for mapping MIME types to Java classes.
     Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
-    try (Transport tr = session.getTransport("smtp");)
+    try (SmtpConnection connection = new SmtpConnection(session, mailServerSettings))
     {
-      // Empty String activates AUTH so use null if no authentication is required.
-      tr.connect(mailServerSettings.getMailserver(), mailServerSettings.getMailserverport(),
-          mailServerSettings.getUsername(), mailServerSettings.getPassword());
-      email.saveChanges();
-      tr.sendMessage(email, email.getAllRecipients());
+      connection.send(email);
     }
     catch (MessagingException e)
     {
@@ -0,0 +1,328 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.mail;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends mails in the background over one {@link SmtpConnection}, so that creating the next mail and
+ * sending the previous ones overlap. The queue is bounded, {@link #submit(EMailSender, String,
+ * Runnable)} waits if the mail server is slower than the mails are created. A mail is tried several
+ * times before it's reported as failed.
+ */
+public class MailQueue
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(MailQueue.class);
+
+  /**
+   * Maximum number of mails waiting to be sent.
+   */
+  private static final int CAPACITY = 16;
+
+  /**
+   * Maximum number of attempts to send a mail.
+   */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /**
+   * Delay in milliseconds before the first retry. Each further retry waits longer.
+   */
+  private static final long RETRY_DELAY = 2000;
+
+  /**
+   * Timeout in milliseconds for connecting to and reading from the mail server.
+   */
+  private static final String TIMEOUT = "60000";
+
+  /**
+   * Marks the end of the queue.
+   */
+  private static final Task END = new Task(null, null, null);
+
+  private final SmtpConnection connection;
+
+  private final BlockingQueue<Task> queue;
+
+  private final int maxAttempts;
+
+  private final long retryDelay;
+
+  private final MailReport report = new MailReport();
+
+  private final Thread worker;
+
+  /**
+   * An error after which no more mails can be sent, e.g. invalid credentials.
+   */
+  private volatile MessagingException fatalError;
+
+  /**
+   * Create a new queue for a mail server.
+   *
+   * @param settings
+   *          The mail server.
+   */
+  public MailQueue(MailServerSettings settings)
+  {
+    this(new SmtpConnection(createSession(), settings), CAPACITY, MAX_ATTEMPTS, RETRY_DELAY);
+  }
+
+  /**
+   * Create a new queue.
+   *
+   * @param connection
+   *          The connection for sending the mails.
+   * @param capacity
+   *          Maximum number of mails waiting to be sent.
+   * @param maxAttempts
+   *          Maximum number of attempts to send a mail.
+   * @param retryDelay
+   *          Delay in milliseconds before the first retry.
+   */
+  MailQueue(SmtpConnection connection, int capacity, int maxAttempts, long retryDelay)
+  {
+    this.connection = connection;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.maxAttempts = maxAttempts;
+    this.retryDelay = retryDelay;
+    worker = new Thread(this::work, "Mail merge e-mail");
+    worker.setDaemon(true);
+    // Necessary for mapping MIME types to Java classes.
+    worker.setContextClassLoader(getClass().getClassLoader());
+    worker.start();
+  }
+
+  /**
+   * Add a mail to the queue. Waits if the queue is full.
+   *
+   * @param mail
+   *          The mail.
+   * @param recipient
+   *          The recipient for the report.
+   * @param done
+   *          Called after the mail has been sent or has failed, e.g. to delete attachments. May be
+   *          null.
+   * @throws MessagingException
+   *           No more mails can be sent, because a previous mail failed permanently.
+   * @throws InterruptedException
+   *           Interrupted while waiting for free space in the queue.
+   */
+  public void submit(EMailSender mail, String recipient, Runnable done)
+      throws MessagingException, InterruptedException
+  {
+    if (fatalError != null)
+    {
+      throw new MessagingException(fatalError.getMessage(), fatalError);
+    }
+    if (!worker.isAlive())
+    {
+      throw new IllegalStateException("Mail queue has already been finished");
+    }
+    queue.put(new Task(mail.getMessage(), recipient, done));
+    if (!worker.isAlive())
+    {
+      // the worker has terminated after the check above
+      drain();
+    }
+  }
+
+  /**
+   * Wait until all mails have been sent and close the connection. No more mails can be added
+   * afterwards.
+   *
+   * @return The report about all mails of this queue.
+   * @throws InterruptedException
+   *           Interrupted while waiting.
+   */
+  public MailReport finish() throws InterruptedException
+  {
+    if (worker.isAlive())
+    {
+      queue.put(END);
+      worker.join();
+    }
+    return report;
+  }
+
+  /**
+   * Create a mail session with timeouts, so that a dead server doesn't block the queue forever.
+   *
+   * @return A new session.
+   */
+  private static Session createSession()
+  {
+    Properties props = new Properties();
+    props.setProperty("mail.smtp.connectiontimeout", TIMEOUT);
+    props.setProperty("mail.smtp.timeout", TIMEOUT);
+    return Session.getInstance(props);
+  }
+
+  private void work()
+  {
+    try
+    {
+      Task task;
+      while ((task = queue.take()) != END)
+      {
+        try
+        {
+          send(task);
+        } catch (RuntimeException e)
+        {
+          LOGGER.error("Couldn't send mail to {}", task.recipient, e);
+          report.addFailed(task.recipient);
+        } finally
+        {
+          runDone(task);
+        }
+      }
+    } catch (InterruptedException e)
+    {
+      LOGGER.debug("Mail queue interrupted", e);
+      Thread.currentThread().interrupt();
+    } finally
+    {
+      connection.close();
+      drain();
+    }
+  }
+
+  /**
+   * Report all mails, which are still in the queue, as failed. Waiting
+   * {@link #submit(EMailSender, String, Runnable)} calls are released, because the worker has
+   * already terminated or is about to.
+   */
+  private void drain()
+  {
+    Task task;
+    while ((task = queue.poll()) != null)
+    {
+      if (task != END)
+      {
+        report.addFailed(task.recipient);
+        runDone(task);
+      }
+    }
+  }
+
+  private static void runDone(Task task)
+  {
+    try
+    {
+      task.done.run();
+    } catch (RuntimeException e)
+    {
+      LOGGER.error("", e);
+    }
+  }
+
+  /**
+   * Send a mail and add it to the report.
+   *
+   * @param task
+   *          The mail.
+   * @throws InterruptedException
+   *           Interrupted while waiting for a retry.
+   */
+  private void send(Task task) throws InterruptedException
+  {
+    if (fatalError != null)
+    {
+      report.addFailed(task.recipient);
+      return;
+    }
+    for (int attempt = 1;; attempt++)
+    {
+      try
+      {
+        connection.send(task.message);
+        report.addSent(task.recipient);
+        return;
+      } catch (AuthenticationFailedException e)
+      {
+        LOGGER.error("Authentication at mail server failed", e);
+        fatalError = e;
+        report.addFailed(task.recipient);
+        return;
+      } catch (MessagingException e)
+      {
+        if (attempt >= maxAttempts || isPermanent(e))
+        {
+          LOGGER.error("Couldn't send mail to {}", task.recipient, e);
+          report.addFailed(task.recipient);
+          return;
+        }
+        LOGGER.debug("Attempt {} to send mail to {} failed", attempt, task.recipient, e);
+        connection.close();
+        Thread.sleep(retryDelay * attempt);
+      }
+    }
+  }
+
+  /**
+   * Is it useless to send the mail again?
+   *
+   * @param e
+   *          The error of the last attempt.
+   * @return True if the server rejected some addresses, false otherwise.
+   */
+  private static boolean isPermanent(MessagingException e)
+  {
+    if (e instanceof SendFailedException)
+    {
+      Object[] invalid = ((SendFailedException) e).getInvalidAddresses();
+      return invalid != null && invalid.length > 0;
+    }
+    return false;
+  }
+
+  /**
+   * A mail in the queue.
+   */
+  private static class Task
+  {
+    private final Message message;
+
+    private final String recipient;
+
+    private final Runnable done;
+
+    private Task(Message message, String recipient, Runnable done)
+    {
+      this.message = message;
+      this.recipient = recipient;
+      this.done = done == null ? () -> {} : done;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of sending the mails of a {@link MailQueue}.
+ */
+public class MailReport
+{
+  private final List<String> sentRecipients = new ArrayList<>();
+
+  private final List<String> failedRecipients = new ArrayList<>();
+
+  synchronized void addSent(String recipient)
+  {
+    sentRecipients.add(recipient);
+  }
+
+  synchronized void addFailed(String recipient)
+  {
+    failedRecipients.add(recipient);
+  }
+
+  /**
+   * The recipients of the mails, which have been sent.
+   *
+   * @return List of recipients in the order the mails have been sent.
+   */
+  public synchronized List<String> getSentRecipients()
+  {
+    return new ArrayList<>(sentRecipients);
+  }
+
+  /**
+   * The recipients of the mails, which couldn't be sent.
+   *
+   * @return List of recipients.
+   */
+  public synchronized List<String> getFailedRecipients()
+  {
+    return new ArrayList<>(failedRecipients);
+  }
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.mail;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An authenticated connection to a SMTP server, which is reused for several messages. If the
+ * connection has been closed by the server, it's opened again.
+ */
+class SmtpConnection implements AutoCloseable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(SmtpConnection.class);
+
+  private final Session session;
+
+  private final MailServerSettings settings;
+
+  private Transport transport;
+
+  /**
+   * Number of times a connection has been opened.
+   */
+  private int connects = 0;
+
+  /**
+   * Create a new connection. The connection is opened when the first message is sent.
+   *
+   * @param session
+   *          The mail session.
+   * @param settings
+   *          The mail server. Its user name and password are read whenever the connection is
+   *          opened.
+   */
+  SmtpConnection(Session session, MailServerSettings settings)
+  {
+    this.session = session;
+    this.settings = settings;
+  }
+
+  /**
+   * Send a message. If the connection has been lost while sending, it's opened again and the
+   * message is sent once more.
+   *
+   * @param message
+   *          The message.
+   * @throws MessagingException
+   *           The message couldn't be sent.
+   */
+  void send(Message message) throws MessagingException
+  {
+    connect();
+    message.saveChanges();
+    try
+    {
+      transport.sendMessage(message, message.getAllRecipients());
+    } catch (MessagingException e)
+    {
+      if (transport.isConnected())
+      {
+        throw e;
+      }
+      LOGGER.debug("Connection to mail server lost, reconnecting", e);
+      close();
+      connect();
+      transport.sendMessage(message, message.getAllRecipients());
+    }
+  }
+
+  int getConnects()
+  {
+    return connects;
+  }
+
+  /**
+   * Open the connection if it isn't open.
+   *
+   * @throws MessagingException
+   *           The connection couldn't be opened.
+   */
+  private void connect() throws MessagingException
+  {
+    if (transport != null && transport.isConnected())
+    {
+      return;
+    }
+    if (transport == null)
+    {
+      transport = session.getTransport("smtp");
+    }
+    // Empty String activates AUTH so use null if no authentication is required.
+    int port = settings.getMailserverport() == null ? -1 : settings.getMailserverport();
+    transport.connect(settings.getMailserver(), port, settings.getUsername(),
+        settings.getPassword());
+    connects++;
+  }
+
+  @Override
+  public void close()
+  {
+    if (transport != null)
+    {
+      try
+      {
+        transport.close();
+      } catch (MessagingException e)
+      {
+        LOGGER.trace("Couldn't close connection to mail server", e);
+      }
+      transport = null;
+    }
+  }
+}
@@ -25,7 +25,7 @@ package de.muenchen.allg.itd51.wollmux.mailmerge.print;
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -136,8 +136,8 @@ public abstract class MailMergePrintFunction extends PrintFunction
     File outputDir = new File(uriPath);
 
     @SuppressWarnings("unchecked")
-    HashMap<String, String> dataset = new HashMap<>((HashMap<String, String>) pmod
-        .getProp(SetFormValue.PROP_DATASET_EXPORT, new HashMap<String, String>()));
+    Map<String, String> dataset = (Map<String, String>) pmod
+        .getProp(SetFormValue.PROP_DATASET_EXPORT, Collections.emptyMap());
 
     String filename = replaceMergeFieldInText(dataset,
         (String) pmod.getProp(PROP_FILEPATTERN, null));
@@ -25,9 +25,9 @@ package de.muenchen.allg.itd51.wollmux.mailmerge.print;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 import javax.mail.MessagingException;
@@ -48,6 +48,7 @@ import de.muenchen.allg.itd51.wollmux.func.print.PrintException;
 import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
 import de.muenchen.allg.itd51.wollmux.mailmerge.mail.AuthenticationDialog;
 import de.muenchen.allg.itd51.wollmux.mailmerge.mail.EMailSender;
+import de.muenchen.allg.itd51.wollmux.mailmerge.mail.MailQueue;
 import de.muenchen.allg.itd51.wollmux.mailmerge.mail.MailServerSettings;
 import de.muenchen.allg.itd51.wollmux.print.PrintModels;
 import de.muenchen.allg.itd51.wollmux.util.L;
@@ -90,18 +91,12 @@ public abstract class PrintToEmail extends MailMergePrintFunction
   public static final String PROP_EMAIL_MESSAGE_TEXTTAGS = "MailMergeNew_EMailMessageTextTags";
 
   /**
-   * Key for saving the list of recipient mails as a property of a {@link XPrintModel}.
+   * Key for saving the queue, which sends the mails, as a property of a {@link XPrintModel}. The
+   * queue has to be finished after the last record in order to get the report.
    *
-   * The property type is a {@link List} of Strings.
+   * The property type is a {@link MailQueue}.
    */
-  public static final String PROP_EMAIL_REPORT_RECIPIENT_LIST = "MailMergeNew_EMailReportReciptienList";
-
-  /**
-   * Key for saving the number of sent email as a property of a {@link XPrintModel}.
-   *
-   * The property type is a {@link String}.
-   */
-  public static final String PROP_EMAIL_REPORT_EMAILS_SENT_COUNT = "MailMergeNew_EMailReportEMailsSentCount";
+  public static final String PROP_EMAIL_QUEUE = "MailMergeNew_EMailQueue";
 
   /**
    * Key for saving the mail server settings as a property of a {@link XPrintModel}.
@@ -148,8 +143,8 @@ public abstract class PrintToEmail extends MailMergePrintFunction
 
     String fieldName = pmod.getProp(PROP_EMAIL_TO_FIELD_NAME, "").toString();
     @SuppressWarnings("unchecked")
-    HashMap<String, String> ds = new HashMap<>(
-        (HashMap<String, String>) pmod.getProp(SetFormValue.PROP_DATASET_EXPORT, new HashMap<String, String>()));
+    Map<String, String> ds = (Map<String, String>) pmod.getProp(SetFormValue.PROP_DATASET_EXPORT,
+        Collections.emptyMap());
     String to = ds.get(fieldName);
     PrintModels.setStage(pmod, L.m("Send to %1", to));//TODO
     if (!isMailAddress(to))
@@ -179,31 +174,7 @@ public abstract class PrintToEmail extends MailMergePrintFunction
       }
       File document = saveOutputFile(createTempDocument(pmod, isODT), pmod.getTextDocument());
 
-      sendMail(mail, smtpSettings, document);
-
-      // Initialize properties if not already set.
-      if (!pmod.getPropertySetInfo().hasPropertyByName(PROP_EMAIL_REPORT_RECIPIENT_LIST))
-      {
-        pmod.setPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST, new ArrayList<String>());
-      }
-
-      if (!pmod.getPropertySetInfo().hasPropertyByName(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT))
-      {
-        pmod.setPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT, 0);
-      }
-
-      @SuppressWarnings("unchecked")
-      List<String> reportRecipientList = (List<String>) pmod.getPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST);
-      int mailsSentCount = (int) pmod.getPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT);
-
-      if (reportRecipientList == null)
-        reportRecipientList = new ArrayList<>();
-
-      reportRecipientList.add(to);
-      mailsSentCount++;
-
-      pmod.setPropertyValue(PROP_EMAIL_REPORT_RECIPIENT_LIST, reportRecipientList);
-      pmod.setPropertyValue(PROP_EMAIL_REPORT_EMAILS_SENT_COUNT, mailsSentCount);
+      queueMail(getMailQueue(pmod, smtpSettings), mail, to, document);
     } catch (ConfigurationErrorException e)
     {
       LOGGER.error("Kein Mailserver", e);
@@ -216,6 +187,11 @@ public abstract class PrintToEmail extends MailMergePrintFunction
       LOGGER.error("Email versenden fehlgeschlagen", e);
       InfoDialog.showInfoModal(MAIL_ERROR_MESSAGE_TITLE, L.m("Sending the e-mail failed."));//TODO
       pmod.cancel();
+    } catch (InterruptedException e)
+    {
+      LOGGER.error("", e);
+      pmod.cancel();
+      Thread.currentThread().interrupt();
     } catch (Exception e)
     {
       LOGGER.error("", e);
@@ -303,41 +279,112 @@ public abstract class PrintToEmail extends MailMergePrintFunction
   }
 
   /**
-   * Send a document by mail.
+   * Get the queue for sending the mails of this mail merge. It's created with the first mail.
    *
-   * @param mail
-   *          The email, to which the document is attached, and than send.
+   * @param pmod
+   *          The {@link XPrintModel}.
    * @param smtpSettings
    *          The settings of the mail server.
+   * @return The queue.
+   * @throws PrintException
+   *           The queue couldn't be stored.
+   */
+  private MailQueue getMailQueue(XPrintModel pmod, MailServerSettings smtpSettings)
+      throws PrintException
+  {
+    MailQueue queue = (MailQueue) pmod.getProp(PROP_EMAIL_QUEUE, null);
+    if (queue == null)
+    {
+      queue = new MailQueue(smtpSettings);
+      try
+      {
+        pmod.setPropertyValue(PROP_EMAIL_QUEUE, queue);
+      } catch (IllegalArgumentException | UnknownPropertyException | PropertyVetoException
+          | WrappedTargetException e)
+      {
+        throw new PrintException("Could not set mail queue", e);
+      }
+    }
+    return queue;
+  }
+
+  /**
+   * Attach a document to a mail and add it to the queue. The document is moved to a directory of
+   * its own, because the next record may be saved with the same file name before this mail has
+   * been sent. It's deleted after the mail has been sent.
+   *
+   * @param queue
+   *          The queue, which sends the mail.
+   * @param mail
+   *          The email, to which the document is attached.
+   * @param to
+   *          The recipient of the mail.
    * @param document
    *          The document to send.
+   * @throws MessagingException
+   *           The queue can't send any more mails.
+   * @throws InterruptedException
+   *           Interrupted while waiting for the queue.
    */
-  private void sendMail(EMailSender mail, MailServerSettings smtpSettings, File document)
+  private void queueMail(MailQueue queue, EMailSender mail, String to, File document)
+      throws MessagingException, InterruptedException
   {
+    String path = document.getPath();
+    if (!document.isAbsolute())
+    {
+      // fix path for windows systems
+      path = path.replaceFirst("file:\\\\", "");
+      // fix path for unix systems
+      path = path.replaceFirst("file:", "");
+    }
+    Path source = new File(path).getAbsoluteFile().toPath();
+    Path attachment;
     try
     {
-      String path = document.getPath();
-      if (!document.isAbsolute())
-      {
-        // fix path for windows systems
-        path = path.replaceFirst("file:\\\\", "");
-        // fix path for unix systems
-        path = path.replaceFirst("file:", "");
-      }
-      mail.addAttachment(new File(path));
-      mail.sendMessage(smtpSettings);
-    } catch (ConfigurationErrorException | MessagingException | IOException e)
+      Path dir = Files.createTempDirectory(source.getParent(), "mail");
+      attachment = Files.move(source, dir.resolve(source.getFileName()));
+    } catch (IOException e)
     {
       LOGGER.error("", e);
+      deleteQuietly(source);
+      return;
+    }
+
+    Runnable deleteAttachment = () -> {
+      deleteQuietly(attachment);
+      deleteQuietly(attachment.getParent());
+    };
+    try
+    {
+      mail.addAttachment(attachment.toFile());
+    } catch (MessagingException | IOException e)
+    {
+      LOGGER.error("", e);
+      deleteAttachment.run();
+      return;
+    }
+    boolean queued = false;
+    try
+    {
+      queue.submit(mail, to, deleteAttachment);
+      queued = true;
     } finally
     {
-      try
-      {
-        Files.delete(document.toPath());
-      } catch (IOException e)
+      if (!queued)
       {
-        LOGGER.trace("Couldn't delete temporary document", e);
+        deleteAttachment.run();
       }
     }
   }
+
+  private static void deleteQuietly(Path file)
+  {
+    try
+    {
+      Files.deleteIfExists(file);
+    } catch (IOException e)
+    {
+      LOGGER.trace("Couldn't delete temporary file {}", file, e);
+    }
+  }
 }
@@ -24,26 +24,27 @@ package de.muenchen.allg.itd51.wollmux.mailmerge.print;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import com.sun.star.beans.PropertyVetoException;
 import com.sun.star.beans.UnknownPropertyException;
 import com.sun.star.lang.IllegalArgumentException;
 import com.sun.star.lang.WrappedTargetException;
 
-import de.muenchen.allg.itd51.wollmux.db.QueryResults;
+import de.muenchen.allg.itd51.wollmux.SyncActionListener;
 import de.muenchen.allg.itd51.wollmux.document.DocumentManager;
 import de.muenchen.allg.itd51.wollmux.document.SimulationResults.SimulationResultsProcessor;
 import de.muenchen.allg.itd51.wollmux.document.TextDocumentController;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnSetFormValue;
 import de.muenchen.allg.itd51.wollmux.func.print.PrintException;
 import de.muenchen.allg.itd51.wollmux.func.print.PrintFunction;
 import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
+import de.muenchen.allg.itd51.wollmux.mailmerge.ds.RecordTable;
 
 /**
  * A print function, which sets the mail merge fields to the values of the next mail merge data.
@@ -81,7 +82,7 @@ public class SetFormValue extends PrintFunction
   /**
    * Key for saving the content of the datasource as a property of a {@link XPrintModel}.
    *
-   * The property type is a {@link QueryResults}.
+   * The property type is a {@link RecordTable}.
    */
   public static final String PROP_QUERYRESULTS = "MailMergeNew_QueryResults";
 
@@ -121,9 +122,7 @@ public class SetFormValue extends PrintFunction
     TextDocumentController documentController = DocumentManager
         .getTextDocumentController(pmod.getTextDocument());
 
-    @SuppressWarnings("unchecked")
-    Table<Integer, String, String> data = (Table<Integer, String, String>) pmod
-        .getProp(PROP_QUERYRESULTS, HashBasedTable.create());
+    RecordTable data = (RecordTable) pmod.getProp(PROP_QUERYRESULTS, RecordTable.EMPTY);
     @SuppressWarnings("unchecked")
     List<Integer> selection = (List<Integer>) pmod.getProp(PROP_RECORD_SELECTION,
         Collections.emptyList());
@@ -159,16 +158,15 @@ public class SetFormValue extends PrintFunction
         documentController.startSimulation();
       }
 
-      Map<String, String> record = data.row(sel);
-      for (Map.Entry<String, String> entry : record.entrySet())
-      {
-        pmod.setFormValue(entry.getKey(), entry.getValue());
-        dataSetExport.put(entry.getKey(), entry.getValue());
-      }
-      pmod.setFormValue(TAG_RECORD_ID, "" + sel);
-      dataSetExport.put(TAG_RECORD_ID, "" + sel);
-      pmod.setFormValue(TAG_MAILMERGE_ID, "" + mailMergeNumber);
-      dataSetExport.put(TAG_MAILMERGE_ID, "" + mailMergeNumber);
+      // set the whole record at once, so that every field is updated only once
+      Map<String, String> record = new LinkedHashMap<>();
+      data.getRecord(sel).forEach(record::put);
+      record.put(TAG_RECORD_ID, "" + sel);
+      record.put(TAG_MAILMERGE_ID, "" + mailMergeNumber);
+      SyncActionListener s = new SyncActionListener();
+      new OnSetFormValue(pmod.getTextDocument(), record, s).emit();
+      s.synchronize();
+      dataSetExport.putAll(record);
 
       // Pass to next print function, if there is no simProc. Otherwise
       // processing is done by simProc.
@@ -30,6 +30,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -63,6 +64,7 @@ import de.muenchen.allg.afid.UnoHelperException;
 import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+import de.muenchen.allg.itd51.wollmux.db.Datasources;
 import de.muenchen.allg.itd51.wollmux.dialog.InfoDialog;
 import de.muenchen.allg.itd51.wollmux.document.DocumentManager;
 import de.muenchen.allg.itd51.wollmux.document.TextDocumentController;
@@ -660,16 +662,11 @@ public class MailMergeController implements PreviewModelListener, DatasourceMode
     {
       try
       {
-        for (Map.Entry<String, String> entry : previewModel.getCurrentRecord().entrySet())
-        {
-          new OnSetFormValue(textDocumentController.getModel().doc, entry.getKey(),
-              entry.getValue(), null).emit();
-        }
+        Map<String, String> record = new LinkedHashMap<>(previewModel.getCurrentRecord());
         String previewDatasetNumberStr = "" + previewModel.getPreviewNumber();
-        new OnSetFormValue(textDocumentController.getModel().doc, SetFormValue.TAG_RECORD_ID,
-            previewDatasetNumberStr, null).emit();
-        new OnSetFormValue(textDocumentController.getModel().doc, SetFormValue.TAG_MAILMERGE_ID,
-            previewDatasetNumberStr, null).emit();
+        record.put(SetFormValue.TAG_RECORD_ID, previewDatasetNumberStr);
+        record.put(SetFormValue.TAG_MAILMERGE_ID, previewDatasetNumberStr);
+        new OnSetFormValue(textDocumentController.getModel().doc, record, null).emit();
       } catch (NoTableSelectedException ex)
       {
         LOGGER.debug("", ex);
@@ -813,6 +810,7 @@ public class MailMergeController implements PreviewModelListener, DatasourceMode
    */
   private XOfficeDatabaseDocument loadDataSource(String dbName)
   {
+    Datasources.awaitRegistration();
     try
     {
       XDataSource ds = UNO.XDataSource(UNO.dbContext.getRegisteredObject(dbName));
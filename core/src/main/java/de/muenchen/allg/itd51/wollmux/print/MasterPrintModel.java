@@ -64,8 +64,8 @@ import de.muenchen.allg.util.UnoProperty;
  * 
  * The {@link XPropertySet} interface is used to share data between the print functions.
  * 
- * Each print function is executed with its own {@link SlavePrintModel} in a new thread. This class
- * has to do the synchronization.
+ * Each print function is executed with its own {@link SlavePrintModel} by the {@link PrintPipeline}
+ * on a separate thread. This class has to do the synchronization.
  */
 class MasterPrintModel implements XPrintModel
 {
@@ -94,6 +94,17 @@ class MasterPrintModel implements XPrintModel
    */
   private SortedSet<PrintFunction> functions;
 
+  /**
+   * The print functions as an array for fast access by position. Updated whenever
+   * {@link #functions} changes.
+   */
+  private PrintFunction[] functionArray = new PrintFunction[0];
+
+  /**
+   * Executes the print functions.
+   */
+  private final PrintPipeline pipeline = new PrintPipeline();
+
   /**
    * Properties of this print model.
    */
@@ -137,6 +148,7 @@ class MasterPrintModel implements XPrintModel
     if (newFunc != null)
     {
       functions.add(newFunc);
+      functionArray = functions.toArray(new PrintFunction[0]);
     }
     else
       throw new NoSuchMethodException(L.m("Print function '%1' is not defined.", functionName));
@@ -151,13 +163,23 @@ class MasterPrintModel implements XPrintModel
    */
   protected PrintFunction getPrintFunction(int idx)
   {
-    Object[] funcs = functions.toArray();
+    PrintFunction[] funcs = functionArray;
     if (idx >= 0 && idx < funcs.length)
-      return (PrintFunction) funcs[idx];
+      return funcs[idx];
     else
       return null;
   }
 
+  /**
+   * Get the pipeline, which executes the print functions of this print.
+   *
+   * @return The pipeline.
+   */
+  PrintPipeline getPipeline()
+  {
+    return pipeline;
+  }
+
   @Override
   public XTextDocument getTextDocument()
   {
@@ -183,15 +205,8 @@ class MasterPrintModel implements XPrintModel
     if (f != null)
     {
       XPrintModel pmod = new SlavePrintModel(this, 0);
-      Thread t = f.printAsync(pmod);
-      try
-      {
-        t.join();
-      } catch (InterruptedException e)
-      {
-        PrintModels.LOGGER.error("", e);
-        Thread.currentThread().interrupt();
-      }
+      pipeline.run(f, pmod);
+      setPropertySynchronized(PrintModels.PROP_PRINT_FUNCTION_METRICS, pipeline.getMetrics());
     } else
     {
       setPropertySynchronized(PROP_FINAL_SHOW_COPIES_SPINNER, Boolean.TRUE);
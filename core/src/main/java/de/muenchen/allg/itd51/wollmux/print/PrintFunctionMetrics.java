@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.print;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in a print function during a print. The metrics of all print functions are available
+ * from the print model as property {@link PrintModels#PROP_PRINT_FUNCTION_METRICS}.
+ */
+public class PrintFunctionMetrics
+{
+  private final String functionName;
+
+  private final LongAdder calls = new LongAdder();
+
+  private final LongAdder totalTime = new LongAdder();
+
+  private final LongAdder ownTime = new LongAdder();
+
+  PrintFunctionMetrics(String functionName)
+  {
+    this.functionName = functionName;
+  }
+
+  void add(long total, long own)
+  {
+    calls.increment();
+    totalTime.add(total);
+    ownTime.add(own);
+  }
+
+  public String getFunctionName()
+  {
+    return functionName;
+  }
+
+  /**
+   * @return How often the print function has been executed.
+   */
+  public long getCalls()
+  {
+    return calls.sum();
+  }
+
+  /**
+   * @return The time of all executions including the following print functions.
+   */
+  public Duration getTotalTime()
+  {
+    return Duration.ofNanos(totalTime.sum());
+  }
+
+  /**
+   * @return The time of all executions without waiting for the following print functions.
+   */
+  public Duration getOwnTime()
+  {
+    return Duration.ofNanos(ownTime.sum());
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("Print function %s: %d calls, %d ms own time, %d ms total time",
+        functionName, getCalls(), getOwnTime().toMillis(), getTotalTime().toMillis());
+  }
+}
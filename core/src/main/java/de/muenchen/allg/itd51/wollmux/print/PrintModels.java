@@ -46,6 +46,15 @@ public class PrintModels
    */
   static final String STAGE = "STAGE";
 
+  /**
+   * Property of the print model with the time spent in each print function. It's set when the
+   * print has finished.
+   *
+   * The property type is a {@link java.util.List} of {@link PrintFunctionMetrics} in the order of
+   * the first execution of the print functions.
+   */
+  public static final String PROP_PRINT_FUNCTION_METRICS = "WollMux_PrintFunctionMetrics";
+
   private PrintModels()
   {
     // nothing to do
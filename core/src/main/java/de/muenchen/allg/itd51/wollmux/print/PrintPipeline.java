@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.print;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.muenchen.allg.itd51.wollmux.func.print.PrintFunction;
+import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
+
+/**
+ * Executes the stages of a print, one {@link PrintFunction} per stage. Each stage runs on a worker
+ * of a shared pool and the calling stage waits until it's finished. A stage calls the next stage
+ * once per record, so the workers are reused instead of creating a thread per stage and record.
+ *
+ * The time spent in each print function is recorded.
+ */
+class PrintPipeline
+{
+  /**
+   * Workers for the stages. The pool has to be unbounded, because every stage waits for the next
+   * one while occupying its own worker.
+   */
+  private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+      TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "Print function");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /**
+   * Nanoseconds the stage executed by the current worker has waited for the next stage.
+   */
+  private static final ThreadLocal<long[]> WAITING = new ThreadLocal<>();
+
+  /**
+   * Metrics of the print functions in the order of their first execution.
+   */
+  private final Map<String, PrintFunctionMetrics> metrics = new LinkedHashMap<>();
+
+  /**
+   * Execute a print function and wait until it's finished. Nothing is done if the print has been
+   * canceled. If the current thread is interrupted while waiting, the print is canceled.
+   *
+   * @param function
+   *          The print function.
+   * @param pmod
+   *          The print model for the print function.
+   */
+  void run(PrintFunction function, XPrintModel pmod)
+  {
+    if (pmod.isCanceled())
+    {
+      return;
+    }
+    PrintFunctionMetrics m = getMetrics(function.getFunctionName());
+    long start = System.nanoTime();
+    Future<?> stage = EXECUTOR.submit(() -> execute(function, pmod, m));
+    try
+    {
+      stage.get();
+    } catch (InterruptedException e)
+    {
+      PrintModels.LOGGER.error("", e);
+      pmod.cancel();
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e)
+    {
+      PrintModels.LOGGER.error("Fehler beim Drucken", e.getCause());
+    }
+    long[] waiting = WAITING.get();
+    if (waiting != null)
+    {
+      waiting[0] += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Get the metrics of all print functions executed so far.
+   *
+   * @return The metrics in the order of the first execution.
+   */
+  List<PrintFunctionMetrics> getMetrics()
+  {
+    synchronized (metrics)
+    {
+      return new ArrayList<>(metrics.values());
+    }
+  }
+
+  private PrintFunctionMetrics getMetrics(String functionName)
+  {
+    synchronized (metrics)
+    {
+      return metrics.computeIfAbsent(functionName, PrintFunctionMetrics::new);
+    }
+  }
+
+  private static void execute(PrintFunction function, XPrintModel pmod, PrintFunctionMetrics m)
+  {
+    long[] waiting = new long[1];
+    WAITING.set(waiting);
+    long start = System.nanoTime();
+    try
+    {
+      function.print(pmod);
+    } catch (Exception ex)
+    {
+      PrintModels.LOGGER.error("Fehler beim Drucken", ex);
+    } finally
+    {
+      long total = System.nanoTime() - start;
+      m.add(total, total - waiting[0]);
+      WAITING.remove();
+    }
+  }
+}
@@ -94,15 +94,7 @@ class SlavePrintModel extends WeakBase implements XPrintModel
     if (f != null)
     {
       XPrintModel pmod = new SlavePrintModel(master, idx + 1);
-      Thread t = f.printAsync(pmod);
-      try
-      {
-        t.join();
-      } catch (InterruptedException e)
-      {
-        PrintModels.LOGGER.error("", e);
-        Thread.currentThread().interrupt();
-      }
+      master.getPipeline().run(f, pmod);
       master.setPrintProgressMaxValue(pmod, (short) 0);
     } else
     {
@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +47,7 @@ import com.sun.star.uno.XInterface;
 
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
+import de.muenchen.allg.itd51.wollmux.WollMuxSingleton;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
@@ -127,7 +129,31 @@ public class SenderService implements XPALProvider
    */
   public static final String SENDER_KEY_SEPARATOR = "§§%=%§§";
 
+  /**
+   * Maximum number of keys which are requested from the main data source at once, when the cached
+   * senders are updated.
+   */
+  static final int KEY_BATCH_SIZE = 100;
+
+  /**
+   * Get the sender service. It's created on first use by the startup stage
+   * {@link WollMuxSingleton#STAGE_SENDER_SERVICE}.
+   *
+   * @return The sender service or null if it couldn't be created.
+   */
   public static SenderService getInstance()
+  {
+    WollMuxSingleton.awaitStartupStage(WollMuxSingleton.STAGE_SENDER_SERVICE);
+    return createInstance();
+  }
+
+  /**
+   * Creates the sender service if it doesn't exist yet. The cached senders are updated from the
+   * main data source.
+   *
+   * @return The sender service or null if it couldn't be created.
+   */
+  public static synchronized SenderService createInstance()
   {
     if (instance == null)
     {
@@ -156,15 +182,13 @@ public class SenderService implements XPALProvider
       {
         SenderCache cache = new FileCache(WollMuxFiles.getLosCacheFile(), WollMuxFiles.getDefaultContext());
 
-        Map<String, Datasource> dataSources = Datasources.getDatasources();
-
         FunctionLibrary funcLib = new FunctionLibrary();
         DialogLibrary dialogLib = new DialogLibrary();
         Map<Object, Object> context = new HashMap<>();
         ColumnTransformer columnTransformer = new ColumnTransformer(FunctionFactory
             .parseTrafos(WollMuxFiles.getWollmuxConf(), "AbsenderdatenSpaltenumsetzung", funcLib, dialogLib, context));
 
-        Datasource datasource = dataSources.get(senderSourceStr);
+        Datasource datasource = Datasources.getDatasource(senderSourceStr);
         if (datasource == null)
         {
           datasource = new DummyDatasourceWithMessagebox(cache.getSchema(), senderSourceStr);
@@ -203,14 +227,15 @@ public class SenderService implements XPALProvider
 
     Set<String> removedColumns = new HashSet<>(cachedSchema);
     removedColumns.removeAll(getSchema());
+    Map<String, Dataset> baseDatasets = getDatasetsByKey(
+        cache.getData().stream().map(SenderConf::getKey).collect(Collectors.toList()));
     List<Sender> newSender = new ArrayList<>();
     for (SenderConf senderConf : cache.getData())
     {
       Sender sender;
-      QueryResults res = mainDatasource.getDatasetsByKey(List.of(senderConf.getKey()));
-      if (!res.isEmpty())
+      Dataset base = baseDatasets.get(senderConf.getKey());
+      if (base != null)
       {
-        Dataset base = res.iterator().next();
         sender = new Sender(senderConf.getKey(), base, senderConf.getOverriddenValues());
       } else
       {
@@ -235,6 +260,30 @@ public class SenderService implements XPALProvider
     updateSenderList(newSender);
   }
 
+  /**
+   * Resolves the keys with as few requests to the main data source as possible. The keys are
+   * requested in chunks of at most {@link #KEY_BATCH_SIZE} keys.
+   *
+   * @param keys
+   *          The keys, may contain duplicates.
+   * @return Mapping from key to the first data set with this key. Keys without data set aren't
+   *         contained.
+   */
+  private Map<String, Dataset> getDatasetsByKey(List<String> keys)
+  {
+    List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+    Map<String, Dataset> result = new HashMap<>();
+    for (int i = 0; i < distinctKeys.size(); i += KEY_BATCH_SIZE)
+    {
+      List<String> chunk = distinctKeys.subList(i, Math.min(i + KEY_BATCH_SIZE, distinctKeys.size()));
+      for (Dataset ds : mainDatasource.getDatasetsByKey(chunk))
+      {
+        result.putIfAbsent(ds.getKey(), ds);
+      }
+    }
+    return result;
+  }
+
   private void selectFromCache(SenderCache cache) throws SenderException
   {
     String selectKey = cache.getSelectedKey();
@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StartupPipelineTest
+{
+  private ExecutorService executor;
+
+  private StartupPipeline pipeline;
+
+  @BeforeEach
+  public void setup()
+  {
+    executor = Executors.newCachedThreadPool();
+    pipeline = new StartupPipeline(executor);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testDependencies()
+  {
+    List<String> order = new CopyOnWriteArrayList<>();
+    pipeline.stage("a", () -> order.add("a"));
+    pipeline.stage("b", () -> order.add("b"), "a");
+    pipeline.stage("c", () -> order.add("c"), "a", "b");
+    pipeline.await("c");
+    assertEquals(List.of("a", "b", "c"), order);
+    assertTrue(pipeline.isDone("a"));
+  }
+
+  @Test
+  public void testParallel() throws Exception
+  {
+    CountDownLatch latch = new CountDownLatch(2);
+    Runnable task = () -> {
+      latch.countDown();
+      try
+      {
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+      } catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    };
+    pipeline.stage("a", task);
+    pipeline.stage("b", task);
+    pipeline.await("a", "b");
+    assertEquals(0, latch.getCount());
+  }
+
+  @Test
+  public void testDeferred()
+  {
+    List<String> order = new CopyOnWriteArrayList<>();
+    pipeline.stage("a", () -> order.add("a"));
+    pipeline.deferredStage("b", () -> order.add("b"), "a");
+    pipeline.deferredStage("c", () -> order.add("c"), "b");
+    pipeline.await("a");
+    assertFalse(pipeline.isDone("b"));
+    assertTrue(pipeline.getTimings().contains("c: deferred, not started"));
+
+    pipeline.await("c");
+    pipeline.await("c");
+    assertEquals(List.of("a", "b", "c"), order);
+  }
+
+  @Test
+  public void testDeferredOnAwaitingThread()
+  {
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    pipeline.stage("a", () -> threads.add(Thread.currentThread()));
+    pipeline.deferredStage("b", () -> threads.add(Thread.currentThread()), "a");
+    pipeline.stage("c", () -> threads.add(Thread.currentThread()), "b");
+    pipeline.deferredStage("d", () -> threads.add(Thread.currentThread()), "c");
+    pipeline.await("d");
+    assertEquals(4, threads.size());
+    assertNotEquals(Thread.currentThread(), threads.get(0));
+    assertEquals(Thread.currentThread(), threads.get(1));
+    assertNotEquals(Thread.currentThread(), threads.get(2));
+    assertEquals(Thread.currentThread(), threads.get(3));
+  }
+
+  @Test
+  public void testFailingStage()
+  {
+    List<String> order = new CopyOnWriteArrayList<>();
+    pipeline.stage("a", () -> {
+      throw new IllegalStateException("broken");
+    });
+    pipeline.stage("b", () -> order.add("b"), "a");
+    pipeline.await("b");
+    assertEquals(List.of("b"), order);
+    assertTrue(pipeline.getTimings().contains("failed: java.lang.IllegalStateException: broken"));
+  }
+
+  @Test
+  public void testTimings()
+  {
+    pipeline.stage("a", () -> {
+    });
+    pipeline.await("a");
+    String timings = pipeline.getTimings();
+    assertTrue(timings.matches("a: start \\+\\d+ ms, duration \\d+ ms, thread .*\n"), timings);
+  }
+
+  @Test
+  public void testInvalidStages()
+  {
+    pipeline.stage("a", () -> {
+    });
+    assertThrows(IllegalArgumentException.class, () -> pipeline.stage("a", () -> {
+    }));
+    assertThrows(IllegalArgumentException.class, () -> pipeline.stage("b", () -> {
+    }, "unknown"));
+    assertThrows(IllegalArgumentException.class, () -> pipeline.await("unknown"));
+  }
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigSnapshotTest
+{
+  private static final long OLD = System.currentTimeMillis() - 60_000;
+
+  @TempDir
+  File dir;
+
+  private File main;
+
+  private File include;
+
+  private File snapshot;
+
+  private URL url;
+
+  @BeforeEach
+  public void setup() throws Exception
+  {
+    main = new File(dir, "main.conf");
+    include = new File(dir, "inc.conf");
+    snapshot = new File(dir, "main.snapshot");
+    write(main, "A \"1\"\nSection(\n  %include \"inc.conf\"\n  B(\"x\" \"y\" \"\\u00e4\")\n)\n"
+        + "C(D \"%\" E(F \"\" G ()))\n");
+    write(include, "Include(Key \"value\" Key \"value2\" List(\"1\" \"2\"))\nA \"2\"\n");
+    url = main.toURI().toURL();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception
+  {
+    ConfigThingy text = new ConfigThingy("root", url);
+    ConfigThingy conf = ConfigSnapshot.parse("root", url, snapshot);
+    assertEquals(ConfigThingy.treeDump(text, ""), ConfigThingy.treeDump(conf, ""));
+    assertTrue(snapshot.isFile());
+
+    ConfigThingy loaded = ConfigSnapshot.load(url, snapshot);
+    assertNotNull(loaded);
+    assertEquals(ConfigThingy.treeDump(text, ""), ConfigThingy.treeDump(loaded, ""));
+    assertEquals(text.stringRepresentation(), loaded.stringRepresentation());
+
+    ConfigThingy renamed = ConfigSnapshot.parse("other", url, snapshot);
+    assertEquals("other", renamed.getName());
+    assertEquals("value2", lastKey(renamed));
+  }
+
+  @Test
+  public void testSources() throws Exception
+  {
+    Set<URL> sources = new LinkedHashSet<>();
+    ConfigThingy.parse("", url, sources);
+    assertEquals(List.of(url, include.toURI().toURL()), new ArrayList<>(sources));
+  }
+
+  @Test
+  public void testChangedInclude() throws Exception
+  {
+    ConfigSnapshot.parse("", url, snapshot);
+    assertNotNull(ConfigSnapshot.load(url, snapshot));
+
+    write(include, "Include(Key \"changed\")\n");
+    assertNull(ConfigSnapshot.load(url, snapshot));
+    assertEquals("changed", lastKey(ConfigSnapshot.parse("", url, snapshot)));
+    assertEquals("changed", lastKey(ConfigSnapshot.load(url, snapshot)));
+  }
+
+  @Test
+  public void testOtherUrl() throws Exception
+  {
+    ConfigSnapshot.parse("", url, snapshot);
+    assertNull(ConfigSnapshot.load(include.toURI().toURL(), snapshot));
+  }
+
+  @Test
+  public void testCorruptSnapshot() throws Exception
+  {
+    ConfigSnapshot.parse("", url, snapshot);
+    try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw"))
+    {
+      file.setLength(file.length() - 3);
+    }
+    assertNull(ConfigSnapshot.load(url, snapshot));
+
+    Files.write(snapshot.toPath(), new byte[] { 1, 2, 3 });
+    assertNull(ConfigSnapshot.load(url, snapshot));
+    assertEquals("value2", lastKey(ConfigSnapshot.parse("", url, snapshot)));
+    assertNotNull(ConfigSnapshot.load(url, snapshot));
+  }
+
+  @Test
+  public void testRecentlyModified() throws Exception
+  {
+    assertTrue(main.setLastModified(System.currentTimeMillis()));
+    ConfigSnapshot.parse("", url, snapshot);
+    assertFalse(snapshot.exists());
+  }
+
+  private static String lastKey(ConfigThingy conf) throws NodeNotFoundException
+  {
+    return conf.query("Key").getLastChild().toString();
+  }
+
+  private static void write(File file, String content) throws Exception
+  {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    assertTrue(file.setLastModified(OLD + content.length()));
+  }
+}
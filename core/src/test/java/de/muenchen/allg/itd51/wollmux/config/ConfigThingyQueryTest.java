@@ -0,0 +1,240 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ConfigThingyQueryTest
+{
+  private static final String[] NAMES = { "A", "B", "C", "D" };
+
+  private static final int[] LEVELS = { -1, 0, 1, 2, 3, 5, Integer.MAX_VALUE - 1 };
+
+  @Test
+  public void testRandomSameAsLegacyQuery() throws Exception
+  {
+    Random random = new Random(4711);
+    for (int i = 0; i < 300; i++)
+    {
+      List<ConfigThingy> nodes = new ArrayList<>();
+      ConfigThingy root = randomTree(random, nodes, 0);
+      assertSameResults(random, root);
+
+      root.enableNameIndex();
+      assertSameResults(random, root);
+
+      for (int j = 0; j < 5; j++)
+      {
+        mutate(random, nodes);
+        assertSameResults(random, root);
+      }
+    }
+  }
+
+  @Test
+  public void testSharedNode() throws Exception
+  {
+    ConfigThingy shared = new ConfigThingy("A", "B \"1\"");
+    ConfigThingy first = new ConfigThingy("", "X(Y \"2\")");
+    ConfigThingy second = new ConfigThingy("", "Y \"3\"");
+    first.addChild(shared);
+    second.getFirstChild().addChild(shared);
+
+    assertEquals("1", first.get("B").toString());
+    assertEquals("1", second.get("B").toString());
+
+    shared.get("B").getFirstChild().setName("4");
+    shared.add("Y");
+    assertEquals("4", first.get("B").toString());
+    assertEquals("4", second.get("B").toString());
+    assertEquals(2, first.query("Y").count());
+    assertSame(shared.getLastChild(), second.get("Y", 3, 3));
+  }
+
+  private static void assertSameResults(Random random, ConfigThingy root)
+  {
+    for (int i = 0; i < 20; i++)
+    {
+      String name = NAMES[random.nextInt(NAMES.length)];
+      int maxlevel = LEVELS[random.nextInt(LEVELS.length)];
+      int minlevel = LEVELS[random.nextInt(LEVELS.length)];
+      boolean getParents = random.nextBoolean();
+      assertSameNodes(legacyQuery(root, name, getParents, maxlevel, minlevel),
+          root.query(name, getParents, maxlevel, minlevel));
+      assertSameNodes(legacyQueryAll(root, name, maxlevel, getParents),
+          root.queryAll(name, maxlevel, getParents));
+    }
+  }
+
+  private static void assertSameNodes(List<ConfigThingy> expected, ConfigThingy actual)
+  {
+    assertEquals("<query results>", actual.getName());
+    assertEquals(expected.size(), actual.count());
+    Iterator<ConfigThingy> iter = actual.iterator();
+    for (ConfigThingy node : expected)
+    {
+      assertSame(node, iter.next());
+    }
+  }
+
+  private static ConfigThingy randomTree(Random random, List<ConfigThingy> nodes, int depth)
+  {
+    ConfigThingy node = new ConfigThingy(NAMES[random.nextInt(NAMES.length)]);
+    nodes.add(node);
+    addRandomChildren(random, nodes, node, depth);
+    return node;
+  }
+
+  private static void addRandomChildren(Random random, List<ConfigThingy> nodes,
+      ConfigThingy node, int depth)
+  {
+    int count = depth < 6 ? random.nextInt(4 - depth / 2) : 0;
+    for (int i = 0; i < count; i++)
+    {
+      if (nodes.size() > 1 && random.nextInt(10) == 0)
+      {
+        // shared node, but no cycle
+        ConfigThingy other = nodes.get(random.nextInt(nodes.size()));
+        if (!reachable(other, node))
+        {
+          node.addChild(other);
+          continue;
+        }
+      }
+      ConfigThingy child = node.add(NAMES[random.nextInt(NAMES.length)]);
+      nodes.add(child);
+      addRandomChildren(random, nodes, child, depth + 1);
+    }
+  }
+
+  private static boolean reachable(ConfigThingy from, ConfigThingy to)
+  {
+    if (from == to)
+    {
+      return true;
+    }
+    for (ConfigThingy child : from)
+    {
+      if (reachable(child, to))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void mutate(Random random, List<ConfigThingy> nodes)
+  {
+    ConfigThingy node = nodes.get(random.nextInt(nodes.size()));
+    switch (random.nextInt(3))
+    {
+    case 0:
+      node.setName(NAMES[random.nextInt(NAMES.length)]);
+      break;
+    case 1:
+      nodes.add(node.add(NAMES[random.nextInt(NAMES.length)]));
+      break;
+    default:
+      Iterator<ConfigThingy> iter = node.iterator();
+      if (iter.hasNext())
+      {
+        iter.next();
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * The search as implemented before the breadth-first search and the name index.
+   */
+  private static List<ConfigThingy> legacyQuery(ConfigThingy root, String name,
+      boolean getParents, int maxlevel, int minlevel)
+  {
+    List<ConfigThingy> found = new ArrayList<>();
+    boolean haveMore;
+    int searchlevel = minlevel;
+    do
+    {
+      if (searchlevel > maxlevel)
+      {
+        break;
+      }
+      haveMore = rollcall(root, root, name, found, -1, searchlevel, getParents);
+      ++searchlevel;
+    } while (found.isEmpty() && haveMore);
+    return found;
+  }
+
+  private static List<ConfigThingy> legacyQueryAll(ConfigThingy root, String name, int maxlevel,
+      boolean getParents)
+  {
+    List<ConfigThingy> found = new ArrayList<>();
+    boolean hasMore;
+    int searchlevel = 1;
+    do
+    {
+      hasMore = rollcall(root, root, name, found, -1, searchlevel++, getParents);
+    } while (hasMore && searchlevel < maxlevel + 1);
+    return found;
+  }
+
+  private static boolean rollcall(ConfigThingy node, ConfigThingy parent, String name,
+      List<ConfigThingy> found, int parentLevel, int searchLevel, boolean getParents)
+  {
+    int level = parentLevel + 1;
+    if (searchLevel == level)
+    {
+      if (name.equals(node.getName()))
+      {
+        if (getParents)
+        {
+          if (!found.contains(parent))
+          {
+            found.add(parent);
+          }
+        } else
+        {
+          found.add(node);
+        }
+      }
+    } else
+    {
+      boolean haveMore = false;
+      for (ConfigThingy child : node)
+      {
+        boolean result = rollcall(child, node, name, found, level, searchLevel, getParents);
+        haveMore = haveMore || result;
+      }
+      return haveMore;
+    }
+    return true;
+  }
+}
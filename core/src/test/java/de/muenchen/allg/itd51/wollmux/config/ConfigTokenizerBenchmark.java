@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the parsing of a generated configuration with {@link ConfigTokenizer} and with the
+ * previous regex based tokenizer ({@link LegacyConfigParser}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConfigTokenizerBenchmark
+{
+  /**
+   * Number of generated "Datenquelle" sections. 20.000 sections are about 5 MB.
+   */
+  @Param({ "2000", "20000" })
+  public int sections;
+
+  /**
+   * Whether each section is written on one line instead of one line per entry.
+   */
+  @Param({ "false", "true" })
+  public boolean longLines;
+
+  private String conf;
+
+  @Setup
+  public void setup()
+  {
+    String separator = longLines ? " " : "\n";
+    StringBuilder buffy = new StringBuilder();
+    buffy.append("# generated configuration\nDatenquellen(\n");
+    for (int i = 0; i < sections; i++)
+    {
+      buffy.append("  Datenquelle(").append(separator);
+      buffy.append("    NAME \"Quelle").append(i).append('"').append(separator);
+      buffy.append("    TYPE 'conf'").append(separator);
+      buffy.append("    URL \"file:///share/wollmux/daten/quelle%u00e4").append(i).append(".conf\"")
+          .append(separator);
+      buffy.append("    BESCHREIBUNG \"Zeile 1%nZeile \"\"2\"\" mit 100%% Text\"").append(separator);
+      buffy.append("    Schluessel(\"Vorname\", \"Nachname\"; \"Rolle\")").append(separator);
+      buffy.append("  ) # Ende der Quelle ").append(i).append('\n');
+    }
+    buffy.append(")\n");
+    conf = buffy.toString();
+  }
+
+  @Benchmark
+  public ConfigThingy cursor() throws IOException, SyntaxErrorException
+  {
+    return new ConfigThingy("", conf);
+  }
+
+  @Benchmark
+  public ConfigThingy legacy() throws IOException, SyntaxErrorException
+  {
+    return LegacyConfigParser.parse("", conf);
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(ConfigTokenizerBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ConfigTokenizerTest
+{
+
+  private static final List<String> CASES = List.of("", "A \"b\"", "A 'b' C(\"d\" 'e')",
+      "A(B(C(D \"1\")))", "(\"x\" \"y\")(KEY 'z')", "A \"%n%%%u0041%x%\"", "A \"say \"\"hi\"\"\"",
+      "A 'it''s' B '\"'", "A,\"b\";C\u00A0\"d\"\t\u000B\f", "\uFEFFA \"b\"", "A \"b\"\r\nC \"d\"\rE \"f\"\n",
+      "# comment\nA \"b\" # trailing ) comment\n", "A \"b\"\n\n\n", "A \"b\"\r\n\r\n", "x_1 \"a\" _y \"b\"",
+      "A )", "A(\"b\"", "A((\"b\")", "A $", "A \"unclosed", "A '", "A \"%u12\"", "A \"%uZZZZ\"",
+      "A \"%u-001\"", "A B", "%include 42", "%include \"\"", "A(\"b\") )", "A\n  $ \"x\"",
+      "A \"a\"\"\"\"\" B 'x'''", "\"%\"", "A 1", "A \"b\"c \"d\"", "A(B)", "%includeX", "A%include");
+
+  /**
+   * Fragments from which random config texts are built.
+   */
+  private static final String[] FRAGMENTS = { "A", "Key_1", "_", "\"v\"", "'w'", "\"%n\"", "\"%%\"",
+      "\"%u00e4\"", "\"%u12\"", "\"a\"\"b\"", "''''", "\"", "'", "(", ")", " ", "  ", ",", ";", "\t",
+      "\u00A0", "\uFEFF", "\n", "\r", "\r\n", "# c\n", "%include", "%", "$", "1", "ä", "\"%\"" };
+
+  @Test
+  public void testSameAsLegacyParser()
+  {
+    for (String conf : CASES)
+    {
+      assertSameResult(conf);
+    }
+  }
+
+  @Test
+  public void testRandomSameAsLegacyParser()
+  {
+    Random random = new Random(4711);
+    for (int i = 0; i < 5000; i++)
+    {
+      StringBuilder conf = new StringBuilder();
+      int length = random.nextInt(30);
+      for (int j = 0; j < length; j++)
+      {
+        conf.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      assertSameResult(conf.toString());
+    }
+  }
+
+  @Test
+  public void testPositions() throws Exception
+  {
+    SyntaxErrorException ex = assertThrows(SyntaxErrorException.class,
+        () -> new ConfigThingy("", "A \"b\"\r\n  C $ \"d\""));
+    assertEquals("null: syntax error in line 2 at char 5, text in error location: \"$ \"d\"\"",
+        ex.getMessage());
+    ex = assertThrows(SyntaxErrorException.class, () -> new ConfigThingy("", "A \"b\"\n)"));
+    assertEquals("null: Bracket ')' without matching bracket '(' in line 2 at char 1", ex.getMessage());
+    assertEquals("ä\n%\"", new ConfigThingy("", "A \"%u00e4%n%%\"\"\"").getString("A"));
+  }
+
+  private void assertSameResult(String conf)
+  {
+    String expected;
+    try
+    {
+      expected = ConfigThingy.treeDump(LegacyConfigParser.parse("root", conf), "");
+    } catch (Exception e)
+    {
+      expected = e.getClass().getName() + ": " + e.getMessage();
+    }
+
+    String actual;
+    try
+    {
+      actual = ConfigThingy.treeDump(new ConfigThingy("root", conf), "");
+    } catch (Exception e)
+    {
+      actual = e.getClass().getName() + ": " + e.getMessage();
+    }
+    assertEquals(expected, actual, conf);
+  }
+}
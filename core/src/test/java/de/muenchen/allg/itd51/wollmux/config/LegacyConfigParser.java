@@ -0,0 +1,677 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex based parser of {@link ConfigThingy} before {@link ConfigTokenizer} was introduced.
+ * Reference for tests and benchmarks.
+ */
+class LegacyConfigParser
+{
+
+  private LegacyConfigParser()
+  {
+    // nothing to do
+  }
+
+  /**
+   * Parse the string like {@link ConfigThingy#ConfigThingy(String, String)} did.
+   */
+  static ConfigThingy parse(String name, String confString) throws IOException, SyntaxErrorException
+  {
+    ConfigThingy root = new ConfigThingy(name);
+    childrenFromUrl(root, null, new StringReader(confString));
+    return root;
+  }
+
+  static void childrenFromUrl(ConfigThingy root, URL url, Reader read) throws IOException,
+      SyntaxErrorException
+  {
+    try
+    {
+      Deque<ConfigThingy> stack = new ArrayDeque<>();
+      stack.push(root);
+      List<StringContentToken> tokens = tokenize(url, read);
+      Iterator<StringContentToken> liter = tokens.iterator();
+      Token token1;
+      Token token2;
+      do
+      {
+        token1 = liter.next();
+        ConfigThingy child;
+        switch (token1.type())
+        {
+          case INCLUDE:
+            token2 = liter.next();
+            if (token2.type() == TokenType.STRING && !token2.contentString().isEmpty())
+            {
+              try
+              {
+                URL includeURL = new URL(url, ConfigThingy.urlEncode(token2.contentString()));
+                childrenFromUrl(stack.peek(), includeURL,
+                  new InputStreamReader(includeURL.openStream(), ConfigThingy.CHARSET));
+              }
+              catch (IOException iox)
+              {
+                throw new IOException(token2.url() + " in line " + token2.line()
+                  + " at char " + token2.position()
+                  + ": %include failed: ", iox);
+              }
+            }
+            else
+            {
+              throw new SyntaxErrorException(token2.url()
+                + ": URL string (enclosed in quotes) expected in line "
+                + token2.line() + " at char " + token2.position());
+            }
+            break;
+
+          case KEY:
+            token2 = liter.next();
+            switch (token2.type())
+            {
+              case OPENPAREN:
+                child = new ConfigThingy(token1.contentString());
+                stack.peek().addChild(child);
+                stack.push(child);
+                break;
+              case STRING:
+                child = new ConfigThingy(token1.contentString());
+                ConfigThingy grandchild = new ConfigThingy(token2.contentString());
+                child.addChild(grandchild);
+                stack.peek().addChild(child);
+                break;
+              default:
+                throw new SyntaxErrorException(token2.url()
+                  + ": syntax error in line " + token2.line() + " at char "
+                  + token2.position());
+            }
+            break;
+
+          case STRING:
+            child = new ConfigThingy(token1.contentString());
+            stack.peek().addChild(child);
+            break;
+
+          case CLOSEPAREN:
+            // Attention: root must not be popped.
+            if (stack.size() <= 1)
+              throw new SyntaxErrorException(token1.url()
+                + ": Bracket ')' without matching bracket '(' in line "
+                + token1.line() + " at char " + token1.position());
+            stack.pop();
+            break;
+
+          case OPENPAREN:
+            child = new ConfigThingy("");
+            stack.peek().addChild(child);
+            stack.push(child);
+            break;
+
+          case END:
+            break;
+
+          default:
+            throw new SyntaxErrorException(token1.url() + ": syntax error in line"
+              + token1.line() + " at char " + token1.position());
+        }
+
+      } while (token1.type() != TokenType.END);
+
+      if (stack.size() > 1)
+      {
+        throw new SyntaxErrorException(token1.url() + ": " + (stack.size() - 1)
+          + " closing brackets are missing");
+      }
+    }
+    finally
+    {
+      try
+      {
+        read.close();
+      }
+      catch (Exception x)
+      {
+        // ignore
+      }
+    }
+  }
+
+  private enum TokenType
+  {
+    KEY,
+    STRING,
+    OPENPAREN,
+    CLOSEPAREN,
+    END,
+    INCLUDE,
+    LINECOMMENT;
+  }
+
+  /**
+   * The {@link ConfigThingy#tokenize(URL)} method returns a list of objects
+   * that all implement this interface.
+   */
+  private interface Token
+  {
+    /**
+     * Returns the URL of the document in which this token was found.
+     */
+    public URL url();
+
+    /**
+     * Returns the line in which this token was found.
+     */
+    public int line();
+
+    /**
+     * Returns the position of the first character of this token in its line, counted from 1.
+     */
+    public int position();
+
+    /**
+     * Returns the type of this token, e.g. {@link #KEY}.
+     */
+    public TokenType type();
+
+    /**
+     * Returns the text representation of this token.
+     * This is NOT necessarily identical with the string from which this token was parsed.
+     * For example, separators like the quotation marks for delimiting strings do not appear
+     * in the string returned here.
+     * Nor do escape sequences used in the input data stream to represent certain characters
+     * such as newline appear in this string.
+     */
+    public String contentString();
+  }
+
+  /**
+   * Abstract base class for tokens that store their {@link #contentString()} value in a string variable.
+   */
+  private abstract static class StringContentToken implements Token
+  {
+    protected String content;
+
+    protected int myLine;
+
+    protected int myPosition;
+
+    protected URL myURL;
+
+    public StringContentToken(URL url, int line, int position)
+    {
+      myURL = url;
+      myLine = line;
+      myPosition = position;
+    }
+
+    @Override
+    public URL url()
+    {
+      return myURL;
+    }
+
+    @Override
+    public int line()
+    {
+      return myLine;
+    }
+
+    @Override
+    public int position()
+    {
+      return myPosition;
+    }
+
+    @Override
+    public String contentString()
+    {
+      return content;
+    }
+  }
+
+  /**
+   * Token for a string according to the syntax for WollMux config files.
+   */
+  private static class StringToken extends StringContentToken
+  {
+    /**
+     * Creates a new StringToken
+     *
+     * @param tokenData
+     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
+     */
+    public StringToken(String tokenData, URL url, int line, int position)
+    {
+      super(url, line, position);
+
+      int len = atStartOf(tokenData);
+      if (len < 2) {
+        throw new IllegalArgumentException("String token expected!");
+      }
+
+      char quote = tokenData.charAt(0);
+
+      /*
+       * Evaluate % escapes, as well as replace quotequote with quote
+       */
+      StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
+      String quoteStr = Character.toString(quote);
+      int startidx = 0;
+      int idx;
+      while (true)
+      {
+        idx = buffy.indexOf("%", startidx);
+        int idx2 = buffy.indexOf(quoteStr, startidx);
+
+        if (idx < 0 && idx2 < 0) {
+          break;
+        }
+
+        String repstr;
+        int replen;
+
+        if (idx < 0 || (idx2 >= 0 && idx2 < idx)) // quotequote
+        {
+          idx = idx2;
+          replen = 2;
+          repstr = quoteStr;
+        }
+        else // % escape
+        {
+          if (idx + 1 >= buffy.length()) {
+            break;
+          }
+
+          // default: replace with the same character, i.e. %
+          repstr = Character.toString(buffy.charAt(idx));
+          replen = 1;
+
+          switch (buffy.charAt(idx + 1))
+          {
+            case 'n':
+              repstr = "\n";
+              replen = 2;
+              break;
+            case '%':
+              repstr = "%";
+              replen = 2;
+              break;
+            case 'u':
+              repstr = parseUnicode(buffy, idx + 2);
+              replen = 6;
+              break;
+            default:
+              break;
+          }
+        }
+        buffy.replace(idx, idx + replen, repstr);
+        startidx = idx + repstr.length();
+      }
+
+      content = buffy.toString();
+    }
+
+    private String parseUnicode(StringBuilder str, int idx)
+    {
+      if (idx + 4 > str.length())
+        throw new IllegalArgumentException("Incomplete %u escape!");
+      String code = str.substring(idx, idx + 4);
+      try
+      {
+        char ch = (char) Integer.parseInt(code, 16);
+        return Character.toString(ch);
+      }
+      catch (NumberFormatException x)
+      {
+        throw new IllegalArgumentException("Incorrect hex number in %u escape: \"%u"
+          + code + "\"");
+      }
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.STRING;
+    }
+
+    /**
+     * Returns the length of the longest prefix of str which can be interpreted
+     * as a token of this class.
+     */
+    public static int atStartOf(String str)
+    {
+      if (str.length() < 2) {
+        return 0;
+      }
+      char quote = str.charAt(0);
+      if (quote != '"' && quote != '\'') {
+        return 0;
+      }
+
+      int idx = 1;
+      while (true)
+      {
+        idx = str.indexOf(quote, idx);
+        if (idx < 0) {
+          return 0;
+        }
+        ++idx;
+        if (idx >= str.length() || str.charAt(idx) != quote) {
+          return idx;
+        }
+        ++idx;
+      }
+    }
+  }
+
+  /**
+   * A token for a key according to the syntax for WollMux config files.
+   */
+  private static class KeyToken extends StringContentToken
+  {
+    /**
+     * Regex for the identification of valid keys.
+     */
+    private static Pattern p = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
+
+    /**
+     * Creates a new KeyToken
+     *
+     * @param tokenData
+     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
+     */
+    public KeyToken(String tokenData, URL url, int line, int position)
+    {
+      super(url, line, position);
+      Matcher m = p.matcher(tokenData);
+      if (!m.find()) {
+        throw new IllegalArgumentException("Key token expected!");
+      }
+      content = m.group(1);
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.KEY;
+    }
+
+    /**
+     * Returns the length of the longest prefix of str which can be interpreted
+     * as a token of this class.
+     */
+    public static int atStartOf(String str)
+    {
+      Matcher m = p.matcher(str);
+      if (!m.find()) {
+        return 0;
+      }
+      return m.end();
+    }
+  }
+
+  /**
+   * Token for opening round bracket.
+   */
+  private static class OpenParenToken extends StringContentToken
+  {
+    public OpenParenToken(URL url, int line, int position)
+    {
+      super(url, line, position);
+      content = "(";
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.OPENPAREN;
+    }
+
+    /**
+     * Returns 1 if {@code str} starts with '(', 0 otherwise.
+     */
+    public static int atStartOf(String str)
+    {
+      return str.startsWith("(") ? 1 : 0;
+    }
+  }
+
+  /**
+   * Token for closing round bracket.
+   */
+  private static class CloseParenToken extends StringContentToken
+  {
+    public CloseParenToken(URL url, int line, int position)
+    {
+      super(url, line, position);
+      content = ")";
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.CLOSEPAREN;
+    }
+
+    /**
+     * Returns 1 if {@code str} starts with ')', 0 otherwise.
+     */
+    public static int atStartOf(String str)
+    {
+      return str.startsWith(")") ? 1 : 0;
+    }
+  }
+
+  /**
+   * Token for the string "%include".
+   */
+  private static class IncludeToken extends StringContentToken
+  {
+    private static final String INC = "%include";
+
+    public IncludeToken(URL url, int line, int position)
+    {
+      super(url, line, position);
+      content = INC;
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.INCLUDE;
+    }
+
+    /**
+     * Returns the length of the longest prefix of str which can be interpreted
+     * as a token of this class.
+     */
+    public static int atStartOf(String str)
+    {
+      return str.startsWith(INC) ? INC.length() : 0;
+    }
+  }
+
+  /**
+   * Token for a comment according to WollMux config file syntax.
+   * ATTENTION: Tokens of this class are currently not returned by
+   * {@link ConfigThingy#tokenize(URL)}, but discarded.
+   */
+  private static class LineCommentToken extends StringContentToken
+  {
+
+    /**
+     * Creates a new LineCommentToken.
+     *
+     * @param tokenData
+     *          a string whose first character is '#'.
+     */
+    public LineCommentToken(String tokenData, URL url, int line, int position)
+    {
+      super(url, line, position);
+      content = tokenData.substring(1);
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.LINECOMMENT;
+    }
+
+    /**
+     * Returns the length of the longest prefix of {@code str}
+     * which can be interpreted as a token of this class.
+     */
+    public static int atStartOf(String str)
+    {
+      return str.startsWith("#") ? str.length() : 0;
+    }
+  }
+
+  /**
+   * Signals the end of the input data stream.
+   */
+  private static class EndToken extends StringContentToken
+  {
+    public EndToken(URL url, int line, int position)
+    {
+      super(url, line, position);
+      content = "";
+    }
+
+    @Override
+    public TokenType type()
+    {
+      return TokenType.END;
+    }
+  }
+
+  /**
+   * Splits the data from {@code read} into {@link Tokens}s.
+   * As source URL {@code url} is entered in the tokens.
+   *
+   * @return the list of identified tokens, terminated by at least 7 {@link EndToken}s.
+   * @throws IOException
+   *           in case something goes wrong when accessing the data from {@code url}.
+   * @throws SyntaxErrorException
+   *           if a string cannot be identified as a token.
+   */
+  private static List<StringContentToken> tokenize(URL url, Reader read)
+      throws IOException, SyntaxErrorException
+  {
+    List<StringContentToken> tokens = new ArrayList<>();
+    BufferedReader in = new BufferedReader(read);
+    String line;
+
+    int lineNo = 0;
+    Pattern whitespace = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
+    while (null != (line = in.readLine()))
+    {
+      ++lineNo;
+      int pos = 0;
+
+      while (line.length() > 0)
+      {
+        Matcher wsm = whitespace.matcher(line);
+        if (wsm.find())
+        {
+          pos += wsm.end();
+          line = line.substring(wsm.end());
+          if (line.length() == 0) {
+            continue;
+          }
+        }
+
+        int tokenLength;
+        try
+        {
+          if (0 != (tokenLength = KeyToken.atStartOf(line)))
+          {
+            tokens.add(new KeyToken(line, url, lineNo, pos + 1));
+          }
+          else if (0 != (tokenLength = StringToken.atStartOf(line)))
+          {
+            tokens.add(new StringToken(line, url, lineNo, pos + 1));
+          }
+          else if (0 != (tokenLength = OpenParenToken.atStartOf(line)))
+          {
+            tokens.add(new OpenParenToken(url, lineNo, pos + 1));
+          }
+          else if (0 != (tokenLength = CloseParenToken.atStartOf(line)))
+          {
+            tokens.add(new CloseParenToken(url, lineNo, pos + 1));
+          }
+          else if (0 != (tokenLength = IncludeToken.atStartOf(line)))
+          {
+            tokens.add(new IncludeToken(url, lineNo, pos + 1));
+          }
+          else if (0 != (tokenLength = LineCommentToken.atStartOf(line)))
+          {
+            // LineCommentTokens werden nicht in tokens eingefügt, weil
+            // der Parser im Fall von 2er Paaren wie KEY STRING nicht in
+            // der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
+            // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
+          }
+          else
+          {
+            throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
+              + " at char " + (pos + 1) + ", text in error location: \"" + line
+              + "\"");
+          }
+        }
+        catch (IllegalArgumentException x)
+        {
+          throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
+            + " at char " + (pos + 1) + ", text in error location: \"" + line
+            + "\"", x);
+        }
+
+        pos += tokenLength;
+        line = line.substring(tokenLength);
+      }
+    }
+
+    // add a couple EndTokens so that users don't have to worry about
+    // checking if there's enough input remaining
+    ++lineNo;
+    for (int i = 0; i < 7; ++i)
+      tokens.add(new EndToken(url, lineNo, 0));
+
+    return tokens;
+  }
+
+}
@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the compiled predicates of {@link DatasetPredicate} with the previous implementation,
+ * which compiled a regular expression for every dataset, on a {@link RAMDatasource} with 100.000
+ * datasets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatasetPredicateBenchmark
+{
+  private static final int ROWS = 100_000;
+
+  @Param({ "Sheldon", "*oop*", "^Coop" })
+  public String search;
+
+  private RAMDatasource datasource;
+
+  private List<Dataset> data;
+
+  private List<QueryPart> query;
+
+  @Setup
+  public void setup()
+  {
+    data = new ArrayList<>(ROWS);
+    for (int i = 0; i < ROWS; i++)
+    {
+      data.add(new SimpleDataset(Integer.toString(i),
+          Map.of("Vorname", (i % 100 == 0) ? "Sheldon" : "Leonard" + i, "Nachname", "Cooper" + i)));
+    }
+    datasource = new RAMDatasource("benchmark", List.of("Vorname", "Nachname"), data);
+    query = List.of(new QueryPart("Nachname", search.startsWith("^") ? search : "*"), new QueryPart("Vorname",
+        search.startsWith("^") ? "*" : search));
+  }
+
+  @Benchmark
+  public int compiled()
+  {
+    return datasource.find(query).size();
+  }
+
+  @Benchmark
+  public int legacy()
+  {
+    Predicate<Dataset> pred = legacyPredicate(query);
+    int count = 0;
+    for (Dataset ds : data)
+    {
+      if (pred.test(ds))
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * The implementation of {@link DatasetPredicate#makePredicate(List)} before the query parts were
+   * compiled.
+   */
+  private static Predicate<Dataset> legacyPredicate(List<QueryPart> query)
+  {
+    return query.stream().map(part -> {
+      Predicate<Dataset> pred = (Dataset ds) -> {
+        try
+        {
+          return Pattern.compile(part.getSearchString().replace("*", "").toLowerCase())
+              .matcher(ds.get(part.getColumnName()).toLowerCase()).find();
+        } catch (ColumnNotFoundException ex)
+        {
+          return false;
+        }
+      };
+      return pred;
+    }).reduce(DatasetPredicate.matchAll, Predicate::and);
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(DatasetPredicateBenchmark.class.getSimpleName()).build()).run();
+  }
+}
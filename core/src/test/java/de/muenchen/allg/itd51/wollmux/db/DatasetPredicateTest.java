@@ -26,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
@@ -92,6 +93,44 @@ public class DatasetPredicateTest
     assertFalse(pred.test(ds), "Given dataset does not match with a given QueryPart:");
   }
 
+  @Test
+  public void makePredicateAnchors() throws Exception
+  {
+    Dataset ds = new SimpleDataset("Test", Map.of("Vorname", "Sheldon"));
+    assertTrue(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "^shel"))).test(ds));
+    assertFalse(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "^don"))).test(ds));
+    assertTrue(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "DON$"))).test(ds));
+    assertFalse(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "shel$"))).test(ds));
+    assertTrue(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "^sheldon$"))).test(ds));
+    assertFalse(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "^sheldo$"))).test(ds));
+  }
+
+  @Test
+  public void makePredicateRegex() throws Exception
+  {
+    Dataset ds = new SimpleDataset("Test", Map.of("Vorname", "Sheldon"));
+    assertTrue(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "sh.ld"))).test(ds));
+    assertTrue(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "^(leonard|sheldon)$"))).test(ds));
+    assertFalse(DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "sh[^e]ld"))).test(ds));
+  }
+
+  @Test
+  public void makePredicateInvalidRegex() throws Exception
+  {
+    Predicate<Dataset> pred = DatasetPredicate.makePredicate(List.of(new QueryPart("Name", "(Cooper")));
+    assertTrue(pred.test(new SimpleDataset("Test", Map.of("Name", "Sheldon (Cooper)"))));
+    assertFalse(pred.test(new SimpleDataset("Test", Map.of("Name", "Sheldon Cooper"))));
+  }
+
+  @Test
+  public void makePredicateNullValue() throws Exception
+  {
+    Map<String, String> data = new HashMap<>();
+    data.put("Vorname", null);
+    Predicate<Dataset> pred = DatasetPredicate.makePredicate(List.of(new QueryPart("Vorname", "Sheldon")));
+    assertFalse(pred.test(new SimpleDataset("Test", data)));
+  }
+
   @Test
   public void matchAll()
   {
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+
+public class DatasourceRegistryTest
+{
+  URL file = getClass().getResource("thingyDatasource.conf");
+
+  private DatasourceRegistry createRegistry(String datasources) throws Exception
+  {
+    return new DatasourceRegistry(new ConfigThingy("", "Datenquellen(" + datasources + ")"), null);
+  }
+
+  private String conf(String name)
+  {
+    return "Datenquelle(NAME \"" + name + "\" TYPE \"conf\" URL \"" + file + "\" Schluessel(\"column\"))";
+  }
+
+  private String union(String name, String source1, String source2)
+  {
+    return "Datenquelle(NAME \"" + name + "\" TYPE \"union\" SOURCE1 \"" + source1 + "\" SOURCE2 \""
+        + source2 + "\")";
+  }
+
+  @Test
+  public void testMemoized() throws Exception
+  {
+    DatasourceRegistry registry = createRegistry(conf("a") + conf("b") + union("u", "a", "b"));
+    Datasource union = registry.getDatasource("u");
+    assertTrue(union instanceof UnionDatasource);
+    assertSame(union, registry.getDatasource("u"));
+    assertSame(union, registry.getDatasources().get("u"));
+    assertEquals(4, union.find(List.of(new QueryPart("column2", "value*"))).size());
+    assertSame(registry.getDatasource("a"), registry.getDatasources().get("a"));
+  }
+
+  @Test
+  public void testDefinitionOrder() throws Exception
+  {
+    DatasourceRegistry registry = createRegistry(conf("a") + union("u", "a", "a") + union("v", "a", "later")
+        + conf("later") + "Datenquelle(NAME \"a\" TYPE \"unknown\")");
+    assertNull(registry.getDatasource("a"));
+    assertTrue(registry.getDatasource("u") instanceof UnionDatasource);
+    assertNull(registry.getDatasource("v"));
+    assertTrue(registry.getDatasource("later") instanceof ThingyDatasource);
+  }
+
+  @Test
+  public void testDatasourceMap() throws Exception
+  {
+    DatasourceRegistry registry = createRegistry(
+        conf("a") + "Datenquelle(TYPE \"conf\")" + conf("b") + union("u", "a", "b") + conf("a"));
+    Map<String, Datasource> datasources = registry.getDatasources();
+    assertEquals(List.of("a", "b", "u"), List.copyOf(datasources.keySet()));
+    assertTrue(datasources.containsKey("u"));
+    assertFalse(datasources.containsKey("unknown"));
+    assertNull(datasources.get("unknown"));
+    assertNull(registry.getDatasource("unknown"));
+    assertEquals(3, datasources.size());
+    assertSame(registry.getDatasource("a"), datasources.get("a"));
+  }
+
+  @Test
+  public void testUnoDatasourceOnCallingThread() throws Exception
+  {
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    Datasources.setRegistration(() -> threads.add(Thread.currentThread()));
+    try
+    {
+      DatasourceRegistry registry = createRegistry(
+          "Datenquelle(NAME \"o\" TYPE \"ooo\" SOURCE \"db\" TABLE \"t\")" + union("u", "o", "o"));
+      registry.getDatasource("u");
+      assertEquals(List.of(Thread.currentThread()), threads);
+    } finally
+    {
+      Datasources.setRegistration(() -> {
+      });
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.LdapName;
+
+import org.junit.jupiter.api.Test;
+
+public class LDAPAttributeCacheTest
+{
+
+  private static LDAPAttributeCache.Key key(String server, String path) throws Exception
+  {
+    return new LDAPAttributeCache.Key(server, new LdapName(path), new String[] { "ou" });
+  }
+
+  @Test
+  public void testHitsAndTimeToLive() throws Exception
+  {
+    AtomicLong time = new AtomicLong();
+    LDAPAttributeCache cache = new LDAPAttributeCache(10);
+    cache.clock = time::get;
+    Attributes attributes = new BasicAttributes("ou", "Users");
+
+    assertNull(cache.get(key("ldap://a", "ou=Users")));
+    cache.put(key("ldap://a", "ou=Users"), attributes, 100);
+    assertSame(attributes, cache.get(key("ldap://a", "ou=Users")));
+    assertNull(cache.get(key("ldap://b", "ou=Users")));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    time.set(100);
+    assertNull(cache.get(key("ldap://a", "ou=Users")));
+    assertEquals(0, cache.size());
+
+    cache.put(key("ldap://a", "ou=Users"), attributes, 0);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testMaxSize() throws Exception
+  {
+    LDAPAttributeCache cache = new LDAPAttributeCache(2);
+    Attributes attributes = new BasicAttributes();
+    cache.put(key("ldap://a", "ou=1"), attributes, 1000);
+    cache.put(key("ldap://a", "ou=2"), attributes, 1000);
+    cache.get(key("ldap://a", "ou=1"));
+    cache.put(key("ldap://a", "ou=3"), attributes, 1000);
+    assertEquals(2, cache.size());
+    assertSame(attributes, cache.get(key("ldap://a", "ou=1")));
+    assertNull(cache.get(key("ldap://a", "ou=2")));
+  }
+
+  @Test
+  public void testInvalidate() throws Exception
+  {
+    LDAPAttributeCache cache = new LDAPAttributeCache(10);
+    Attributes attributes = new BasicAttributes();
+    cache.put(key("ldap://a", "ou=1"), attributes, 1000);
+    cache.put(key("ldap://b", "ou=1"), attributes, 1000);
+    cache.invalidate("ldap://a");
+    assertNull(cache.get(key("ldap://a", "ou=1")));
+    assertSame(attributes, cache.get(key("ldap://b", "ou=1")));
+    assertEquals(1, cache.size());
+  }
+}
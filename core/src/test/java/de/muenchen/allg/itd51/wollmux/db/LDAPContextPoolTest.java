@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.CommunicationException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.jupiter.api.Test;
+
+public class LDAPContextPoolTest
+{
+  private AtomicLong time = new AtomicLong();
+
+  private LDAPContextPool createPool(int maxIdle)
+  {
+    LDAPContextPool pool = new LDAPContextPool(() -> mock(LdapContext.class), maxIdle, 1000);
+    pool.clock = time::get;
+    return pool;
+  }
+
+  @Test
+  public void testReuse() throws Exception
+  {
+    LDAPContextPool pool = createPool(2);
+    LdapContext ctx = pool.borrow();
+    pool.release(ctx, true);
+    assertEquals(1, pool.getIdleCount());
+    assertSame(ctx, pool.borrow());
+    verify(ctx).setRequestControls(null);
+    verify(ctx, never()).close();
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testMaxIdle() throws Exception
+  {
+    LDAPContextPool pool = createPool(1);
+    LdapContext ctx1 = pool.borrow();
+    LdapContext ctx2 = pool.borrow();
+    assertNotSame(ctx1, ctx2);
+    pool.release(ctx1, true);
+    pool.release(ctx2, true);
+    assertEquals(1, pool.getIdleCount());
+    verify(ctx1, never()).close();
+    verify(ctx2).close();
+  }
+
+  @Test
+  public void testPoolingDisabled() throws Exception
+  {
+    LDAPContextPool pool = createPool(0);
+    LdapContext ctx = pool.borrow();
+    pool.release(ctx, true);
+    assertEquals(0, pool.getIdleCount());
+    verify(ctx).close();
+  }
+
+  @Test
+  public void testBrokenContext() throws Exception
+  {
+    LDAPContextPool pool = createPool(2);
+    LdapContext ctx = pool.borrow();
+    pool.release(ctx, false);
+    assertEquals(0, pool.getIdleCount());
+    verify(ctx).close();
+
+    ctx = pool.borrow();
+    doThrow(new NamingException()).when(ctx).setRequestControls(null);
+    pool.release(ctx, true);
+    assertNotSame(ctx, pool.borrow());
+    verify(ctx).close();
+  }
+
+  @Test
+  public void testIdleTimeout() throws Exception
+  {
+    LDAPContextPool pool = createPool(2);
+    LdapContext ctx = pool.borrow();
+    pool.release(ctx, true);
+    time.addAndGet(1000);
+    assertNotSame(ctx, pool.borrow());
+    verify(ctx).close();
+  }
+
+  @Test
+  public void testClose() throws Exception
+  {
+    LDAPContextPool pool = createPool(2);
+    LdapContext ctx = pool.borrow();
+    pool.release(ctx, true);
+    pool.close();
+    assertEquals(0, pool.getIdleCount());
+    verify(ctx).close();
+
+    ctx = pool.borrow();
+    pool.release(ctx, true);
+    verify(ctx).close();
+  }
+
+  @Test
+  public void testIsConnectionError()
+  {
+    assertTrue(LDAPContextPool.isConnectionError(new CommunicationException()));
+    assertFalse(LDAPContextPool.isConnectionError(new NameNotFoundException()));
+  }
+}
@@ -24,9 +24,11 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -37,6 +39,7 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 
 public class LDAPDatasourceTest
 {
@@ -118,4 +121,106 @@ public class LDAPDatasourceTest
     assertEquals(1, results.size());
   }
 
+  @Test
+  public void testLDAPDatasourceAttributeCache() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    ConfigThingy conf = new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column\")");
+    // closing removes the attributes cached by other tests
+    new LDAPDatasource(null, conf, null).close();
+    Datasource ds = new LDAPDatasource(null, conf, null);
+    LDAPAttributeCache cache = LDAPAttributeCache.getInstance();
+    long misses = cache.getMisses();
+    long hits = cache.getHits();
+
+    assertEquals("Users", ds.find(List.of(new QueryPart("column", "Ldap"))).iterator().next().get("column2"));
+    assertEquals(misses + 1, cache.getMisses());
+    assertEquals("Users", ds.find(List.of(new QueryPart("column", "Ldap"))).iterator().next().get("column2"));
+    assertEquals(misses + 1, cache.getMisses());
+    assertEquals(hits + 1, cache.getHits());
+
+    ds.close();
+    ds = new LDAPDatasource(null, conf, null);
+    assertEquals("Users", ds.find(List.of(new QueryPart("column", "Ldap"))).iterator().next().get("column2"));
+    assertEquals(misses + 2, cache.getMisses());
+  }
+
+  @Test
+  public void testLDAPDatasourceMixedRelativePaths() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")"
+        + " (DB_SPALTE \"column3\" PATH \"3:ou\")) Schluessel (\"column\")"),
+        null);
+
+    QueryResults results = ds.find(List.of(new QueryPart("column3", "Users"), new QueryPart("column2", "Users")));
+    assertEquals(1, results.size());
+    assertEquals("Users", results.iterator().next().get("column3"));
+    results = ds.find(List.of(new QueryPart("column3", "Users"), new QueryPart("column", "Ldap")));
+    assertEquals(1, results.size());
+    results = ds.find(List.of(new QueryPart("column3", "Groups"), new QueryPart("column", "Ldap")));
+    assertEquals(0, results.size());
+    results = ds.find(List.of(new QueryPart("column2", "Groups")));
+    assertEquals(0, results.size());
+  }
+
+  @Test
+  public void testLDAPDatasourcePagedResults() throws Exception
+  {
+    server.add("dn: ou=Paged," + BASE_DN, "objectClass: organizationalUnit", "objectClass: top", "ou: Paged");
+    for (int i = 0; i < 25; i++)
+    {
+      server.add("dn: cn=Test" + i + " Paged,ou=Paged," + BASE_DN, "objectClass: person", "objectClass: top",
+          "cn: Test" + i + " Paged", "sn: Paged" + i);
+    }
+    try
+    {
+      String url = "ldap://localhost:" + server.getListenPort();
+      Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+          + BASE_DN
+          + "\" OBJECT_CLASS \"person\" PAGE_SIZE \"7\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column\")"),
+          null);
+
+      QueryResults results = ds.find(List.of(new QueryPart("column", "Paged*")));
+      assertTrue(results instanceof StreamingQueryResults);
+      assertEquals(25, results.size());
+      for (Dataset data : results)
+      {
+        assertEquals("Paged", data.get("column2"));
+      }
+      assertEquals(25, ds.find(List.of(new QueryPart("column2", "Paged"))).size());
+      assertEquals(25, ds.getDatasetsByKey(List.of("(&(sn=Paged*))==%§%==")).size());
+
+      AsyncSearch search = new AsyncSearch(Map.of("column", "Paged1*"), ds);
+      assertEquals(11, search.runSearchAsync().get().size());
+    } finally
+    {
+      server.deleteSubtree("ou=Paged," + BASE_DN);
+    }
+  }
+
+  @Test
+  public void testLDAPDatasourceInvalidPageSize() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    assertThrows(ConfigurationErrorException.class, () -> new LDAPDatasource(null, new ConfigThingy("",
+        "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+            + "\" OBJECT_CLASS \"person\" PAGE_SIZE \"-1\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\")) Schluessel (\"column\")"),
+        null));
+  }
+
+  @Test
+  public void testLDAPDatasourceInvalidCacheTtl() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    assertThrows(ConfigurationErrorException.class, () -> new LDAPDatasource(null, new ConfigThingy("",
+        "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+            + "\" OBJECT_CLASS \"person\" CACHE_TTL \"-1\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\")) Schluessel (\"column\")"),
+        null));
+  }
+
 }
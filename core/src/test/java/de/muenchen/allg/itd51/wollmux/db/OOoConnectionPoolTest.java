@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.star.lang.XComponent;
+import com.sun.star.sdbc.SQLException;
+import com.sun.star.sdbc.XConnection;
+import com.sun.star.sdbc.XDataSource;
+import com.sun.star.sdbc.XRowSet;
+
+import de.muenchen.allg.itd51.wollmux.db.OOoConnectionPool.PooledConnection;
+
+public class OOoConnectionPoolTest
+{
+  private XDataSource dataSource;
+  private AtomicLong time = new AtomicLong();
+
+  @BeforeEach
+  public void setup() throws Exception
+  {
+    dataSource = mock(XDataSource.class);
+    when(dataSource.getConnection(anyString(), anyString()))
+        .thenAnswer(invocation -> mock(XConnection.class));
+  }
+
+  private OOoConnectionPool createPool(int maxSize, long timeout)
+  {
+    OOoConnectionPool pool = new OOoConnectionPool(() -> dataSource, "user", "password", maxSize,
+        1000, timeout);
+    pool.clock = time::get;
+    return pool;
+  }
+
+  @Test
+  public void testReuseConnection() throws Exception
+  {
+    OOoConnectionPool pool = createPool(2, 100);
+    PooledConnection first = pool.borrow();
+    pool.release(first, true);
+    assertEquals(1, pool.getIdleCount());
+    PooledConnection second = pool.borrow();
+    assertSame(first, second);
+    verify(dataSource, times(1)).getConnection("user", "password");
+    verify(second.getConnection(), never()).close();
+  }
+
+  @Test
+  public void testValidateOnBorrow() throws Exception
+  {
+    OOoConnectionPool pool = createPool(2, 100);
+    PooledConnection first = pool.borrow();
+    pool.release(first, true);
+    when(first.getConnection().isClosed()).thenReturn(true);
+    PooledConnection second = pool.borrow();
+    assertNotSame(first, second);
+    verify(first.getConnection()).close();
+    verify(dataSource, times(2)).getConnection("user", "password");
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception
+  {
+    OOoConnectionPool pool = createPool(2, 100);
+    PooledConnection first = pool.borrow();
+    PooledConnection second = pool.borrow();
+    pool.release(first, true);
+    time.set(500);
+    pool.release(second, true);
+    time.set(1200);
+    assertSame(second, pool.borrow());
+    assertEquals(0, pool.getIdleCount());
+    verify(first.getConnection()).close();
+  }
+
+  @Test
+  public void testDiscardBrokenConnection() throws Exception
+  {
+    OOoConnectionPool pool = createPool(2, 100);
+    PooledConnection first = pool.borrow();
+    pool.release(first, false);
+    assertEquals(0, pool.getIdleCount());
+    verify(first.getConnection()).close();
+  }
+
+  @Test
+  public void testPoolingDisabled() throws Exception
+  {
+    OOoConnectionPool pool = createPool(0, 100);
+    PooledConnection first = pool.borrow();
+    PooledConnection second = pool.borrow();
+    pool.release(first, true);
+    pool.release(second, true);
+    assertEquals(0, pool.getIdleCount());
+    verify(first.getConnection()).close();
+    verify(second.getConnection()).close();
+  }
+
+  @Test
+  public void testMaxSize() throws Exception
+  {
+    OOoConnectionPool pool = createPool(1, 50);
+    PooledConnection first = pool.borrow();
+    assertThrows(SQLException.class, pool::borrow);
+
+    pool.release(first, true);
+    assertSame(first, pool.borrow());
+
+    OOoConnectionPool blocking = createPool(1, 5000);
+    PooledConnection used = blocking.borrow();
+    CompletableFuture<PooledConnection> next = CompletableFuture.supplyAsync(() -> {
+      try
+      {
+        return blocking.borrow();
+      } catch (com.sun.star.uno.Exception e)
+      {
+        throw new IllegalStateException(e);
+      }
+    });
+    blocking.release(used, true);
+    assertSame(used, next.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testLoginFailure() throws Exception
+  {
+    when(dataSource.getConnection(anyString(), anyString())).thenThrow(new SQLException("login"));
+    OOoConnectionPool pool = createPool(1, 50);
+    assertThrows(SQLException.class, pool::borrow);
+    assertThrows(SQLException.class, pool::borrow);
+    verify(dataSource, times(2)).getConnection("user", "password");
+  }
+
+  @Test
+  public void testLoginTimeoutInSeconds() throws Exception
+  {
+    OOoConnectionPool pool = createPool(1, 100);
+    pool.release(pool.borrow(), true);
+    verify(dataSource).setLoginTimeout(1);
+    assertEquals(1, OOoConnectionPool.toLoginTimeout(0));
+    assertEquals(10, OOoConnectionPool.toLoginTimeout(10000));
+    assertEquals(11, OOoConnectionPool.toLoginTimeout(10001));
+  }
+
+  @Test
+  public void testClose() throws Exception
+  {
+    OOoConnectionPool pool = createPool(2, 100);
+    PooledConnection first = pool.borrow();
+    PooledConnection second = pool.borrow();
+    pool.release(first, true);
+    pool.close();
+    assertEquals(0, pool.getIdleCount());
+    verify(first.getConnection()).close();
+
+    pool.release(second, true);
+    assertEquals(0, pool.getIdleCount());
+    verify(second.getConnection()).close();
+  }
+
+  @Test
+  public void testRowSetCache() throws Exception
+  {
+    OOoConnectionPool pool = createPool(1, 100);
+    PooledConnection pooled = pool.borrow();
+    XRowSet first = mock(XRowSet.class, withSettings().extraInterfaces(XComponent.class));
+    pooled.putRowSet("SELECT 0", first);
+    pool.release(pooled, true);
+
+    pooled = pool.borrow();
+    assertSame(first, pooled.getRowSet("SELECT 0"));
+    for (int i = 1; i <= PooledConnection.MAX_ROW_SETS; i++)
+    {
+      pooled.putRowSet("SELECT " + i, mock(XRowSet.class));
+    }
+    assertNull(pooled.getRowSet("SELECT 0"));
+    verify((XComponent) first).dispose();
+
+    XRowSet last = mock(XRowSet.class, withSettings().extraInterfaces(XComponent.class));
+    pooled.putRowSet("SELECT last", last);
+    pool.release(pooled, false);
+    verify((XComponent) last).dispose();
+  }
+}
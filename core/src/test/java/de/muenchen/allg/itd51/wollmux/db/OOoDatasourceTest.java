@@ -26,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -57,4 +58,34 @@ public class OOoDatasourceTest extends OfficeTest
     assertEquals(5, results.size());
   }
 
+  @Test
+  public void testMoreQueriesThanConnections() throws Exception
+  {
+    Datasource ds = new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") "
+            + "POOL_SIZE \"1\""));
+    // results are held unread like in Search.search()
+    List<QueryResults> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++)
+    {
+      results.add(ds.find(List.of(new QueryPart("Author", "Gris, Myriam"))));
+    }
+    results.add(ds.getContents());
+    for (int i = 0; i < 3; i++)
+    {
+      assertEquals(5, results.get(i).size());
+    }
+    assertEquals(20, results.get(3).size());
+  }
+
+  @Test
+  public void testInListSize()
+  {
+    assertEquals(1, OOoDatasource.getInListSize(1));
+    assertEquals(2, OOoDatasource.getInListSize(2));
+    assertEquals(4, OOoDatasource.getInListSize(3));
+    assertEquals(8, OOoDatasource.getInListSize(8));
+    assertEquals(16, OOoDatasource.getInListSize(9));
+  }
+
 }
@@ -26,7 +26,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
@@ -64,4 +67,26 @@ public class QueryResultsSetTest
     assertEquals(2, res.size());
   }
 
+  @Test
+  public void testQueryResultsSetByKey() throws Exception
+  {
+    QueryResultsSet res = new QueryResultsSet();
+    assertTrue(res.isEmpty());
+
+    res.addAll(new MockQueryResults(new MockDataset("ds1", "column", "value1"),
+        new MockDataset(new String("ds2"), "column", "value2"), new MockDataset(null, "column", "value3")));
+    res.addAll(new MockQueryResults(new MockDataset(new String("ds1"), "column", "value4"),
+        new MockDataset("ds2", "column", "value5"), new MockDataset(null, "column", "value6"),
+        new MockDataset("ds3", "column", "value7")));
+    res.add(new SimpleDataset("ds1", Map.of("column", "value8")));
+
+    assertEquals(5, res.size());
+    List<String> values = new ArrayList<>();
+    for (Dataset ds : res)
+    {
+      values.add(ds.get("column"));
+    }
+    assertEquals(List.of("value1", "value2", "value3", "value7", "value8"), values);
+  }
+
 }
@@ -26,6 +26,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -54,6 +56,54 @@ public class RAMDatasourceTest
     assertEquals(0, results.size());
   }
 
+  @Test
+  public void testDatasetsByKey() throws Exception
+  {
+    Datasource ds = new RAMDatasource("ram", List.of("column"),
+        List.of(new MockDataset("ds1", "column", "value1"), new MockDataset("ds2", "column", "value2"),
+            new MockDataset("ds1", "column", "value3")));
+    QueryResults results = ds.getDatasetsByKey(List.of("ds2", "ds1", "ds1", "unknown"));
+    assertEquals(3, results.size());
+    Iterator<Dataset> iter = results.iterator();
+    assertEquals("value1", iter.next().get("column"));
+    assertEquals("value2", iter.next().get("column"));
+    assertEquals("value3", iter.next().get("column"));
+  }
+
+  @Test
+  public void testIndexedFind()
+  {
+    for (ColumnIndex.Type type : ColumnIndex.Type.values())
+    {
+      testIndexedFind(type);
+    }
+  }
+
+  private void testIndexedFind(ColumnIndex.Type type)
+  {
+    List<Dataset> data = List.of(new MockDataset("ds1", "column", "Sheldon"),
+        new MockDataset("ds2", "column", "Leonard"), new MockDataset("ds3", "column", "Penny"),
+        new MockDataset("ds4", "column", null), new MockDataset("ds5", "other", "Sheldon"),
+        new MockDataset("ds6", "column", "sheldon cooper"));
+    RAMDatasource indexed = new RAMDatasource("ram", List.of("column"), data);
+    indexed.addIndex(type, "column");
+    RAMDatasource plain = new RAMDatasource("ram", List.of("column"), data);
+
+    for (String search : List.of("sheldon", "^SHELDON$", "^shel", "^shel*", "eld", "on$", "nard",
+        "^n", "y$", "x", "e", "^$", "sh.ld", "(sheldon", "*"))
+    {
+      List<QueryPart> query = List.of(new QueryPart("column", search));
+      assertEquals(keys(plain.find(query)), keys(indexed.find(query)), type + " " + search);
+    }
+  }
+
+  private List<String> keys(QueryResults results)
+  {
+    List<String> keys = new ArrayList<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    return keys;
+  }
+
   @Test
   public void testUninitialized()
   {
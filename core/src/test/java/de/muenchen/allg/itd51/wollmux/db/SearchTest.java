@@ -75,4 +75,17 @@ public class SearchTest
     results = Search.search("value", strategy, datasources);
     assertEquals(2, results.size());
   }
+
+  @Test
+  public void testSearchMergeEqualKeys() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(test (column \"${suchanfrage1}\") test (column2 \"${suchanfrage1}\"))"));
+    Map<String, Datasource> datasources = Map.of("test", new MockDatasource("test", List.of("column", "column2"),
+        List.of(new MockDataset(new String("ds"), Map.of("column", "value", "column2", "other")),
+            new MockDataset(new String("ds"), Map.of("column", "other", "column2", "value")),
+            new MockDataset("ds2", Map.of("column", "value", "column2", "value")))));
+    QueryResults results = Search.search("value", strategy, datasources);
+    assertEquals(2, results.size());
+  }
 }
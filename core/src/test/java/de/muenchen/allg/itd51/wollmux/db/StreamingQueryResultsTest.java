@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
+
+public class StreamingQueryResultsTest
+{
+
+  private static class CountingCursor implements StreamingQueryResults.Cursor
+  {
+    private final int count;
+    private final int failAt;
+    private int read = 0;
+    private int closed = 0;
+
+    private CountingCursor(int count, int failAt)
+    {
+      this.count = count;
+      this.failAt = failAt;
+    }
+
+    @Override
+    public Dataset next() throws Exception
+    {
+      if (read == failAt)
+      {
+        throw new Exception("broken");
+      }
+      if (read == count)
+      {
+        return null;
+      }
+      read++;
+      return new MockDataset("ds" + read, "column", "value" + read);
+    }
+
+    @Override
+    public void close()
+    {
+      closed++;
+    }
+  }
+
+  @Test
+  public void testLazyIteration() throws Exception
+  {
+    CountingCursor cursor = new CountingCursor(5, -1);
+    StreamingQueryResults results = new StreamingQueryResults(cursor);
+    assertEquals(0, cursor.read);
+    assertFalse(results.isEmpty());
+    assertEquals(1, cursor.read);
+
+    Iterator<Dataset> iter = results.iterator();
+    assertEquals("ds1", iter.next().getKey());
+    assertEquals("ds2", iter.next().getKey());
+    assertEquals(2, cursor.read);
+    assertEquals(0, cursor.closed);
+
+    List<String> keys = new ArrayList<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    assertEquals(List.of("ds1", "ds2", "ds3", "ds4", "ds5"), keys);
+    assertEquals(1, cursor.closed);
+    assertEquals(5, results.size());
+    assertEquals("ds3", iter.next().getKey());
+    iter.next();
+    iter.next();
+    assertThrows(NoSuchElementException.class, iter::next);
+    assertEquals(1, cursor.closed);
+  }
+
+  @Test
+  public void testSizeAndPrefetch() throws Exception
+  {
+    CountingCursor cursor = new CountingCursor(5, -1);
+    StreamingQueryResults results = new StreamingQueryResults(cursor);
+    results.prefetch(3);
+    assertEquals(3, cursor.read);
+    assertEquals(0, cursor.closed);
+    assertEquals(5, results.size());
+    assertEquals(1, cursor.closed);
+
+    cursor = new CountingCursor(0, -1);
+    results = new StreamingQueryResults(cursor);
+    assertTrue(results.isEmpty());
+    assertEquals(0, results.size());
+    assertEquals(1, cursor.closed);
+  }
+
+  @Test
+  public void testCloseAndError() throws Exception
+  {
+    CountingCursor cursor = new CountingCursor(5, -1);
+    StreamingQueryResults results = new StreamingQueryResults(cursor);
+    results.prefetch(2);
+    results.close();
+    results.close();
+    assertEquals(1, cursor.closed);
+    assertEquals(2, results.size());
+
+    cursor = new CountingCursor(5, 3);
+    results = new StreamingQueryResults(cursor);
+    assertEquals(3, results.size());
+    assertEquals(1, cursor.closed);
+  }
+}
@@ -32,6 +32,7 @@ import java.util.List;
 import org.junit.jupiter.api.Test;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 
 public class ThingyDatasourceTest
 {
@@ -48,4 +49,23 @@ public class ThingyDatasourceTest
     assertThrows(ColumnNotFoundException.class, () -> data.get("unknown"));
   }
 
+  @Test
+  public void testThingyDatasourceWithIndex() throws Exception
+  {
+    Datasource ds = new ThingyDatasource(null, new ConfigThingy("", "NAME \"conf\" URL \"" + file
+        + "\" Schluessel(\"column\") INDEX(EXACT(\"column\") NGRAM(\"column\" \"column2\"))"), null);
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "^value3$"))).size());
+    assertEquals(1, ds.find(List.of(new QueryPart("column2", "lue4"))).size());
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "^value$"))).size());
+  }
+
+  @Test
+  public void testThingyDatasourceInvalidIndex() throws Exception
+  {
+    assertThrows(ConfigurationErrorException.class, () -> new ThingyDatasource(null, new ConfigThingy("",
+        "NAME \"conf\" URL \"" + file + "\" Schluessel(\"column\") INDEX(UNKNOWN(\"column\"))"), null));
+    assertThrows(ConfigurationErrorException.class, () -> new ThingyDatasource(null, new ConfigThingy("",
+        "NAME \"conf\" URL \"" + file + "\" Schluessel(\"column\") INDEX(EXACT(\"unknown\"))"), null));
+  }
+
 }
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+
+public class FormValuesSerializerTest
+{
+  @Test
+  public void testSameAsConfigThingy() throws Exception
+  {
+    FormValuesSerializer serializer = new FormValuesSerializer();
+    Map<String, String> values = new LinkedHashMap<>();
+    assertEquals(reference(values), serializer.serialize(values));
+
+    values.put("a", "x\"y'%\n\r");
+    values.put("b", "");
+    values.put("c", null);
+    assertEquals(reference(values), serializer.serialize(values));
+
+    Random random = new Random(42);
+    String chars = "ab\"'%\n\r ()ä";
+    for (int round = 0; round < 20; round++)
+    {
+      for (int i = 0; i < 10; i++)
+      {
+        StringBuilder value = new StringBuilder();
+        for (int j = random.nextInt(8); j > 0; j--)
+        {
+          value.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        values.put("id" + random.nextInt(30), value.toString());
+      }
+      values.remove("id" + random.nextInt(30));
+      assertEquals(reference(values), serializer.serialize(values));
+    }
+  }
+
+  @Test
+  public void testParseable() throws Exception
+  {
+    Map<String, String> values = new HashMap<>();
+    values.put("name", "Max \"M\" 100%");
+    values.put("text", "line1\nline2");
+    String text = new FormValuesSerializer().serialize(values);
+
+    Map<String, String> parsed = new HashMap<>();
+    for (ConfigThingy entry : new ConfigThingy("", null, new StringReader(text)).get("WM").get("Formularwerte"))
+    {
+      parsed.put(entry.getString("ID"), entry.getString("VALUE"));
+    }
+    assertEquals(values, parsed);
+  }
+
+  private static String reference(Map<String, String> values)
+  {
+    ConfigThingy werte = new ConfigThingy("WM");
+    ConfigThingy formwerte = new ConfigThingy("Formularwerte");
+    werte.addChild(formwerte);
+    for (Map.Entry<String, String> ent : values.entrySet())
+    {
+      if (ent.getKey() != null && ent.getValue() != null)
+      {
+        ConfigThingy entry = new ConfigThingy("");
+        ConfigThingy cfID = new ConfigThingy("ID");
+        cfID.add(ent.getKey());
+        ConfigThingy cfVALUE = new ConfigThingy("VALUE");
+        cfVALUE.add(ent.getValue());
+        entry.addChild(cfID);
+        entry.addChild(cfVALUE);
+        formwerte.addChild(entry);
+      }
+    }
+    return werte.stringRepresentation();
+  }
+}
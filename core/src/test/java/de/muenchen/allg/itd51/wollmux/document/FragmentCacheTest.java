@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FragmentCacheTest
+{
+  private static final long OLD = System.currentTimeMillis() - 60_000;
+
+  @TempDir
+  File dir;
+
+  private File cacheDir;
+
+  private File fragment;
+
+  private String url;
+
+  @BeforeEach
+  public void setup() throws Exception
+  {
+    cacheDir = new File(dir, "cache");
+    fragment = new File(dir, "fragment.odt");
+    write(fragment, "content", OLD);
+    url = fragment.toURI().toURL().toString();
+  }
+
+  @Test
+  public void testMemoryHit() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(cacheDir, 1 << 20, 1 << 20, 60_000);
+    assertFalse(cache.contains(url));
+    assertEquals("content", read(cache.get(url)));
+    assertEquals("content", read(cache.get(url)));
+    assertTrue(cache.contains(url));
+    assertEquals(1, cache.getStats().getDownloadCount());
+    assertEquals(1, cache.getStats().getHitCount());
+    assertEquals(0.5, cache.getStats().getHitRate());
+  }
+
+  @Test
+  public void testDiskHitAfterRestart() throws Exception
+  {
+    new FragmentCache(cacheDir, 1 << 20, 1 << 20, 60_000).get(url);
+
+    FragmentCache cache = new FragmentCache(cacheDir, 1 << 20, 1 << 20, 60_000);
+    assertTrue(cache.contains(url));
+    assertEquals("content", read(cache.get(url)));
+    assertEquals(1, cache.getStats().getDiskHitCount());
+    assertEquals(0, cache.getStats().getDownloadCount());
+  }
+
+  @Test
+  public void testRevalidation() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(cacheDir, 1 << 20, 1 << 20, 0);
+    cache.get(url);
+    assertEquals("content", read(cache.get(url)));
+    assertEquals(1, cache.getStats().getRevalidationCount());
+
+    write(fragment, "changed content", OLD + 1000);
+    assertEquals("changed content", read(cache.get(url)));
+    assertEquals(2, cache.getStats().getDownloadCount());
+
+    new FragmentCache(cacheDir, 1 << 20, 1 << 20, 0).get(url);
+    write(fragment, "new", OLD + 2000);
+    FragmentCache restarted = new FragmentCache(cacheDir, 1 << 20, 1 << 20, 0);
+    assertEquals("new", read(restarted.get(url)));
+    assertEquals(0, restarted.getStats().getDiskHitCount());
+  }
+
+  @Test
+  public void testStaleWhenSourceIsMissing() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(cacheDir, 1 << 20, 1 << 20, 0);
+    cache.get(url);
+    Files.delete(fragment.toPath());
+    assertEquals("content", read(cache.get(url)));
+    assertEquals(1, cache.getStats().getStaleCount());
+
+    String missing = new File(dir, "missing.odt").toURI().toURL().toString();
+    assertThrows(ExecutionException.class, () -> cache.get(missing));
+  }
+
+  @Test
+  public void testWeightedEviction() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(null, 10, 0, 60_000);
+    File other = new File(dir, "other.odt");
+    write(other, "0123456789", OLD);
+    cache.get(url);
+    cache.get(other.toURI().toURL().toString());
+    assertEquals(1, cache.getStats().getMemoryEntries());
+    assertEquals(1, cache.getStats().getEvictionCount());
+    assertFalse(cache.contains(url));
+  }
+
+  @Test
+  public void testIndependentViews() throws Exception
+  {
+    FragmentCache cache = new FragmentCache(cacheDir, 1 << 20, 1 << 20, 60_000);
+    ByteBuffer first = cache.get(url);
+    ByteBuffer second = cache.get(url);
+    assertTrue(first.isReadOnly());
+    first.get(new byte[3]);
+    assertEquals(0, second.position());
+    assertEquals("content", read(second));
+
+    ByteBufferInputStream in1 = new ByteBufferInputStream(first);
+    ByteBufferInputStream in2 = new ByteBufferInputStream(first);
+    byte[][] data = new byte[1][];
+    in1.readBytes(data, 2);
+    assertArrayEquals("te".getBytes(StandardCharsets.UTF_8), data[0]);
+    in2.readBytes(data, 2);
+    assertArrayEquals("te".getBytes(StandardCharsets.UTF_8), data[0]);
+    assertEquals(7, in1.getLength());
+  }
+
+  private static void write(File file, String content, long modified) throws Exception
+  {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    assertTrue(file.setLastModified(modified));
+  }
+
+  private static String read(ByteBuffer buffer)
+  {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.form.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
+import de.muenchen.allg.itd51.wollmux.func.Values;
+import de.muenchen.allg.itd51.wollmux.ui.UIElementConfig;
+
+public class FormDependenciesTest
+{
+  private final Map<String, Control> controls = new LinkedHashMap<>();
+
+  @Test
+  public void testTopologicalPropagation() throws Exception
+  {
+    // d is declared before b and c but has to be computed after both
+    add("a", "");
+    add("d", "AUTOFILL(CAT(VALUE \"b\" VALUE \"c\"))");
+    add("b", "AUTOFILL(CAT(VALUE \"a\" \"1\"))");
+    add("c", "AUTOFILL(CAT(VALUE \"a\" \"2\"))");
+    FormDependencies dependencies = link();
+
+    assertEquals(List.of("a", "b", "c", "d"), ids(dependencies.inTopologicalOrder()));
+    Map<String, String> modified = dependencies.propagate(controls.get("a"), "x");
+    assertEquals(List.of("a", "b", "c", "d"), List.copyOf(modified.keySet()));
+    assertEquals("x1x2", modified.get("d"));
+    assertEquals("", controls.get("d").getValue());
+  }
+
+  @Test
+  public void testUnchangedValuesDontPropagate() throws Exception
+  {
+    add("a", "");
+    add("e", "AUTOFILL(IF(MATCH(VALUE \"a\" \".*\") THEN \"same\" ELSE \"other\"))");
+    add("f", "AUTOFILL(CAT(VALUE \"e\" \"!\"))");
+    FormDependencies dependencies = link();
+    controls.get("e").setValue("same");
+    controls.get("f").setValue("old");
+
+    Map<String, String> modified = dependencies.propagate(controls.get("a"), "x");
+    assertEquals(Map.of("a", "x"), modified);
+  }
+
+  @Test
+  public void testCycle() throws Exception
+  {
+    add("a", "");
+    add("x", "AUTOFILL(CAT(VALUE \"y\" VALUE \"a\"))");
+    add("y", "AUTOFILL(CAT(VALUE \"x\" \"+\"))");
+    FormDependencies dependencies = link();
+
+    assertEquals(List.of("a", "x", "y"), ids(dependencies.inTopologicalOrder()));
+    Map<String, String> modified = dependencies.propagate(controls.get("a"), "1");
+    assertEquals(List.of("a", "x", "y"), List.copyOf(modified.keySet()));
+    assertEquals("1", modified.get("x"));
+    assertEquals("1+", modified.get("y"));
+  }
+
+  @Test
+  public void testValuesAndDependingFunctions() throws Exception
+  {
+    add("a", "");
+    add("b", "PLAUSI(MATCH(VALUE \"a\" \"[0-9]+\"))");
+    add("c", "PLAUSI(MATCH(VALUE \"b\" \"[0-9]+\"))");
+    FormDependencies dependencies = link();
+    controls.get("a").setValue("1");
+
+    Values values = dependencies.values(Map.of("b", "2"));
+    assertEquals("1", values.getString("a"));
+    assertEquals("2", values.getString("b"));
+    assertTrue(values.hasValue("c"));
+    assertFalse(values.hasValue("unknown"));
+    assertEquals("", values.getString("unknown"));
+
+    assertEquals(List.of("a", "b"), ids(dependencies.getDependingPlausis(List.of("a"))));
+    assertEquals(List.of("a", "b", "c"), ids(dependencies.getDependingPlausis(List.of("b", "a"))));
+  }
+
+  private void add(String id, String functions) throws Exception
+  {
+    UIElementConfig config = new UIElementConfig(
+        new ConfigThingy("", "ID \"" + id + "\" TYPE \"textfield\" " + functions));
+    controls.put(id, new Control(config, new FunctionLibrary(), new DialogLibrary(), new HashMap<>()));
+  }
+
+  /**
+   * Register the dependencies like {@link FormModel} does.
+   */
+  private FormDependencies link()
+  {
+    for (Control control : controls.values())
+    {
+      control.getAutofill().ifPresent(autofill -> {
+        for (String id : autofill.parameters())
+        {
+          controls.get(id).addDependingAutoFillFormField(control);
+        }
+      });
+      for (String id : control.getPlausi().parameters())
+      {
+        controls.get(id).addDependingPlausiFormField(control);
+      }
+      control.addDependingPlausiFormField(control);
+    }
+    return new FormDependencies(controls);
+  }
+
+  private static List<String> ids(Iterable<Control> controls)
+  {
+    List<String> ids = new ArrayList<>();
+    controls.forEach(c -> ids.add(c.getId()));
+    return ids;
+  }
+}
@@ -0,0 +1,242 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+
+public class CompiledFunctionTest
+{
+  private static final List<String> FUNCTIONS = List.of(
+      "VALUE \"a\"",
+      "CAT(VALUE \"a\" \"-\" VALUE \"b\")",
+      "IF(MATCH(VALUE \"a\" \"[0-9]+\") THEN(\"num\") ELSE(\"txt:\" VALUE \"a\"))",
+      "AND(NOT(MATCH(VALUE \"a\" \"\")) OR(STRCMP(VALUE \"a\" VALUE \"b\") \"false\"))",
+      "STRCMP(VALUE \"a\" VALUE \"b\" \"abc\")",
+      "SELECT(VALUE \"x\" VALUE \"a\" ONERROR \"fallback\")",
+      "SELECT(VALUE \"x\" \"\" VALUE \"b\")",
+      "LENGTH(VALUE \"a\" VALUE \"b\")",
+      "SUM(VALUE \"n\" VALUE \"m\" \"1\")",
+      "MINUS(VALUE \"n\")",
+      "ABS(DIFF(VALUE \"n\" VALUE \"m\"))",
+      "SIGN(DIFF(VALUE \"m\" VALUE \"n\"))",
+      "PRODUCT(VALUE \"n\" VALUE \"n\" \"3\")",
+      "LT(VALUE \"n\" VALUE \"m\")",
+      "GE(VALUE \"n\" \"10\" MARGIN(\"8\"))",
+      "NUMCMP(VALUE \"n\" VALUE \"m\" MARGIN(VALUE \"n\"))",
+      "DIVIDE(VALUE \"n\" BY(VALUE \"m\") MIN \"2\" MAX \"4\")",
+      "FORMAT(VALUE \"n\" MIN \"2\")",
+      "REPLACE(VALUE \"a\" \"[aeiou]\" \"_\")",
+      "SPLIT(VALUE \"a\" \"-\" \"1\")",
+      "ISERROR(VALUE \"x\")",
+      "ISERRORSTRING(VALUE \"a\")",
+      "IF(LENGTH(VALUE \"a\") THEN \"yes\" ELSE \"no\")",
+      "IF(VALUE \"b\" THEN(VALUE \"a\") ELSE(DIVIDE(\"1\" BY(\"3\") MAX \"2\")))",
+      "CAT(\"const\" SUM(\"1\" \"2\") IF(\"true\" THEN \"x\" ELSE \"y\"))",
+      "BIND(FUNCTION(CAT(VALUE \"a\" VALUE \"b\")) SET(\"a\" VALUE \"b\") SET(\"b\" \"fix\"))",
+      "BIND(FUNCTION(SUM(VALUE \"a\" VALUE \"n\")) SET(\"a\" VALUE \"x\"))",
+      "BIND(FUNCTION(ISERROR(VALUE \"a\")) SET(\"a\" VALUE \"x\"))",
+      "BIND(FUNCTION(BIND(FUNCTION(CAT(VALUE \"a\" VALUE \"b\")) SET(\"a\" VALUE \"b\"))) SET(\"b\" VALUE \"m\"))",
+      "BIND(FUNCTION \"lib\" SET(\"a\" CAT(VALUE \"b\" VALUE \"b\")))",
+      "BIND(FUNCTION \"custom\" SET(\"a\" \"bound\"))",
+      "BIND(FUNCTION \"custom\" SET(\"a\" VALUE \"x\"))",
+      "AND(VALUE \"b\" MATCH(\"abc\" \"a.c\"))");
+
+  private FunctionLibrary funcLib;
+
+  private DialogLibrary dialogLib;
+
+  private Map<Object, Object> context;
+
+  @BeforeEach
+  public void setup()
+  {
+    funcLib = new FunctionLibrary();
+    dialogLib = new DialogLibrary();
+    context = new HashMap<>();
+    funcLib.add("lib", new IfFunction(new ValueFunction("a"), new StringLiteralFunction("lib"),
+        new ValueFunction("a")));
+    funcLib.add("custom", new CustomFunction());
+  }
+
+  @Test
+  public void testSameResults() throws Exception
+  {
+    List<Values> values = new ArrayList<>();
+    values.add(new Values.SimpleMap());
+    values.add(map("a", "abc-def", "b", "abc", "n", "3", "m", "4"));
+    values.add(map("a", "123", "b", "true", "n", "-2", "m", "x"));
+    values.add(map("a", "", "b", "TRUE", "n", "20", "m", "0"));
+    values.add(map("a", FunctionLibrary.ERROR, "b", "", "n", "1.5", "m", "2,5", "x", "7"));
+
+    for (String conf : FUNCTIONS)
+    {
+      Function function = FunctionFactory.parseChildren(new ConfigThingy("Func", conf), funcLib, dialogLib,
+          context);
+      Function compiled = FunctionFactory.compile(function);
+      assertNotSame(function, compiled, conf);
+      assertEquals(List.of(function.parameters()), List.of(compiled.parameters()), conf);
+      for (Values v : values)
+      {
+        String expected = function.getResult(v);
+        String result = compiled.getResult(v);
+        assertEquals(expected, result, conf);
+        if (expected == FunctionLibrary.ERROR)
+        {
+          assertSame(FunctionLibrary.ERROR, result, conf);
+        }
+        assertEquals(function.getBoolean(v), compiled.getBoolean(v), conf);
+      }
+    }
+  }
+
+  @Test
+  public void testValuesAreReadOnce() throws Exception
+  {
+    CountingValues values = new CountingValues();
+    Function compiled = FunctionFactory.compile(FunctionFactory.parseChildren(
+        new ConfigThingy("Func", "IF(MATCH(VALUE \"a\" \"a.*\") THEN(VALUE \"a\" VALUE \"a\") ELSE \"\")"),
+        funcLib, dialogLib, context));
+    assertEquals("abcabc", compiled.getResult(values));
+    assertEquals(1, values.reads);
+    assertEquals("abcabc", compiled.getResult(values));
+    assertEquals(2, values.reads);
+  }
+
+  @Test
+  public void testConstantFolding() throws Exception
+  {
+    Function compiled = FunctionFactory.compile(FunctionFactory.parseChildren(
+        new ConfigThingy("Func",
+            "CAT(SUM(\"1\" \"2\") BIND(FUNCTION(CAT(VALUE \"a\" \"b\")) SET(\"a\" REPLACE(\"xyz\" \"y\" \"a\"))))"),
+        funcLib, dialogLib, context));
+    Values values = mock(Values.class);
+    assertEquals("3xazb", compiled.getResult(values));
+    verifyNoInteractions(values);
+  }
+
+  @Test
+  public void testNotCompilable() throws Exception
+  {
+    Function custom = new CustomFunction();
+    assertSame(custom, FunctionFactory.compile(custom));
+    assertNull(FunctionFactory.compile(null));
+    Function compiled = FunctionFactory.compile(new ValueFunction("a"));
+    assertSame(compiled, FunctionFactory.compile(compiled));
+  }
+
+  @Test
+  public void testConcurrentEvaluation() throws Exception
+  {
+    Function compiled = FunctionFactory.compile(FunctionFactory.parseChildren(
+        new ConfigThingy("Func", "CAT(SUM(VALUE \"n\" VALUE \"n\") \"/\" NUMCMP(VALUE \"n\" \"500\"))"), funcLib,
+        dialogLib, context));
+    IntStream.range(0, 1000).parallel().forEach(i -> {
+      String expected = (2 * i) + "/" + Integer.signum(i - 500);
+      assertEquals(expected.replace("/0", "/true"), compiled.getResult(map("n", "" + i)));
+    });
+  }
+
+  private static Values.SimpleMap map(String... keyValues)
+  {
+    Values.SimpleMap values = new Values.SimpleMap();
+    for (int i = 0; i < keyValues.length; i += 2)
+    {
+      values.put(keyValues[i], keyValues[i + 1]);
+    }
+    return values;
+  }
+
+  /**
+   * A function which can't be compiled.
+   */
+  private static class CustomFunction implements Function
+  {
+    @Override
+    public String[] parameters()
+    {
+      return new String[] { "a", "b" };
+    }
+
+    @Override
+    public void getFunctionDialogReferences(Collection<String> set)
+    {
+      // no dialogs
+    }
+
+    @Override
+    public String getResult(Values parameters)
+    {
+      return parameters.getString("a") + parameters.hasValue("a") + parameters.getString("b")
+          + parameters.getBoolean("b");
+    }
+
+    @Override
+    public boolean getBoolean(Values parameters)
+    {
+      return parameters.getBoolean("a");
+    }
+  }
+
+  private static class CountingValues implements Values
+  {
+    private int reads;
+
+    @Override
+    public boolean hasValue(String id)
+    {
+      return true;
+    }
+
+    @Override
+    public String getString(String id)
+    {
+      reads++;
+      return "abc";
+    }
+
+    @Override
+    public boolean getBoolean(String id)
+    {
+      reads++;
+      return false;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.SyntaxErrorException;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+
+/**
+ * Compares the evaluation of typical form functions as parsed by {@link FunctionFactory} and after
+ * {@link FunctionFactory#compile(Function)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FunctionBenchmark
+{
+  private static final Map<String, String> FUNCTIONS = Map.of(
+      "autofill",
+      "CAT(IF(MATCH(VALUE \"Anrede\" \"Herr\") THEN(\"Sehr geehrter Herr \" VALUE \"Nachname\") "
+          + "ELSE(IF(MATCH(VALUE \"Anrede\" \"Frau\") THEN(\"Sehr geehrte Frau \" VALUE \"Nachname\") "
+          + "ELSE \"Sehr geehrte Damen und Herren\"))) \",\")",
+      "plausi",
+      "AND(MATCH(VALUE \"PLZ\" \"[0-9]{5}\") GE(VALUE \"Betrag\" \"0\") LE(VALUE \"Betrag\" \"10000\") "
+          + "NOT(MATCH(VALUE \"Nachname\" \"\")))",
+      "trafo",
+      "BIND(FUNCTION \"Brutto\" SET(\"Netto\" VALUE \"Betrag\") SET(\"Satz\" \"19\"))",
+      "datasource",
+      "CAT(SPLIT(VALUE \"Name\" \", \" \"1\") \" \" SPLIT(VALUE \"Name\" \", \" \"0\") "
+          + "SELECT(REPLACE(VALUE \"Titel\" \"^(.+)$\" \" ($1)\") \"\"))");
+
+  @Param({ "autofill", "plausi", "trafo", "datasource" })
+  public String function;
+
+  private Function interpreted;
+
+  private Function compiled;
+
+  private Values.SimpleMap values;
+
+  @Setup
+  public void setup() throws IOException, SyntaxErrorException
+  {
+    FunctionLibrary funcLib = new FunctionLibrary();
+    DialogLibrary dialogLib = new DialogLibrary();
+    Map<Object, Object> context = new HashMap<>();
+    funcLib.add("Brutto", FunctionFactory.parseChildren(new ConfigThingy("Brutto",
+        "FORMAT(PRODUCT(VALUE \"Netto\" SUM(\"1\" DIVIDE(VALUE \"Satz\" BY \"100\" MAX \"2\"))) MIN \"2\" MAX \"2\")"),
+        funcLib, dialogLib, context));
+
+    interpreted = FunctionFactory.parseChildren(new ConfigThingy("Function", FUNCTIONS.get(function)), funcLib,
+        dialogLib, context);
+    compiled = FunctionFactory.compile(interpreted);
+
+    values = new Values.SimpleMap();
+    values.put("Anrede", "Frau");
+    values.put("Nachname", "Mustermann");
+    values.put("PLZ", "80331");
+    values.put("Betrag", "1250");
+    values.put("Name", "Mustermann, Erika");
+    values.put("Titel", "Dr.");
+  }
+
+  @Benchmark
+  public String interpreted()
+  {
+    return interpreted.getResult(values);
+  }
+
+  @Benchmark
+  public String compiled()
+  {
+    return compiled.getResult(values);
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(FunctionBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -35,7 +35,6 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.google.common.collect.Table;
 import com.sun.star.lang.EventObject;
 import com.sun.star.sheet.XSpreadsheet;
 import com.sun.star.sheet.XSpreadsheetDocument;
@@ -112,7 +111,7 @@ public class CalcModelTest extends OfficeTest
     Set<String> columns = Set.of("Test", "Column with 2 rows", "1", "2.0", "3.5");
     assertEquals(columns, model.getColumnNames());
 
-    Table<Integer, String, String> data = model.getData();
+    RecordTable data = model.getData();
     assertEquals("1", data.get(1, "Test"), "wrong data");
     // second record is hidden, so it doesn't count
     assertEquals("3.5", data.get(2, "Test"), "wrong data");
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.HashBasedTable;
+import com.sun.star.sheet.XCellRangeData;
+
+/**
+ * Compares the bulk conversion of {@link CalcTable} with the previous implementation of
+ * {@link CalcModel}, which accessed every cell and the header of its column separately, on a sheet
+ * with 20.000 rows provided by a stub {@link XCellRangeData}. The stub has no UNO round trips, so
+ * the cost of the legacy implementation is a lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CalcTableBenchmark
+{
+  private static final int ROWS = 20_000;
+
+  private static final int COLUMNS = 12;
+
+  private XCellRangeData range;
+
+  private SortedSet<Integer> columns;
+
+  private SortedSet<Integer> rows;
+
+  private CalcTable.CellText text;
+
+  private CalcTable table;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    Object[][] cellData = new Object[ROWS + 1][COLUMNS];
+    for (int c = 0; c < COLUMNS; c++)
+    {
+      cellData[0][c] = "Column " + c;
+    }
+    for (int r = 1; r <= ROWS; r++)
+    {
+      for (int c = 0; c < COLUMNS; c++)
+      {
+        // every fourth column contains numbers
+        cellData[r][c] = c % 4 == 3 ? (Object) Double.valueOf(r) : "Value " + r + "/" + c;
+      }
+    }
+    range = new XCellRangeData()
+    {
+      @Override
+      public Object[][] getDataArray()
+      {
+        return cellData;
+      }
+
+      @Override
+      public void setDataArray(Object[][] data)
+      {
+        // not needed
+      }
+    };
+    columns = new TreeSet<>();
+    for (int c = 0; c < COLUMNS; c++)
+    {
+      columns.add(c);
+    }
+    rows = new TreeSet<>();
+    for (int r = 0; r <= ROWS; r++)
+    {
+      rows.add(r);
+    }
+    text = (column, row) -> {
+      Object value = cellData[row][column];
+      return value instanceof Double ? Long.toString(((Double) value).longValue()) : (String) value;
+    };
+    table = CalcTable.read(range.getDataArray(), columns, rows, text);
+  }
+
+  @Benchmark
+  public CalcTable bulk() throws Exception
+  {
+    return CalcTable.read(range.getDataArray(), columns, rows, text);
+  }
+
+  @Benchmark
+  public CalcTable changeCell() throws Exception
+  {
+    return table.change().set(new Object[][] { { "changed" } }, 1, ROWS / 2, text).apply();
+  }
+
+  @Benchmark
+  public HashBasedTable<Integer, String, String> legacy() throws Exception
+  {
+    HashBasedTable<Integer, String, String> data = HashBasedTable.create();
+    for (int record = 0; record <= ROWS; record++)
+    {
+      for (int j = 0; j < COLUMNS; j++)
+      {
+        if (columns.contains(j + columns.first()))
+        {
+          String column = text.get(j, 0);
+          column = CharMatcher.breakingWhitespace().replaceFrom(column, " ");
+          if (record > 0)
+          {
+            data.put(record, column, text.get(j, record));
+          }
+        }
+      }
+    }
+    return data;
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(CalcTableBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class CalcTableTest
+{
+  /**
+   * A sheet starting at B2 with a hidden column D and a hidden row 4.
+   */
+  private static final Object[][] CELL_DATA = {
+      { "Name", "Vor\nname", "hidden", 2.0 },
+      { "Mustermann", "Max", "x", 1.0 },
+      { "hidden", "hidden", "x", 0.0 },
+      { "Musterfrau", "Maria", "x", 2.5 } };
+
+  private final TreeSet<Integer> columns = new TreeSet<>(List.of(1, 2, 4));
+
+  private final TreeSet<Integer> rows = new TreeSet<>(List.of(1, 2, 4));
+
+  private final CalcTable.CellText text = (column, row) -> "#" + column + "," + row;
+
+  @Test
+  public void testRead() throws Exception
+  {
+    CalcTable table = CalcTable.read(CELL_DATA, columns, rows, text);
+    RecordTable records = table.getRecords();
+    assertEquals(Set.of("Name", "Vor name", "#4,1"), records.getColumnNames());
+    assertEquals(2, records.getNumberOfRecords());
+    assertEquals(Map.of("Name", "Mustermann", "Vor name", "Max", "#4,1", "#4,2"),
+        records.getRecord(1));
+    assertEquals("Maria", records.getRecord(2).get("Vor name"));
+    assertTrue(records.getRecord(3).isEmpty());
+    assertEquals(4, table.getSheetColumn("#4,1"));
+    assertEquals(-1, table.getSheetColumn("hidden"));
+    assertTrue(table.hasStructure(columns, rows));
+    assertEquals("Musterfrau", records.get(2, "Name"));
+  }
+
+  @Test
+  public void testChange() throws Exception
+  {
+    CalcTable table = CalcTable.read(CELL_DATA, columns, rows, text);
+    CalcTable changed = table.change()
+        .set(new Object[][] { { "Nachname" }, { "Muster" }, { "ignored" } }, 1, 1, text)
+        .set(new Object[][] { { "Marie" } }, 2, 4, text).apply();
+    RecordTable records = changed.getRecords();
+    assertEquals(Set.of("Nachname", "Vor name", "#4,1"), records.getColumnNames());
+    assertEquals("Muster", records.get(1, "Nachname"));
+    assertEquals("Marie", records.get(2, "Vor name"));
+    assertEquals("Max", records.get(1, "Vor name"));
+    assertEquals("Mustermann", table.getRecords().get(1, "Name"), "original table changed");
+  }
+
+  @Test
+  public void testEmpty() throws Exception
+  {
+    CalcTable table = CalcTable.read(new Object[0][0], new TreeSet<>(), new TreeSet<>(), text);
+    assertTrue(table.isEmpty());
+    assertEquals(0, table.getRecords().getNumberOfRecords());
+    assertEquals(-1, table.getLastColumn());
+    assertTrue(table.getRecords().getColumnNames().isEmpty());
+  }
+}
@@ -34,7 +34,6 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.google.common.collect.Table;
 import com.sun.star.lang.EventObject;
 import com.sun.star.sdb.XOfficeDatabaseDocument;
 import com.sun.star.uno.UnoRuntime;
@@ -109,7 +108,7 @@ public class DBModelTest extends OfficeTest
   {
     model.activateTable("Tabelle2");
     assertEquals("Tabelle2", model.getActivatedTable(), "different activated table");
-    Table<Integer, String, String> data = model.getData();
+    RecordTable data = model.getData();
     assertEquals("1.0", data.get(1, "Test"), "wrong data");
   }
 }
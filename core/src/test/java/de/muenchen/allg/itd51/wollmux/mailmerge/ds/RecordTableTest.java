@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.ds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class RecordTableTest
+{
+  private RecordTable createTable()
+  {
+    RecordTable.Builder builder = RecordTable.builder(List.of("Anrede", "Name"));
+    String[] values = new String[2];
+    for (int i = 1; i <= 100; i++)
+    {
+      values[0] = new String(i % 2 == 0 ? "Frau" : "Herr");
+      values[1] = "Name" + i;
+      builder.addRecord(values);
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void testRecords()
+  {
+    RecordTable table = createTable();
+    assertEquals(List.of("Anrede", "Name"), List.copyOf(table.getColumnNames()));
+    assertEquals(100, table.getNumberOfRecords());
+    assertEquals(2, table.getNumberOfColumns());
+    assertEquals(1, table.getColumn("Name"));
+    assertEquals(-1, table.getColumn("unknown"));
+    assertEquals("Herr", table.get(1, 0));
+    assertEquals("Name100", table.get(100, "Name"));
+    assertNull(table.get(101, "Name"));
+    assertNull(table.get(1, "unknown"));
+    assertThrows(IndexOutOfBoundsException.class, () -> table.get(0, 0));
+    assertSame(table.get(2, 0), table.get(4, 0), "equal values aren't shared");
+  }
+
+  @Test
+  public void testRecordView()
+  {
+    RecordTable table = createTable();
+    Map<String, String> record = table.getRecord(2);
+    assertEquals(Map.of("Anrede", "Frau", "Name", "Name2"), record);
+    assertEquals("Name2", record.get("Name"));
+    assertTrue(record.containsKey("Anrede"));
+    assertNull(record.get("unknown"));
+    Map<String, String> copy = new LinkedHashMap<>();
+    record.forEach(copy::put);
+    assertEquals(List.of("Anrede", "Name"), List.copyOf(copy.keySet()));
+    assertThrows(UnsupportedOperationException.class, () -> record.put("Name", "other"));
+    assertTrue(table.getRecord(0).isEmpty());
+    assertTrue(table.getRecord(101).isEmpty());
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    RecordTable table = RecordTable.builder(List.of("column")).build();
+    assertEquals(0, table.getNumberOfRecords());
+    assertEquals(List.of("column"), List.copyOf(table.getColumnNames()));
+    assertThrows(IllegalArgumentException.class,
+        () -> RecordTable.builder(List.of("column")).addRecord("a", "b"));
+    assertTrue(RecordTable.EMPTY.getRecord(1).isEmpty());
+  }
+
+  @Test
+  public void testDuplicateColumns()
+  {
+    RecordTable table = RecordTable.builder(List.of("Name", "Anrede", "Name"))
+        .addRecord("first", "Frau", "last").build();
+    assertEquals(List.of("Name", "Anrede"), List.copyOf(table.getColumnNames()));
+    assertEquals(2, table.getNumberOfColumns());
+    assertEquals(0, table.getColumn("Name"));
+    assertEquals("last", table.get(1, "Name"));
+    Map<String, String> record = table.getRecord(1);
+    assertEquals(2, record.size());
+    assertEquals(Map.of("Name", "last", "Anrede", "Frau"), record);
+  }
+}
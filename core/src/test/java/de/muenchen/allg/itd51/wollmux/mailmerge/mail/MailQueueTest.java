@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.mail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MailQueueTest
+{
+  private SmtpStandIn server;
+
+  private SmtpConnection connection;
+
+  private MailQueue queue;
+
+  @BeforeEach
+  public void setup() throws Exception
+  {
+    server = new SmtpStandIn();
+    connection = new SmtpConnection(Session.getInstance(new Properties()), server.getSettings());
+    queue = new MailQueue(connection, 2, 3, 0);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception
+  {
+    server.close();
+  }
+
+  @Test
+  public void testOneConnectionForAllMails() throws Exception
+  {
+    AtomicInteger done = new AtomicInteger();
+    List<String> recipients = new ArrayList<>();
+    for (int i = 0; i < 10; i++)
+    {
+      String to = "user" + i + "@example.org";
+      recipients.add(to);
+      queue.submit(createMail(to), to, done::incrementAndGet);
+    }
+    MailReport report = queue.finish();
+    assertEquals(recipients, report.getSentRecipients());
+    assertEquals(Collections.emptyList(), report.getFailedRecipients());
+    assertEquals(recipients, server.getRecipients());
+    assertEquals(10, done.get());
+    assertEquals(1, connection.getConnects());
+    assertEquals(1, server.getConnections());
+    assertThrows(IllegalStateException.class,
+        () -> queue.submit(createMail("late@example.org"), "late@example.org", null));
+  }
+
+  @Test
+  public void testRetryTemporaryFailure() throws Exception
+  {
+    server.failTemporarily(2);
+    queue.submit(createMail("user@example.org"), "user@example.org", null);
+    MailReport report = queue.finish();
+    assertEquals(List.of("user@example.org"), report.getSentRecipients());
+    assertEquals(List.of("user@example.org"), server.getRecipients());
+  }
+
+  @Test
+  public void testReconnectAfterConnectionLoss() throws Exception
+  {
+    server.dropAfter(2);
+    for (int i = 0; i < 4; i++)
+    {
+      queue.submit(createMail("user" + i + "@example.org"), "user" + i + "@example.org", null);
+    }
+    MailReport report = queue.finish();
+    assertEquals(4, report.getSentRecipients().size());
+    assertEquals(4, server.getRecipients().size());
+    assertEquals(2, connection.getConnects());
+  }
+
+  @Test
+  public void testPermanentFailure() throws Exception
+  {
+    AtomicInteger done = new AtomicInteger();
+    queue.submit(createMail("invalid@example.org"), "invalid@example.org", done::incrementAndGet);
+    queue.submit(createMail("user@example.org"), "user@example.org", done::incrementAndGet);
+    MailReport report = queue.finish();
+    assertEquals(List.of("invalid@example.org"), report.getFailedRecipients());
+    assertEquals(List.of("user@example.org"), report.getSentRecipients());
+    assertEquals(List.of("user@example.org"), server.getRecipients());
+    assertEquals(2, done.get());
+    assertEquals(1, connection.getConnects());
+  }
+
+  @Test
+  public void testRuntimeException() throws Exception
+  {
+    SmtpConnection failing = mock(SmtpConnection.class);
+    doThrow(new IllegalStateException("test")).doNothing().when(failing).send(any());
+    MailQueue failingQueue = new MailQueue(failing, 2, 3, 0);
+    AtomicInteger done = new AtomicInteger();
+    failingQueue.submit(createMail("user1@example.org"), "user1@example.org",
+        done::incrementAndGet);
+    failingQueue.submit(createMail("user2@example.org"), "user2@example.org", () -> {
+      done.incrementAndGet();
+      throw new IllegalStateException("test");
+    });
+    failingQueue.submit(createMail("user3@example.org"), "user3@example.org",
+        done::incrementAndGet);
+    MailReport report = failingQueue.finish();
+    assertEquals(List.of("user1@example.org"), report.getFailedRecipients());
+    assertEquals(List.of("user2@example.org", "user3@example.org"), report.getSentRecipients());
+    assertEquals(3, done.get());
+    queue.finish();
+  }
+
+  private EMailSender createMail(String to) throws Exception
+  {
+    EMailSender mail = new EMailSender();
+    mail.createNewMultipartMail("sender@example.org", to, "Subject", "Body");
+    return mail;
+  }
+}
@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.mailmerge.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal SMTP server for tests. It accepts one connection at a time, records the recipients of
+ * all accepted messages and can simulate failures.
+ */
+class SmtpStandIn implements AutoCloseable
+{
+  private final ServerSocket server;
+
+  private final Thread thread;
+
+  private final List<String> recipients = new ArrayList<>();
+
+  private final AtomicInteger connections = new AtomicInteger();
+
+  /**
+   * Number of messages, which are answered with a temporary error.
+   */
+  private volatile int temporaryFailures = 0;
+
+  /**
+   * Close the connection after this many messages have been accepted on it.
+   */
+  private volatile int dropAfter = Integer.MAX_VALUE;
+
+  SmtpStandIn() throws IOException
+  {
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    thread = new Thread(this::serve, "SMTP stand-in");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  MailServerSettings getSettings()
+  {
+    MailServerSettings settings = new MailServerSettings();
+    settings.setMailserver("localhost");
+    settings.setMailserverport(Integer.toString(server.getLocalPort()));
+    return settings;
+  }
+
+  synchronized List<String> getRecipients()
+  {
+    return new ArrayList<>(recipients);
+  }
+
+  int getConnections()
+  {
+    return connections.get();
+  }
+
+  void failTemporarily(int messages)
+  {
+    temporaryFailures = messages;
+  }
+
+  void dropAfter(int messages)
+  {
+    dropAfter = messages;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    server.close();
+  }
+
+  private void serve()
+  {
+    while (!server.isClosed())
+    {
+      try (Socket socket = server.accept())
+      {
+        connections.incrementAndGet();
+        handle(socket);
+      } catch (IOException e)
+      {
+        // connection closed
+      }
+    }
+  }
+
+  private void handle(Socket socket) throws IOException
+  {
+    BufferedReader in = new BufferedReader(
+        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+    Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+    reply(out, "220 localhost");
+    List<String> envelope = new ArrayList<>();
+    int accepted = 0;
+    String line;
+    while ((line = in.readLine()) != null)
+    {
+      String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+      switch (command)
+      {
+      case "EHLO":
+      case "HELO":
+        reply(out, "250 localhost");
+        break;
+      case "MAIL":
+        envelope.clear();
+        reply(out, "250 OK");
+        break;
+      case "RCPT":
+        if (line.contains("invalid"))
+        {
+          reply(out, "550 No such user");
+        } else
+        {
+          envelope.add(line.substring(line.indexOf('<') + 1, line.indexOf('>')));
+          reply(out, "250 OK");
+        }
+        break;
+      case "DATA":
+        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+        while ((line = in.readLine()) != null && !line.equals("."))
+        {
+          // skip content
+        }
+        if (temporaryFailures > 0)
+        {
+          temporaryFailures--;
+          reply(out, "451 Try again later");
+        } else
+        {
+          synchronized (this)
+          {
+            recipients.addAll(envelope);
+          }
+          reply(out, "250 OK");
+          if (++accepted >= dropAfter)
+          {
+            dropAfter = Integer.MAX_VALUE;
+            return;
+          }
+        }
+        break;
+      case "QUIT":
+        reply(out, "221 Bye");
+        return;
+      default:
+        reply(out, "250 OK");
+      }
+    }
+  }
+
+  private static void reply(Writer out, String response) throws IOException
+  {
+    out.write(response + "\r\n");
+    out.flush();
+  }
+}
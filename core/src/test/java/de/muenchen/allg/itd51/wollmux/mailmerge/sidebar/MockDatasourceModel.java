@@ -27,7 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import com.google.common.collect.Table;
 import com.sun.star.util.XCloseListener;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -35,6 +34,7 @@ import de.muenchen.allg.itd51.wollmux.mailmerge.FieldSubstitution;
 import de.muenchen.allg.itd51.wollmux.mailmerge.NoTableSelectedException;
 import de.muenchen.allg.itd51.wollmux.mailmerge.ds.DatasourceModel;
 import de.muenchen.allg.itd51.wollmux.mailmerge.ds.DatasourceModelListener;
+import de.muenchen.allg.itd51.wollmux.mailmerge.ds.RecordTable;
 
 public class MockDatasourceModel implements DatasourceModel
 {
@@ -114,7 +114,7 @@ public class MockDatasourceModel implements DatasourceModel
   }
 
   @Override
-  public Table<Integer, String, String> getData() throws NoTableSelectedException
+  public RecordTable getData() throws NoTableSelectedException
   {
     return null;
   }
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2022 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.print;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.func.print.PrintException;
+import de.muenchen.allg.itd51.wollmux.func.print.PrintFunction;
+import de.muenchen.allg.itd51.wollmux.interfaces.XPrintModel;
+
+public class PrintPipelineTest
+{
+  private PrintPipeline pipeline;
+
+  private XPrintModel pmod;
+
+  private AtomicBoolean canceled;
+
+  @BeforeEach
+  public void setup()
+  {
+    pipeline = new PrintPipeline();
+    canceled = new AtomicBoolean(false);
+    pmod = mock(XPrintModel.class);
+    when(pmod.isCanceled()).thenAnswer(invocation -> canceled.get());
+    doAnswer(invocation -> {
+      canceled.set(true);
+      return null;
+    }).when(pmod).cancel();
+  }
+
+  @Test
+  public void testWorkersAreReused()
+  {
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    PrintFunction inner = createFunction("inner", pm -> threads.add(Thread.currentThread()));
+    PrintFunction outer = createFunction("outer", pm -> {
+      for (int i = 0; i < 100; i++)
+      {
+        pipeline.run(inner, pm);
+      }
+    });
+    pipeline.run(outer, pmod);
+
+    assertTrue(threads.size() < 10, "Too many threads: " + threads.size());
+    assertFalse(threads.contains(Thread.currentThread()));
+    List<PrintFunctionMetrics> metrics = pipeline.getMetrics();
+    assertEquals(2, metrics.size());
+    assertEquals("outer", metrics.get(0).getFunctionName());
+    assertEquals(1, metrics.get(0).getCalls());
+    assertEquals("inner", metrics.get(1).getFunctionName());
+    assertEquals(100, metrics.get(1).getCalls());
+    assertTrue(metrics.get(0).getOwnTime().compareTo(metrics.get(0).getTotalTime()) <= 0);
+    assertEquals(metrics.get(1).getOwnTime(), metrics.get(1).getTotalTime());
+  }
+
+  @Test
+  public void testCancel()
+  {
+    AtomicInteger calls = new AtomicInteger();
+    PrintFunction inner = createFunction("inner", pm -> {
+      if (calls.incrementAndGet() == 5)
+      {
+        pm.cancel();
+      }
+    });
+    PrintFunction outer = createFunction("outer", pm -> {
+      for (int i = 0; i < 100; i++)
+      {
+        pipeline.run(inner, pm);
+      }
+    });
+    pipeline.run(outer, pmod);
+    assertEquals(5, calls.get());
+
+    pipeline.run(outer, pmod);
+    assertEquals(1, pipeline.getMetrics().get(0).getCalls());
+  }
+
+  @Test
+  public void testError()
+  {
+    PrintFunction failing = createFunction("failing", pm -> {
+      throw new PrintException("test", null);
+    });
+    pipeline.run(failing, pmod);
+    pipeline.run(failing, pmod);
+    assertEquals(2, pipeline.getMetrics().get(0).getCalls());
+    assertFalse(canceled.get());
+  }
+
+  private static PrintFunction createFunction(String name, Stage stage)
+  {
+    return new PrintFunction(name, 0)
+    {
+      @Override
+      public void print(XPrintModel printModel) throws PrintException
+      {
+        stage.print(printModel);
+      }
+    };
+  }
+
+  @FunctionalInterface
+  private interface Stage
+  {
+    void print(XPrintModel printModel) throws PrintException;
+  }
+}
@@ -30,7 +30,10 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -43,6 +46,7 @@ import de.muenchen.allg.itd51.wollmux.db.ColumnNotFoundException;
 import de.muenchen.allg.itd51.wollmux.db.ColumnTransformer;
 import de.muenchen.allg.itd51.wollmux.db.Dataset;
 import de.muenchen.allg.itd51.wollmux.db.Datasource;
+import de.muenchen.allg.itd51.wollmux.db.QueryResults;
 import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
 import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
 import de.muenchen.allg.itd51.wollmux.func.StringLiteralFunction;
@@ -202,4 +206,37 @@ public class SenderServiceTest
     assertEquals(0, service.getCurrentOverrideFragMap().count());
   }
 
+  @Test
+  public void testInitWithBatchedKeys() throws Exception
+  {
+    List<Dataset> datasets = new ArrayList<>();
+    List<SenderConf> senders = new ArrayList<>();
+    int count = SenderService.KEY_BATCH_SIZE * 2 + 1;
+    for (int i = 0; i < count; i++)
+    {
+      datasets.add(new MockDataset("ds" + i, Map.of("column", "value" + i, "column2", "")));
+      senders.add(new SenderConf("ds" + i, Map.of("column", "value" + i), new HashMap<>()));
+    }
+    senders.add(new SenderConf("ds0", Map.of("column", "value0"), new HashMap<>()));
+    senders.add(new SenderConf("lost", Map.of("column", "lost"), new HashMap<>()));
+    List<Collection<String>> requests = new ArrayList<>();
+    Datasource ds = new MockDatasource("mock", List.of("column", "column2"), datasets)
+    {
+      @Override
+      public QueryResults getDatasetsByKey(Collection<String> keys)
+      {
+        requests.add(keys);
+        return super.getDatasetsByKey(keys);
+      }
+    };
+
+    SenderService batchService = new SenderService(ds, null, new MockCache(senders), "column");
+    assertEquals(3, requests.size());
+    assertEquals(count + 1, requests.stream().mapToInt(Collection::size).sum());
+    assertEquals(count + 2, batchService.data.size());
+    assertEquals("value5", batchService.data.get(5).get("column"));
+    assertEquals("value0", batchService.data.get(count).get("column"));
+    assertEquals(List.of(", "), batchService.getLostDatasetDisplayStrings());
+  }
+
 }
@@ -38,10 +38,18 @@ public class MockCache implements SenderCache
   private SenderConf sender1 = new SenderConf("ds", Map.of("column", "value1"), new HashMap<>());
   private SenderConf sender2 = new SenderConf("lost", Map.of("column", "lost1"), new HashMap<>());
   private List<String> schema = new ArrayList<>();
+  private List<SenderConf> data;
 
   public MockCache()
   {
     schema.add("column");
+    data = List.of(sender1, sender2);
+  }
+
+  public MockCache(List<SenderConf> data)
+  {
+    this();
+    this.data = data;
   }
 
   public boolean isSaved()
@@ -70,7 +78,7 @@ public class MockCache implements SenderCache
   @Override
   public List<SenderConf> getData()
   {
-    return List.of(sender1, sender2);
+    return data;
   }
 
   @Override